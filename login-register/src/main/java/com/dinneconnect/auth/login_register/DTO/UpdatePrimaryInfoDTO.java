@@ -3,12 +3,14 @@ package com.dinneconnect.auth.login_register.DTO;
 /**
  * Data Transfer Object (DTO) for updating primary user information.
  * This class is used to encapsulate the primary information of a user,
- * including their name, surname, username, and email address.
+ * including their name, surname, username, and email address, and the
+ * version of the user the client read.
  */
 public class UpdatePrimaryInfoDTO {
     private String name;
     private String surname;
     private String email;
+    private Integer version;
 
     /**
      * Constructs a new UpdatePrimaryInfoDTO with the specified user information.
@@ -76,4 +78,23 @@ public class UpdatePrimaryInfoDTO {
     public void setEmail(String email) {
         this.email = email;
     }
+
+    /**
+     * Retrieves the version of the user the client read before the update.
+     *
+     * @return the version, or null to update the user whatever its version
+     */
+    public Integer getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the user the client read before the update.
+     *
+     * @param version the version, or null to update the user whatever its
+     *                version
+     */
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,51 @@
+package com.dinneconnect.auth.login_register.DTO;
+
+import java.util.List;
+
+/**
+ * This module handles data transfer objects (DTOs) for paginated user
+ * listings. A page holds the users following a cursor, in ascending order of
+ * code, and the cursor to request the next page with.
+ *
+ * @version 1.0
+ * @since 2025-02-26
+ * @author Sebastian Avendaño Rodriguez
+ */
+public class UserPageDTO {
+
+    private List<UserResponseDTO> users;
+    private Long nextCursor;
+
+    public UserPageDTO() {
+    }
+
+    /**
+     * Constructs a new UserPageDTO.
+     *
+     * @param users      the users of the page
+     * @param nextCursor the cursor of the next page, or null on the last page
+     */
+    public UserPageDTO(List<UserResponseDTO> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the users of the page.
+     *
+     * @return the users
+     */
+    public List<UserResponseDTO> getUsers() {
+        return users;
+    }
+
+    /**
+     * Gets the cursor to pass to request the next page.
+     *
+     * @return the code of the last user of the page, or null if there are no
+     *         more users
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
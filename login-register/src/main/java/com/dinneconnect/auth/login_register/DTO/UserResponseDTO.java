@@ -19,6 +19,7 @@ public class UserResponseDTO {
     private String username;
     private String email;
     private String creationDate;
+    private Integer version;
 
     /**
      * Constructs a new UserRequestDTO.
@@ -131,4 +132,23 @@ public class UserResponseDTO {
         return code;
     }
 
+    /**
+     * Gets the version of the user, to send back with an update so it is
+     * rejected if the user changed in between.
+     * 
+     * @return the version
+     */
+    public Integer getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the user.
+     * 
+     * @param version the version to set
+     */
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
 }
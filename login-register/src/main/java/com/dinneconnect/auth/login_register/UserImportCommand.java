@@ -0,0 +1,49 @@
+package com.dinneconnect.auth.login_register;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.dinneconnect.auth.login_register.services.UserImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Command line entry point importing users from NDJSON or CSV files into the
+ * configured storage engine, without starting the web server.
+ *
+ * Run with:
+ * java -cp login-register.jar -Dloader.main=com.dinneconnect.auth.login_register.UserImportCommand
+ * org.springframework.boot.loader.launch.PropertiesLauncher users.ndjson [more files]
+ * [--import.batch-size=10000] [--app.repository.engine=h2]
+ *
+ * With the json engine, pass --app.repository.persistence=log so every batch
+ * appends to the mutation log instead of rewriting the whole JSON file.
+ * Closing the application context at the end flushes the engine.
+ */
+public class UserImportCommand {
+
+    public static void main(String[] args) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LoginRegisterApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+            int batchSize = context.getEnvironment().getProperty("import.batch-size", Integer.class, 10_000);
+            UserImporter importer = new UserImporter(context.getBean(UserStore.class),
+                    context.getBean(ObjectMapper.class), batchSize);
+            boolean anyFile = false;
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    continue;
+                }
+                anyFile = true;
+                System.out.println("Importing " + arg);
+                System.out.println(importer.importFile(Path.of(arg)));
+            }
+            if (!anyFile) {
+                System.err.println("Usage: UserImportCommand <file.ndjson|file.csv>... [--import.batch-size=N]");
+            }
+        }
+    }
+}
@@ -67,8 +67,8 @@ public class AuthController {
 
         UserResponseDTO user_auth = userService.getUserByUsername(user.getUsername(), user.getHashed_password());
         if (user_auth != null) {
-            LoginResponseDTO login = new LoginResponseDTO((Long) user_auth.getCode(),
-                    (String) user_auth.getUsername());
+            LoginResponseDTO login = new LoginResponseDTO(user_auth.getCode(),
+                    user_auth.getUsername());
             return ResponseEntity.ok().body(login);
         } else {
             return ResponseEntity.badRequest().body(new LoginResponseDTO());
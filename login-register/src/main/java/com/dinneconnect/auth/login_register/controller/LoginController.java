@@ -11,12 +11,14 @@
 
 package com.dinneconnect.auth.login_register.controller;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,10 +27,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.dinneconnect.auth.login_register.DTO.UpdatePrimaryInfoDTO;
 import com.dinneconnect.auth.login_register.DTO.UserResponseDTO;
+import com.dinneconnect.auth.login_register.services.ChangeFeedService;
+import com.dinneconnect.auth.login_register.services.ReplicationService;
 import com.dinneconnect.auth.login_register.services.UserService;
 import com.dinneconnect.auth.login_register.utilities.JWTUtilities;
 import com.dinneconnect.auth.login_register.utilities.UserUtilities;
@@ -79,6 +86,45 @@ public class LoginController {
     @Autowired
     private UserUtilities utilities;
 
+    /**
+     * Service running the primary or follower replication role.
+     * Injected by Spring's dependency injection.
+     */
+    @Autowired
+    private ReplicationService replicationService;
+
+    /**
+     * Service publishing the change feed of the users.
+     * Injected by Spring's dependency injection.
+     */
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    /**
+     * Maximum number of users returned by one prefix search.
+     */
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    /**
+     * Maximum number of users returned by one page of the user listing.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Media type of the streamed user listing: one JSON object per line.
+     */
+    private static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Body of the 409 response to an update sent with an outdated version.
+     */
+    private static final String CONFLICT_MESSAGE = "The user was modified by another request; read it again and retry";
+
+    /**
+     * Body of the 500 response to a change that could not be saved.
+     */
+    private static final String NOT_DURABLE_MESSAGE = "The change could not be saved; try again later";
+
     /**
      * 
      * This class provides the user information, this is used for settings purpose
@@ -142,6 +188,8 @@ public class LoginController {
 
     /**
      * Updates the primary information of the currently authenticated user.
+     * When the request holds the version returned by "/get-user", the update
+     * is rejected with 409 Conflict if the user changed since.
      * 
      * @param request   the UpdatePrimaryInfoDTO object containing new user
      *                  information
@@ -163,6 +211,12 @@ public class LoginController {
                 if (updt.get("success")) {
                     return ResponseEntity.ok().body("User information updated");
                 }
+                if (Boolean.TRUE.equals(updt.get("conflict"))) {
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(CONFLICT_MESSAGE);
+                }
+                if (UserService.isNotDurable(updt)) {
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(NOT_DURABLE_MESSAGE);
+                }
                 return ResponseEntity.badRequest().body("Something went wrong");
 
             } else {
@@ -186,6 +240,8 @@ public class LoginController {
 
     /**
      * Changes the password of the currently authenticated user.
+     * When the request holds a "version", the change is rejected with 409
+     * Conflict if the user changed since that version.
      * 
      * @param request   the UpdatePasswordDTO object containing the new password
      * @param authToken the JWT token provided in the Authorization header
@@ -200,10 +256,18 @@ public class LoginController {
                 Map<String, Object> info = JWTUtilities.verifyToken(authToken);
 
                 Long code = Long.parseLong((String) info.get("sub"));
-                Map<String, Boolean> updt = userService.updatePassword(code, (String) request.get("request"));
+                Integer version = request.get("version") instanceof Number number ? number.intValue() : null;
+                Map<String, Boolean> updt = userService.updatePassword(code, (String) request.get("request"),
+                        version);
                 if (updt.get("success")) {
                     return ResponseEntity.ok().body("Password updated");
                 }
+                if (Boolean.TRUE.equals(updt.get("conflict"))) {
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(CONFLICT_MESSAGE);
+                }
+                if (UserService.isNotDurable(updt)) {
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(NOT_DURABLE_MESSAGE);
+                }
                 return ResponseEntity.badRequest().body("Something went wrong");
 
             } else {
@@ -225,6 +289,56 @@ public class LoginController {
         }
     }
 
+    /**
+     * Searches users by the beginning of their username, name or surname, for
+     * autocomplete. Matching ignores case and results come in alphabetical
+     * order of the searched field.
+     * 
+     * @param prefix    the beginning of the value to search for
+     * @param field     "username" (default), "name" or "surname"
+     * @param limit     the maximum number of users to return, at most
+     *                  {@value #MAX_SEARCH_RESULTS}
+     * @param authToken the JWT token provided in the Authorization header
+     * @return a ResponseEntity containing the matching users or an error
+     *         message; 503 Service Unavailable when the storage keeps no prefix
+     *         index
+     */
+    @GetMapping("/user/search/")
+    public ResponseEntity<?> searchUsers(@RequestParam String prefix,
+            @RequestParam(defaultValue = "username") String field,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestHeader("Authorization") String authToken) {
+        try {
+            if (!authToken.startsWith("Bearer ")) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("The token it's no valid");
+            }
+            JWTUtilities.verifyToken(authToken.substring(7));
+            if (prefix.isBlank() || limit < 1) {
+                return ResponseEntity.badRequest().body("A prefix and a positive limit are required");
+            }
+            try {
+                return ResponseEntity.ok()
+                        .body(userService.searchUsers(field, prefix, Math.min(limit, MAX_SEARCH_RESULTS)));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+            }
+        } catch (ExpiredJwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Your session has expired");
+        } catch (UnsupportedJwtException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Token format is not supported");
+        } catch (MalformedJwtException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Token it's bad formatted");
+        } catch (SignatureException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token has invalid sign");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Token it's null");
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: " + e.getMessage());
+        }
+    }
+
     /**
      * Deletes the currently authenticated user from the system.
      * 
@@ -245,6 +359,9 @@ public class LoginController {
                 if ((Boolean) updt.get("success")) {
                     return ResponseEntity.ok().body("User deleted");
                 }
+                if (UserService.isNotDurable(updt)) {
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(NOT_DURABLE_MESSAGE);
+                }
                 return ResponseEntity.badRequest().body("Something went wrong");
 
             } else {
@@ -283,8 +400,153 @@ public class LoginController {
      */
     @GetMapping("/user/all/testing/")
     public List<UserResponseDTO> getUsers() {
-        List<UserResponseDTO> users = userService.getAllUsers();
-        return utilities.UsersToUserDTOs(users);
+        return userService.getAllUsers();
+    }
+
+    /**
+     * Retrieves one page of users in ascending order of code, selected when a
+     * limit is given. The response holds the cursor to pass to get the next
+     * page, or null after the last one.
+     * This endpoint is for testing purposes and should be protected in production.
+     * 
+     * @param cursor the cursor returned with the previous page, absent for the
+     *               first page
+     * @param limit  the maximum number of users in the page, at most
+     *               {@value #MAX_PAGE_SIZE}
+     * @return a ResponseEntity containing the page or an error message
+     */
+    @GetMapping(value = "/user/all/testing/", params = "limit")
+    public ResponseEntity<?> getUsersPage(@RequestParam(required = false) Long cursor,
+            @RequestParam int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body("The limit must be positive");
+        }
+        return ResponseEntity.ok().body(userService.getUsersPage(cursor, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Streams every user as newline-delimited JSON, selected with an
+     * "Accept: application/x-ndjson" header. Users are written to the response
+     * as they are read, so a full export uses constant memory.
+     * This endpoint is for testing purposes and should be protected in production.
+     * 
+     * @return a ResponseEntity streaming one user object per line
+     */
+    @GetMapping(value = "/user/all/testing/", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(userService::writeUsersAsNdjson);
+    }
+
+    /**
+     * Streams the creates, updates and deletes of users as newline-delimited
+     * JSON, in order and with increasing sequence numbers, as they happen.
+     * A consumer that reconnects passes the last sequence number it applied
+     * and the epoch of the stream to resume without missing a change; a
+     * "reset" event asks it to reload every user instead. Passwords are never
+     * sent.
+     *
+     * @param authToken the JWT token provided in the Authorization header
+     * @param after     the last sequence number the consumer applied, absent
+     *                  to start with the next change
+     * @param epoch     the epoch sent at the start of the previous stream
+     * @return a ResponseEntity streaming one event per line, or an error
+     *         message if the token is not valid, or with 503 if the change
+     *         feed is not available or serves as many consumers as allowed
+     */
+    @GetMapping("/changes/")
+    public ResponseEntity<ResponseBodyEmitter> streamChanges(@RequestHeader("Authorization") String authToken,
+            @RequestParam(required = false) Long after, @RequestParam(required = false) Long epoch)
+            throws IOException {
+        ResponseEntity<String> rejected = rejectToken(authToken);
+        if (rejected != null) {
+            return emit(rejected);
+        }
+        try {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(NDJSON))
+                    .body(changeFeedService.subscribe(after, epoch));
+        } catch (IllegalStateException e) {
+            return emit(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage()));
+        }
+    }
+
+    /**
+     * Sends an error message through an emitter. Spring streams an emitter
+     * only from a method declared to return one, so the change feed answers
+     * its errors this way too.
+     *
+     * @param error the error response
+     * @return the same response, with its message sent by a completed emitter
+     * @throws IOException never, as the message is sent once the response is
+     *                     ready
+     */
+    private static ResponseEntity<ResponseBodyEmitter> emit(ResponseEntity<String> error) throws IOException {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        emitter.send(error.getBody(), MediaType.TEXT_PLAIN);
+        emitter.complete();
+        return ResponseEntity.status(error.getStatusCode()).contentType(MediaType.TEXT_PLAIN).body(emitter);
+    }
+
+    /**
+     * Retrieves user counts: the total and the users with each status set.
+     * Query parameters such as "active=true&verified=false" add the count of
+     * users matching all of them as "matching".
+     * This endpoint is for testing purposes and should be protected in production.
+     * 
+     * @param filter status names mapped to "true" or "false"
+     * @return a ResponseEntity containing the counts or an error message
+     */
+    @GetMapping("/user/stats/")
+    public ResponseEntity<?> getUserStats(@RequestParam Map<String, String> filter) {
+        Map<String, Boolean> expected = new HashMap<>();
+        for (Map.Entry<String, String> entry : filter.entrySet()) {
+            if (!entry.getValue().equalsIgnoreCase("true") && !entry.getValue().equalsIgnoreCase("false")) {
+                return ResponseEntity.badRequest().body("Status filters must be true or false: " + entry.getKey());
+            }
+            expected.put(entry.getKey(), Boolean.parseBoolean(entry.getValue()));
+        }
+        try {
+            return ResponseEntity.ok().body(userService.getUserStats(expected));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the state of write-behind persistence: the mutations waiting
+     * to be written, the background writes that failed and the last error,
+     * and whether acknowledged mutations are held only in memory.
+     *
+     * @param authToken the JWT token provided in the Authorization header
+     * @return a ResponseEntity containing the status or an error message
+     */
+    @GetMapping("/storage/status/")
+    public ResponseEntity<?> getStorageStatus(@RequestHeader("Authorization") String authToken) {
+        ResponseEntity<String> rejected = rejectToken(authToken);
+        if (rejected != null) {
+            return rejected;
+        }
+        return ResponseEntity.ok().body(userService.getWriteBehindStatus());
+    }
+
+    /**
+     * Retrieves the replication state of this instance: its role, and the
+     * sequence number and followers of a primary or the lag of a follower,
+     * in records and milliseconds.
+     *
+     * @param authToken the JWT token provided in the Authorization header
+     * @return a ResponseEntity containing the replication metrics or an error
+     *         message
+     */
+    @GetMapping("/replication/status/")
+    public ResponseEntity<?> getReplicationStatus(@RequestHeader("Authorization") String authToken) {
+        ResponseEntity<String> rejected = rejectToken(authToken);
+        if (rejected != null) {
+            return rejected;
+        }
+        return ResponseEntity.ok().body(replicationService.getStatus());
     }
 
     /**
@@ -303,4 +565,31 @@ public class LoginController {
             return new UserResponseDTO();
         }
     }
+
+    /**
+     * Checks the JWT token sent to an operational endpoint, like the user
+     * endpoints do.
+     *
+     * @param authToken the value of the Authorization header
+     * @return null if the token is valid, otherwise the error response
+     */
+    private static ResponseEntity<String> rejectToken(String authToken) {
+        try {
+            if (!authToken.startsWith("Bearer ")) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("The token it's no valid");
+            }
+            JWTUtilities.verifyToken(authToken.substring(7));
+            return null;
+        } catch (ExpiredJwtException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Your session has expired");
+        } catch (UnsupportedJwtException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Token format is not supported");
+        } catch (MalformedJwtException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Token it's bad formatted");
+        } catch (SignatureException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token has invalid sign");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Token it's null");
+        }
+    }
 }
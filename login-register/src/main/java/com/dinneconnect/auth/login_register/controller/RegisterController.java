@@ -1,12 +1,15 @@
 package com.dinneconnect.auth.login_register.controller;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -66,20 +69,25 @@ public class RegisterController {
      * @param user a RegisterDTO object containing the user's registration details
      *             such as username, email, and password.
      * @return ResponseEntity containing a JSON response with a success message or
-     *         error details.
+     *         error details: 409 if the username or email is taken, 400 if the
+     *         registration is invalid, 503 if this server accepts no writes and
+     *         500 if the user could not be saved.
      */
     @PostMapping("/post-user/")
     public ResponseEntity<Map<String, String>> registerUser(@RequestBody RegisterDTO user) {
 
         Map<String, String> response = new HashMap<>();
-        if (service.getUserByEmail(user.getEmail()) != null || service.getUserByEmail(user.getEmail()) != null) {
+        if (service.getUserByEmail(user.getEmail()) != null) {
             response.put("error", "user or email already exists");
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         }
 
         if (pattern.matcher(user.getEmail()).matches()) {
             User user_db = new User(user);
-            service.createUser(user_db);
+            Map<String, Boolean> created = service.createUser(user_db);
+            if (!created.get("success")) {
+                return rejected(created, response);
+            }
             response.put("success", "user registered");
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } else {
@@ -88,4 +96,93 @@ public class RegisterController {
         }
     }
 
+    /**
+     * Builds the response to a registration the repository rejected, from the
+     * reason it gave.
+     * 
+     * @param result   the result returned by the repository
+     * @param response the response body to fill
+     * @return ResponseEntity with the status matching the reason
+     */
+    private static ResponseEntity<Map<String, String>> rejected(Map<String, Boolean> result,
+            Map<String, String> response) {
+        if (Boolean.TRUE.equals(result.get("duplicate"))) {
+            response.put("error", "user or email already exists");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+        if (Boolean.TRUE.equals(result.get("invalid"))) {
+            response.put("error", "a field is too long or malformed");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+        if (Boolean.TRUE.equals(result.get("readOnly"))) {
+            response.put("error", "this server does not accept registrations");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        response.put("error", "the user could not be saved");
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+
+    /**
+     * Registers several users at once.
+     * 
+     * Endpoint: POST /api/post-users/
+     * 
+     * Each registration is validated as in registerUser. The valid ones are
+     * checked for taken usernames and emails in one pass and inserted
+     * together with a single persist for the whole batch, so bulk signups do
+     * not wait for one disk write per user.
+     * 
+     * @param users the registration details, at most
+     *              UserService.MAX_BATCH_SIZE of them
+     * @return ResponseEntity with the number of users registered under
+     *         "registered" and, under "results", a "success" or "error" message
+     *         per registration in the order received. The status is 201 if any
+     *         user was registered; otherwise it is the status registerUser
+     *         would give the most serious rejection: 503 if this server accepts
+     *         no writes, 500 if the batch could not be saved, 409 if a username
+     *         or email is taken and 400 if the registrations are invalid.
+     */
+    @PostMapping("/post-users/")
+    public ResponseEntity<Map<String, Object>> registerUsers(@RequestBody List<RegisterDTO> users) {
+
+        Map<String, Object> response = new HashMap<>();
+        if (users.isEmpty() || users.size() > UserService.MAX_BATCH_SIZE) {
+            response.put("error", "a batch must hold between 1 and " + UserService.MAX_BATCH_SIZE + " users");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+
+        List<Map<String, String>> results = new ArrayList<>(users.size());
+        List<User> valid = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (RegisterDTO user : users) {
+            if (user == null || user.getUsername() == null || user.getPassword() == null
+                    || user.getEmail() == null || !pattern.matcher(user.getEmail()).matches()) {
+                results.add(Map.of("error", "something went wrong"));
+            } else {
+                positions.add(results.size());
+                results.add(null);
+                valid.add(new User(user));
+            }
+        }
+
+        List<Map<String, Boolean>> created = valid.isEmpty() ? List.of() : service.createUsers(valid);
+        int registered = 0;
+        HttpStatusCode status = HttpStatus.BAD_REQUEST;
+        for (int i = 0; i < created.size(); i++) {
+            if (created.get(i).get("success")) {
+                registered++;
+                results.set(positions.get(i), Map.of("success", "user registered"));
+            } else {
+                ResponseEntity<Map<String, String>> rejection = rejected(created.get(i), new HashMap<>());
+                results.set(positions.get(i), rejection.getBody());
+                if (rejection.getStatusCode().value() > status.value()) {
+                    status = rejection.getStatusCode();
+                }
+            }
+        }
+        response.put("registered", registered);
+        response.put("results", results);
+        return ResponseEntity.status(registered > 0 ? HttpStatus.CREATED : status).body(response);
+    }
+
 }
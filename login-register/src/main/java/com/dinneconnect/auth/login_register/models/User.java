@@ -269,6 +269,8 @@ public class User {
         map.put("reservation", this.reservation);
         map.put("verified", this.verified);
         map.put("active", this.active);
+        // A new user starts at the first version, see UserRecord#getVersion()
+        map.put("version", 0);
 
         return map;
     }
@@ -3,124 +3,1255 @@ package com.dinneconnect.auth.login_register.repository;
 import com.dinneconnect.auth.login_register.models.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Repository;
+import java.util.stream.Stream;
 
 /**
  * Base repository implementation for managing user data persistence in a JSON
- * file.
+ * file. This is the default {@link UserStore}, the "json" engine.
  * This repository provides CRUD operations for User entities, storing them in a
  * JSON file-based database.
  * The repository handles file creation, data loading, and data persistence
  * operations.
  *
  * Key features:
- * - JSON file-based persistence
+ * - JSON file-based persistence, either as a full snapshot on every write or
+ * as a snapshot plus an append-only mutation log, optionally group-committed
+ * - Optional write-behind: mutations return once applied in memory and a
+ * background writer persists them within a bounded staleness window
+ * - Snapshots as a JSON array, or in the compact {@link BinarySnapshot} format
+ * when the path ends with ".bin"
+ * - Crash-safe snapshots written through a {@link SnapshotFile}: a forced
+ * temporary file renamed over the live one, checked against a checksum
+ * footer on load
+ * - Fixed-layout memory-mapped store updated in place, as an alternative to
+ * the JSON file
  * - Automatic file and directory creation
  * - Error handling for file operations
- * - Thread-safe data operations
- * 
+ * - Primitive open-addressing primary index on the user code
+ * - Case-normalized unique indexes for username and email lookups
+ * - Sorted prefix indexes on username, name and surname for autocomplete
+ * - Keyset pagination in ascending order of user code
+ * - Bitmap indexes on the reservation, verified and active statuses
+ * - Optional off-heap storage of the users and indexes in direct memory
+ * - Users held as compact immutable {@link UserRecord}s rather than maps
+ * - Lock-free reads of the whole table through versioned copy-on-write
+ * snapshots
+ * - Repeated field values deduplicated through a {@link StringPool}
+ * - Thread-safe data operations with lock striping by user code
+ * - Primary/follower replication: a primary records every mutation in a
+ * {@link ReplicationLog} shipped to followers, which reject writes and apply
+ * the shipped records to their own in-memory copy; the same log feeds the
+ * change stream read by other services
+ *
+ * Concurrency model: a read-write lock guards the structure of the
+ * repository. Readers, and updates that leave username and email untouched,
+ * share it; inserts, deletes, updates of a unique field and log compaction
+ * take it exclusively, because they move slots or change the unique indexes.
+ * Shared updates additionally take one of a fixed set of stripe locks chosen
+ * by the user code, so two updates of the same user are serialized while
+ * updates of unrelated users run in parallel. Users are immutable
+ * {@link UserRecord}s swapped into their slot, so a reader sees either the
+ * old or the new version of a user, never a mix of both. With off-heap
+ * storage a slot is rewritten byte by byte, so every update is exclusive.
+ *
+ * Several of these repositories are combined into one sharded store by
+ * {@link ShardedRepository}. The engine is created from the
+ * {@code app.repository.*} properties by {@link UserStoreConfiguration}.
+ *
  * @version 1.0
  * @since 2025-01-28
  */
-@Repository
-public class BaseRepository {
+public final class BaseRepository implements UserStore {
+
+        /**
+         * Path to the JSON file where data is stored
+         */
+        private final Path relativePath;
+
+        /**
+         * Whether snapshots use the {@link BinarySnapshot} format instead of JSON,
+         * chosen by a ".bin" extension on the path
+         */
+        private final boolean binarySnapshot;
+
+        /**
+         * In-memory list of users; a {@link VersionedUserList} with heap storage
+         */
+        private List<UserRecord> data;
+
+        /**
+         * ObjectMapper instance for JSON serialization/deserialization
+         */
+        private final ObjectMapper objectMapper;
+
+        /**
+         * Expected version that matches any version of a user
+         */
+        private static final int ANY_VERSION = -1;
+
+        /**
+         * Result of an update rejected because the user is at another version
+         */
+        private static final Map<String, Boolean> CONFLICT = Map.of("success", false, "conflict", true);
+
+        /**
+         * Result of a mutation that was applied in memory but could not be made
+         * durable
+         */
+        private static final Map<String, Boolean> NOT_DURABLE = Map.of("success", false, "durable", false);
+
+        /**
+         * Result of a user added by {@link #postRecords(List)}
+         */
+        private static final Map<String, Boolean> ADDED = Map.of("success", true);
+
+        /**
+         * Result of a user rejected because its code, username or email is taken
+         */
+        private static final Map<String, Boolean> DUPLICATE = Map.of("success", false, "duplicate", true);
+
+        /**
+         * Result of a user rejected because it cannot be stored as given
+         */
+        private static final Map<String, Boolean> INVALID = Map.of("success", false, "invalid", true);
+
+        /**
+         * Result of a mutation rejected by a replication follower
+         */
+        private static final Map<String, Boolean> READ_ONLY = Map.of("success", false, "readOnly", true);
+
+        /**
+         * Fields that are kept in a unique, case-normalized hash index
+         */
+        private static final List<String> UNIQUE_FIELDS = List.of("username", "email");
+
+        /**
+         * Unique indexes by field name, mapping the lower-cased field value to the
+         * slot of its user. Maintained by every mutation so lookups on these
+         * fields take constant time instead of scanning {@link #data}.
+         */
+        private final Map<String, UniqueIndex> uniqueIndexes;
+
+        /**
+         * Fields that are kept in a sorted prefix index for autocomplete
+         */
+        private static final List<String> PREFIX_FIELDS = List.of("username", "name", "surname");
+
+        /**
+         * Number of users decoded at a time by {@link #scanRecords()} with
+         * off-heap storage
+         */
+        private static final int SCAN_PAGE_SIZE = 1000;
+
+        /**
+         * Distinct values kept in the string pool once the repository is open,
+         * for the users registered afterwards; about 1 MB of names and keys
+         */
+        private static final int INSERT_POOL_CAPACITY = 10_000;
+
+        /**
+         * Prefix indexes by field name, mapping the case-folded field value to
+         * user codes. Thread-safe, and maintained by every mutation. Empty with
+         * off-heap storage, whose point is to keep no per-user objects on the
+         * heap.
+         */
+        private final Map<String, PrefixIndex> prefixIndexes;
+
+        /**
+         * Bitmaps of the reservation, verified and active statuses by slot,
+         * maintained by every mutation
+         */
+        private final FlagIndex flagIndex;
+
+        /**
+         * Whether {@link #data} and the indexes live in direct memory outside the
+         * Java heap
+         */
+        private boolean offHeap;
+
+        /**
+         * Pool shared by the repeated values of the users loaded from disk and
+         * of the users added later, bounded once the repository is open
+         */
+        private final StringPool stringPool;
+
+        /**
+         * Primary index mapping each user code to its position in {@link #data}
+         */
+        private final LongIndex codeIndex;
+
+        /**
+         * Codes of the stored users in ascending order, for keyset pagination.
+         * Thread-safe, and maintained together with {@link #codeIndex}. Null
+         * with off-heap storage, where pages are found by scanning the codes in
+         * direct memory instead.
+         */
+        private final ConcurrentSkipListSet<Long> orderedCodes;
+
+        /**
+         * Persistence mode: "snapshot" rewrites the whole file on every mutation,
+         * "log" appends the mutation to {@link #mutationLog} instead, "mapped"
+         * writes the affected slot of {@link #mappedFile} in place
+         */
+        private final String persistence;
+
+        /**
+         * Number of log records after which the log is folded into a new snapshot
+         */
+        private final long compactAfter;
+
+        /**
+         * Write-ahead log used in "log" persistence mode, null otherwise
+         */
+        private MutationLog mutationLog;
+
+        /**
+         * Memory-mapped store used in "mapped" persistence mode, null otherwise.
+         * Its slots mirror the positions of {@link #data}.
+         */
+        private MappedUserFile mappedFile;
+
+        /**
+         * Whether a write to {@link #mappedFile} failed, leaving it out of step
+         * with {@link #data} until it is rewritten whole
+         */
+        private volatile boolean mappedStale;
+
+        /**
+         * Batch window in milliseconds for group commit, or a negative value to
+         * append and fsync every record on its own
+         */
+        private final long groupCommitWindow;
+
+        /**
+         * Maximum number of records flushed together by group commit
+         */
+        private final int groupCommitMaxBatch;
+
+        /**
+         * Staleness window in milliseconds for write-behind persistence, or a
+         * negative value to persist every mutation before it returns
+         */
+        private final long writeBehindStaleness;
+
+        /**
+         * Number of queued mutations above which write-behind holds writers back
+         */
+        private final int writeBehindCapacity;
+
+        /**
+         * Write-behind writer persisting mutations in the background, null when
+         * disabled
+         */
+        private WriteBehindWriter writeBehind;
+
+        /**
+         * Whether a write-behind batch could not be persisted and no full
+         * snapshot has been written since, so some applied mutations exist only
+         * in memory
+         */
+        private volatile boolean writeBehindFailed;
+
+        /**
+         * Group-commit writer in front of {@link #mutationLog}, null when disabled
+         */
+        private GroupCommitWriter groupCommit;
+
+        /**
+         * Records logged since the last snapshot, including queued ones
+         */
+        private final AtomicLong loggedRecords;
+
+        /**
+         * Guards the structure of {@link #data} and the indexes: shared by readers
+         * and by updates confined to one user, exclusive for everything else
+         */
+        private final ReentrantReadWriteLock lock;
+
+        /**
+         * Locks serializing the shared updates of users whose code maps to the
+         * same stripe; empty when striping is disabled
+         */
+        private final ReentrantLock[] stripes;
+
+        /**
+         * Serializes snapshot writes, which may be started by concurrent shared
+         * updates
+         */
+        private final Object saveLock;
+
+        /**
+         * Log of the applied mutations shipped to followers, null unless this
+         * repository is a replication primary
+         */
+        private volatile ReplicationLog replicationLog;
+
+        /**
+         * Whether this repository is a replication follower, which rejects
+         * mutations other than the replicated ones
+         */
+        private volatile boolean readOnly;
+
+        /**
+         * Constructs a new BaseRepository with the specified file path, persisting
+         * a full snapshot on every mutation.
+         *
+         * @param path The file path where the JSON data will be stored
+         */
+        public BaseRepository(String path) {
+                this(RepositoryOptions.of(path));
+        }
+
+        /**
+         * Constructs a new BaseRepository with the specified settings.
+         * Creates necessary directories and initializes the JSON file if it doesn't
+         * exist. In "log" mode the mutation log next to the file is replayed over
+         * the loaded snapshot. In "mapped" mode the users are decoded from the
+         * mapped store next to the file, which is created from the JSON file the
+         * first time. With "offheap" storage the loaded users are moved into
+         * direct memory before the indexes are built.
+         *
+         * @param options The settings of the repository, with a single shard;
+         *                several shards are opened by a {@link ShardedRepository}
+         * @throws IllegalStateException if the file was split into shards
+         */
+        public BaseRepository(RepositoryOptions options) {
+                if (options.shards() != 1) {
+                        throw new IllegalArgumentException("Open " + options.shards()
+                                        + " shards with a ShardedRepository");
+                }
+                this.lock = new ReentrantReadWriteLock();
+                int lockStripes = options.lockStripes();
+                this.stripes = new ReentrantLock[lockStripes == 0 ? 0 : Integer.highestOneBit(lockStripes * 2 - 1)];
+                for (int i = 0; i < stripes.length; i++) {
+                        stripes[i] = new ReentrantLock();
+                }
+                this.saveLock = new Object();
+                this.loggedRecords = new AtomicLong();
+                this.offHeap = options.storage().equals("offheap");
+                this.persistence = options.persistence();
+                this.compactAfter = options.compactAfter();
+                this.groupCommitWindow = options.groupWindow();
+                this.groupCommitMaxBatch = options.groupBatch();
+                this.writeBehindStaleness = options.staleness();
+                this.writeBehindCapacity = options.queueCapacity();
+                this.relativePath = Paths.get(options.path());
+                this.binarySnapshot = options.path().endsWith(".bin");
+                this.data = new ArrayList<>();
+                this.objectMapper = new ObjectMapper();
+                this.uniqueIndexes = new HashMap<>();
+                for (String field : UNIQUE_FIELDS) {
+                        uniqueIndexes.put(field, new UniqueIndex(field, offHeap));
+                }
+                this.prefixIndexes = new HashMap<>();
+                if (!offHeap) {
+                        for (String field : PREFIX_FIELDS) {
+                                prefixIndexes.put(field, new PrefixIndex());
+                        }
+                }
+                this.codeIndex = new LongIndex(0, offHeap);
+                this.orderedCodes = offHeap ? null : new ConcurrentSkipListSet<>();
+                this.flagIndex = new FlagIndex();
+                this.stringPool = new StringPool();
+                if (Files.exists(ShardedRepository.markerPath(relativePath))) {
+                        throw new IllegalStateException(relativePath + " was split into shards; configure "
+                                        + ShardedRepository.readShardCount(relativePath) + " shards to open it");
+                }
+                createDirectory();
+                if (persistence.equals("mapped")) {
+                        openMappedFile();
+                } else {
+                        loadData();
+                }
+                if (offHeap) {
+                        moveOffHeap();
+                }
+                rebuildIndexes();
+                if (!offHeap) {
+                        data = new VersionedUserList(data);
+                }
+                if (persistence.equals("log")) {
+                        openMutationLog();
+                }
+                if (writeBehindStaleness >= 0) {
+                        writeBehind = new WriteBehindWriter(this::flushBehind, writeBehindStaleness, writeBehindCapacity);
+                }
+                System.out.println("String pool: " + stringPool.report());
+                stringPool.bound(INSERT_POOL_CAPACITY);
+        }
+
+        /**
+         * Checks that every user of this shard is owned by it, so a shard file
+         * split with another hash or copied to another position is not served.
+         *
+         * @param shard      The number of this shard
+         * @param shardCount Number of shards
+         * @throws IllegalStateException if a user belongs to another shard
+         */
+        void verifyShard(int shard, int shardCount) {
+                for (int slot = 0; slot < data.size(); slot++) {
+                        long code = data instanceof OffHeapUserList offHeapData ? offHeapData.getCode(slot)
+                                        : data.get(slot).getCode();
+                        int owner = ShardedRepository.shardIndex(code, shardCount);
+                        if (owner != shard) {
+                                throw new IllegalStateException("User " + code + " in " + relativePath
+                                                + " belongs to shard " + owner);
+                        }
+                }
+        }
+
+        /**
+         * Opens the memory-mapped store and decodes its slots into memory. When the
+         * store does not exist yet it is created from the JSON file. Falls back to
+         * the JSON file and snapshot persistence if the store cannot be used.
+         */
+        private void openMappedFile() {
+                Path mappedPath = relativePath.resolveSibling(relativePath.getFileName() + ".map");
+                boolean exists = Files.exists(mappedPath);
+                try {
+                        if (!exists) {
+                                loadData();
+                                for (UserRecord entity : data) {
+                                        if (!MappedUserFile.fits(entity)) {
+                                                throw new IOException("User " + entity.getCode()
+                                                                + " does not fit in a mapped slot");
+                                        }
+                                }
+                        }
+                        mappedFile = new MappedUserFile(mappedPath);
+                        if (exists) {
+                                data = new ArrayList<>(mappedFile.count());
+                                for (int slot = 0; slot < mappedFile.count(); slot++) {
+                                        data.add(mappedFile.read(slot));
+                                }
+                                System.out.println("Mapped " + data.size() + " users");
+                        } else {
+                                mappedFile.writeAll(data);
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error opening mapped user store: " + e.getMessage());
+                        if (mappedFile != null) {
+                                try {
+                                        mappedFile.close();
+                                } catch (IOException ignored) {
+                                }
+                                mappedFile = null;
+                        }
+                        if (exists) {
+                                loadData();
+                        }
+                }
+        }
+
+        /**
+         * Moves the loaded users into direct memory. Falls back to heap storage
+         * if a user does not fit in an off-heap slot.
+         */
+        private void moveOffHeap() {
+                OffHeapUserList table = new OffHeapUserList();
+                try {
+                        table.addAll(data);
+                        data = table;
+                        System.out.println("Moved " + data.size() + " users off-heap");
+                } catch (IllegalArgumentException e) {
+                        System.err.println("Error moving users off-heap, keeping them on the heap: "
+                                        + e.getMessage());
+                        offHeap = false;
+                }
+        }
+
+        /**
+         * Checks whether an entity can be stored by the active persistence mode.
+         *
+         * @param entity The user as it would be stored
+         * @return false only in "mapped" mode or with off-heap storage, when a
+         *         field exceeds its slot size
+         */
+        private boolean storable(UserRecord entity) {
+                return (mappedFile == null && !(data instanceof OffHeapUserList)) || UserSlots.fits(entity);
+        }
+
+        /**
+         * Writes the users inserted or updated by the given records through to
+         * the mapped store and forces their slots; deleted slots were already
+         * swapped by {@link #removeAt(int)}. After a failed write the store may
+         * be missing slots, so it is marked stale and the next mutation holding
+         * the exclusive lock rewrites it whole; until then every mutation
+         * fails.
+         *
+         * @param records The mutation records, in order
+         * @return A completed future, or a failed one if the store could not be
+         *         written
+         */
+        private CompletableFuture<Void> writeThrough(List<Map<String, Object>> records) {
+                try {
+                        if (mappedStale) {
+                                if (!lock.isWriteLockedByCurrentThread()) {
+                                        throw new IOException("Mapped user store is stale after a failed write");
+                                }
+                                mappedFile.writeAll(data);
+                                mappedStale = false;
+                                return CompletableFuture.completedFuture(null);
+                        }
+                        for (Map<String, Object> record : records) {
+                                Object code = switch ((String) record.get("op")) {
+                                        case "insert" -> ((Map<?, ?>) record.get("entity")).get("code");
+                                        case "update" -> record.get("code");
+                                        default -> null;
+                                };
+                                int slot = code == null ? LongIndex.ABSENT : codeIndex.get(((Number) code).longValue());
+                                if (slot != LongIndex.ABSENT) {
+                                        mappedFile.write(slot, data.get(slot));
+                                }
+                        }
+                        return CompletableFuture.completedFuture(null);
+                } catch (IOException e) {
+                        mappedStale = true;
+                        System.err.println("Error writing mapped user store: " + e.getMessage());
+                        return CompletableFuture.failedFuture(e);
+                }
+        }
+
+        /**
+         * Opens the mutation log and replays it over the loaded snapshot.
+         * Falls back to snapshot persistence if the log cannot be opened.
+         */
+        private void openMutationLog() {
+                try {
+                        mutationLog = new MutationLog(
+                                        relativePath.resolveSibling(relativePath.getFileName() + ".log"),
+                                        objectMapper);
+                        long replayed = mutationLog.replay(this::applyRecord);
+                        loggedRecords.set(replayed);
+                        System.out.println("Replayed " + replayed + " logged mutations");
+                        // Write-behind already batches the log writes
+                        if (groupCommitWindow >= 0 && writeBehindStaleness < 0) {
+                                groupCommit = new GroupCommitWriter(mutationLog, groupCommitWindow,
+                                                groupCommitMaxBatch);
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error opening mutation log: " + e.getMessage());
+                        mutationLog = null;
+                }
+        }
+
+        /**
+         * Applies one mutation log record to the in-memory data.
+         *
+         * @param record The record, as written by {@link #persist(Map)}
+         */
+        @SuppressWarnings("unchecked")
+        private void applyRecord(Map<String, Object> record) {
+                switch (String.valueOf(record.get("op"))) {
+                        case "insert" -> applyInsert(UserRecord.fromMap((Map<String, Object>) record.get("entity")));
+                        case "update" -> applyUpdate(((Number) record.get("code")).longValue(),
+                                        (Map<String, Object>) record.get("fields"), (Number) record.get("version"));
+                        case "delete" -> {
+                                int slot = codeIndex.get(((Number) record.get("code")).longValue());
+                                if (slot != LongIndex.ABSENT) {
+                                        removeAt(slot);
+                                }
+                        }
+                        default -> System.err.println("Skipping unknown mutation record: " + record);
+                }
+        }
+
+        /**
+         * Creates the necessary directory structure and JSON file if they don't exist.
+         * Initializes the file with an empty JSON array if newly created. A missing
+         * binary snapshot is converted from the ".json" file next to it, or created
+         * empty.
+         *
+         * @throws IOException if there's an error creating directories or file
+         */
+        private void createDirectory() {
+                try {
+                        Files.createDirectories(relativePath.getParent());
+                        if (binarySnapshot && !Files.exists(relativePath)) {
+                                Path json = relativePath.resolveSibling(
+                                                relativePath.getFileName().toString().replaceFirst("\\.bin$", ".json"));
+                                if (Files.exists(json)) {
+                                        BinarySnapshot.fromJson(json, relativePath);
+                                        System.out.println("Converted " + json + " to a binary snapshot");
+                                } else {
+                                        BinarySnapshot.write(relativePath, List.of());
+                                }
+                        } else if (!Files.exists(relativePath)) {
+                                Files.createFile(relativePath);
+                                Files.write(relativePath, "[]".getBytes());
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error creating directory or file: " + e.getMessage());
+                }
+        }
+
+        /**
+         * Loads data from the JSON file into memory.
+         * The file is first checked against its {@link SnapshotFile} checksum
+         * footer, then streamed through a {@link JsonUserLoader}, which converts
+         * users on all processors and reports progress as it goes. An empty file
+         * holds no users. A damaged or unparsable file is left untouched and
+         * stops the repository from starting, instead of being replaced by an
+         * empty one and losing every user.
+         *
+         * @throws IllegalStateException if the snapshot is damaged
+         */
+        private void loadData() {
+                try {
+                        if (binarySnapshot) {
+                                data = BinarySnapshot.read(relativePath);
+                        } else if (!Files.exists(relativePath)) {
+                                data = new ArrayList<>();
+                        } else if (Files.size(relativePath) == 0) {
+                                data = new ArrayList<>();
+                                Files.write(relativePath, "[]".getBytes());
+                        } else {
+                                SnapshotFile.verify(relativePath);
+                                data = new JsonUserLoader(objectMapper, Runtime.getRuntime().availableProcessors())
+                                                .load(relativePath, BaseRepository::reportLoadProgress);
+                        }
+                        System.out.println("Data loaded successfully: " + data.size() + " users");
+                } catch (IOException | IllegalArgumentException e) {
+                        System.err.println("Error loading data: " + e.getMessage());
+                        throw new IllegalStateException("Cannot load users from " + relativePath
+                                        + ", the file was left untouched: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Prints the progress of a JSON load.
+         */
+        private static void reportLoadProgress(long users, long bytesRead, long totalBytes) {
+                if (bytesRead < totalBytes) {
+                        System.out.println("Loading users: " + (bytesRead * 100 / totalBytes) + "% (" + users + " users)");
+                }
+        }
+
+        /**
+         * Rebuilds the primary and unique indexes from the loaded data, passing
+         * every heap user through the string pool on the way. When the file holds
+         * duplicated values the first entity wins, which matches the behaviour of
+         * the previous linear scan.
+         */
+        private void rebuildIndexes() {
+                for (UniqueIndex index : uniqueIndexes.values()) {
+                        index.clear();
+                }
+                for (PrefixIndex index : prefixIndexes.values()) {
+                        index.clear();
+                }
+                codeIndex.clear();
+                if (orderedCodes != null) {
+                        orderedCodes.clear();
+                }
+                flagIndex.clear();
+                for (int slot = 0; slot < data.size(); slot++) {
+                        UserRecord entity = data.get(slot);
+                        if (!offHeap) {
+                                entity = entity.intern(stringPool);
+                                data.set(slot, entity);
+                        }
+                        long code = entity.getCode();
+                        if (codeIndex.get(code) == LongIndex.ABSENT) {
+                                codeIndex.put(code, slot);
+                                if (orderedCodes != null) {
+                                        orderedCodes.add(code);
+                                }
+                        }
+                        for (String field : UNIQUE_FIELDS) {
+                                String key = entity.key(field);
+                                if (key != null && uniqueIndexes.get(field).get(key, data) == LongIndex.ABSENT) {
+                                        uniqueIndexes.get(field).put(key, slot, data);
+                                }
+                        }
+                        for (Map.Entry<String, PrefixIndex> prefix : prefixIndexes.entrySet()) {
+                                prefix.getValue().add(entity.key(prefix.getKey()), code);
+                        }
+                        flagIndex.set(slot, entity.getFlags());
+                }
+        }
+
+        /**
+         * Removes the entity at the given slot by moving the last entity into its
+         * place, so no other slot has to be shifted or reindexed.
+         *
+         * @param slot The position in {@link #data} to remove
+         */
+        private void removeAt(int slot) {
+                UserRecord entity = data.get(slot);
+                int last = data.size() - 1;
+                unindex(entity, slot);
+                long code = entity.getCode();
+                if (codeIndex.get(code) == slot) {
+                        codeIndex.remove(code);
+                        if (orderedCodes != null) {
+                                orderedCodes.remove(code);
+                        }
+                }
+                if (mappedFile != null && !mappedStale) {
+                        mappedFile.removeSwap(slot);
+                }
+                flagIndex.removeSwap(slot, last);
+                if (slot != last) {
+                        UserRecord moved = data.get(last);
+                        data.set(slot, moved);
+                        long movedCode = moved.getCode();
+                        if (codeIndex.get(movedCode) == last) {
+                                codeIndex.put(movedCode, slot);
+                        }
+                        for (String field : UNIQUE_FIELDS) {
+                                String key = moved.key(field);
+                                if (key != null) {
+                                        uniqueIndexes.get(field).move(key, last, slot);
+                                }
+                        }
+                }
+                data.remove(last);
+        }
+
+        /**
+         * Checks whether any unique field of the candidate values is already taken by
+         * an entity other than the given owner.
+         *
+         * @param values    The user holding the candidate values
+         * @param ownerSlot The slot of the stored user allowed to hold those
+         *                  values, or {@link LongIndex#ABSENT} for inserts
+         * @return true if a unique value belongs to another user
+         */
+        private boolean violatesUniqueIndex(UserRecord values, int ownerSlot) {
+                for (String field : UNIQUE_FIELDS) {
+                        String key = values.key(field);
+                        if (key != null) {
+                                int holder = uniqueIndexes.get(field).get(key, data);
+                                if (holder != LongIndex.ABSENT && holder != ownerSlot) {
+                                        return true;
+                                }
+                        }
+                }
+                return false;
+        }
+
+        /**
+         * Adds the entity to every unique and prefix index.
+         *
+         * @param entity The entity to index
+         * @param slot   Its position in {@link #data}
+         */
+        private void index(UserRecord entity, int slot) {
+                for (String field : UNIQUE_FIELDS) {
+                        String key = entity.key(field);
+                        if (key != null) {
+                                uniqueIndexes.get(field).put(key, slot, data);
+                        }
+                }
+                for (Map.Entry<String, PrefixIndex> prefix : prefixIndexes.entrySet()) {
+                        prefix.getValue().add(entity.key(prefix.getKey()), entity.getCode());
+                }
+        }
+
+        /**
+         * Removes the entity from every unique and prefix index it is registered in. The
+         * entity must still be stored at the slot.
+         *
+         * @param entity The entity to unindex
+         * @param slot   Its position in {@link #data}
+         */
+        private void unindex(UserRecord entity, int slot) {
+                for (String field : UNIQUE_FIELDS) {
+                        String key = entity.key(field);
+                        if (key != null) {
+                                uniqueIndexes.get(field).remove(key, slot);
+                        }
+                }
+                for (Map.Entry<String, PrefixIndex> prefix : prefixIndexes.entrySet()) {
+                        prefix.getValue().remove(entity.key(prefix.getKey()), entity.getCode());
+                }
+        }
+
+        /**
+         * Stores a new entity, replacing the one with the same code if present so
+         * that replaying an insert twice is harmless.
+         *
+         * @param entity The entity to store
+         */
+        private void applyInsert(UserRecord entity) {
+                // New users share the names pooled so far, within the bound set after the load
+                if (!offHeap) {
+                        entity = entity.intern(stringPool);
+                }
+                long code = entity.getCode();
+                int slot = codeIndex.get(code);
+                if (slot == LongIndex.ABSENT) {
+                        slot = data.size();
+                        codeIndex.put(code, slot);
+                        if (orderedCodes != null) {
+                                orderedCodes.add(code);
+                        }
+                        data.add(entity);
+                } else {
+                        unindex(data.get(slot), slot);
+                        data.set(slot, entity);
+                }
+                index(entity, slot);
+                flagIndex.set(slot, entity.getFlags());
+        }
+
+        /**
+         * Replaces the user with the given code by a copy holding the given
+         * fields.
+         *
+         * @param code    The code of the user
+         * @param updates The fields to overwrite
+         * @param version The version the update produced, so replaying it twice
+         *                after a crash does not count it twice; null for
+         *                records written before users had versions
+         * @return false if no user has that code
+         */
+        private boolean applyUpdate(long code, Map<String, Object> updates, Number version) {
+                int slot = codeIndex.get(code);
+                if (slot == LongIndex.ABSENT) {
+                        return false;
+                }
+                UserRecord updated = data.get(slot).with(updates);
+                replaceAt(slot, version == null ? updated : updated.withVersion(version.intValue()));
+                return true;
+        }
+
+        /**
+         * Stores an updated copy of the user at the given slot. Only the unique
+         * keys that changed are reindexed, so an update that keeps username and
+         * email does not touch the unique indexes and can run under a stripe.
+         *
+         * @param slot    The position in {@link #data}
+         * @param updated The new version of the user, with the same code
+         */
+        private void replaceAt(int slot, UserRecord updated) {
+                UserRecord previous = data.set(slot, updated);
+                for (String field : UNIQUE_FIELDS) {
+                        String oldKey = previous.key(field);
+                        String newKey = updated.key(field);
+                        if (!Objects.equals(oldKey, newKey)) {
+                                if (oldKey != null) {
+                                        uniqueIndexes.get(field).remove(oldKey, slot);
+                                }
+                                if (newKey != null) {
+                                        uniqueIndexes.get(field).put(newKey, slot, data);
+                                }
+                        }
+                }
+                for (Map.Entry<String, PrefixIndex> prefix : prefixIndexes.entrySet()) {
+                        String oldKey = previous.key(prefix.getKey());
+                        String newKey = updated.key(prefix.getKey());
+                        if (!Objects.equals(oldKey, newKey)) {
+                                prefix.getValue().remove(oldKey, updated.getCode());
+                                prefix.getValue().add(newKey, updated.getCode());
+                        }
+                }
+                if (previous.getFlags() != updated.getFlags()) {
+                        flagIndex.set(slot, updated.getFlags());
+                }
+        }
+
+        /**
+         * Makes mutations durable according to the persistence mode: a full
+         * snapshot in "snapshot" mode, or one appended record per mutation in "log"
+         * mode. In "mapped" mode the changed slots are written in place by
+         * {@link #writeThrough(List)}. With group
+         * commit the records are only queued; the caller must release the
+         * repository lock and then wait on the returned future with
+         * {@link #awaitDurable(CompletableFuture)}, so concurrent writers can
+         * share a batch, and then call {@link #maybeCompact()}. On a
+         * replication primary the records are first appended to the
+         * replication log.
+         *
+         * @param records The mutation records, in order
+         * @return A future completed once the records are durable, or completed
+         *         exceptionally if they could not be written
+         */
+        private CompletableFuture<Void> persist(List<Map<String, Object>> records) {
+                ReplicationLog replication = replicationLog;
+                if (replication != null && !records.isEmpty()) {
+                        replication.append(records);
+                }
+                if (mappedFile != null) {
+                        return writeThrough(records);
+                }
+                if (writeBehind != null) {
+                        try {
+                                writeBehind.submit(records);
+                                if (mutationLog != null) {
+                                        loggedRecords.addAndGet(records.size());
+                                }
+                                return CompletableFuture.completedFuture(null);
+                        } catch (IOException e) {
+                                // Closed for shutdown: persist synchronously instead
+                        }
+                }
+                if (mutationLog == null) {
+                        return snapshotFuture();
+                }
+                try {
+                        if (groupCommit == null && records.size() > 1) {
+                                // A batch of mutations shares one write and fsync
+                                List<byte[]> lines = new ArrayList<>(records.size());
+                                for (Map<String, Object> record : records) {
+                                        lines.add(mutationLog.encode(record));
+                                }
+                                mutationLog.appendBatch(lines);
+                                loggedRecords.addAndGet(records.size());
+                                return CompletableFuture.completedFuture(null);
+                        }
+                        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+                        for (Map<String, Object> record : records) {
+                                if (groupCommit != null) {
+                                        durable = groupCommit.submit(record);
+                                } else {
+                                        mutationLog.append(record);
+                                }
+                                loggedRecords.incrementAndGet();
+                        }
+                        return durable;
+                } catch (IOException e) {
+                        System.err.println("Error appending to mutation log: " + e.getMessage());
+                        return snapshotFuture();
+                }
+        }
+
+        /**
+         * Writes a snapshot for {@link #persist(List)}, reporting a failure
+         * through the returned future.
+         *
+         * @return A completed future, or a failed one if the snapshot could not
+         *         be written
+         */
+        private CompletableFuture<Void> snapshotFuture() {
+                try {
+                        writeSnapshot();
+                        return CompletableFuture.completedFuture(null);
+                } catch (IOException e) {
+                        System.err.println("Error saving data: " + e.getMessage());
+                        return CompletableFuture.failedFuture(e);
+                }
+        }
+
+        /**
+         * Waits, outside the repository lock, until a mutation is durable, or
+         * with write-behind until the queue of pending mutations is back within
+         * its capacity. A mutation that could not be written stays applied in
+         * memory, and is persisted by the next snapshot or compaction that
+         * succeeds, but its caller must not report it as stored.
+         *
+         * @param durable The future returned by {@link #persist(List)}
+         * @return false if the mutation could not be written
+         */
+        private boolean awaitDurable(CompletableFuture<Void> durable) {
+                WriteBehindWriter behind = writeBehind;
+                if (behind != null) {
+                        behind.awaitCapacity();
+                }
+                try {
+                        GroupCommitWriter.await(durable);
+                        return true;
+                } catch (IOException e) {
+                        System.err.println("Error committing mutation log batch: " + e.getMessage());
+                        return false;
+                }
+        }
+
+        /**
+         * Compacts the mutation log once enough records were logged. Called
+         * after a mutation released its locks, since compaction needs the
+         * exclusive lock.
+         */
+        private void maybeCompact() {
+                if (mutationLog == null || loggedRecords.get() < compactAfter) {
+                        return;
+                }
+                lock.writeLock().lock();
+                try {
+                        if (mutationLog != null && loggedRecords.get() >= compactAfter) {
+                                compact();
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error compacting mutation log: " + e.getMessage());
+                } finally {
+                        lock.writeLock().unlock();
+                }
+        }
+
+        /**
+         * Writes a fresh snapshot and empties the mutation log, since every
+         * logged record is now part of the snapshot. A crash between the two steps
+         * is safe because replaying records over the new snapshot is idempotent.
+         * If the snapshot cannot be written the log is kept. The caller must hold
+         * the exclusive lock.
+         *
+         * @throws IOException if the snapshot cannot be written or the log cannot
+         *                     be truncated
+         */
+        private void compact() throws IOException {
+                if (groupCommit != null) {
+                        groupCommit.drain();
+                }
+                if (writeBehind != null) {
+                        writeBehind.drain();
+                }
+                writeSnapshot();
+                // The writer is drained and new mutations wait for the lock, so
+                // the snapshot holds every mutation of a failed batch
+                writeBehindFailed = false;
+                mutationLog.truncate();
+                loggedRecords.set(0);
+        }
+
+        /**
+         * Persists one batch of write-behind mutations: appends their records to
+         * the mutation log in "log" mode, or writes a single snapshot holding
+         * all of them otherwise. A failed log append schedules a compaction, so
+         * the next mutation writes a full snapshot. Until a snapshot succeeds
+         * the failure is reported by {@link #getWriteBehindStatus()}, and
+         * {@link #close()} writes one itself.
+         *
+         * @param records The records of the batch, in the order they were applied
+         * @throws IOException if the batch could not be persisted
+         */
+        private void flushBehind(List<Map<String, Object>> records) throws IOException {
+                MutationLog log = mutationLog;
+                try {
+                        if (log == null) {
+                                writeSnapshot();
+                                writeBehindFailed = false;
+                                return;
+                        }
+                        List<byte[]> lines = new ArrayList<>(records.size());
+                        for (Map<String, Object> record : records) {
+                                lines.add(log.encode(record));
+                        }
+                        log.appendBatch(lines);
+                } catch (IOException e) {
+                        writeBehindFailed = true;
+                        if (log != null) {
+                                loggedRecords.accumulateAndGet(compactAfter, Math::max);
+                        }
+                        throw e;
+                }
+        }
 
         /**
-         * Path to the JSON file where data is stored
+         * Reports the state of write-behind persistence, so failed background
+         * writes can be monitored.
+         *
+         * @return Whether write-behind is enabled, the mutations waiting to be
+         *         persisted, the batches that could not be persisted, the error of
+         *         the last one, and whether mutations of a failed batch are still
+         *         held only in memory
          */
-        private final Path relativePath;
+        @Override
+        public Map<String, Object> getWriteBehindStatus() {
+                Map<String, Object> status = new LinkedHashMap<>();
+                WriteBehindWriter behind = writeBehind;
+                status.put("enabled", behind != null);
+                status.put("pendingWrites", behind == null ? 0 : behind.pending());
+                status.put("failedFlushes", behind == null ? 0L : behind.failedFlushes());
+                status.put("lastError", behind == null ? null : behind.lastFailure());
+                status.put("unpersisted", writeBehindFailed);
+                return status;
+        }
 
         /**
-         * In-memory list of entities stored as maps
+         * Flushes queued log records and releases the log and mapped files.
+         * Called on shutdown, so with write-behind every pending mutation is
+         * persisted before the application exits. If a write-behind batch
+         * could not be persisted, a full snapshot is written instead.
+         *
+         * @throws UncheckedIOException if mutations of a failed write-behind
+         *                              batch could not be persisted either, and
+         *                              are lost
          */
-        private List<Map<String, Object>> data;
+        @Override
+        public void close() {
+                // The writer may need the read lock to write its last snapshot
+                if (writeBehind != null) {
+                        writeBehind.close();
+                }
+                IOException lost = null;
+                lock.writeLock().lock();
+                try {
+                        if (writeBehindFailed) {
+                                try {
+                                        // Replaying the log over the new snapshot is idempotent
+                                        writeSnapshot();
+                                        writeBehindFailed = false;
+                                } catch (IOException e) {
+                                        lost = e;
+                                }
+                        }
+                        if (groupCommit != null) {
+                                groupCommit.close();
+                                groupCommit = null;
+                        }
+                        if (mutationLog != null) {
+                                mutationLog.close();
+                                mutationLog = null;
+                        }
+                        if (mappedFile != null) {
+                                mappedFile.close();
+                                mappedFile = null;
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error closing repository files: " + e.getMessage());
+                } finally {
+                        lock.writeLock().unlock();
+                }
+                if (lost != null) {
+                        System.err.println("Write-behind mutations lost on close: " + lost.getMessage());
+                        throw new UncheckedIOException("Write-behind mutations could not be persisted", lost);
+                }
+        }
 
         /**
-         * ObjectMapper instance for JSON serialization/deserialization
+         * Makes this repository a replication primary: from now on every
+         * mutation is appended to the log before it is persisted.
+         *
+         * @param log The log shipped to followers
          */
-        private final ObjectMapper objectMapper;
+        public void enablePrimaryMode(ReplicationLog log) {
+                lock.writeLock().lock();
+                try {
+                        replicationLog = log;
+                } finally {
+                        lock.writeLock().unlock();
+                }
+        }
 
         /**
-         * Constructs a new BaseRepository with the specified file path.
-         * Creates necessary directories and initializes the JSON file if it doesn't
-         * exist.
+         * Returns the log every mutation is recorded in, creating it on first use.
+         * A replication primary and the change feed share the same log.
          *
-         * @param path The file path where the JSON data will be stored.
-         *             Defaults to
-         *             "Backend/login-register/src/main/java/com/dinneconnect/auth/login_register/persistence/user.json"
+         * @param capacity Number of recent records kept if the log is created
+         * @return The log of this repository
+         * @throws IllegalStateException if the repository is a replication
+         *                               follower
          */
-        public BaseRepository(
-                        @Value("${app.repository.path:Backend/login-register/src/main/java/com/dinneconnect/auth/login_register/persistence/user.json}") String path) {
-                this.relativePath = Paths.get(path);
-                this.data = new ArrayList<>();
-                this.objectMapper = new ObjectMapper();
-                createDirectory();
-                loadData();
+        public ReplicationLog enableChangeLog(int capacity) {
+                if (readOnly) {
+                        throw new IllegalStateException("A replication follower records no mutations");
+                }
+                lock.writeLock().lock();
+                try {
+                        if (replicationLog == null) {
+                                enablePrimaryMode(new ReplicationLog(capacity));
+                        }
+                        return replicationLog;
+                } finally {
+                        lock.writeLock().unlock();
+                }
         }
 
         /**
-         * Creates the necessary directory structure and JSON file if they don't exist.
-         * Initializes the file with an empty JSON array if newly created.
+         * Makes this repository a replication follower, which rejects writes
+         * and only changes through {@link #installReplicatedSnapshot(List)} and
+         * {@link #applyReplicated(Map)}. Replicated changes are held in memory
+         * only; a restarted follower resynchronizes from its primary.
          *
-         * @throws IOException if there's an error creating directories or file
+         * @throws IllegalStateException if the repository is mapped
          */
-        private void createDirectory() {
+        public void enableFollowerMode() {
+                if (mappedFile != null) {
+                        throw new IllegalStateException("Replication followers need an unmapped repository");
+                }
+                readOnly = true;
+        }
+
+        /**
+         * Logs and rejects a mutation on a replication follower.
+         *
+         * @return true if this repository is a follower
+         */
+        private boolean rejectsWrites() {
+                if (readOnly) {
+                        System.err.println("Rejected write on a read-only replication follower");
+                }
+                return readOnly;
+        }
+
+        /**
+         * Captures every user together with the last sequence number of the
+         * replication log, for a follower that cannot resume from the backlog.
+         * Holding the exclusive lock keeps the two consistent.
+         *
+         * @return The users as of the current sequence number
+         * @throws IllegalStateException if this repository is not a primary
+         */
+        public ReplicationLog.Snapshot replicationSnapshot() {
+                lock.writeLock().lock();
                 try {
-                        Files.createDirectories(relativePath.getParent());
-                        if (!Files.exists(relativePath)) {
-                                Files.createFile(relativePath);
-                                Files.write(relativePath, "[]".getBytes());
+                        if (replicationLog == null) {
+                                throw new IllegalStateException("Not a replication primary");
                         }
-                } catch (IOException e) {
-                        System.err.println("Error creating directory or file: " + e.getMessage());
+                        List<UserRecord> users = data instanceof VersionedUserList versioned
+                                        ? versioned.snapshot()
+                                        : new ArrayList<>(data);
+                        return new ReplicationLog.Snapshot(replicationLog.lastSequence(), users);
+                } finally {
+                        lock.writeLock().unlock();
                 }
         }
 
         /**
-         * Loads data from the JSON file into memory.
-         * Handles various edge cases like empty or invalid JSON files.
+         * Replaces every user of a follower by a snapshot of its primary.
          *
-         * @throws IOException if there's an error reading from the file
+         * @param users The users of the primary
          */
-        private void loadData() {
+        public void installReplicatedSnapshot(List<UserRecord> users) {
+                lock.writeLock().lock();
                 try {
-                        if (Files.exists(relativePath)) {
-                                String content = Files.readString(relativePath);
-                                if (content.trim().isEmpty()) {
-                                        data = new ArrayList<>();
-                                        Files.write(relativePath, "[]".getBytes());
-                                } else {
-                                        try {
-                                                data = objectMapper.readValue(relativePath.toFile(),
-                                                                objectMapper.getTypeFactory().constructCollectionType(
-                                                                                List.class,
-                                                                                Map.class));
-                                                if (data == null) {
-                                                        data = new ArrayList<>();
-                                                }
-                                        } catch (IOException e) {
-                                                System.err.println("Error parsing JSON data: " + e.getMessage());
-                                                data = new ArrayList<>();
-                                                Files.write(relativePath, "[]".getBytes());
-                                        }
-                                }
+                        if (offHeap) {
+                                data.clear();
+                                data.addAll(users);
                         } else {
-                                data = new ArrayList<>();
+                                data = new ArrayList<>(users);
                         }
-                        System.out.println("Data loaded successfully: ");
-                        System.out.println(this.data);
-                } catch (IOException e) {
-                        System.err.println("Error loading data: " + e.getMessage());
-                        data = new ArrayList<>();
+                        rebuildIndexes();
+                        if (!offHeap) {
+                                data = new VersionedUserList(data);
+                        }
+                } finally {
+                        lock.writeLock().unlock();
+                }
+        }
+
+        /**
+         * Applies one mutation record shipped by the primary to a follower.
+         *
+         * @param record The record, as appended to the replication log
+         */
+        public void applyReplicated(Map<String, Object> record) {
+                lock.writeLock().lock();
+                try {
+                        applyRecord(record);
+                } finally {
+                        lock.writeLock().unlock();
                 }
         }
 
@@ -132,25 +1263,99 @@ public class BaseRepository {
          */
         public void save() {
                 try {
-                        createDirectory();
-                        objectMapper.writeValue(relativePath.toFile(), data);
+                        writeSnapshot();
                 } catch (IOException e) {
                         System.err.println("Error saving data: " + e.getMessage());
                 }
         }
 
+        /**
+         * Writes a snapshot of the current data. The snapshot replaces the file
+         * atomically through a {@link SnapshotFile}, so a crash while writing
+         * leaves the previous snapshot in place.
+         *
+         * @throws IOException if the snapshot cannot be written
+         */
+        private void writeSnapshot() throws IOException {
+                lock.readLock().lock();
+                try {
+                        synchronized (saveLock) {
+                                createDirectory();
+                                if (binarySnapshot) {
+                                        BinarySnapshot.write(relativePath, data);
+                                } else {
+                                        UserRecord.writeJsonArray(objectMapper, relativePath, data);
+                                }
+                        }
+                } finally {
+                        lock.readLock().unlock();
+                }
+        }
+
+        /**
+         * Picks the stripe lock guarding shared updates of a user.
+         *
+         * @param code The user code
+         * @return The stripe lock
+         */
+        private Lock stripeFor(long code) {
+                long h = code * 0x9E3779B97F4A7C15L;
+                return stripes[(int) (h >>> 32) & (stripes.length - 1)];
+        }
+
+
         /**
          * Adds a new user entity to the repository.
+         * The insert is rejected if its code, username or email is already taken,
+         * or in "mapped" mode or with off-heap storage if a field is longer than
+         * its slot allows.
          *
          * @param entity The user entity to be added
-         * @return Map containing operation success status
+         * @return Map containing operation success status, with the reason of a
+         *         rejection: {@code duplicate=true} if a key is taken,
+         *         {@code invalid=true} if the user cannot be stored,
+         *         {@code readOnly=true} on a replication follower, or
+         *         {@code durable=false} if the user could not be written
          */
+        @Override
         public Map<String, Boolean> postEntity(User entity) {
                 Map<String, Boolean> response = new HashMap<>();
                 try {
+                        if (rejectsWrites()) {
+                                response.put("success", false);
+                                response.put("readOnly", true);
+                                return response;
+                        }
+                        Map<String, Object> dict = entity.toDict();
+                        UserRecord record = UserRecord.fromMap(dict);
+                        CompletableFuture<Void> durable;
+                        lock.writeLock().lock();
+                        try {
+                                if (codeIndex.get(record.getCode()) != LongIndex.ABSENT
+                                                || violatesUniqueIndex(record, LongIndex.ABSENT)) {
+                                        response.put("success", false);
+                                        response.put("duplicate", true);
+                                        return response;
+                                }
+                                if (!storable(record)) {
+                                        response.put("success", false);
+                                        response.put("invalid", true);
+                                        return response;
+                                }
+                                applyInsert(record);
+                                durable = persist(List.of(Map.of("op", "insert", "entity", dict)));
+                        } finally {
+                                lock.writeLock().unlock();
+                        }
+                        if (!awaitDurable(durable)) {
+                                return NOT_DURABLE;
+                        }
+                        maybeCompact();
                         response.put("success", true);
-                        data.add(entity.toDict());
-                        save();
+                        return response;
+                } catch (IllegalArgumentException | ClassCastException e) {
+                        response.put("success", false);
+                        response.put("invalid", true);
                         return response;
                 } catch (Exception e) {
                         response.put("success", false);
@@ -158,6 +1363,68 @@ public class BaseRepository {
                 }
         }
 
+        /**
+         * Adds several new users at once. Each user is checked like in
+         * {@link #postEntity(User)}, against the stored users and the users
+         * added before it in the batch, and the accepted ones are persisted
+         * together: one snapshot, or one log write and fsync, for the whole
+         * batch.
+         *
+         * @param users The users to add
+         * @return The result of each user, in the order of the batch:
+         *         {@code duplicate=true}, {@code invalid=true} or
+         *         {@code readOnly=true} for a rejected user, and
+         *         {@code durable=false} for every accepted user if the batch
+         *         could not be written
+         */
+        @Override
+        public List<Map<String, Boolean>> postRecords(List<UserRecord> users) {
+                if (rejectsWrites()) {
+                        return new ArrayList<>(Collections.nCopies(users.size(), READ_ONLY));
+                }
+                List<Map<String, Boolean>> added = new ArrayList<>(users.size());
+                List<Map<String, Object>> records = new ArrayList<>();
+                CompletableFuture<Void> durable;
+                lock.writeLock().lock();
+                try {
+                        for (UserRecord user : users) {
+                                if (codeIndex.get(user.getCode()) != LongIndex.ABSENT
+                                                || violatesUniqueIndex(user, LongIndex.ABSENT)) {
+                                        added.add(DUPLICATE);
+                                } else if (!storable(user)) {
+                                        added.add(INVALID);
+                                } else {
+                                        applyInsert(user);
+                                        records.add(Map.of("op", "insert", "entity", user.toMap()));
+                                        added.add(ADDED);
+                                }
+                        }
+                        if (records.isEmpty()) {
+                                return added;
+                        }
+                        durable = persist(records);
+                } finally {
+                        lock.writeLock().unlock();
+                }
+                if (!awaitDurable(durable)) {
+                        added.replaceAll(result -> result == ADDED ? NOT_DURABLE : result);
+                        return added;
+                }
+                maybeCompact();
+                return added;
+        }
+
+        /**
+         * Reports how much the string pool deduplicated since the repository was
+         * created.
+         *
+         * @return The number of distinct pooled values, interned values,
+         *         duplicates replaced and estimated bytes saved
+         */
+        public Map<String, Long> getStringPoolReport() {
+                return stringPool.report();
+        }
+
         /**
          * Retrieves all entities that match a specific field value.
          *
@@ -166,20 +1433,288 @@ public class BaseRepository {
          * @return List of entities matching the criteria
          */
         public List<Map<String, Object>> getEntitiesByField(String field, String value) {
-                return data.stream()
-                                .filter(entity -> String.valueOf(entity.getOrDefault(field, ""))
-                                                .toLowerCase()
-                                                .equals(value.toLowerCase()))
+                return getRecordsByField(field, value).stream()
+                                .map(UserRecord::toMap)
                                 .collect(Collectors.toList());
         }
 
+        /**
+         * Retrieves all users that match a specific field value.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return List of users matching the criteria
+         */
+        public List<UserRecord> getRecordsByField(String field, String value) {
+                UniqueIndex index = uniqueIndexes.get(field);
+                String key = UniqueIndex.key(value);
+                if (FlagIndex.FIELDS.contains(field)) {
+                        // Only "true" and "false" can match a status
+                        return key.equals("true") || key.equals("false")
+                                        ? getRecordsByFlags(Map.of(field, key.equals("true")))
+                                        : new ArrayList<>();
+                }
+                if (index == null) {
+                        return getRecords().stream()
+                                        .filter(entity -> matches(entity, field, key))
+                                        .collect(Collectors.toList());
+                }
+                lock.readLock().lock();
+                try {
+                        int slot = index.get(key, data);
+                        return slot == LongIndex.ABSENT ? new ArrayList<>()
+                                        : new ArrayList<>(List.of(data.get(slot)));
+                } finally {
+                        lock.readLock().unlock();
+                }
+        }
+
+        /**
+         * Retrieves the users whose statuses have the given values, for example
+         * active and not verified. The filter is evaluated on the status
+         * bitmaps 64 users at a time; only the matching users are read.
+         *
+         * @param expected Status names ("reservation", "verified", "active")
+         *                 mapped to the value users must have
+         * @return The matching users
+         * @throws IllegalArgumentException if a name is not a status
+         */
+        public List<UserRecord> getRecordsByFlags(Map<String, Boolean> expected) {
+                long mask = FlagIndex.mask(expected);
+                lock.readLock().lock();
+                try {
+                        int[] slots = flagIndex.slots(mask);
+                        List<UserRecord> found = new ArrayList<>(slots.length);
+                        for (int slot : slots) {
+                                found.add(data.get(slot));
+                        }
+                        return found;
+                } finally {
+                        lock.readLock().unlock();
+                }
+        }
+
+        /**
+         * Counts the users whose statuses have the given values without reading
+         * any user.
+         *
+         * @param expected Status names mapped to the value users must have; an
+         *                 empty map counts every user
+         * @return The number of matching users
+         * @throws IllegalArgumentException if a name is not a status
+         */
+        @Override
+        public long countByFlags(Map<String, Boolean> expected) {
+                long mask = FlagIndex.mask(expected);
+                lock.readLock().lock();
+                try {
+                        return flagIndex.count(mask);
+                } finally {
+                        lock.readLock().unlock();
+                }
+        }
+
+        /**
+         * Counts the users in total and with each status set.
+         *
+         * @return "users" and the count of every status, by name
+         */
+        @Override
+        public Map<String, Long> getFlagCounts() {
+                Map<String, Long> counts = new LinkedHashMap<>();
+                counts.put("users", countByFlags(Map.of()));
+                for (String field : FlagIndex.FIELDS) {
+                        counts.put(field, countByFlags(Map.of(field, true)));
+                }
+                return counts;
+        }
+
+        /**
+         * Finds the users whose field starts with a prefix, ignoring case, for
+         * autocomplete. Results come in alphabetical order of the field, and
+         * each query costs a logarithmic seek plus the number of results.
+         *
+         * @param field  One of "username", "name" or "surname"
+         * @param prefix The prefix to match
+         * @param limit  Maximum number of users to return
+         * @return The first matching users
+         * @throws IllegalArgumentException if the field has no prefix index
+         * @throws IllegalStateException    with off-heap storage, which keeps no
+         *                                  prefix index
+         */
+        @Override
+        public List<UserRecord> searchByPrefix(String field, String prefix, int limit) {
+                if (!PREFIX_FIELDS.contains(field)) {
+                        throw new IllegalArgumentException("Field is not searchable by prefix: " + field);
+                }
+                if (offHeap) {
+                        throw new IllegalStateException("Prefix search is not available with off-heap storage");
+                }
+                long[] codes = prefixIndexes.get(field).search(UniqueIndex.key(prefix), limit);
+                List<UserRecord> found = new ArrayList<>(codes.length);
+                lock.readLock().lock();
+                try {
+                        for (long code : codes) {
+                                int slot = codeIndex.get(code);
+                                // The user may have been deleted since the index was read
+                                if (slot != LongIndex.ABSENT) {
+                                        found.add(data.get(slot));
+                                }
+                        }
+                } finally {
+                        lock.readLock().unlock();
+                }
+                return found;
+        }
+
+        /**
+         * Retrieves a page of users in ascending order of code, starting after a
+         * cursor. Each page costs a logarithmic seek plus its own size, however
+         * deep into the table it starts, and stays stable while users are
+         * inserted or deleted between requests. With off-heap storage, which
+         * keeps no ordered index of codes on the heap, each page scans the codes
+         * of every user instead.
+         *
+         * @param after The code of the last user of the previous page, or null
+         *              for the first page
+         * @param limit Maximum number of users to return
+         * @return The users of the page; fewer than the limit on the last page
+         */
+        @Override
+        public List<UserRecord> getRecordsAfter(Long after, int limit) {
+                List<UserRecord> page = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+                if (limit < 1) {
+                        return page;
+                }
+                lock.readLock().lock();
+                try {
+                        if (orderedCodes == null) {
+                                // Found under the same lock, so every code is still stored
+                                for (long code : codesAfter(after == null ? Long.MIN_VALUE : after, limit)) {
+                                        page.add(data.get(codeIndex.get(code)));
+                                }
+                                return page;
+                        }
+                        Set<Long> codes = after == null ? orderedCodes : orderedCodes.tailSet(after, false);
+                        for (long code : codes) {
+                                int slot = codeIndex.get(code);
+                                // The user may have been deleted since the codes were read
+                                if (slot != LongIndex.ABSENT) {
+                                        page.add(data.get(slot));
+                                        if (page.size() == limit) {
+                                                break;
+                                        }
+                                }
+                        }
+                } finally {
+                        lock.readLock().unlock();
+                }
+                return page;
+        }
+
+        /**
+         * Finds the smallest codes above a cursor by scanning the codes of every
+         * slot of the off-heap storage. Candidates are collected in a buffer of
+         * twice the limit that is sorted and cut back to the limit whenever it
+         * fills up, so a page costs one pass over the users and no allocation
+         * that grows with them. Must be called under the repository lock.
+         *
+         * @param after The cursor; codes above it are returned
+         * @param limit Maximum number of codes to return, at least 1
+         * @return The codes, in ascending order
+         */
+        private long[] codesAfter(long after, int limit) {
+                OffHeapUserList users = (OffHeapUserList) data;
+                int kept = Math.min(limit, users.size());
+                if (kept == 0) {
+                        return new long[0];
+                }
+                long[] found = new long[kept * 2];
+                int count = 0;
+                long bound = Long.MAX_VALUE;
+                for (int slot = 0; slot < users.size(); slot++) {
+                        long code = users.getCode(slot);
+                        if (code <= after || code >= bound) {
+                                continue;
+                        }
+                        if (count == found.length) {
+                                Arrays.sort(found);
+                                count = kept;
+                                bound = found[kept - 1];
+                                if (code >= bound) {
+                                        continue;
+                                }
+                        }
+                        found[count++] = code;
+                }
+                Arrays.sort(found, 0, count);
+                return Arrays.copyOf(found, Math.min(count, kept));
+        }
+
+        /**
+         * Iterates over every user with constant extra memory, for exports. With
+         * heap storage this walks the current snapshot in storage order, which
+         * is consistent and sequential in memory. With off-heap storage the
+         * users are decoded a page of {@link #SCAN_PAGE_SIZE} at a time, in
+         * ascending order of code.
+         *
+         * @return A view that scans the users each time it is iterated
+         */
+        @Override
+        public Iterable<UserRecord> scanRecords() {
+                if (data instanceof VersionedUserList versioned) {
+                        return versioned.snapshot();
+                }
+                return () -> Stream.iterate(getRecordsAfter(null, SCAN_PAGE_SIZE), page -> !page.isEmpty(),
+                                page -> page.size() < SCAN_PAGE_SIZE ? List.of()
+                                                : getRecordsAfter(page.get(page.size() - 1).getCode(), SCAN_PAGE_SIZE))
+                                .flatMap(List::stream)
+                                .iterator();
+        }
+
+        /**
+         * Compares the case-folded key of a user field with a folded value. A
+         * null field matches the empty string.
+         *
+         * @param entity The user
+         * @param field  The field to compare
+         * @param key    The value, already folded by {@link UniqueIndex#key(Object)}
+         */
+        private static boolean matches(UserRecord entity, String field, String key) {
+                String current = entity.key(field);
+                return key.equals(current == null ? "" : current);
+        }
+
         /**
          * Retrieves all entities in the repository.
          *
          * @return List of all entities
          */
         public List<Map<String, Object>> getEntities() {
-                return new ArrayList<>(data);
+                return getRecords().stream()
+                                .map(UserRecord::toMap)
+                                .collect(Collectors.toList());
+        }
+
+        /**
+         * Retrieves all users in the repository. With heap storage this is the
+         * current {@link VersionedUserList.Snapshot}, taken without locking or
+         * copying; it stays consistent while writers publish newer versions.
+         * With off-heap storage the users are decoded into a new list.
+         *
+         * @return Unmodifiable list of all users
+         */
+        @Override
+        public List<UserRecord> getRecords() {
+                if (data instanceof VersionedUserList versioned) {
+                        return versioned.snapshot();
+                }
+                lock.readLock().lock();
+                try {
+                        return Collections.unmodifiableList(new ArrayList<>(data));
+                } finally {
+                        lock.readLock().unlock();
+                }
         }
 
         /**
@@ -189,10 +1724,28 @@ public class BaseRepository {
          * @return Map containing the entity or error message if not found
          */
         public Map<String, Object> getEntityByCode(long code) {
-                return data.stream()
-                                .filter(entity -> ((Number) entity.get("code")).longValue() == code)
-                                .findFirst()
-                                .orElse(Map.of("error", "Entity not found"));
+                UserRecord entity = getRecordByCode(code);
+                if (entity == null) {
+                        return Map.of("error", "Entity not found");
+                }
+                return entity.toMap();
+        }
+
+        /**
+         * Retrieves a user by its unique code.
+         *
+         * @param code The unique identifier of the user
+         * @return The user, or null if not found
+         */
+        @Override
+        public UserRecord getRecordByCode(long code) {
+                lock.readLock().lock();
+                try {
+                        int slot = codeIndex.get(code);
+                        return slot == LongIndex.ABSENT ? null : data.get(slot);
+                } finally {
+                        lock.readLock().unlock();
+                }
         }
 
         /**
@@ -203,33 +1756,155 @@ public class BaseRepository {
          * @return Map containing the entity or null if not found
          */
         public Map<String, Object> getEntityByField(String field, String value) {
-                return data.stream()
-                                .filter(entity -> String.valueOf(entity.getOrDefault(field, ""))
-                                                .toLowerCase()
-                                                .equals(value.toLowerCase()))
-                                .findFirst()
-                                .orElse(null);
+                UserRecord entity = getRecordByField(field, value);
+                return entity == null ? null : entity.toMap();
+        }
+
+        /**
+         * Retrieves a user by a specific field value.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return The user, or null if not found
+         */
+        @Override
+        public UserRecord getRecordByField(String field, String value) {
+                UniqueIndex index = uniqueIndexes.get(field);
+                String key = UniqueIndex.key(value);
+                if (index == null) {
+                        return getRecords().stream()
+                                        .filter(entity -> matches(entity, field, key))
+                                        .findFirst()
+                                        .orElse(null);
+                }
+                lock.readLock().lock();
+                try {
+                        int slot = index.get(key, data);
+                        return slot == LongIndex.ABSENT ? null : data.get(slot);
+                } finally {
+                        lock.readLock().unlock();
+                }
         }
 
         /**
          * Updates an entity identified by its code with new values.
+         * The update is rejected if it tries to change the code, names an unknown
+         * field, or would move the entity onto a username or email that already
+         * belongs to another entity. In "mapped" mode it is also rejected if a
+         * field would outgrow its slot.
+         * Updates that leave the case-folded username and email unchanged, even
+         * if they set them, only lock the stripe of the code, so they run in
+         * parallel with readers and with updates of other users.
          *
          * @param code    The unique identifier of the entity to update
          * @param updates Map containing the fields to update and their new values
          * @return Map indicating operation success status
          */
+        @Override
         public Map<String, Boolean> updateEntity(long code, Map<String, Object> updates) {
-                for (Map<String, Object> entity : data) {
-                        System.out.println("=====================================");
-                        System.out.println(data);
-                        System.out.println("=====================================");
-                        if (((Long) entity.get("code")).longValue() == code) {
-                                entity.putAll(updates);
-                                save();
-                                return Map.of("success", true);
+                return update(code, ANY_VERSION, updates);
+        }
+
+        /**
+         * Updates an entity only if it is still at the version the caller read,
+         * with the same rules as {@link #updateEntity(long, Map)}. The version is
+         * compared under the same stripe or exclusive lock the update takes, so
+         * of two writers that read the same version exactly one succeeds.
+         *
+         * @param code            The unique identifier of the entity to update
+         * @param expectedVersion The version the caller read
+         * @param updates         Map containing the fields to update and their
+         *                        new values
+         * @return Map indicating operation success status, with
+         *         {@code conflict=true} if the entity is at another version
+         */
+        @Override
+        public Map<String, Boolean> updateEntityIfVersion(long code, int expectedVersion,
+                        Map<String, Object> updates) {
+                if (expectedVersion < 0) {
+                        return Map.of("success", false);
+                }
+                return update(code, expectedVersion, updates);
+        }
+
+        /**
+         * Updates an entity at the expected version, or at any version.
+         *
+         * @param code            The unique identifier of the entity to update
+         * @param expectedVersion The version to compare, or {@link #ANY_VERSION}
+         * @param updates         Map containing the fields to update and their
+         *                        new values
+         * @return Map indicating operation success status
+         */
+        private Map<String, Boolean> update(long code, int expectedVersion, Map<String, Object> updates) {
+                if (rejectsWrites()) {
+                        return Map.of("success", false);
+                }
+                boolean exclusive = offHeap || stripes.length == 0;
+                while (true) {
+                        Lock held = exclusive ? lock.writeLock() : lock.readLock();
+                        Lock stripe = exclusive ? null : stripeFor(code);
+                        CompletableFuture<Void> durable;
+                        held.lock();
+                        if (stripe != null) {
+                                stripe.lock();
+                        }
+                        try {
+                                int slot = codeIndex.get(code);
+                                if (slot == LongIndex.ABSENT) {
+                                        return Map.of("success", false);
+                                }
+                                UserRecord current = data.get(slot);
+                                if (expectedVersion != ANY_VERSION && current.getVersion() != expectedVersion) {
+                                        return CONFLICT;
+                                }
+                                UserRecord updated;
+                                try {
+                                        updated = current.with(updates);
+                                } catch (IllegalArgumentException | ClassCastException e) {
+                                        return Map.of("success", false);
+                                }
+                                if (!exclusive && changesUniqueKey(current, updated)) {
+                                        // Moving a unique key changes the shared unique indexes, so
+                                        // the update is read and applied again under the exclusive lock
+                                        exclusive = true;
+                                        continue;
+                                }
+                                if (violatesUniqueIndex(updated, slot) || !storable(updated)) {
+                                        return Map.of("success", false);
+                                }
+                                replaceAt(slot, updated);
+                                durable = persist(List.of(Map.of("op", "update", "code", code, "fields", updates,
+                                                "version", updated.getVersion())));
+                        } finally {
+                                if (stripe != null) {
+                                        stripe.unlock();
+                                }
+                                held.unlock();
+                        }
+                        if (!awaitDurable(durable)) {
+                                return NOT_DURABLE;
+                        }
+                        maybeCompact();
+                        return Map.of("success", true);
+                }
+        }
+
+        /**
+         * Checks whether an update moves a user to another case-folded username
+         * or email. Setting them to their current value, in any case, does not.
+         *
+         * @param current The stored user
+         * @param updated The user with the update applied
+         * @return true if a unique key differs
+         */
+        private static boolean changesUniqueKey(UserRecord current, UserRecord updated) {
+                for (String field : UNIQUE_FIELDS) {
+                        if (!Objects.equals(current.key(field), updated.key(field))) {
+                                return true;
                         }
                 }
-                return Map.of("success", false);
+                return false;
         }
 
         /**
@@ -238,13 +1913,28 @@ public class BaseRepository {
          * @param code The unique identifier of the entity to delete
          * @return Map indicating operation success status
          */
+        @Override
         public Map<String, Object> deleteEntityByCode(long code) {
-                boolean removed = data.removeIf(entity -> ((Number) entity.get("code")).longValue() == code);
-                if (removed) {
-                        save();
-                        return Map.of("success", true);
+                if (rejectsWrites()) {
+                        return Map.of("success", false);
+                }
+                CompletableFuture<Void> durable;
+                lock.writeLock().lock();
+                try {
+                        int slot = codeIndex.get(code);
+                        if (slot == LongIndex.ABSENT) {
+                                return Map.of("success", false);
+                        }
+                        removeAt(slot);
+                        durable = persist(List.of(Map.of("op", "delete", "code", code)));
+                } finally {
+                        lock.writeLock().unlock();
+                }
+                if (!awaitDurable(durable)) {
+                        return Map.of("success", false, "durable", false);
                 }
-                return Map.of("success", false);
+                maybeCompact();
+                return Map.of("success", true);
         }
 
         /**
@@ -255,13 +1945,42 @@ public class BaseRepository {
          * @return Map indicating operation success status
          */
         public Map<String, Object> deleteEntityByField(String field, String value) {
-                boolean removed = data.removeIf(entity -> String.valueOf(entity.getOrDefault(field, ""))
-                                .toLowerCase()
-                                .equals(value.toLowerCase()));
-                if (removed) {
-                        save();
-                        return Map.of("success", true);
+                if (rejectsWrites()) {
+                        return Map.of("success", false);
+                }
+                List<Map<String, Object>> removed = new ArrayList<>();
+                CompletableFuture<Void> durable;
+                lock.writeLock().lock();
+                try {
+                        UniqueIndex index = uniqueIndexes.get(field);
+                        String key = UniqueIndex.key(value);
+                        if (index != null) {
+                                int slot = index.get(key, data);
+                                if (slot != LongIndex.ABSENT) {
+                                        removed.add(Map.of("op", "delete", "code", data.get(slot).getCode()));
+                                        removeAt(slot);
+                                }
+                        } else {
+                                // Walk backwards so the entity swapped into a freed slot was already checked
+                                for (int slot = data.size() - 1; slot >= 0; slot--) {
+                                        UserRecord entity = data.get(slot);
+                                        if (matches(entity, field, key)) {
+                                                removeAt(slot);
+                                                removed.add(Map.of("op", "delete", "code", entity.getCode()));
+                                        }
+                                }
+                        }
+                        if (removed.isEmpty()) {
+                                return Map.of("success", false);
+                        }
+                        durable = persist(removed);
+                } finally {
+                        lock.writeLock().unlock();
+                }
+                if (!awaitDurable(durable)) {
+                        return Map.of("success", false, "durable", false);
                 }
-                return Map.of("success", false);
+                maybeCompact();
+                return Map.of("success", true);
         }
 }
\ No newline at end of file
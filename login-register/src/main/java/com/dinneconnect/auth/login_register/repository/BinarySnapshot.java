@@ -0,0 +1,280 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot format for the user dataset, and a converter to
+ * and from the JSON array used by {@code user.json}.
+ *
+ * File layout:
+ * - header: magic {@code USRS}, format version, total number of users
+ * - blocks of up to {@link #BLOCK_USERS} users: user count, payload length,
+ * payload, CRC32 of the payload
+ * - a block with a user count of 0 closes the file
+ *
+ * Each user in a payload is a fixed-width {@code code}, one byte of packed
+ * boolean flags, the creation date as fixed-width epoch seconds, the user
+ * version as a varint, and the string fields as a varint length (0 for null,
+ * otherwise length + 1) followed by their UTF-8 bytes. Version 2 files,
+ * written before users had versions, load every user at version 0; version
+ * 1 files, which also stored the creation date as a string field after the
+ * password, are still readable.
+ *
+ * @version 3.0
+ * @since 2025-02-18
+ */
+public final class BinarySnapshot {
+
+        private static final int MAGIC = 0x55535253;
+
+        /**
+         * Current version of the format
+         */
+        public static final short VERSION = 3;
+
+        /**
+         * Version written before users had versions
+         */
+        private static final short VERSION_UNVERSIONED_USERS = 2;
+
+        /**
+         * Version that stored the creation date as a string field
+         */
+        private static final short VERSION_STRING_DATE = 1;
+
+        /**
+         * Maximum number of users per checksummed block
+         */
+        public static final int BLOCK_USERS = 4096;
+
+        private BinarySnapshot() {
+        }
+
+        /**
+         * Writes the users to a binary snapshot file, replacing its content
+         * through a {@link SnapshotFile}, so a crash during the write leaves the
+         * previous snapshot intact.
+         *
+         * @param path     The snapshot file
+         * @param entities The users to write
+         * @throws IOException if the file cannot be written
+         */
+        public static void write(Path path, List<UserRecord> entities) throws IOException {
+                SnapshotFile.write(path, false, stream -> write(stream, entities));
+        }
+
+        private static void write(OutputStream stream, List<UserRecord> entities) throws IOException {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                        out.writeInt(MAGIC);
+                        out.writeShort(VERSION);
+                        out.writeLong(entities.size());
+                        ByteBuffer block = ByteBuffer.allocate(1 << 16);
+                        CRC32 crc = new CRC32();
+                        for (int start = 0; start < entities.size(); start += BLOCK_USERS) {
+                                int end = Math.min(entities.size(), start + BLOCK_USERS);
+                                block.clear();
+                                for (int i = start; i < end; i++) {
+                                        block = encode(block, entities.get(i));
+                                }
+                                block.flip();
+                                crc.reset();
+                                crc.update(block.array(), 0, block.limit());
+                                out.writeInt(end - start);
+                                out.writeInt(block.limit());
+                                out.write(block.array(), 0, block.limit());
+                                out.writeLong(crc.getValue());
+                        }
+                        out.writeInt(0);
+                }
+        }
+
+        /**
+         * Reads every user of a binary snapshot file.
+         *
+         * @param path The snapshot file
+         * @return The users in file order
+         * @throws IOException if the file is not a snapshot, is truncated or a
+         *                     block fails its checksum
+         */
+        public static List<UserRecord> read(Path path) throws IOException {
+                try (DataInputStream in = new DataInputStream(
+                                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                        if (in.readInt() != MAGIC) {
+                                throw new IOException("Not a user snapshot: " + path);
+                        }
+                        short version = in.readShort();
+                        if (version != VERSION && version != VERSION_UNVERSIONED_USERS
+                                        && version != VERSION_STRING_DATE) {
+                                throw new IOException("Unsupported snapshot version " + version);
+                        }
+                        long total = in.readLong();
+                        List<UserRecord> entities = new ArrayList<>((int) Math.min(total, 1 << 24));
+                        CRC32 crc = new CRC32();
+                        byte[] payload = new byte[0];
+                        int users;
+                        while ((users = in.readInt()) != 0) {
+                                int length = in.readInt();
+                                if (payload.length < length) {
+                                        payload = new byte[length];
+                                }
+                                in.readFully(payload, 0, length);
+                                crc.reset();
+                                crc.update(payload, 0, length);
+                                if (crc.getValue() != in.readLong()) {
+                                        throw new IOException("Checksum mismatch in block after user "
+                                                        + entities.size());
+                                }
+                                ByteBuffer block = ByteBuffer.wrap(payload, 0, length);
+                                for (int i = 0; i < users; i++) {
+                                        entities.add(decode(block, version));
+                                }
+                        }
+                        if (entities.size() != total) {
+                                throw new EOFException("Snapshot holds " + entities.size() + " of " + total + " users");
+                        }
+                        return entities;
+                }
+        }
+
+        /**
+         * Appends one user to the block, growing the block if needed.
+         */
+        private static ByteBuffer encode(ByteBuffer block, UserRecord entity) {
+                String[] values = { entity.getName(), entity.getSurname(), entity.getUsername(), entity.getEmail(),
+                                entity.getPassword() };
+                byte[][] strings = new byte[values.length][];
+                int size = 22;
+                for (int i = 0; i < values.length; i++) {
+                        if (values[i] != null) {
+                                strings[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                                size += strings[i].length;
+                        }
+                        size += 5;
+                }
+                if (block.remaining() < size) {
+                        ByteBuffer grown = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + size));
+                        block.flip();
+                        grown.put(block);
+                        block = grown;
+                }
+                block.putLong(entity.getCode());
+                block.put((byte) entity.getFlags());
+                block.putLong(entity.getCreationEpoch());
+                putVarint(block, entity.getVersion());
+                for (byte[] bytes : strings) {
+                        if (bytes == null) {
+                                putVarint(block, 0);
+                        } else {
+                                putVarint(block, bytes.length + 1);
+                                block.put(bytes);
+                        }
+                }
+                return block;
+        }
+
+        /**
+         * Reads one user from the block.
+         */
+        private static UserRecord decode(ByteBuffer block, short version) {
+                long code = block.getLong();
+                int flags = block.get();
+                long creation = version == VERSION_STRING_DATE ? UserRecord.NO_DATE : block.getLong();
+                int userVersion = version == VERSION ? getVarint(block) : 0;
+                String name = getString(block);
+                String surname = getString(block);
+                String username = getString(block);
+                String email = getString(block);
+                String password = getString(block);
+                if (version == VERSION_STRING_DATE) {
+                        creation = UserRecord.parseDate(getString(block));
+                }
+                return new UserRecord(code, name, surname, username, email, password, creation, flags, userVersion);
+        }
+
+        private static String getString(ByteBuffer block) {
+                int length = getVarint(block);
+                if (length == 0) {
+                        return null;
+                }
+                String value = new String(block.array(), block.position(), length - 1, StandardCharsets.UTF_8);
+                block.position(block.position() + length - 1);
+                return value;
+        }
+
+        private static void putVarint(ByteBuffer block, int value) {
+                while ((value & ~0x7F) != 0) {
+                        block.put((byte) ((value & 0x7F) | 0x80));
+                        value >>>= 7;
+                }
+                block.put((byte) value);
+        }
+
+        private static int getVarint(ByteBuffer block) {
+                int value = 0;
+                int shift = 0;
+                byte current;
+                do {
+                        current = block.get();
+                        value |= (current & 0x7F) << shift;
+                        shift += 7;
+                } while (current < 0);
+                return value;
+        }
+
+        /**
+         * Converts a JSON user file into a binary snapshot.
+         *
+         * @param json   The JSON array file
+         * @param binary The snapshot file to write
+         * @throws IOException if either file cannot be processed
+         */
+        public static void fromJson(Path json, Path binary) throws IOException {
+                write(binary, UserRecord.readJsonArray(new ObjectMapper(), json));
+        }
+
+        /**
+         * Converts a binary snapshot back into a JSON user file.
+         *
+         * @param binary The snapshot file
+         * @param json   The JSON array file to write
+         * @throws IOException if either file cannot be processed
+         */
+        public static void toJson(Path binary, Path json) throws IOException {
+                UserRecord.writeJsonArray(new ObjectMapper(), json, read(binary));
+        }
+
+        /**
+         * Command-line converter.
+         * Usage: {@code BinarySnapshot to-binary user.json user.bin} or
+         * {@code BinarySnapshot to-json user.bin user.json}
+         *
+         * @param args The direction, the source file and the target file
+         * @throws IOException if the conversion fails
+         */
+        public static void main(String[] args) throws IOException {
+                if (args.length != 3 || !List.of("to-binary", "to-json").contains(args[0])) {
+                        System.err.println("Usage: BinarySnapshot <to-binary|to-json> <source> <target>");
+                        System.exit(2);
+                }
+                if (args[0].equals("to-binary")) {
+                        fromJson(Paths.get(args[1]), Paths.get(args[2]));
+                } else {
+                        toJson(Paths.get(args[1]), Paths.get(args[2]));
+                }
+        }
+}
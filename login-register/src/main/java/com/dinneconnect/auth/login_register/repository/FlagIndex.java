@@ -0,0 +1,208 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bitmap index of the {@link UserRecord#RESERVATION},
+ * {@link UserRecord#VERIFIED} and {@link UserRecord#ACTIVE} statuses, with
+ * one bit per slot of the repository data list for each status.
+ * A filter such as "active and not verified" is a {@link #mask(Map)
+ * pair of masks}: every 64-bit word of the result is the AND of the required
+ * bitmaps and of the complement of the excluded ones, so a count visits
+ * 64 users per operation and never touches the users themselves.
+ *
+ * Slots are dense, so the bitmaps are plain word arrays of one bit per user;
+ * 1M users take 125 KB per status. Bits are flipped atomically, so shared
+ * updates of different users may change the same word concurrently. Growing
+ * and moving slots, like reading a consistent result, must be guarded by the
+ * same lock that protects the data the slots point into.
+ *
+ * @version 1.0
+ * @since 2025-02-27
+ */
+public final class FlagIndex {
+
+        /**
+         * Names of the indexed statuses, in bit order
+         */
+        public static final List<String> FIELDS = List.of("reservation", "verified", "active");
+
+        private static final int[] BITS = { UserRecord.RESERVATION, UserRecord.VERIFIED, UserRecord.ACTIVE };
+
+        private AtomicLongArray[] bitmaps;
+
+        /**
+         * Number of slots covered by the index
+         */
+        private int size;
+
+        /**
+         * Creates an empty index.
+         */
+        public FlagIndex() {
+                this.bitmaps = new AtomicLongArray[BITS.length];
+                Arrays.setAll(bitmaps, i -> new AtomicLongArray(0));
+        }
+
+        /**
+         * Builds a filter from the expected value of some statuses.
+         *
+         * @param expected Status names mapped to the value users must have
+         * @return The statuses that must be set in the low 32 bits, and those
+         *         that must be clear in the high 32 bits
+         * @throws IllegalArgumentException if a name is not an indexed status
+         */
+        public static long mask(Map<String, Boolean> expected) {
+                int required = 0;
+                int excluded = 0;
+                for (Map.Entry<String, Boolean> entry : expected.entrySet()) {
+                        int index = FIELDS.indexOf(entry.getKey());
+                        if (index < 0) {
+                                throw new IllegalArgumentException("Not a status field: " + entry.getKey());
+                        }
+                        if (Boolean.TRUE.equals(entry.getValue())) {
+                                required |= BITS[index];
+                        } else {
+                                excluded |= BITS[index];
+                        }
+                }
+                return ((long) excluded << 32) | (required & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Sets the statuses of a slot, growing the index to cover it.
+         *
+         * @param slot  The slot
+         * @param flags The packed status bits of the user at the slot
+         */
+        public void set(int slot, int flags) {
+                if (slot >= size) {
+                        grow(slot + 1);
+                }
+                int word = slot >>> 6;
+                long bit = 1L << slot;
+                for (int i = 0; i < BITS.length; i++) {
+                        if ((flags & BITS[i]) != 0) {
+                                bitmaps[i].getAndAccumulate(word, bit, (current, mask) -> current | mask);
+                        } else {
+                                bitmaps[i].getAndAccumulate(word, bit, (current, mask) -> current & ~mask);
+                        }
+                }
+        }
+
+        /**
+         * Moves the statuses of the last slot into another one and shrinks the
+         * index by one slot, mirroring a swap-remove in the data list.
+         *
+         * @param slot The slot receiving them; equal to last to just drop it
+         * @param last The last slot, whose statuses are moved
+         */
+        public void removeSwap(int slot, int last) {
+                if (slot != last) {
+                        set(slot, flagsAt(last));
+                }
+                set(last, 0);
+                size = last;
+        }
+
+        /**
+         * @param slot A slot covered by the index
+         * @return The packed status bits stored for the slot
+         */
+        public int flagsAt(int slot) {
+                int flags = 0;
+                for (int i = 0; i < BITS.length; i++) {
+                        if ((bitmaps[i].get(slot >>> 6) & (1L << slot)) != 0) {
+                                flags |= BITS[i];
+                        }
+                }
+                return flags;
+        }
+
+        /**
+         * Counts the slots matching a filter.
+         *
+         * @param mask A filter built by {@link #mask(Map)}
+         * @return The number of matching slots
+         */
+        public int count(long mask) {
+                int count = 0;
+                int words = (size + 63) >>> 6;
+                for (int word = 0; word < words; word++) {
+                        count += Long.bitCount(match(mask, word));
+                }
+                return count;
+        }
+
+        /**
+         * Lists the slots matching a filter.
+         *
+         * @param mask A filter built by {@link #mask(Map)}
+         * @return The matching slots in ascending order
+         */
+        public int[] slots(long mask) {
+                int[] slots = new int[count(mask)];
+                int found = 0;
+                int words = (size + 63) >>> 6;
+                for (int word = 0; word < words && found < slots.length; word++) {
+                        long bits = match(mask, word);
+                        while (bits != 0 && found < slots.length) {
+                                slots[found++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                                bits &= bits - 1;
+                        }
+                }
+                return found == slots.length ? slots : Arrays.copyOf(slots, found);
+        }
+
+        /**
+         * @return The number of slots covered by the index
+         */
+        public int size() {
+                return size;
+        }
+
+        /**
+         * Removes every slot from the index.
+         */
+        public void clear() {
+                Arrays.setAll(bitmaps, i -> new AtomicLongArray(0));
+                size = 0;
+        }
+
+        /**
+         * Combines the bitmaps of one word according to a filter, limited to the
+         * covered slots.
+         */
+        private long match(long mask, int word) {
+                int required = (int) mask;
+                int excluded = (int) (mask >>> 32);
+                long bits = -1L;
+                for (int i = 0; i < BITS.length; i++) {
+                        if ((required & BITS[i]) != 0) {
+                                bits &= bitmaps[i].get(word);
+                        } else if ((excluded & BITS[i]) != 0) {
+                                bits &= ~bitmaps[i].get(word);
+                        }
+                }
+                int valid = size - (word << 6);
+                return valid >= 64 ? bits : bits & ((1L << valid) - 1);
+        }
+
+        private void grow(int slots) {
+                int words = (slots + 63) >>> 6;
+                if (words > bitmaps[0].length()) {
+                        int capacity = Math.max(words, bitmaps[0].length() + (bitmaps[0].length() >> 1) + 1);
+                        for (int i = 0; i < BITS.length; i++) {
+                                AtomicLongArray grown = new AtomicLongArray(capacity);
+                                for (int word = 0; word < bitmaps[i].length(); word++) {
+                                        grown.set(word, bitmaps[i].get(word));
+                                }
+                                bitmaps[i] = grown;
+                        }
+                }
+                size = slots;
+        }
+}
@@ -0,0 +1,209 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group-commit writer in front of a {@link MutationLog}.
+ * Mutations submitted by concurrent request threads are queued and a single
+ * background thread flushes them together: one write and one fsync per batch
+ * instead of one per mutation. Each submitter gets a future that completes
+ * only once its batch is durable.
+ *
+ * A batch is closed when it reaches {@code maxBatch} records or when
+ * {@code windowMillis} have passed since its first record arrived, whichever
+ * comes first.
+ *
+ * @version 1.0
+ * @since 2025-02-14
+ */
+public class GroupCommitWriter implements Closeable {
+
+        /**
+         * A record waiting to be flushed together with the future of its caller
+         */
+        private record Pending(byte[] line, CompletableFuture<Void> durable) {
+        }
+
+        /**
+         * Log the batches are written to
+         */
+        private final MutationLog mutationLog;
+
+        /**
+         * Maximum time a batch stays open after its first record
+         */
+        private final long windowNanos;
+
+        /**
+         * Maximum number of records flushed together
+         */
+        private final int maxBatch;
+
+        /**
+         * Records waiting for the writer thread
+         */
+        private final BlockingQueue<Pending> queue;
+
+        /**
+         * Background thread running {@link #run()}
+         */
+        private final Thread writer;
+
+        /**
+         * Future of the most recently submitted record
+         */
+        private CompletableFuture<Void> last;
+
+        private volatile boolean running;
+
+        /**
+         * Starts the writer thread.
+         *
+         * @param mutationLog  The log the batches are appended to
+         * @param windowMillis Maximum time a batch stays open, 0 to flush whatever is
+         *                     queued right away
+         * @param maxBatch     Maximum number of records per batch
+         */
+        public GroupCommitWriter(MutationLog mutationLog, long windowMillis, int maxBatch) {
+                if (maxBatch < 1) {
+                        throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+                }
+                this.mutationLog = mutationLog;
+                this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                this.maxBatch = maxBatch;
+                this.queue = new LinkedBlockingQueue<>();
+                this.last = CompletableFuture.completedFuture(null);
+                this.running = true;
+                this.writer = new Thread(this::run, "user-log-group-commit");
+                this.writer.setDaemon(true);
+                this.writer.start();
+        }
+
+        /**
+         * Queues a record. The record is encoded on the calling thread so the
+         * writer thread only does I/O.
+         *
+         * @param record The mutation record
+         * @return A future completed once the record is durable
+         * @throws IOException if the record cannot be serialized
+         */
+        public synchronized CompletableFuture<Void> submit(Map<String, Object> record) throws IOException {
+                if (!running) {
+                        throw new IOException("Group commit writer is closed");
+                }
+                CompletableFuture<Void> durable = new CompletableFuture<>();
+                queue.add(new Pending(mutationLog.encode(record), durable));
+                last = durable;
+                return durable;
+        }
+
+        /**
+         * Waits until every record submitted so far is durable.
+         *
+         * @throws IOException if the flush of any of those records failed
+         */
+        public void drain() throws IOException {
+                CompletableFuture<Void> pending;
+                synchronized (this) {
+                        pending = last;
+                }
+                await(pending);
+        }
+
+        /**
+         * Waits for a future returned by {@link #submit(Map)}.
+         *
+         * @param durable The future to wait for
+         * @throws IOException if the batch holding the record could not be written
+         */
+        public static void await(CompletableFuture<Void> durable) throws IOException {
+                try {
+                        durable.get();
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for group commit", e);
+                } catch (ExecutionException e) {
+                        throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+        }
+
+        /**
+         * Writer loop: blocks for the first record of a batch, collects more until
+         * the window closes or the batch is full, then flushes it.
+         */
+        private void run() {
+                List<Pending> batch = new ArrayList<>(maxBatch);
+                List<byte[]> lines = new ArrayList<>(maxBatch);
+                while (running || !queue.isEmpty()) {
+                        try {
+                                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                                if (first == null) {
+                                        continue;
+                                }
+                                batch.add(first);
+                                long deadline = System.nanoTime() + windowNanos;
+                                while (batch.size() < maxBatch) {
+                                        long remaining = deadline - System.nanoTime();
+                                        Pending next = remaining > 0
+                                                        ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                                                        : queue.poll();
+                                        if (next == null) {
+                                                break;
+                                        }
+                                        batch.add(next);
+                                }
+                                flush(batch, lines);
+                        } catch (InterruptedException e) {
+                                running = false;
+                                if (!batch.isEmpty()) {
+                                        flush(batch, lines);
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Writes one batch and completes the futures of its callers.
+         */
+        private void flush(List<Pending> batch, List<byte[]> lines) {
+                for (Pending pending : batch) {
+                        lines.add(pending.line());
+                }
+                try {
+                        mutationLog.appendBatch(lines);
+                        for (Pending pending : batch) {
+                                pending.durable().complete(null);
+                        }
+                } catch (IOException e) {
+                        for (Pending pending : batch) {
+                                pending.durable().completeExceptionally(e);
+                        }
+                }
+                batch.clear();
+                lines.clear();
+        }
+
+        /**
+         * Flushes what is still queued and stops the writer thread.
+         */
+        @Override
+        public void close() throws IOException {
+                synchronized (this) {
+                        running = false;
+                }
+                try {
+                        writer.join();
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+        }
+}
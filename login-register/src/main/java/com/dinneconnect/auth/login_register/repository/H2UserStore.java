@@ -0,0 +1,704 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.dinneconnect.auth.login_register.models.User;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * {@link UserStore} keeping the users in an embedded H2 database file, the
+ * "h2" engine. Only the rows a request needs are read, so memory use does
+ * not grow with the number of users and startup does not load the table.
+ *
+ * Key features:
+ * - Connections from a HikariCP pool and prepared statements for every query
+ * - Case-folded key columns with unique indexes on username and email and
+ * indexes on name and surname, used for lookups and prefix search
+ * - Keyset pagination on the primary key
+ * - Batched inserts for bulk imports, and on first start an import of the
+ * users of the JSON file
+ *
+ * Uniqueness is enforced by the database, so concurrent writers need no lock
+ * here: an insert or update that would take a username or email already in
+ * use fails on the index and is reported as {@code success=false}. Updates
+ * read and rewrite the row in one transaction, holding its row lock.
+ *
+ * @version 1.0
+ * @since 2025-03-02
+ */
+@Repository
+@ConditionalOnProperty(name = "app.repository.engine", havingValue = "h2")
+public class H2UserStore implements UserStore {
+
+        /**
+         * Columns read into a {@link UserRecord}, in constructor order
+         */
+        private static final String COLUMNS = "code, name, surname, username, email, password, creation_epoch, "
+                        + "reservation, verified, active, version";
+
+        private static final String INSERT = "INSERT INTO users (" + COLUMNS
+                        + ", name_key, surname_key, username_key, email_key) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        private static final String UPDATE = "UPDATE users SET name = ?, surname = ?, username = ?, email = ?, "
+                        + "password = ?, creation_epoch = ?, reservation = ?, verified = ?, active = ?, version = ?, "
+                        + "name_key = ?, surname_key = ?, username_key = ?, email_key = ? WHERE code = ?";
+
+        /**
+         * Expected version that matches any version of a user
+         */
+        private static final int ANY_VERSION = -1;
+
+        /**
+         * Result of an update rejected because the user is at another version
+         */
+        private static final Map<String, Boolean> CONFLICT = Map.of("success", false, "conflict", true);
+
+        /**
+         * Result of a user of a batch whose transaction failed
+         */
+        private static final Map<String, Boolean> NOT_ADDED = Map.of("success", false);
+
+        /**
+         * Fields with a folded key column, looked up through its index
+         */
+        private static final List<String> KEY_FIELDS = List.of("name", "surname", "username", "email");
+
+        /**
+         * Fields that can be searched by prefix, as in {@link BaseRepository}
+         */
+        private static final List<String> PREFIX_FIELDS = List.of("username", "name", "surname");
+
+        /**
+         * Number of users read at a time by {@link #scanRecords()}
+         */
+        private static final int SCAN_PAGE_SIZE = 1000;
+
+        /**
+         * Number of users inserted per batch when importing the JSON file
+         */
+        private static final int IMPORT_BATCH_SIZE = 1000;
+
+        /**
+         * SQL state of a unique or primary key violation
+         */
+        private static final String UNIQUE_VIOLATION = "23505";
+
+        /**
+         * Pool of connections to the database
+         */
+        private final HikariDataSource dataSource;
+
+        /**
+         * Opens the database, creating its table and indexes if needed, and
+         * imports the JSON file into an empty table.
+         *
+         * @param path       Path of the database file, without the ".mv.db"
+         *                   extension H2 adds
+         * @param poolSize   Maximum number of pooled connections
+         * @param importPath JSON file of the "json" engine, imported when the
+         *                   table is empty
+         * @throws IllegalStateException if the database cannot be opened, or
+         *                               the files to import are damaged
+         */
+        @Autowired
+        public H2UserStore(
+                        @Value("${app.repository.h2.path:Backend/login-register/src/main/java/com/dinneconnect/auth/login_register/persistence/users}") String path,
+                        @Value("${app.repository.h2.pool-size:8}") int poolSize,
+                        @Value("${app.repository.path:Backend/login-register/src/main/java/com/dinneconnect/auth/login_register/persistence/user.json}") String importPath) {
+                HikariConfig config = new HikariConfig();
+                config.setPoolName("user-store-h2");
+                // H2 refuses file paths implicitly relative to the working directory
+                config.setJdbcUrl("jdbc:h2:file:" + Paths.get(path).toAbsolutePath());
+                config.setUsername("sa");
+                config.setPassword("");
+                config.setMaximumPoolSize(poolSize);
+                this.dataSource = new HikariDataSource(config);
+                try {
+                        createSchema();
+                        importJson(Paths.get(importPath));
+                } catch (SQLException | RuntimeException e) {
+                        dataSource.close();
+                        throw new IllegalStateException("Error opening H2 user store: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Creates the users table and its indexes if they do not exist. The
+         * name and surname indexes also hold the code, so prefix searches and
+         * lookups read the rows in the order they return them and stop at
+         * their limit instead of sorting every match.
+         */
+        private void createSchema() throws SQLException {
+                try (Connection connection = dataSource.getConnection();
+                                Statement statement = connection.createStatement()) {
+                        statement.execute("CREATE TABLE IF NOT EXISTS users ("
+                                        + "code BIGINT PRIMARY KEY, name VARCHAR, surname VARCHAR, username VARCHAR, "
+                                        + "email VARCHAR, password VARCHAR, creation_epoch BIGINT NOT NULL, "
+                                        + "reservation BOOLEAN NOT NULL, verified BOOLEAN NOT NULL, active BOOLEAN NOT NULL, "
+                                        + "version INT DEFAULT 0 NOT NULL, "
+                                        + "name_key VARCHAR, surname_key VARCHAR, username_key VARCHAR, email_key VARCHAR)");
+                        // Databases created before users had versions
+                        statement.execute("ALTER TABLE users ADD COLUMN IF NOT EXISTS version INT DEFAULT 0 NOT NULL");
+                        statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS users_username_key ON users (username_key)");
+                        statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS users_email_key ON users (email_key)");
+                        statement.execute("CREATE INDEX IF NOT EXISTS users_name_key ON users (name_key, code)");
+                        statement.execute("CREATE INDEX IF NOT EXISTS users_surname_key ON users (surname_key, code)");
+                }
+        }
+
+        /**
+         * Copies the users of the "json" engine into an empty table, in batches
+         * inside one transaction. The users are loaded the way that engine
+         * loads them, so the checksum footer of the snapshot is verified, the
+         * mutation log next to it is replayed, a mapped store is read instead
+         * of the snapshot and every shard of a split file is imported. When the
+         * engine holds duplicated codes, usernames or emails the first user
+         * wins, as when it loads them.
+         *
+         * @param path The file of the "json" engine
+         * @throws IllegalStateException if the files of the engine are damaged
+         */
+        private void importJson(Path path) throws SQLException {
+                boolean sharded = Files.exists(ShardedRepository.markerPath(path));
+                if ((!sharded && !Files.exists(path)) || count("") > 0) {
+                        return;
+                }
+                int imported = 0;
+                UserStore json = openJson(path, sharded);
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                        Set<String> taken = new HashSet<>();
+                        connection.setAutoCommit(false);
+                        for (UserRecord user : json.scanRecords()) {
+                                if (!taken.add("code:" + user.getCode())
+                                                || (user.key("username") != null && !taken.add("username:" + user.key("username")))
+                                                || (user.key("email") != null && !taken.add("email:" + user.key("email")))) {
+                                        continue;
+                                }
+                                bind(insert, user);
+                                insert.addBatch();
+                                if (++imported % IMPORT_BATCH_SIZE == 0) {
+                                        insert.executeBatch();
+                                }
+                        }
+                        insert.executeBatch();
+                        connection.commit();
+                } finally {
+                        json.close();
+                }
+                System.out.println("Imported " + imported + " users from " + path + " into H2");
+        }
+
+        /**
+         * Opens the files of the "json" engine in the persistence mode they were
+         * written in: "mapped" when a mapped store exists, "log" when a mutation
+         * log exists, and "snapshot" otherwise.
+         *
+         * @param path    The file of the "json" engine
+         * @param sharded Whether the file was split into shards
+         * @return The engine, holding every user
+         */
+        private static UserStore openJson(Path path, boolean sharded) {
+                int shards = sharded ? ShardedRepository.readShardCount(path) : 1;
+                Path file = sharded ? ShardedRepository.shardPath(path, 0) : path;
+                String persistence = Files.exists(file.resolveSibling(file.getFileName() + ".map")) ? "mapped"
+                                : Files.exists(file.resolveSibling(file.getFileName() + ".log")) ? "log" : "snapshot";
+                RepositoryOptions options = RepositoryOptions.of(path.toString()).withPersistence(persistence)
+                                .withShards(shards);
+                return sharded ? new ShardedRepository(options) : new BaseRepository(options);
+        }
+
+        /**
+         * Sets the parameters of {@link #INSERT} from a user.
+         */
+        private static void bind(PreparedStatement insert, UserRecord user) throws SQLException {
+                insert.setLong(1, user.getCode());
+                bindFields(insert, 2, user);
+        }
+
+        /**
+         * Sets every column but the code, in the order of {@link #INSERT} and
+         * {@link #UPDATE}, starting at the given parameter.
+         */
+        private static void bindFields(PreparedStatement statement, int first, UserRecord user) throws SQLException {
+                statement.setString(first, user.getName());
+                statement.setString(first + 1, user.getSurname());
+                statement.setString(first + 2, user.getUsername());
+                statement.setString(first + 3, user.getEmail());
+                statement.setString(first + 4, user.getPassword());
+                statement.setLong(first + 5, user.getCreationEpoch());
+                statement.setBoolean(first + 6, user.isReservation());
+                statement.setBoolean(first + 7, user.isVerified());
+                statement.setBoolean(first + 8, user.isActive());
+                statement.setInt(first + 9, user.getVersion());
+                statement.setString(first + 10, user.key("name"));
+                statement.setString(first + 11, user.key("surname"));
+                statement.setString(first + 12, user.key("username"));
+                statement.setString(first + 13, user.key("email"));
+        }
+
+        /**
+         * Reads the user at the current row of a result set selecting
+         * {@link #COLUMNS}.
+         */
+        private static UserRecord read(ResultSet row) throws SQLException {
+                return new UserRecord(row.getLong(1), row.getString(2), row.getString(3), row.getString(4),
+                                row.getString(5), row.getString(6), row.getLong(7),
+                                (row.getBoolean(8) ? UserRecord.RESERVATION : 0)
+                                                | (row.getBoolean(9) ? UserRecord.VERIFIED : 0)
+                                                | (row.getBoolean(10) ? UserRecord.ACTIVE : 0),
+                                row.getInt(11));
+        }
+
+        /**
+         * Runs a query selecting {@link #COLUMNS} and reads every row.
+         *
+         * @param sql        The query
+         * @param parameters The values of its parameters
+         * @return The users, in the order of the query
+         * @throws IllegalStateException if the query fails
+         */
+        private List<UserRecord> query(String sql, Object... parameters) {
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement statement = connection.prepareStatement(sql)) {
+                        for (int i = 0; i < parameters.length; i++) {
+                                statement.setObject(i + 1, parameters[i]);
+                        }
+                        List<UserRecord> users = new ArrayList<>();
+                        try (ResultSet rows = statement.executeQuery()) {
+                                while (rows.next()) {
+                                        users.add(read(rows));
+                                }
+                        }
+                        return users;
+                } catch (SQLException e) {
+                        throw new IllegalStateException("Error reading users: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Counts the rows matching a condition.
+         *
+         * @param where      The condition, or an empty string
+         * @param parameters The values of its parameters
+         * @return The number of rows
+         */
+        private long count(String where, Object... parameters) throws SQLException {
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement statement = connection.prepareStatement(
+                                                "SELECT COUNT(*) FROM users" + where)) {
+                        for (int i = 0; i < parameters.length; i++) {
+                                statement.setObject(i + 1, parameters[i]);
+                        }
+                        try (ResultSet rows = statement.executeQuery()) {
+                                rows.next();
+                                return rows.getLong(1);
+                        }
+                }
+        }
+
+        /**
+         * Adds a new user entity to the store.
+         * The insert is rejected by the primary key or the unique indexes if its
+         * code, username or email is already taken.
+         *
+         * @param entity The user entity to be added
+         * @return Map containing operation success status, with
+         *         {@code duplicate=true} if a key is taken or
+         *         {@code invalid=true} if the user cannot be stored
+         */
+        @Override
+        public Map<String, Boolean> postEntity(User entity) {
+                Map<String, Boolean> response = new HashMap<>();
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                        bind(insert, UserRecord.fromMap(entity.toDict()));
+                        insert.executeUpdate();
+                        response.put("success", true);
+                } catch (SQLException e) {
+                        if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                                response.put("duplicate", true);
+                        } else {
+                                System.err.println("Error inserting user: " + e.getMessage());
+                        }
+                        response.put("success", false);
+                } catch (RuntimeException e) {
+                        response.put("success", false);
+                        response.put("invalid", true);
+                }
+                return response;
+        }
+
+        /**
+         * Adds several new users as one JDBC batch in one transaction. H2 keeps
+         * executing a batch after a row fails, so the users rejected by the
+         * primary key or a unique index are reported as duplicates while the
+         * others are committed. A user whose fields cannot be bound is left
+         * out of the batch as invalid.
+         *
+         * @param users The users to add
+         * @return The result of each user, in the order of the batch, with the
+         *         reason of a rejection as in {@link #postEntity(User)}; every
+         *         user not rejected is reported as not added if the transaction
+         *         fails
+         */
+        @Override
+        public List<Map<String, Boolean>> postRecords(List<UserRecord> users) {
+                List<Map<String, Boolean>> added = new ArrayList<>(Collections.nCopies(users.size(), NOT_ADDED));
+                List<Integer> batched = new ArrayList<>(users.size());
+                if (users.isEmpty()) {
+                        return added;
+                }
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                        connection.setAutoCommit(false);
+                        try {
+                                for (int i = 0; i < users.size(); i++) {
+                                        try {
+                                                bind(insert, users.get(i));
+                                        } catch (RuntimeException e) {
+                                                insert.clearParameters();
+                                                added.set(i, Map.of("success", false, "invalid", true));
+                                                continue;
+                                        }
+                                        insert.addBatch();
+                                        batched.add(i);
+                                }
+                                int[] counts;
+                                try {
+                                        counts = insert.executeBatch();
+                                } catch (BatchUpdateException e) {
+                                        counts = e.getUpdateCounts();
+                                        if (counts.length < batched.size()) {
+                                                throw e;
+                                        }
+                                }
+                                for (int i = 0; i < batched.size(); i++) {
+                                        boolean inserted = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+                                        added.set(batched.get(i), inserted ? Map.of("success", true)
+                                                        : Map.of("success", false, "duplicate", true));
+                                }
+                                connection.commit();
+                        } catch (SQLException e) {
+                                connection.rollback();
+                                throw e;
+                        }
+                } catch (SQLException e) {
+                        System.err.println("Error inserting users: " + e.getMessage());
+                        for (int position : batched) {
+                                added.set(position, NOT_ADDED);
+                        }
+                }
+                return added;
+        }
+
+        /**
+         * Retrieves a user by its unique code, through the primary key.
+         *
+         * @param code The unique identifier of the user
+         * @return The user, or null if not found
+         */
+        @Override
+        public UserRecord getRecordByCode(long code) {
+                List<UserRecord> found = query("SELECT " + COLUMNS + " FROM users WHERE code = ?", code);
+                return found.isEmpty() ? null : found.get(0);
+        }
+
+        /**
+         * Retrieves the first user, in order of code, whose field matches a
+         * value ignoring case. Name, surname, username and email are looked up
+         * through the index on their key column, statuses by value; other fields
+         * are compared while scanning the table.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return The user, or null if not found
+         */
+        @Override
+        public UserRecord getRecordByField(String field, String value) {
+                String key = UniqueIndex.key(value);
+                List<UserRecord> found;
+                if (KEY_FIELDS.contains(field)) {
+                        found = query("SELECT " + COLUMNS + " FROM users WHERE " + field
+                                        + "_key = ? ORDER BY code LIMIT 1", key);
+                } else if (FlagIndex.FIELDS.contains(field)) {
+                        if (!key.equals("true") && !key.equals("false")) {
+                                return null;
+                        }
+                        found = query("SELECT " + COLUMNS + " FROM users WHERE " + field
+                                        + " = ? ORDER BY code LIMIT 1", key.equals("true"));
+                } else {
+                        for (UserRecord user : scanRecords()) {
+                                String current = user.key(field);
+                                if (key.equals(current == null ? "" : current)) {
+                                        return user;
+                                }
+                        }
+                        return null;
+                }
+                return found.isEmpty() ? null : found.get(0);
+        }
+
+        /**
+         * Retrieves all users in ascending order of code.
+         *
+         * @return Unmodifiable list of all users
+         */
+        @Override
+        public List<UserRecord> getRecords() {
+                return Collections.unmodifiableList(query("SELECT " + COLUMNS + " FROM users ORDER BY code"));
+        }
+
+        /**
+         * Retrieves the users following a code in ascending order of code,
+         * through the primary key.
+         *
+         * @param after The last code of the previous page, or null to start from
+         *              the first user
+         * @param limit Maximum number of users to return
+         * @return The users of the page
+         */
+        @Override
+        public List<UserRecord> getRecordsAfter(Long after, int limit) {
+                if (after == null) {
+                        return query("SELECT " + COLUMNS + " FROM users ORDER BY code LIMIT ?", limit);
+                }
+                return query("SELECT " + COLUMNS + " FROM users WHERE code > ? ORDER BY code LIMIT ?", after, limit);
+        }
+
+        /**
+         * Iterates over every user a page of {@link #SCAN_PAGE_SIZE} at a time,
+         * in ascending order of code, so the table is never read at once.
+         *
+         * @return A view that scans the users each time it is iterated
+         */
+        @Override
+        public Iterable<UserRecord> scanRecords() {
+                return () -> Stream.iterate(getRecordsAfter(null, SCAN_PAGE_SIZE), page -> !page.isEmpty(),
+                                page -> page.size() < SCAN_PAGE_SIZE ? List.of()
+                                                : getRecordsAfter(page.get(page.size() - 1).getCode(), SCAN_PAGE_SIZE))
+                                .flatMap(List::stream)
+                                .iterator();
+        }
+
+        /**
+         * Finds users whose field starts with a prefix, ignoring case, as a
+         * range scan of the index on the key column.
+         *
+         * @param field  "username", "name" or "surname"
+         * @param prefix The beginning of the value
+         * @param limit  Maximum number of users to return
+         * @return The matching users in ascending order of the folded field,
+         *         then of code
+         * @throws IllegalArgumentException if the field cannot be searched by
+         *                                  prefix
+         */
+        @Override
+        public List<UserRecord> searchByPrefix(String field, String prefix, int limit) {
+                if (!PREFIX_FIELDS.contains(field)) {
+                        throw new IllegalArgumentException("Field is not searchable by prefix: " + field);
+                }
+                String key = UniqueIndex.key(prefix);
+                // Usernames are unique, so their index alone gives the order
+                String order = field.equals("username") ? "username_key" : field + "_key, code";
+                return query("SELECT " + COLUMNS + " FROM users WHERE " + field + "_key >= ? AND " + field
+                                + "_key < ? ORDER BY " + order + " LIMIT ?", key, key + Character.MAX_VALUE, limit);
+        }
+
+        /**
+         * Counts the users in total and with each status set, in one pass over
+         * the table.
+         *
+         * @return The counts by name
+         */
+        @Override
+        public Map<String, Long> getFlagCounts() {
+                String filters = FlagIndex.FIELDS.stream()
+                                .map(field -> ", COUNT(*) FILTER (WHERE " + field + ")")
+                                .collect(Collectors.joining());
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement statement = connection.prepareStatement(
+                                                "SELECT COUNT(*)" + filters + " FROM users");
+                                ResultSet rows = statement.executeQuery()) {
+                        rows.next();
+                        Map<String, Long> counts = new LinkedHashMap<>();
+                        counts.put("users", rows.getLong(1));
+                        for (int i = 0; i < FlagIndex.FIELDS.size(); i++) {
+                                counts.put(FlagIndex.FIELDS.get(i), rows.getLong(i + 2));
+                        }
+                        return counts;
+                } catch (SQLException e) {
+                        throw new IllegalStateException("Error counting users: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Counts the users matching every given status.
+         *
+         * @param expected Status names mapped to the value to match
+         * @return The number of matching users
+         * @throws IllegalArgumentException if a name is not a status
+         */
+        @Override
+        public long countByFlags(Map<String, Boolean> expected) {
+                // Validates the names, which are then safe to use as columns
+                FlagIndex.mask(expected);
+                List<String> fields = new ArrayList<>(expected.keySet());
+                String where = fields.isEmpty() ? ""
+                                : fields.stream()
+                                                .map(field -> field + " = ?")
+                                                .collect(Collectors.joining(" AND ", " WHERE ", ""));
+                try {
+                        return count(where, fields.stream().map(expected::get).toArray());
+                } catch (SQLException e) {
+                        throw new IllegalStateException("Error counting users: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Updates an existing user. The row is read and rewritten in one
+         * transaction, under its row lock, so concurrent updates of the same
+         * user do not lose each other's fields.
+         *
+         * @param code    The unique identifier of the entity to update
+         * @param updates Map containing the fields to update and their new values
+         * @return Map indicating operation success status
+         */
+        @Override
+        public Map<String, Boolean> updateEntity(long code, Map<String, Object> updates) {
+                return update(code, ANY_VERSION, updates);
+        }
+
+        /**
+         * Updates an existing user only if it is still at the expected version.
+         * The version is compared under the row lock of the update, so of two
+         * writers that read the same version exactly one succeeds.
+         *
+         * @param code            The unique identifier of the entity to update
+         * @param expectedVersion The version the caller read
+         * @param updates         Map containing the fields to update and their
+         *                        new values
+         * @return Map indicating operation success status, with
+         *         {@code conflict=true} if the user is at another version
+         */
+        @Override
+        public Map<String, Boolean> updateEntityIfVersion(long code, int expectedVersion,
+                        Map<String, Object> updates) {
+                if (expectedVersion < 0) {
+                        return Map.of("success", false);
+                }
+                return update(code, expectedVersion, updates);
+        }
+
+        /**
+         * Updates a user at the expected version, or at any version, reading and
+         * rewriting its row in one transaction.
+         */
+        private Map<String, Boolean> update(long code, int expectedVersion, Map<String, Object> updates) {
+                try (Connection connection = dataSource.getConnection()) {
+                        connection.setAutoCommit(false);
+                        try (PreparedStatement select = connection.prepareStatement(
+                                        "SELECT " + COLUMNS + " FROM users WHERE code = ? FOR UPDATE");
+                                        PreparedStatement update = connection.prepareStatement(UPDATE)) {
+                                select.setLong(1, code);
+                                UserRecord current;
+                                try (ResultSet rows = select.executeQuery()) {
+                                        if (!rows.next()) {
+                                                connection.rollback();
+                                                return Map.of("success", false);
+                                        }
+                                        current = read(rows);
+                                }
+                                if (expectedVersion != ANY_VERSION && current.getVersion() != expectedVersion) {
+                                        connection.rollback();
+                                        return CONFLICT;
+                                }
+                                UserRecord updated = current.with(updates);
+                                bindFields(update, 1, updated);
+                                update.setLong(15, code);
+                                update.executeUpdate();
+                                connection.commit();
+                                return Map.of("success", true);
+                        } catch (SQLException | IllegalArgumentException | ClassCastException e) {
+                                connection.rollback();
+                                if (e instanceof SQLException sql && !UNIQUE_VIOLATION.equals(sql.getSQLState())) {
+                                        System.err.println("Error updating user: " + e.getMessage());
+                                }
+                                return Map.of("success", false);
+                        }
+                } catch (SQLException e) {
+                        System.err.println("Error updating user: " + e.getMessage());
+                        return Map.of("success", false);
+                }
+        }
+
+        /**
+         * Deletes a user by its unique code.
+         *
+         * @param code The unique identifier of the entity to delete
+         * @return Map indicating operation success status
+         */
+        @Override
+        public Map<String, Object> deleteEntityByCode(long code) {
+                try (Connection connection = dataSource.getConnection();
+                                PreparedStatement delete = connection.prepareStatement(
+                                                "DELETE FROM users WHERE code = ?")) {
+                        delete.setLong(1, code);
+                        return Map.of("success", delete.executeUpdate() > 0);
+                } catch (SQLException e) {
+                        System.err.println("Error deleting user: " + e.getMessage());
+                        return Map.of("success", false);
+                }
+        }
+
+        /**
+         * H2 commits every mutation before it returns; there is no write-behind.
+         *
+         * @return The status of a disabled write-behind
+         */
+        @Override
+        public Map<String, Object> getWriteBehindStatus() {
+                Map<String, Object> status = new LinkedHashMap<>();
+                status.put("enabled", false);
+                status.put("pendingWrites", 0);
+                status.put("failedFlushes", 0L);
+                status.put("lastError", null);
+                status.put("unpersisted", false);
+                return status;
+        }
+
+        /**
+         * Closes the connection pool, which closes the database once its last
+         * connection is gone. Registered as a Spring shutdown callback.
+         */
+        @Override
+        @PreDestroy
+        public void close() {
+                dataSource.close();
+        }
+}
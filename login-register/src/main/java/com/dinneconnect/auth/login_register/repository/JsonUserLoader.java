@@ -0,0 +1,162 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streaming reader for a JSON array of users.
+ * The file is read incrementally with Jackson's token stream instead of being
+ * loaded into a String or a tree first. The parsing thread only cuts the
+ * array into batches of raw user objects; a pool of worker threads converts
+ * each batch into {@link UserRecord}s while the next one is being parsed.
+ * Batches are collected in file order, and only a few of them are in flight
+ * at any time, so memory stays close to the size of the resulting records.
+ *
+ * @version 1.0
+ * @since 2025-02-24
+ */
+public class JsonUserLoader {
+
+        /**
+         * Number of users converted together by one worker
+         */
+        public static final int BATCH_SIZE = 4096;
+
+        private static final TypeReference<Map<String, Object>> USER_TYPE = new TypeReference<>() {
+        };
+
+        /**
+         * Receives progress reports while a file is loaded.
+         */
+        @FunctionalInterface
+        public interface Progress {
+
+                /**
+                 * @param users      Users parsed so far
+                 * @param bytesRead  Bytes of the file consumed so far
+                 * @param totalBytes Size of the file
+                 */
+                void report(long users, long bytesRead, long totalBytes);
+        }
+
+        private final ObjectMapper objectMapper;
+
+        private final int parallelism;
+
+        /**
+         * Creates a loader.
+         *
+         * @param objectMapper The mapper used to parse user objects
+         * @param parallelism  Number of conversion threads, at least 1
+         */
+        public JsonUserLoader(ObjectMapper objectMapper, int parallelism) {
+                this.objectMapper = objectMapper;
+                this.parallelism = Math.max(1, parallelism);
+        }
+
+        /**
+         * Reads every user of a JSON array file. An empty or blank file, or a
+         * JSON null, holds no users.
+         *
+         * @param path     The file to read
+         * @param progress Called each time another tenth of the file was parsed,
+         *                 may be null
+         * @return The users in file order
+         * @throws IOException              if the file cannot be read or is not a
+         *                                  JSON array of objects
+         * @throws IllegalArgumentException if a user object lacks a numeric code
+         *                                  or has a field of the wrong type
+         */
+        public List<UserRecord> load(Path path, Progress progress) throws IOException {
+                long totalBytes = Files.size(path);
+                long step = Math.max(1, totalBytes / 10);
+                List<UserRecord> records = new ArrayList<>();
+                Deque<Future<List<UserRecord>>> inFlight = new ArrayDeque<>();
+                ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                                Thread.ofPlatform().daemon().name("user-loader-", 0).factory());
+                try (InputStream in = Files.newInputStream(path); JsonParser parser = objectMapper.createParser(in)) {
+                        JsonToken first = parser.nextToken();
+                        if (first == null || first == JsonToken.VALUE_NULL) {
+                                return records;
+                        }
+                        if (first != JsonToken.START_ARRAY) {
+                                throw new JsonParseException(parser, "Expected an array of users");
+                        }
+                        List<Map<String, Object>> batch = new ArrayList<>(BATCH_SIZE);
+                        long users = 0;
+                        long nextReport = step;
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                batch.add(objectMapper.readValue(parser, USER_TYPE));
+                                users++;
+                                if (batch.size() == BATCH_SIZE) {
+                                        inFlight.add(submit(workers, batch));
+                                        batch = new ArrayList<>(BATCH_SIZE);
+                                        while (inFlight.size() > 2 * parallelism) {
+                                                records.addAll(await(inFlight.poll()));
+                                        }
+                                }
+                                long bytesRead = parser.currentLocation().getByteOffset();
+                                if (progress != null && bytesRead >= nextReport) {
+                                        progress.report(users, bytesRead, totalBytes);
+                                        nextReport = (bytesRead / step + 1) * step;
+                                }
+                        }
+                        if (parser.currentToken() != JsonToken.END_ARRAY) {
+                                throw new JsonParseException(parser, "Expected a user object");
+                        }
+                        inFlight.add(submit(workers, batch));
+                        while (!inFlight.isEmpty()) {
+                                records.addAll(await(inFlight.poll()));
+                        }
+                        if (progress != null) {
+                                progress.report(users, totalBytes, totalBytes);
+                        }
+                        return records;
+                } finally {
+                        workers.shutdownNow();
+                }
+        }
+
+        private static Future<List<UserRecord>> submit(ExecutorService workers, List<Map<String, Object>> batch) {
+                return workers.submit(() -> {
+                        List<UserRecord> converted = new ArrayList<>(batch.size());
+                        for (Map<String, Object> map : batch) {
+                                converted.add(UserRecord.fromMap(map));
+                        }
+                        return converted;
+                });
+        }
+
+        private static List<UserRecord> await(Future<List<UserRecord>> batch) throws IOException {
+                try {
+                        return batch.get();
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while loading users");
+                } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IllegalArgumentException illegal) {
+                                throw illegal;
+                        }
+                        throw new IllegalArgumentException("Invalid user: " + cause.getMessage(), cause);
+                }
+        }
+}
@@ -0,0 +1,271 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Open-addressing hash index from primitive {@code long} keys to {@code int}
+ * slots.
+ * Keys and values are kept in two parallel primitive buffers and probed
+ * linearly, so lookups, inserts and removals never box the key nor allocate.
+ * Removal uses backward-shift deletion, which keeps probe sequences short
+ * without tombstones. The buffers wrap heap arrays by default, or live in
+ * direct memory outside the Java heap when the index is created off-heap.
+ *
+ * The index is not synchronized; callers are expected to guard it with the
+ * same lock that protects the data it points into.
+ *
+ * @version 1.0
+ * @since 2025-02-10
+ */
+public final class LongIndex {
+
+        /**
+         * Value returned when a key is not present in the index
+         */
+        public static final int ABSENT = -1;
+
+        /**
+         * Marker for empty cells. The key itself is stored aside in
+         * {@link #emptyKeyValue} so it can still be indexed.
+         */
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private static final int MIN_CAPACITY = 16;
+
+        private static final int MAX_OFF_HEAP_CAPACITY = 1 << 28;
+
+        private final boolean offHeap;
+
+        private LongBuffer keys;
+
+        private IntBuffer values;
+
+        private int capacity;
+
+        private int mask;
+
+        private int size;
+
+        /**
+         * Slot stored for the key that collides with the {@link #EMPTY} marker, or
+         * {@link #ABSENT}
+         */
+        private int emptyKeyValue = ABSENT;
+
+        /**
+         * Creates an index sized to hold the expected number of keys without
+         * resizing.
+         *
+         * @param expectedSize The number of keys expected to be stored
+         */
+        public LongIndex(int expectedSize) {
+                this(expectedSize, false);
+        }
+
+        /**
+         * Creates an index sized to hold the expected number of keys without
+         * resizing, on the heap or in direct memory.
+         *
+         * @param expectedSize The number of keys expected to be stored
+         * @param offHeap      Whether to keep the table in direct memory
+         */
+        public LongIndex(int expectedSize, boolean offHeap) {
+                this.offHeap = offHeap;
+                allocate(capacityFor(expectedSize));
+        }
+
+        /**
+         * Returns the slot stored for the key.
+         *
+         * @param key The key to look up
+         * @return The stored slot, or {@link #ABSENT} if the key is not indexed
+         */
+        public int get(long key) {
+                if (key == EMPTY) {
+                        return emptyKeyValue;
+                }
+                int cell = mix(key) & mask;
+                long current;
+                while ((current = keys.get(cell)) != EMPTY) {
+                        if (current == key) {
+                                return values.get(cell);
+                        }
+                        cell = (cell + 1) & mask;
+                }
+                return ABSENT;
+        }
+
+        /**
+         * Associates the key with the given slot, replacing any previous slot.
+         *
+         * @param key   The key to index
+         * @param value The slot to store, must not be negative
+         * @return The previous slot, or {@link #ABSENT} if the key was new
+         */
+        public int put(long key, int value) {
+                if (value < 0) {
+                        throw new IllegalArgumentException("Slot must not be negative: " + value);
+                }
+                if (key == EMPTY) {
+                        int previous = emptyKeyValue;
+                        emptyKeyValue = value;
+                        if (previous == ABSENT) {
+                                size++;
+                        }
+                        return previous;
+                }
+                int cell = mix(key) & mask;
+                long current;
+                while ((current = keys.get(cell)) != EMPTY) {
+                        if (current == key) {
+                                int previous = values.get(cell);
+                                values.put(cell, value);
+                                return previous;
+                        }
+                        cell = (cell + 1) & mask;
+                }
+                keys.put(cell, key);
+                values.put(cell, value);
+                if (++size > maxFill()) {
+                        allocate(capacity << 1);
+                }
+                return ABSENT;
+        }
+
+        /**
+         * Removes the key from the index.
+         *
+         * @param key The key to remove
+         * @return The slot that was stored for the key, or {@link #ABSENT}
+         */
+        public int remove(long key) {
+                if (key == EMPTY) {
+                        int previous = emptyKeyValue;
+                        if (previous != ABSENT) {
+                                emptyKeyValue = ABSENT;
+                                size--;
+                        }
+                        return previous;
+                }
+                int cell = mix(key) & mask;
+                long current;
+                while ((current = keys.get(cell)) != EMPTY) {
+                        if (current == key) {
+                                int previous = values.get(cell);
+                                shiftBack(cell);
+                                size--;
+                                return previous;
+                        }
+                        cell = (cell + 1) & mask;
+                }
+                return ABSENT;
+        }
+
+        /**
+         * @return The number of keys in the index
+         */
+        public int size() {
+                return size;
+        }
+
+        /**
+         * Removes every key from the index, keeping its current capacity.
+         */
+        public void clear() {
+                fillEmpty(keys);
+                emptyKeyValue = ABSENT;
+                size = 0;
+        }
+
+        /**
+         * Fills the hole left at the given cell by moving back the entries of the
+         * same probe run whose home cell is at or before the hole.
+         *
+         * @param hole The cell that was just emptied
+         */
+        private void shiftBack(int hole) {
+                int cell = (hole + 1) & mask;
+                long current;
+                while ((current = keys.get(cell)) != EMPTY) {
+                        int home = mix(current) & mask;
+                        if (((cell - home) & mask) >= ((cell - hole) & mask)) {
+                                keys.put(hole, current);
+                                values.put(hole, values.get(cell));
+                                hole = cell;
+                        }
+                        cell = (cell + 1) & mask;
+                }
+                keys.put(hole, EMPTY);
+        }
+
+        /**
+         * Allocates new buffers of the given capacity and reinserts the current
+         * entries.
+         *
+         * @param newCapacity The new capacity, a power of two
+         */
+        private void allocate(int newCapacity) {
+                if (offHeap && newCapacity > MAX_OFF_HEAP_CAPACITY) {
+                        throw new IllegalStateException("Off-heap index cannot grow past " + MAX_OFF_HEAP_CAPACITY);
+                }
+                LongBuffer oldKeys = keys;
+                IntBuffer oldValues = values;
+                int oldCapacity = capacity;
+                if (offHeap) {
+                        keys = ByteBuffer.allocateDirect(newCapacity * Long.BYTES).order(ByteOrder.nativeOrder())
+                                        .asLongBuffer();
+                        values = ByteBuffer.allocateDirect(newCapacity * Integer.BYTES).order(ByteOrder.nativeOrder())
+                                        .asIntBuffer();
+                } else {
+                        keys = LongBuffer.wrap(new long[newCapacity]);
+                        values = IntBuffer.wrap(new int[newCapacity]);
+                }
+                capacity = newCapacity;
+                mask = newCapacity - 1;
+                fillEmpty(keys);
+                if (oldKeys == null) {
+                        return;
+                }
+                for (int i = 0; i < oldCapacity; i++) {
+                        long key = oldKeys.get(i);
+                        if (key != EMPTY) {
+                                int cell = mix(key) & mask;
+                                while (keys.get(cell) != EMPTY) {
+                                        cell = (cell + 1) & mask;
+                                }
+                                keys.put(cell, key);
+                                values.put(cell, oldValues.get(i));
+                        }
+                }
+        }
+
+        private static void fillEmpty(LongBuffer buffer) {
+                for (int i = 0; i < buffer.capacity(); i++) {
+                        buffer.put(i, EMPTY);
+                }
+        }
+
+        private int maxFill() {
+                return (capacity >> 2) * 3;
+        }
+
+        private static int capacityFor(int expectedSize) {
+                long needed = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedSize / 0.75));
+                long capacity = Long.highestOneBit(needed - 1) << 1;
+                if (capacity > (1 << 30)) {
+                        throw new IllegalArgumentException("Too many keys: " + expectedSize);
+                }
+                return (int) capacity;
+        }
+
+        /**
+         * Spreads the bits of the key so sequential codes do not cluster.
+         */
+        private static int mix(long key) {
+                long h = key * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32));
+        }
+}
@@ -0,0 +1,187 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-layout user store kept in a memory-mapped file.
+ * Every user occupies one slot of {@link #SLOT_SIZE} bytes at a known offset,
+ * so a mutation writes and forces only the bytes of the affected slot, and
+ * loading the file is a plain decode of the mapped region with no JSON
+ * parsing. Slot {@code i} of the file mirrors position {@code i} of the
+ * repository data list.
+ *
+ * File layout:
+ * - header (64 bytes): magic, version, slot size, slot count
+ * - slots (512 bytes each) in the {@link UserSlots} layout
+ *
+ * The file is mapped in segments of {@link #SEGMENT_SLOTS} slots, so it can
+ * grow past the 2 GB limit of a single mapping.
+ *
+ * @version 1.0
+ * @since 2025-02-16
+ */
+public class MappedUserFile implements Closeable {
+
+        private static final int MAGIC = 0x5553524D;
+
+        private static final int VERSION = 1;
+
+        private static final int HEADER_SIZE = 64;
+
+        /**
+         * Size of one user slot in bytes
+         */
+        public static final int SLOT_SIZE = UserSlots.SLOT_SIZE;
+
+        private static final int SEGMENT_SLOTS = 1 << 17;
+
+        private static final int SEGMENT_SIZE = SEGMENT_SLOTS * SLOT_SIZE;
+
+        private static final int COUNT_OFFSET = 12;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer header;
+
+        private final List<MappedByteBuffer> segments;
+
+        private int count;
+
+        /**
+         * Opens (or creates) a mapped user file.
+         *
+         * @param path The file to map
+         * @throws IOException if the file cannot be opened or has a foreign layout
+         */
+        public MappedUserFile(Path path) throws IOException {
+                this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+                boolean created = channel.size() == 0;
+                this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                this.segments = new ArrayList<>();
+                if (created) {
+                        header.putInt(0, MAGIC);
+                        header.putInt(4, VERSION);
+                        header.putInt(8, SLOT_SIZE);
+                        header.putInt(COUNT_OFFSET, 0);
+                        header.force();
+                } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                                || header.getInt(8) != SLOT_SIZE) {
+                        channel.close();
+                        throw new IOException("Not a user store file: " + path);
+                }
+                this.count = header.getInt(COUNT_OFFSET);
+                ensureCapacity(count);
+        }
+
+        /**
+         * @return The number of users stored
+         */
+        public int count() {
+                return count;
+        }
+
+        /**
+         * Checks whether every field of the user fits in its fixed-size slot
+         * field.
+         *
+         * @param user The user to check
+         * @return true if the user can be stored
+         */
+        public static boolean fits(UserRecord user) {
+                return UserSlots.fits(user);
+        }
+
+        /**
+         * Decodes the user stored in a slot.
+         *
+         * @param slot The slot, lower than {@link #count()}
+         * @return The user
+         */
+        public UserRecord read(int slot) {
+                return UserSlots.read(segments.get(slot / SEGMENT_SLOTS), (slot % SEGMENT_SLOTS) * SLOT_SIZE);
+        }
+
+        /**
+         * Writes a user into a slot and forces the slot to disk. Writing the slot
+         * right after the last one appends it.
+         *
+         * @param slot The slot, at most {@link #count()}
+         * @param user The user, which must satisfy {@link #fits(UserRecord)}
+         * @throws IOException if the file cannot grow
+         */
+        public void write(int slot, UserRecord user) throws IOException {
+                if (slot > count) {
+                        throw new IllegalArgumentException("Slot " + slot + " leaves a gap after " + count);
+                }
+                ensureCapacity(slot + 1);
+                MappedByteBuffer buffer = segments.get(slot / SEGMENT_SLOTS);
+                int base = (slot % SEGMENT_SLOTS) * SLOT_SIZE;
+                UserSlots.write(buffer, base, user);
+                buffer.force(base, SLOT_SIZE);
+                if (slot == count) {
+                        setCount(count + 1);
+                }
+        }
+
+        /**
+         * Removes a slot by copying the last slot over it, mirroring the
+         * swap-remove done on the repository data list.
+         *
+         * @param slot The slot to remove
+         */
+        public void removeSwap(int slot) {
+                int last = count - 1;
+                if (slot != last) {
+                        MappedByteBuffer target = segments.get(slot / SEGMENT_SLOTS);
+                        int targetBase = (slot % SEGMENT_SLOTS) * SLOT_SIZE;
+                        ByteBuffer source = segments.get(last / SEGMENT_SLOTS)
+                                        .slice((last % SEGMENT_SLOTS) * SLOT_SIZE, SLOT_SIZE);
+                        target.put(targetBase, source, 0, SLOT_SIZE);
+                        target.force(targetBase, SLOT_SIZE);
+                }
+                setCount(last);
+        }
+
+        /**
+         * Replaces the whole content of the file with the given users.
+         *
+         * @param users The users, in repository order
+         * @throws IOException if the file cannot grow
+         */
+        public void writeAll(List<UserRecord> users) throws IOException {
+                setCount(0);
+                for (int slot = 0; slot < users.size(); slot++) {
+                        write(slot, users.get(slot));
+                }
+        }
+
+        private void setCount(int count) {
+                this.count = count;
+                header.putInt(COUNT_OFFSET, count);
+                header.force();
+        }
+
+        /**
+         * Maps enough segments to hold the given number of slots.
+         */
+        private void ensureCapacity(int slots) throws IOException {
+                while ((long) segments.size() * SEGMENT_SLOTS < slots) {
+                        long position = HEADER_SIZE + (long) segments.size() * SEGMENT_SIZE;
+                        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+                }
+        }
+
+        @Override
+        public void close() throws IOException {
+                channel.close();
+        }
+}
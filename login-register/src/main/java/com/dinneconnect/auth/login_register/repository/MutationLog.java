@@ -0,0 +1,191 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead log of repository mutations.
+ * Each mutation is stored as one compact JSON object per line, so the cost of
+ * a write depends on the size of the change and not on the size of the
+ * dataset. On startup the log is replayed over the last snapshot; a torn last
+ * line left by a crash is detected and cut off.
+ *
+ * Record shapes:
+ * - {"op":"insert","entity":{...}}
+ * - {"op":"update","code":123,"fields":{...},"version":4}
+ * - {"op":"delete","code":123}
+ *
+ * @version 1.0
+ * @since 2025-02-12
+ */
+public class MutationLog implements Closeable {
+
+        /**
+         * Path of the log file
+         */
+        private final Path path;
+
+        /**
+         * ObjectMapper used to encode and decode the records
+         */
+        private final ObjectMapper objectMapper;
+
+        /**
+         * Channel opened for appending
+         */
+        private final FileChannel channel;
+
+        /**
+         * Number of records written since the log was last truncated
+         */
+        private long records;
+
+        /**
+         * Opens (or creates) the log file at the given path.
+         *
+         * @param path         The log file
+         * @param objectMapper The mapper used for the records
+         * @throws IOException if the file cannot be opened
+         */
+        public MutationLog(Path path, ObjectMapper objectMapper) throws IOException {
+                this.path = path;
+                this.objectMapper = objectMapper;
+                this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+                this.channel.position(channel.size());
+        }
+
+        /**
+         * Reads every complete record from the start of the log and hands it to the
+         * consumer. Reading stops at the first line that cannot be parsed, and the
+         * file is truncated there so new records are not appended after garbage.
+         *
+         * @param consumer Receives each record in log order
+         * @return The number of records replayed
+         * @throws IOException if the file cannot be read
+         */
+        @SuppressWarnings("unchecked")
+        public long replay(Consumer<Map<String, Object>> consumer) throws IOException {
+                long valid = 0;
+                long count = 0;
+                channel.position(0);
+                BufferedReader reader = new BufferedReader(
+                                Channels.newReader(channel, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                        Map<String, Object> record;
+                        try {
+                                record = objectMapper.readValue(line, Map.class);
+                        } catch (IOException e) {
+                                System.err.println("Discarding torn mutation log tail at byte " + valid);
+                                break;
+                        }
+                        consumer.accept(record);
+                        valid += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                        count++;
+                }
+                if (valid < channel.size()) {
+                        channel.truncate(valid);
+                }
+                channel.position(valid);
+                records = count;
+                return count;
+        }
+
+        /**
+         * Encodes a record as a single line, ready to be written.
+         *
+         * @param record The mutation record
+         * @return The UTF-8 bytes of the line, newline included
+         * @throws IOException if the record cannot be serialized
+         */
+        public byte[] encode(Map<String, Object> record) throws IOException {
+                byte[] json = objectMapper.writeValueAsBytes(record);
+                byte[] line = new byte[json.length + 1];
+                System.arraycopy(json, 0, line, 0, json.length);
+                line[json.length] = '\n';
+                return line;
+        }
+
+        /**
+         * Appends one record and forces it to disk before returning.
+         *
+         * @param record The mutation record
+         * @throws IOException if the record cannot be written
+         */
+        public synchronized void append(Map<String, Object> record) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(encode(record));
+                while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                }
+                channel.force(false);
+                records++;
+        }
+
+        /**
+         * Appends several already encoded records with a single write and a single
+         * fsync.
+         *
+         * @param lines Records produced by {@link #encode(Map)}, in log order
+         * @throws IOException if the records cannot be written
+         */
+        public synchronized void appendBatch(List<byte[]> lines) throws IOException {
+                int length = 0;
+                for (byte[] line : lines) {
+                        length += line.length;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                for (byte[] line : lines) {
+                        buffer.put(line);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                }
+                channel.force(false);
+                records += lines.size();
+        }
+
+        /**
+         * Discards every record, typically right after a snapshot made them
+         * redundant.
+         *
+         * @throws IOException if the file cannot be truncated
+         */
+        public synchronized void truncate() throws IOException {
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                records = 0;
+        }
+
+        /**
+         * @return The number of records written since the last truncation
+         */
+        public synchronized long size() {
+                return records;
+        }
+
+        /**
+         * @return The path of the log file
+         */
+        public Path getPath() {
+                return path;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+                channel.close();
+        }
+}
@@ -0,0 +1,142 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of users encoded in direct memory, outside the Java heap.
+ * Every user occupies one {@link UserSlots} slot in a chain of direct
+ * buffers, so the table adds no objects for the garbage collector to trace
+ * no matter how many users it holds. A user is decoded into a short-lived
+ * {@link UserRecord} on every {@link #get(int)}.
+ *
+ * Memory is allocated in segments of {@link #SEGMENT_SLOTS} slots and counts
+ * against {@code -XX:MaxDirectMemorySize}. It is returned to the system when
+ * the list is garbage collected.
+ *
+ * The list is not synchronized; callers are expected to guard it with the
+ * repository lock.
+ *
+ * @version 1.0
+ * @since 2025-02-22
+ */
+public class OffHeapUserList extends AbstractList<UserRecord> implements RandomAccess {
+
+        /**
+         * Number of slots per direct buffer
+         */
+        public static final int SEGMENT_SLOTS = 1 << 16;
+
+        private static final int SLOT_SIZE = UserSlots.SLOT_SIZE;
+
+        private final List<ByteBuffer> segments;
+
+        private int size;
+
+        /**
+         * Creates an empty list. No memory is allocated until the first user is
+         * added.
+         */
+        public OffHeapUserList() {
+                this.segments = new ArrayList<>();
+        }
+
+        @Override
+        public int size() {
+                return size;
+        }
+
+        @Override
+        public UserRecord get(int index) {
+                checkIndex(index, size);
+                return UserSlots.read(segments.get(index / SEGMENT_SLOTS), offset(index));
+        }
+
+        /**
+         * Reads only the code of a user, without decoding its strings.
+         *
+         * @param index The position of the user
+         * @return The user code
+         */
+        public long getCode(int index) {
+                checkIndex(index, size);
+                return UserSlots.readCode(segments.get(index / SEGMENT_SLOTS), offset(index));
+        }
+
+        /**
+         * Replaces the user at the given position.
+         *
+         * @throws IllegalArgumentException if a field does not fit in its slot
+         */
+        @Override
+        public UserRecord set(int index, UserRecord user) {
+                UserRecord previous = get(index);
+                UserSlots.write(segments.get(index / SEGMENT_SLOTS), offset(index), user);
+                return previous;
+        }
+
+        /**
+         * Appends a user.
+         *
+         * @throws IllegalArgumentException if a field does not fit in its slot
+         */
+        @Override
+        public boolean add(UserRecord user) {
+                if (size == segments.size() * SEGMENT_SLOTS) {
+                        segments.add(ByteBuffer.allocateDirect(SEGMENT_SLOTS * SLOT_SIZE));
+                }
+                UserSlots.write(segments.get(size / SEGMENT_SLOTS), offset(size), user);
+                size++;
+                modCount++;
+                return true;
+        }
+
+        /**
+         * Removes the user at the given position, shifting the following slots
+         * down. Removing the last user copies nothing.
+         */
+        @Override
+        public UserRecord remove(int index) {
+                UserRecord removed = get(index);
+                for (int i = index; i < size - 1; i++) {
+                        copySlot(i + 1, i);
+                }
+                size--;
+                modCount++;
+                return removed;
+        }
+
+        /**
+         * Forgets every user, keeping the allocated segments for reuse.
+         */
+        @Override
+        public void clear() {
+                size = 0;
+                modCount++;
+        }
+
+        /**
+         * @return The number of bytes of direct memory held by the list
+         */
+        public long allocatedBytes() {
+                return (long) segments.size() * SEGMENT_SLOTS * SLOT_SIZE;
+        }
+
+        private void copySlot(int from, int to) {
+                ByteBuffer source = segments.get(from / SEGMENT_SLOTS);
+                segments.get(to / SEGMENT_SLOTS).put(offset(to), source, offset(from), SLOT_SIZE);
+        }
+
+        private static int offset(int index) {
+                return (index % SEGMENT_SLOTS) * SLOT_SIZE;
+        }
+
+        private static void checkIndex(int index, int size) {
+                if (index < 0 || index >= size) {
+                        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+                }
+        }
+}
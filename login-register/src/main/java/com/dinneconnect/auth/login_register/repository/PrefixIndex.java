@@ -0,0 +1,98 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index from the case-folded value of one user field to the codes of
+ * the users holding it, answering prefix queries for autocomplete.
+ * Entries are kept in a concurrent skip list ordered by key and then by
+ * code, so a query seeks to the first key not below the prefix and walks
+ * forward until the keys stop matching or enough codes were found. A query
+ * therefore costs a logarithmic seek plus the number of results, however
+ * many users the index holds.
+ *
+ * The index is thread-safe and keyed by user code rather than slot, so it
+ * can be read without the repository lock and does not change when users
+ * move between slots. The keys are the instances precomputed by
+ * {@link UserRecord#key(String)}, so with heap storage the index adds no
+ * strings of its own.
+ *
+ * @version 1.0
+ * @since 2025-02-25
+ */
+public final class PrefixIndex {
+
+        private record Entry(String key, long code) {
+        }
+
+        private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::key)
+                        .thenComparingLong(Entry::code);
+
+        private final ConcurrentSkipListSet<Entry> entries;
+
+        /**
+         * Creates an empty index.
+         */
+        public PrefixIndex() {
+                this.entries = new ConcurrentSkipListSet<>(ORDER);
+        }
+
+        /**
+         * Adds a user under a key.
+         *
+         * @param key  The case-folded value, ignored if null or empty
+         * @param code The code of the user
+         */
+        public void add(String key, long code) {
+                if (key != null && !key.isEmpty()) {
+                        entries.add(new Entry(key, code));
+                }
+        }
+
+        /**
+         * Removes a user from a key.
+         *
+         * @param key  The case-folded value the user was added under
+         * @param code The code of the user
+         */
+        public void remove(String key, long code) {
+                if (key != null && !key.isEmpty()) {
+                        entries.remove(new Entry(key, code));
+                }
+        }
+
+        /**
+         * Finds the users whose key starts with a prefix, in key order.
+         *
+         * @param prefix The case-folded prefix
+         * @param limit  Maximum number of codes to return
+         * @return The codes of the first matching users
+         */
+        public long[] search(String prefix, int limit) {
+                long[] codes = new long[Math.max(0, limit)];
+                int found = 0;
+                for (Entry entry : entries.tailSet(new Entry(prefix, Long.MIN_VALUE))) {
+                        if (found == codes.length || !entry.key().startsWith(prefix)) {
+                                break;
+                        }
+                        codes[found++] = entry.code();
+                }
+                return found == codes.length ? codes : Arrays.copyOf(codes, found);
+        }
+
+        /**
+         * @return The number of indexed keys
+         */
+        public int size() {
+                return entries.size();
+        }
+
+        /**
+         * Removes every entry from the index.
+         */
+        public void clear() {
+                entries.clear();
+        }
+}
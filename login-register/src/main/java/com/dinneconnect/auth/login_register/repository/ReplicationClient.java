@@ -0,0 +1,259 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follower side of the replication of a {@link BaseRepository}: follows the
+ * log shipped by a {@link ReplicationServer} and applies it to the local
+ * repository, which serves reads from its own memory.
+ * The client connects with the last sequence number it applied and the
+ * epoch of the log it was numbered in, so after a short interruption it
+ * resumes where it stopped; otherwise, e.g. after the primary restarted with
+ * a new log, the primary sends a full snapshot first. A record that does not
+ * follow the last applied one, or comes from another epoch, is never
+ * skipped: the client drops the connection and resumes or resynchronizes
+ * from there. A lost connection, or a primary silent for three heartbeats,
+ * is retried every {@link #RETRY_MILLIS}. The client and the primary prove
+ * to each other that they know the shared secret before anything is applied
+ * (see {@link ReplicationAuth}).
+ *
+ * Replication lag is tracked as the number of records the follower still
+ * has to apply, from the primary's latest sequence number, and as the time
+ * between a record being applied on the primary and on the follower.
+ *
+ * @version 1.0
+ * @since 2025-03-01
+ */
+public class ReplicationClient implements Closeable {
+
+        /**
+         * Delay before reconnecting to the primary
+         */
+        public static final long RETRY_MILLIS = 1000;
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationClient.class);
+
+        private final BaseRepository repository;
+
+        private final InetSocketAddress primary;
+
+        private final ObjectMapper objectMapper;
+
+        private final ReplicationAuth auth;
+
+        private final Thread follower;
+
+        private volatile Socket socket;
+
+        private volatile boolean running;
+
+        private volatile boolean connected;
+
+        /**
+         * Sequence number of the last record applied, -1 before the first
+         * snapshot
+         */
+        private volatile long appliedSequence;
+
+        /**
+         * Epoch of the primary's log the applied sequence number belongs to, -1
+         * before the first snapshot
+         */
+        private volatile long epoch;
+
+        /**
+         * Latest sequence number announced by the primary
+         */
+        private volatile long primarySequence;
+
+        /**
+         * Milliseconds between the last applied record being applied on the
+         * primary and here, 0 once a heartbeat showed nothing is missing
+         */
+        private volatile long lagMillis;
+
+        /**
+         * Starts following a primary.
+         *
+         * @param repository The local repository, switched to follower mode by
+         *                   the caller
+         * @param primary    The address of the primary's replication server
+         * @param secret     The secret shared with the primary
+         * @throws IllegalArgumentException if the secret is too short
+         */
+        public ReplicationClient(BaseRepository repository, InetSocketAddress primary, String secret) {
+                this.auth = new ReplicationAuth(secret);
+                this.repository = repository;
+                this.primary = primary;
+                this.objectMapper = new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                this.appliedSequence = -1;
+                this.epoch = -1;
+                this.running = true;
+                this.follower = new Thread(this::run, "user-replication-follower");
+                this.follower.setDaemon(true);
+                this.follower.start();
+        }
+
+        /**
+         * @return Whether the follower is connected, the epoch of the followed
+         *         log, the applied and announced sequence numbers, and the lag
+         *         in records and milliseconds
+         */
+        public Map<String, Object> status() {
+                long applied = appliedSequence;
+                long announced = Math.max(primarySequence, applied);
+                Map<String, Object> status = new LinkedHashMap<>();
+                status.put("connected", connected);
+                status.put("epoch", epoch);
+                status.put("appliedSequence", applied);
+                status.put("primarySequence", announced);
+                status.put("lagRecords", applied < 0 ? -1 : announced - applied);
+                status.put("lagMillis", lagMillis);
+                return status;
+        }
+
+        /**
+         * @return The sequence number of the last applied record, -1 before the
+         *         first snapshot
+         */
+        public long getAppliedSequence() {
+                return appliedSequence;
+        }
+
+        private void run() {
+                while (running) {
+                        try (Socket connection = new Socket()) {
+                                socket = connection;
+                                connection.connect(primary, (int) RETRY_MILLIS);
+                                connection.setSoTimeout((int) (3 * ReplicationServer.HEARTBEAT_MILLIS));
+                                OutputStream out = connection.getOutputStream();
+                                MappingIterator<Map<String, Object>> messages = objectMapper.readerFor(Map.class)
+                                                .readValues(connection.getInputStream());
+                                Object primaryChallenge = expect(messages, "challenge").get("challenge");
+                                String challenge = auth.challenge();
+                                Map<String, Object> hello = new LinkedHashMap<>();
+                                hello.put("after", appliedSequence);
+                                hello.put("epoch", epoch);
+                                hello.put("proof", auth.prove("follower", String.valueOf(primaryChallenge)));
+                                hello.put("challenge", challenge);
+                                out.write(objectMapper.writeValueAsBytes(hello));
+                                out.write('\n');
+                                out.flush();
+                                if (!auth.verify("primary", challenge, expect(messages, "welcome").get("proof"))) {
+                                        throw new IOException("Primary failed authentication");
+                                }
+                                connected = true;
+                                follow(messages);
+                        } catch (IOException | RuntimeException e) {
+                                if (running) {
+                                        LOGGER.warn("Replication from {} interrupted: {}", primary, e.getMessage());
+                                }
+                        } finally {
+                                connected = false;
+                        }
+                        if (running) {
+                                try {
+                                        Thread.sleep(RETRY_MILLIS);
+                                } catch (InterruptedException e) {
+                                        return;
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Reads the next message of the handshake.
+         *
+         * @throws IOException if the connection ends or sends another message,
+         *                     e.g. because the secrets differ
+         */
+        private Map<String, Object> expect(MappingIterator<Map<String, Object>> messages, String op)
+                        throws IOException {
+                if (!messages.hasNext()) {
+                        throw new IOException("Primary closed the connection, check the replication secret");
+                }
+                Map<String, Object> message = messages.next();
+                if (!op.equals(message.get("op"))) {
+                        throw new IOException("Expected " + op + " but got " + message.get("op"));
+                }
+                return message;
+        }
+
+        /**
+         * Applies the messages of one connection until it ends.
+         */
+        @SuppressWarnings("unchecked")
+        private void follow(MappingIterator<Map<String, Object>> messages) throws IOException {
+                while (running && messages.hasNext()) {
+                        Map<String, Object> message = messages.next();
+                        long sequence = ((Number) message.get("sequence")).longValue();
+                        long messageEpoch = ((Number) message.get("epoch")).longValue();
+                        switch (String.valueOf(message.get("op"))) {
+                                case "snapshot" -> {
+                                        int count = ((Number) message.get("count")).intValue();
+                                        List<UserRecord> users = new ArrayList<>(count);
+                                        for (int i = 0; i < count; i++) {
+                                                users.add(UserRecord.fromMap(auth.openPasswords(messages.next())));
+                                        }
+                                        repository.installReplicatedSnapshot(users);
+                                        epoch = messageEpoch;
+                                        appliedSequence = sequence;
+                                        primarySequence = sequence;
+                                        LOGGER.info("Installed replicated snapshot of {} users at {}", count, sequence);
+                                }
+                                case "record" -> {
+                                        if (messageEpoch != epoch || sequence != appliedSequence + 1) {
+                                                throw new IOException("Expected record " + (appliedSequence + 1)
+                                                                + " of epoch " + epoch + " but got " + sequence
+                                                                + " of epoch " + messageEpoch + ", resynchronizing");
+                                        }
+                                        Map<String, Object> record = (Map<String, Object>) message.get("record");
+                                        repository.applyReplicated(auth.openPasswords(record));
+                                        appliedSequence = sequence;
+                                        lagMillis = Math.max(0, System.currentTimeMillis()
+                                                        - ((Number) message.get("time")).longValue());
+                                        primarySequence = Math.max(primarySequence, sequence);
+                                }
+                                case "heartbeat" -> {
+                                        if (messageEpoch != epoch) {
+                                                throw new IOException("Primary moved to epoch " + messageEpoch
+                                                                + ", resynchronizing");
+                                        }
+                                        primarySequence = sequence;
+                                        if (sequence == appliedSequence) {
+                                                lagMillis = 0;
+                                        }
+                                }
+                                default -> LOGGER.warn("Skipping unknown replication message: {}", message);
+                        }
+                }
+        }
+
+        /**
+         * Stops following and closes the connection.
+         */
+        @Override
+        public void close() throws IOException {
+                running = false;
+                Socket current = socket;
+                if (current != null) {
+                        current.close();
+                }
+                follower.interrupt();
+        }
+}
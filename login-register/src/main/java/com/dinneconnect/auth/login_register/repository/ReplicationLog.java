@@ -0,0 +1,137 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory backlog of the mutation records of a primary repository, for
+ * shipping to followers and to the consumers of the change feed.
+ * Every record gets the next sequence number and the time it was applied.
+ * The backlog keeps the most recent {@code capacity} records, so a follower
+ * that reconnects after a short interruption resumes from its last applied
+ * sequence number; one that fell further behind than the backlog reaches
+ * starts over from a full snapshot.
+ *
+ * Records are appended by the repository under its lock, in the order they
+ * were applied, and read by one sender thread per follower.
+ *
+ * @version 1.0
+ * @since 2025-03-01
+ */
+public class ReplicationLog {
+
+        /**
+         * A mutation record with its sequence number and the time it was
+         * applied on the primary, in epoch milliseconds
+         */
+        public record Entry(long sequence, long time, Map<String, Object> record) {
+        }
+
+        /**
+         * Every user of the primary as of a sequence number, for followers that
+         * cannot resume from the backlog
+         */
+        public record Snapshot(long sequence, List<UserRecord> users) {
+        }
+
+        private final int capacity;
+
+        private final Deque<Entry> backlog;
+
+        /**
+         * Time the log was created, in epoch milliseconds. Sequence numbers start
+         * over in every new log, so a reader resuming from a sequence number
+         * compares epochs to tell that the log was replaced, e.g. by a restart.
+         */
+        private final long epoch = System.currentTimeMillis();
+
+        /**
+         * Sequence number of the last appended record, 0 before the first one
+         */
+        private long lastSequence;
+
+        /**
+         * Creates an empty log.
+         *
+         * @param capacity Number of recent records kept for followers that
+         *                 reconnect
+         */
+        public ReplicationLog(int capacity) {
+                if (capacity < 1) {
+                        throw new IllegalArgumentException("Backlog capacity must be positive: " + capacity);
+                }
+                this.capacity = capacity;
+                this.backlog = new ArrayDeque<>();
+        }
+
+        /**
+         * Appends the records of one mutation and wakes up the senders.
+         *
+         * @param records The records, in the order they were applied
+         */
+        public synchronized void append(List<Map<String, Object>> records) {
+                long now = System.currentTimeMillis();
+                for (Map<String, Object> record : records) {
+                        backlog.addLast(new Entry(++lastSequence, now, record));
+                        if (backlog.size() > capacity) {
+                                backlog.removeFirst();
+                        }
+                }
+                notifyAll();
+        }
+
+        /**
+         * @return The time the log was created, in epoch milliseconds
+         */
+        public long epoch() {
+                return epoch;
+        }
+
+        /**
+         * @return The sequence number of the last appended record
+         */
+        public synchronized long lastSequence() {
+                return lastSequence;
+        }
+
+        /**
+         * Returns the records following a sequence number, waiting for some to
+         * arrive if there are none yet.
+         *
+         * @param after         The last sequence number the follower applied
+         * @param timeoutMillis Maximum time to wait for a new record, 0 to
+         *                      return right away
+         * @return The following records, empty if none arrived in time, or null
+         *         if some of them already left the backlog
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public synchronized List<Entry> after(long after, long timeoutMillis) throws InterruptedException {
+                if (after >= lastSequence && timeoutMillis > 0) {
+                        wait(timeoutMillis);
+                }
+                if (after > lastSequence) {
+                        return null;
+                }
+                if (backlog.isEmpty() ? after < lastSequence : after < backlog.peekFirst().sequence() - 1) {
+                        return null;
+                }
+                // Walk back from the newest record, so a follower that keeps up only
+                // visits the records it is missing
+                List<Entry> entries = new ArrayList<>((int) (lastSequence - after));
+                Iterator<Entry> newestFirst = backlog.descendingIterator();
+                while (newestFirst.hasNext()) {
+                        Entry entry = newestFirst.next();
+                        if (entry.sequence() <= after) {
+                                break;
+                        }
+                        entries.add(entry);
+                }
+                Collections.reverse(entries);
+                return entries;
+        }
+}
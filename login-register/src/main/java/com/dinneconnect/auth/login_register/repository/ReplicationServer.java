@@ -0,0 +1,238 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Primary side of the replication of a {@link BaseRepository}: ships its
+ * {@link ReplicationLog} to followers over TCP.
+ * On a new connection the server sends {@code {"op":"challenge",
+ * "challenge":c}}. The follower answers with one JSON object,
+ * {@code {"after": n, "epoch": e, "proof": p, "challenge": f}}, with the last
+ * sequence number it applied, or -1, the {@link ReplicationLog#epoch() epoch}
+ * of the log it was numbered in, its answer to the challenge and a challenge
+ * of its own. A follower that does not prove it knows the shared secret is
+ * disconnected (see {@link ReplicationAuth}); otherwise the server proves it
+ * too with {@code {"op":"welcome","proof":q}} and goes on with
+ * newline-delimited JSON objects, each carrying the epoch of its log:
+ *
+ * - {@code {"op":"snapshot","epoch":e,"sequence":s,"count":c}} followed by c
+ * user objects, when the follower followed another log, e.g. before the
+ * primary restarted, or cannot resume from the backlog
+ * - {@code {"op":"record","epoch":e,"sequence":s,"time":t,"record":{...}}}
+ * for every mutation, in the order it was applied
+ * - {@code {"op":"heartbeat","epoch":e,"sequence":s,"time":t}} once per
+ * {@link #HEARTBEAT_MILLIS} without mutations, so followers can tell how far
+ * behind they are and detect a dead primary
+ *
+ * Password hashes, in the users of a snapshot and in the records, are
+ * encrypted with the shared secret.
+ *
+ * Each follower is served by its own thread, so a slow follower only delays
+ * itself.
+ *
+ * @version 1.0
+ * @since 2025-03-01
+ */
+public class ReplicationServer implements Closeable {
+
+        /**
+         * Interval of the heartbeats sent to idle followers
+         */
+        public static final long HEARTBEAT_MILLIS = 1000;
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationServer.class);
+
+        private static final TypeReference<Map<String, Object>> MESSAGE_TYPE = new TypeReference<>() {
+        };
+
+        private final BaseRepository repository;
+
+        private final ReplicationLog log;
+
+        private final ObjectMapper objectMapper;
+
+        private final ReplicationAuth auth;
+
+        private final ServerSocket serverSocket;
+
+        private final Set<Socket> followers;
+
+        private final Thread acceptor;
+
+        private volatile boolean running;
+
+        /**
+         * Starts listening for followers.
+         *
+         * @param repository The primary repository, used for snapshots
+         * @param log        The log the repository appends its mutations to
+         * @param address    The address to listen on
+         * @param secret     The secret shared with the followers
+         * @throws IOException              if the address cannot be bound
+         * @throws IllegalArgumentException if the secret is too short
+         */
+        public ReplicationServer(BaseRepository repository, ReplicationLog log, InetSocketAddress address,
+                        String secret) throws IOException {
+                this.auth = new ReplicationAuth(secret);
+                this.repository = repository;
+                this.log = log;
+                this.objectMapper = new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                this.serverSocket = new ServerSocket();
+                this.serverSocket.setReuseAddress(true);
+                this.serverSocket.bind(address);
+                this.followers = ConcurrentHashMap.newKeySet();
+                this.running = true;
+                this.acceptor = new Thread(this::accept, "user-replication-acceptor");
+                this.acceptor.setDaemon(true);
+                this.acceptor.start();
+        }
+
+        /**
+         * @return The address the server listens on
+         */
+        public InetSocketAddress getAddress() {
+                return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+        }
+
+        /**
+         * @return The number of connected followers
+         */
+        public int followerCount() {
+                return followers.size();
+        }
+
+        private void accept() {
+                while (running) {
+                        try {
+                                Socket socket = serverSocket.accept();
+                                socket.setTcpNoDelay(true);
+                                followers.add(socket);
+                                Thread sender = new Thread(() -> serve(socket),
+                                                "user-replication-" + socket.getRemoteSocketAddress());
+                                sender.setDaemon(true);
+                                sender.start();
+                        } catch (IOException e) {
+                                if (running) {
+                                        LOGGER.error("Error accepting follower: {}", e.getMessage());
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Streams the log to one follower until it disconnects.
+         */
+        private void serve(Socket socket) {
+                try (socket; OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+                        String challenge = auth.challenge();
+                        write(out, Map.of("op", "challenge", "challenge", challenge));
+                        out.flush();
+                        socket.setSoTimeout((int) (3 * HEARTBEAT_MILLIS));
+                        Map<String, Object> hello = objectMapper.readValue(socket.getInputStream(), MESSAGE_TYPE);
+                        if (!auth.verify("follower", challenge, hello.get("proof"))) {
+                                LOGGER.warn("Follower {} failed authentication", socket.getRemoteSocketAddress());
+                                return;
+                        }
+                        socket.setSoTimeout(0);
+                        write(out, Map.of("op", "welcome", "proof",
+                                        auth.prove("primary", String.valueOf(hello.get("challenge")))));
+                        long sent = ((Number) hello.getOrDefault("after", -1)).longValue();
+                        long epoch = ((Number) hello.getOrDefault("epoch", -1)).longValue();
+                        LOGGER.info("Follower {} connected after {} of epoch {}", socket.getRemoteSocketAddress(),
+                                        sent, epoch);
+                        if (epoch != log.epoch()) {
+                                // Its sequence numbers belong to another log and say nothing about this one
+                                sent = sendSnapshot(out);
+                                out.flush();
+                        }
+                        while (running) {
+                                List<ReplicationLog.Entry> entries = log.after(sent, HEARTBEAT_MILLIS);
+                                if (entries == null) {
+                                        sent = sendSnapshot(out);
+                                } else if (entries.isEmpty()) {
+                                        Map<String, Object> heartbeat = new LinkedHashMap<>();
+                                        heartbeat.put("op", "heartbeat");
+                                        heartbeat.put("epoch", log.epoch());
+                                        heartbeat.put("sequence", log.lastSequence());
+                                        heartbeat.put("time", System.currentTimeMillis());
+                                        write(out, heartbeat);
+                                } else {
+                                        for (ReplicationLog.Entry entry : entries) {
+                                                Map<String, Object> message = new LinkedHashMap<>();
+                                                message.put("op", "record");
+                                                message.put("epoch", log.epoch());
+                                                message.put("sequence", entry.sequence());
+                                                message.put("time", entry.time());
+                                                message.put("record", auth.sealPasswords(entry.record()));
+                                                write(out, message);
+                                        }
+                                        sent = entries.get(entries.size() - 1).sequence();
+                                }
+                                out.flush();
+                        }
+                } catch (SocketException e) {
+                        // The follower went away
+                } catch (IOException | RuntimeException e) {
+                        LOGGER.error("Error replicating to {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                } finally {
+                        followers.remove(socket);
+                }
+        }
+
+        /**
+         * Sends every user of the repository.
+         *
+         * @return The sequence number the snapshot is consistent with
+         */
+        private long sendSnapshot(OutputStream out) throws IOException {
+                ReplicationLog.Snapshot snapshot = repository.replicationSnapshot();
+                Map<String, Object> header = new LinkedHashMap<>();
+                header.put("op", "snapshot");
+                header.put("epoch", log.epoch());
+                header.put("sequence", snapshot.sequence());
+                header.put("count", snapshot.users().size());
+                write(out, header);
+                for (UserRecord user : snapshot.users()) {
+                        write(out, auth.sealPasswords(user.toMap()));
+                }
+                return snapshot.sequence();
+        }
+
+        private void write(OutputStream out, Map<String, Object> message) throws IOException {
+                out.write(objectMapper.writeValueAsBytes(message));
+                out.write('\n');
+        }
+
+        /**
+         * Stops accepting followers and disconnects the connected ones.
+         */
+        @Override
+        public void close() throws IOException {
+                running = false;
+                serverSocket.close();
+                for (Socket socket : followers) {
+                        socket.close();
+                }
+        }
+}
@@ -0,0 +1,154 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.List;
+
+/**
+ * Settings of the "json" storage engine, as read from the
+ * {@code app.repository.*} properties.
+ * Start from {@link #of(String)}, which holds the defaults of those
+ * properties, and override single settings with the {@code with} methods,
+ * each returning a copy:
+ *
+ * {@code RepositoryOptions.of(path).withPersistence("log").withShards(4)}
+ *
+ * @param path          The file path where the JSON data will be stored, or
+ *                      a ".bin" path for a binary snapshot
+ * @param persistence   One of "snapshot", "log" or "mapped"
+ * @param compactAfter  Log records written before the log is folded into a
+ *                      new snapshot
+ * @param groupWindow   In "log" mode, the group commit batch window in
+ *                      milliseconds; negative disables group commit
+ * @param groupBatch    Maximum number of records per group commit batch
+ * @param storage       "heap" to keep users as objects, or "offheap" to keep
+ *                      them and their indexes in direct memory
+ * @param lockStripes   Number of stripe locks for concurrent updates, rounded
+ *                      up to a power of two; 0 makes every update exclusive
+ * @param shards        Number of shards; 1 keeps every user in the file at
+ *                      the path
+ * @param staleness     In "snapshot" and "log" mode, the write-behind window
+ *                      in milliseconds: mutations return once applied in
+ *                      memory and are persisted in the background within that
+ *                      time. Negative disables write-behind
+ * @param queueCapacity Queued write-behind mutations above which writers wait
+ *                      for the background writer
+ *
+ * @version 1.0
+ * @since 2025-03-03
+ */
+public record RepositoryOptions(String path, String persistence, long compactAfter, long groupWindow,
+                int groupBatch, String storage, int lockStripes, int shards, long staleness, int queueCapacity) {
+
+        /**
+         * Checks the settings.
+         *
+         * @throws IllegalArgumentException if a setting is out of range or
+         *                                  names an unknown mode
+         */
+        public RepositoryOptions {
+                if (!List.of("snapshot", "log", "mapped").contains(persistence)) {
+                        throw new IllegalArgumentException("Unknown persistence mode: " + persistence);
+                }
+                if (!List.of("heap", "offheap").contains(storage)) {
+                        throw new IllegalArgumentException("Unknown storage: " + storage);
+                }
+                if (lockStripes < 0) {
+                        throw new IllegalArgumentException("Negative lock stripes: " + lockStripes);
+                }
+                if (shards < 1) {
+                        throw new IllegalArgumentException("Invalid shard count: " + shards);
+                }
+                if (staleness >= 0 && persistence.equals("mapped")) {
+                        throw new IllegalArgumentException("Write-behind needs snapshot or log persistence");
+                }
+        }
+
+        /**
+         * Returns the default settings for a file: a full snapshot on every
+         * mutation, heap storage, 64 lock stripes, one shard, and neither group
+         * commit nor write-behind.
+         *
+         * @param path The file path where the JSON data will be stored
+         * @return The default settings
+         */
+        public static RepositoryOptions of(String path) {
+                return new RepositoryOptions(path, "snapshot", 10000, -1, 256, "heap", 64, 1, -1, 10000);
+        }
+
+        /**
+         * @param path The file path where the JSON data will be stored
+         * @return A copy stored at another path
+         */
+        public RepositoryOptions withPath(String path) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param persistence One of "snapshot", "log" or "mapped"
+         * @return A copy with another persistence mode
+         */
+        public RepositoryOptions withPersistence(String persistence) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param compactAfter Log records written before the log is folded into
+         *                     a new snapshot
+         * @return A copy compacting after another number of records
+         */
+        public RepositoryOptions withCompactAfter(long compactAfter) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param groupWindow The group commit batch window in milliseconds;
+         *                    negative disables group commit
+         * @param groupBatch  Maximum number of records per batch
+         * @return A copy with other group commit settings
+         */
+        public RepositoryOptions withGroupCommit(long groupWindow, int groupBatch) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param storage "heap" or "offheap"
+         * @return A copy with another storage
+         */
+        public RepositoryOptions withStorage(String storage) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param lockStripes Number of stripe locks; 0 makes every update
+         *                    exclusive
+         * @return A copy with another number of stripes
+         */
+        public RepositoryOptions withLockStripes(int lockStripes) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param shards Number of shards
+         * @return A copy with another number of shards
+         */
+        public RepositoryOptions withShards(int shards) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * @param staleness     The write-behind window in milliseconds; negative
+         *                      disables write-behind
+         * @param queueCapacity Queued mutations above which writers wait
+         * @return A copy with other write-behind settings
+         */
+        public RepositoryOptions withWriteBehind(long staleness, int queueCapacity) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+}
@@ -0,0 +1,672 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.dinneconnect.auth.login_register.models.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * "json" storage engine split by user code into several files, each held by
+ * its own {@link BaseRepository} with its own partition, indexes and writer.
+ * This repository holds no users itself and routes every operation to the
+ * shard owning the code, chosen by a hash of it. Lookups by another field and
+ * full scans fan out to every shard.
+ *
+ * Username and email stay unique across shards: an insert or update first
+ * claims its keys in a shared map, then checks the other shards, and releases
+ * the claims once the owning shard has applied the change.
+ *
+ * The shard files sit next to the configured path, with the shard number
+ * before the extension ("user-0.json", "user-1.json", ...). The first time
+ * sharding is enabled an existing unsharded file is split into them, and a
+ * marker file ("user.shards") records the number of shards once they are all
+ * complete; opening them with another number of shards fails.
+ *
+ * Replication and the change feed are not supported with sharding.
+ *
+ * @version 1.0
+ * @since 2025-03-03
+ */
+public class ShardedRepository implements UserStore {
+
+        /**
+         * Fields kept unique across shards
+         */
+        private static final List<String> UNIQUE_FIELDS = List.of("username", "email");
+
+        /**
+         * Path of the unsharded file the shard files are named after
+         */
+        private final Path relativePath;
+
+        private final ObjectMapper objectMapper;
+
+        /**
+         * The shards, indexed by {@link #shardIndex(long, int)}
+         */
+        private final BaseRepository[] shards;
+
+        /**
+         * Unique keys, as "field:key", claimed by inserts and updates in flight
+         */
+        private final Map<String, Boolean> claims;
+
+        /**
+         * Opens one child repository per shard file, loading them in parallel,
+         * and checks that every user is stored in the shard that owns its code.
+         * Without the marker file, the users of the unsharded file, if there is
+         * one, are first split into the shard files; the unsharded file is left
+         * in place untouched.
+         *
+         * @param options The settings of the repository, with at least two
+         *                shards; every shard is opened with the same settings
+         * @throws IllegalStateException if the files were split into another
+         *                               number of shards, or a user is stored in
+         *                               the wrong shard
+         */
+        public ShardedRepository(RepositoryOptions options) {
+                if (options.shards() < 2) {
+                        throw new IllegalArgumentException("A sharded repository needs at least 2 shards");
+                }
+                this.relativePath = Paths.get(options.path());
+                this.objectMapper = new ObjectMapper();
+                this.claims = new ConcurrentHashMap<>();
+                this.shards = openShards(options);
+        }
+
+        private BaseRepository[] openShards(RepositoryOptions options) {
+                int shardCount = options.shards();
+                Path marker = markerPath(relativePath);
+                if (!Files.exists(marker)) {
+                        boolean split = IntStream.range(0, shardCount).allMatch(shard -> Files.exists(shardPath(shard)));
+                        // Shard files complete without a marker come from a split made
+                        // before the marker existed, and may hold newer writes
+                        if (Files.exists(relativePath) && !split) {
+                                splitIntoShards(options);
+                        }
+                        writeShardCount(shardCount);
+                }
+                int persisted = readShardCount(relativePath);
+                if (persisted != shardCount) {
+                        throw new IllegalStateException(relativePath + " was split into " + persisted
+                                        + " shards, but " + shardCount + " are configured");
+                }
+                BaseRepository[] opened = IntStream.range(0, shardCount)
+                                .parallel()
+                                .mapToObj(shard -> {
+                                        BaseRepository child = new BaseRepository(options
+                                                        .withPath(shardPath(shard).toString())
+                                                        .withShards(1));
+                                        child.verifyShard(shard, shardCount);
+                                        return child;
+                                })
+                                .toArray(BaseRepository[]::new);
+                System.out.println("Opened " + shardCount + " shards");
+                return opened;
+        }
+
+        /**
+         * Writes the users of the unsharded repository into one snapshot per
+         * shard. Every snapshot is written under a temporary name first and
+         * renamed only once all of them are complete, so a crash during the
+         * split leaves no marker and the split is made again on restart.
+         *
+         * @param options The settings of the repository
+         */
+        private void splitIntoShards(RepositoryOptions options) {
+                int shardCount = options.shards();
+                BaseRepository unsharded = new BaseRepository(options
+                                .withCompactAfter(Long.MAX_VALUE)
+                                .withGroupCommit(-1, 1)
+                                .withStorage("heap")
+                                .withLockStripes(0)
+                                .withShards(1)
+                                .withWriteBehind(-1, options.queueCapacity()));
+                List<List<UserRecord>> partitions = new ArrayList<>();
+                for (int shard = 0; shard < shardCount; shard++) {
+                        partitions.add(new ArrayList<>());
+                }
+                for (UserRecord entity : unsharded.getRecords()) {
+                        partitions.get(shardIndex(entity.getCode(), shardCount)).add(entity);
+                }
+                unsharded.close();
+                boolean binary = relativePath.toString().endsWith(".bin");
+                try {
+                        for (int shard = 0; shard < shardCount; shard++) {
+                                Path split = splitPath(shard);
+                                if (binary) {
+                                        BinarySnapshot.write(split, partitions.get(shard));
+                                } else {
+                                        UserRecord.writeJsonArray(objectMapper, split, partitions.get(shard));
+                                }
+                        }
+                        for (int shard = 0; shard < shardCount; shard++) {
+                                SnapshotFile.rename(splitPath(shard), shardPath(shard));
+                        }
+                } catch (IOException e) {
+                        System.err.println("Error splitting users into shards: " + e.getMessage());
+                        throw new UncheckedIOException(e);
+                }
+                System.out.println("Split " + relativePath + " into " + shardCount + " shards");
+        }
+
+        /**
+         * Records the number of shards in the marker file, once every shard
+         * file is complete.
+         *
+         * @param shardCount Number of shards
+         */
+        private void writeShardCount(int shardCount) {
+                try {
+                        Files.createDirectories(relativePath.getParent());
+                        SnapshotFile.write(markerPath(relativePath), false,
+                                        out -> objectMapper.writeValue(out, Map.of("shards", shardCount)));
+                } catch (IOException e) {
+                        System.err.println("Error writing shard marker: " + e.getMessage());
+                        throw new UncheckedIOException(e);
+                }
+        }
+
+        /**
+         * Reads the number of shards recorded next to a repository path.
+         *
+         * @param path The path of the unsharded file
+         * @return The number of shards recorded in the marker file
+         */
+        static int readShardCount(Path path) {
+                try {
+                        return new ObjectMapper().readTree(markerPath(path).toFile()).path("shards").asInt();
+                } catch (IOException e) {
+                        System.err.println("Error reading shard marker: " + e.getMessage());
+                        throw new UncheckedIOException(e);
+                }
+        }
+
+        /**
+         * Path of the marker file recording the number of shards: the repository
+         * path with a ".shards" extension, e.g. "user.shards".
+         *
+         * @param path The path of the unsharded file
+         * @return The path of the marker file
+         */
+        static Path markerPath(Path path) {
+                String name = path.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                return path.resolveSibling((dot < 0 ? name : name.substring(0, dot)) + ".shards");
+        }
+
+        /**
+         * @param shard The shard number
+         * @return The path a shard snapshot is written to while splitting
+         */
+        private Path splitPath(int shard) {
+                return Paths.get(shardPath(shard) + ".split");
+        }
+
+        /**
+         * Path of a shard file of this repository.
+         *
+         * @param shard The shard number
+         * @return The path of the shard file
+         */
+        private Path shardPath(int shard) {
+                return shardPath(relativePath, shard);
+        }
+
+        /**
+         * Path of a shard file: the repository path with the shard number before
+         * its extension, e.g. "user-0.json".
+         *
+         * @param path  The path of the repository
+         * @param shard The shard number
+         * @return The path of the shard file
+         */
+        static Path shardPath(Path path, int shard) {
+                String name = path.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                String shardName = dot < 0 ? name + "-" + shard
+                                : name.substring(0, dot) + "-" + shard + name.substring(dot);
+                return path.resolveSibling(shardName);
+        }
+
+        /**
+         * Picks the shard owning a user code.
+         *
+         * @param code       The user code
+         * @param shardCount Number of shards
+         * @return The shard number
+         */
+        static int shardIndex(long code, int shardCount) {
+                return Math.floorMod(Long.hashCode(code * 0x9E3779B97F4A7C15L), shardCount);
+        }
+
+        /**
+         * @param code The user code
+         * @return The shard repository owning the code
+         */
+        private BaseRepository shardFor(long code) {
+                return shards[shardIndex(code, shards.length)];
+        }
+
+        /**
+         * Claims the unique keys of the given fields for a change about to be
+         * applied to one shard, failing if another change in flight holds one of
+         * them or if another shard already stores it.
+         *
+         * @param values The user holding the candidate values
+         * @param fields The unique fields being written
+         * @param owner  The shard the change is applied to
+         * @return The claims to release once the change is applied, or null if a
+         *         key is taken
+         */
+        private List<String> claimUniqueKeys(UserRecord values, List<String> fields, BaseRepository owner) {
+                List<String> claimed = new ArrayList<>();
+                for (String field : fields) {
+                        String key = values.key(field);
+                        if (key == null) {
+                                continue;
+                        }
+                        String claim = field + ":" + key;
+                        if (claims.putIfAbsent(claim, Boolean.TRUE) != null) {
+                                claimed.forEach(claims::remove);
+                                return null;
+                        }
+                        claimed.add(claim);
+                        for (BaseRepository shard : shards) {
+                                if (shard != owner && shard.getRecordByField(field, key) != null) {
+                                        claimed.forEach(claims::remove);
+                                        return null;
+                                }
+                        }
+                }
+                return claimed;
+        }
+
+        /**
+         * Read-only view of several lists one after another, used to combine the
+         * shard snapshots without copying them.
+         *
+         * @param parts The lists to combine
+         * @return The combined view
+         */
+        private static List<UserRecord> concat(List<List<UserRecord>> parts) {
+                int size = parts.stream().mapToInt(List::size).sum();
+                return new AbstractList<>() {
+                        @Override
+                        public UserRecord get(int index) {
+                                if (index < 0) {
+                                        throw new IndexOutOfBoundsException(index);
+                                }
+                                for (List<UserRecord> part : parts) {
+                                        if (index < part.size()) {
+                                                return part.get(index);
+                                        }
+                                        index -= part.size();
+                                }
+                                throw new IndexOutOfBoundsException(index);
+                        }
+
+                        @Override
+                        public int size() {
+                                return size;
+                        }
+                };
+        }
+
+        /**
+         * Adds a new user to the shard owning its code, once its username and
+         * email are claimed.
+         *
+         * @param entity The user entity to be added
+         * @return The result of the shard, or {@code duplicate=true} if a key is
+         *         taken in another shard
+         */
+        @Override
+        public Map<String, Boolean> postEntity(User entity) {
+                UserRecord record;
+                try {
+                        record = UserRecord.fromMap(entity.toDict());
+                } catch (IllegalArgumentException | ClassCastException e) {
+                        return Map.of("success", false, "invalid", true);
+                }
+                BaseRepository shard = shardFor(record.getCode());
+                List<String> claimed = claimUniqueKeys(record, UNIQUE_FIELDS, shard);
+                if (claimed == null) {
+                        return Map.of("success", false, "duplicate", true);
+                }
+                try {
+                        return shard.postEntity(entity);
+                } finally {
+                        claimed.forEach(claims::remove);
+                }
+        }
+
+        /**
+         * Splits a batch of new users by shard, claiming their unique keys first
+         * so no other shard, nor another user of the batch, can take them. Each
+         * shard persists its part of the batch.
+         *
+         * @param users The users to add
+         * @return The result of each user, in the order of the batch, with the
+         *         reason of a rejection as in {@link BaseRepository#postRecords}
+         */
+        @Override
+        public List<Map<String, Boolean>> postRecords(List<UserRecord> users) {
+                List<Map<String, Boolean>> added = new ArrayList<>(Collections.nCopies(users.size(), null));
+                Map<BaseRepository, List<Integer>> byShard = new HashMap<>();
+                List<String> claimed = new ArrayList<>();
+                try {
+                        for (int i = 0; i < users.size(); i++) {
+                                BaseRepository shard = shardFor(users.get(i).getCode());
+                                List<String> keys = claimUniqueKeys(users.get(i), UNIQUE_FIELDS, shard);
+                                if (keys == null) {
+                                        added.set(i, Map.of("success", false, "duplicate", true));
+                                } else {
+                                        claimed.addAll(keys);
+                                        byShard.computeIfAbsent(shard, owner -> new ArrayList<>()).add(i);
+                                }
+                        }
+                        byShard.entrySet().parallelStream().forEach(entry -> {
+                                List<Integer> positions = entry.getValue();
+                                List<Map<String, Boolean>> result = entry.getKey().postRecords(
+                                                positions.stream().map(users::get).toList());
+                                for (int j = 0; j < positions.size(); j++) {
+                                        added.set(positions.get(j), result.get(j));
+                                }
+                        });
+                } finally {
+                        claimed.forEach(claims::remove);
+                }
+                return added;
+        }
+
+        @Override
+        public UserRecord getRecordByCode(long code) {
+                return shardFor(code).getRecordByCode(code);
+        }
+
+        /**
+         * Retrieves a user by a specific field value from whichever shard holds
+         * it.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return The user, or null if not found
+         */
+        @Override
+        public UserRecord getRecordByField(String field, String value) {
+                if (UNIQUE_FIELDS.contains(field)) {
+                        // An indexed lookup takes well under a microsecond, less than
+                        // handing it to another thread, so the shards are asked in turn
+                        for (BaseRepository shard : shards) {
+                                UserRecord entity = shard.getRecordByField(field, value);
+                                if (entity != null) {
+                                        return entity;
+                                }
+                        }
+                        return null;
+                }
+                return Arrays.stream(shards)
+                                .parallel()
+                                .map(shard -> shard.getRecordByField(field, value))
+                                .filter(Objects::nonNull)
+                                .findFirst()
+                                .orElse(null);
+        }
+
+        /**
+         * Retrieves all users that match a specific field value in every shard.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return List of users matching the criteria
+         */
+        public List<UserRecord> getRecordsByField(String field, String value) {
+                return fanOut(shard -> shard.getRecordsByField(field, value));
+        }
+
+        /**
+         * Retrieves the users whose statuses have the given values in every
+         * shard.
+         *
+         * @param expected Status names mapped to the value users must have
+         * @return The matching users
+         * @throws IllegalArgumentException if a name is not a status
+         */
+        public List<UserRecord> getRecordsByFlags(Map<String, Boolean> expected) {
+                FlagIndex.mask(expected);
+                return fanOut(shard -> shard.getRecordsByFlags(expected));
+        }
+
+        private List<UserRecord> fanOut(Function<BaseRepository, List<UserRecord>> query) {
+                return Arrays.stream(shards)
+                                .parallel()
+                                .flatMap(shard -> query.apply(shard).stream())
+                                .collect(Collectors.toList());
+        }
+
+        /**
+         * Combines the copy-on-write snapshots of every shard without copying
+         * them.
+         *
+         * @return Unmodifiable list of all users
+         */
+        @Override
+        public List<UserRecord> getRecords() {
+                return concat(Arrays.stream(shards).map(BaseRepository::getRecords).toList());
+        }
+
+        /**
+         * Merges the first users after the cursor of every shard.
+         *
+         * @param after The code of the last user of the previous page, or null
+         *              for the first page
+         * @param limit Maximum number of users to return
+         * @return The users of the page
+         */
+        @Override
+        public List<UserRecord> getRecordsAfter(Long after, int limit) {
+                return Arrays.stream(shards)
+                                .parallel()
+                                .flatMap(shard -> shard.getRecordsAfter(after, limit).stream())
+                                .sorted(Comparator.comparingLong(UserRecord::getCode))
+                                .limit(limit)
+                                .collect(Collectors.toList());
+        }
+
+        /**
+         * Scans one shard after the other.
+         *
+         * @return A view that scans the users each time it is iterated
+         */
+        @Override
+        public Iterable<UserRecord> scanRecords() {
+                return () -> Arrays.stream(shards)
+                                .flatMap(shard -> StreamSupport.stream(shard.scanRecords().spliterator(), false))
+                                .iterator();
+        }
+
+        /**
+         * Merges the first prefix matches of every shard, in alphabetical order
+         * of the field.
+         *
+         * @param field  One of "username", "name" or "surname"
+         * @param prefix The prefix to match
+         * @param limit  Maximum number of users to return
+         * @return The first matching users
+         * @throws IllegalArgumentException if the field has no prefix index
+         * @throws IllegalStateException    with off-heap storage
+         */
+        @Override
+        public List<UserRecord> searchByPrefix(String field, String prefix, int limit) {
+                return Arrays.stream(shards)
+                                .parallel()
+                                .flatMap(shard -> shard.searchByPrefix(field, prefix, limit).stream())
+                                .sorted(Comparator.comparing((UserRecord entity) -> entity.key(field))
+                                                .thenComparingLong(UserRecord::getCode))
+                                .limit(limit)
+                                .collect(Collectors.toList());
+        }
+
+        @Override
+        public Map<String, Long> getFlagCounts() {
+                Map<String, Long> counts = new LinkedHashMap<>();
+                counts.put("users", countByFlags(Map.of()));
+                for (String field : FlagIndex.FIELDS) {
+                        counts.put(field, countByFlags(Map.of(field, true)));
+                }
+                return counts;
+        }
+
+        @Override
+        public long countByFlags(Map<String, Boolean> expected) {
+                FlagIndex.mask(expected);
+                return Arrays.stream(shards)
+                                .mapToLong(shard -> shard.countByFlags(expected))
+                                .sum();
+        }
+
+        @Override
+        public Map<String, Boolean> updateEntity(long code, Map<String, Object> updates) {
+                return update(code, updates, shard -> shard.updateEntity(code, updates));
+        }
+
+        @Override
+        public Map<String, Boolean> updateEntityIfVersion(long code, int expectedVersion,
+                        Map<String, Object> updates) {
+                return update(code, updates, shard -> shard.updateEntityIfVersion(code, expectedVersion, updates));
+        }
+
+        /**
+         * Applies an update to the shard owning the code, claiming any username
+         * or email it sets so no other shard can take it meanwhile.
+         *
+         * @param code    The unique identifier of the entity to update
+         * @param updates Map containing the fields to update and their new values
+         * @param apply   Applies the update to the owning shard
+         * @return Map indicating operation success status
+         */
+        private Map<String, Boolean> update(long code, Map<String, Object> updates,
+                        Function<BaseRepository, Map<String, Boolean>> apply) {
+                BaseRepository shard = shardFor(code);
+                List<String> fields = UNIQUE_FIELDS.stream().filter(updates::containsKey).toList();
+                if (fields.isEmpty()) {
+                        return apply.apply(shard);
+                }
+                UserRecord current = shard.getRecordByCode(code);
+                if (current == null) {
+                        return Map.of("success", false);
+                }
+                List<String> claimed;
+                try {
+                        claimed = claimUniqueKeys(current.with(updates), fields, shard);
+                } catch (IllegalArgumentException | ClassCastException e) {
+                        return Map.of("success", false);
+                }
+                if (claimed == null) {
+                        return Map.of("success", false);
+                }
+                try {
+                        return apply.apply(shard);
+                } finally {
+                        claimed.forEach(claims::remove);
+                }
+        }
+
+        @Override
+        public Map<String, Object> deleteEntityByCode(long code) {
+                return shardFor(code).deleteEntityByCode(code);
+        }
+
+        /**
+         * Deletes the users matching a field value in every shard.
+         *
+         * @param field The field to search by
+         * @param value The value to match (case-insensitive)
+         * @return Map indicating whether a user was deleted
+         */
+        public Map<String, Object> deleteEntityByField(String field, String value) {
+                boolean removed = Arrays.stream(shards)
+                                .parallel()
+                                .map(shard -> Boolean.TRUE.equals(shard.deleteEntityByField(field, value).get("success")))
+                                .reduce(false, Boolean::logicalOr);
+                return Map.of("success", removed);
+        }
+
+        /**
+         * Sums the string pool usage of every shard.
+         *
+         * @return The number of distinct pooled values, interned values,
+         *         duplicates replaced and estimated bytes saved
+         */
+        public Map<String, Long> getStringPoolReport() {
+                Map<String, Long> report = new HashMap<>();
+                for (BaseRepository shard : shards) {
+                        shard.getStringPoolReport().forEach((key, value) -> report.merge(key, value, Long::sum));
+                }
+                return report;
+        }
+
+        /**
+         * Sums the write-behind state of every shard, reporting the last error
+         * of any shard that has one.
+         *
+         * @return The combined status
+         */
+        @Override
+        public Map<String, Object> getWriteBehindStatus() {
+                Map<String, Object> status = new LinkedHashMap<>();
+                int pending = 0;
+                long failed = 0;
+                String lastError = null;
+                boolean unpersisted = false;
+                for (BaseRepository shard : shards) {
+                        Map<String, Object> shardStatus = shard.getWriteBehindStatus();
+                        status.putIfAbsent("enabled", shardStatus.get("enabled"));
+                        pending += (Integer) shardStatus.get("pendingWrites");
+                        failed += (Long) shardStatus.get("failedFlushes");
+                        if (shardStatus.get("lastError") != null) {
+                                lastError = (String) shardStatus.get("lastError");
+                        }
+                        unpersisted |= (Boolean) shardStatus.get("unpersisted");
+                }
+                status.put("pendingWrites", pending);
+                status.put("failedFlushes", failed);
+                status.put("lastError", lastError);
+                status.put("unpersisted", unpersisted);
+                return status;
+        }
+
+        /**
+         * Writes a snapshot of every shard.
+         */
+        public void save() {
+                Arrays.stream(shards).parallel().forEach(BaseRepository::save);
+        }
+
+        /**
+         * Closes every shard, flushing their pending writes.
+         */
+        @Override
+        public void close() {
+                Arrays.stream(shards).parallel().forEach(BaseRepository::close);
+        }
+}
@@ -0,0 +1,194 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe writes of snapshot files.
+ *
+ * A snapshot is never written over the live file. It goes to a temporary
+ * file next to it, which is forced to disk and then atomically renamed over
+ * the live file; the directory is forced afterwards so the rename survives a
+ * power loss too. A crash at any byte of the write therefore leaves the
+ * previous complete snapshot in place, plus a stray temporary file that the
+ * next write replaces.
+ *
+ * JSON snapshots end with a footer line after the array, e.g.
+ * {@code {"crc32":"89abcdef","bytes":1234}}, holding the CRC32 and length
+ * of everything before it. The footer is a second JSON value, so streaming
+ * JSON tools still read the file, and {@link #verify(Path)} uses it to tell
+ * a complete snapshot from a damaged one. Binary snapshots need no footer
+ * since {@link BinarySnapshot} checksums every block and ends with a
+ * terminator.
+ *
+ * @version 1.0
+ * @since 2025-03-03
+ */
+public final class SnapshotFile {
+
+        /**
+         * Writes the content of a snapshot.
+         */
+        @FunctionalInterface
+        public interface Content {
+
+                /**
+                 * @param out The stream to write to, which must not be closed
+                 * @throws IOException if the content cannot be written
+                 */
+                void write(OutputStream out) throws IOException;
+        }
+
+        /**
+         * Suffix of the temporary file a snapshot is written to before the rename
+         */
+        public static final String TEMP_SUFFIX = ".tmp";
+
+        private static final Pattern FOOTER = Pattern.compile("\\{\"crc32\":\"([0-9a-f]{8})\",\"bytes\":(\\d+)}");
+
+        /**
+         * Bytes read from the end of a file to find its footer line, which is at
+         * most 49 bytes long
+         */
+        private static final int MAX_FOOTER = 64;
+
+        private SnapshotFile() {
+        }
+
+        /**
+         * Replaces a file with new content through a forced temporary file and
+         * an atomic rename.
+         *
+         * @param path    The file to replace
+         * @param footer  Whether to end the file with a checksum footer line
+         * @param content Writes the new content
+         * @throws IOException if the file cannot be written; the previous file is
+         *                     then left untouched
+         */
+        public static void write(Path path, boolean footer, Content content) throws IOException {
+                Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        CRC32 crc = new CRC32();
+                        OutputStream out = new CheckedOutputStream(
+                                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc);
+                        content.write(new FilterOutputStream(out) {
+                                @Override
+                                public void write(byte[] bytes, int offset, int length) throws IOException {
+                                        out.write(bytes, offset, length);
+                                }
+
+                                @Override
+                                public void close() throws IOException {
+                                        out.flush();
+                                }
+                        });
+                        if (footer) {
+                                out.write('\n');
+                                out.flush();
+                                String line = String.format("{\"crc32\":\"%08x\",\"bytes\":%d}\n", crc.getValue(),
+                                                channel.position());
+                                out.write(line.getBytes(StandardCharsets.US_ASCII));
+                        }
+                        out.flush();
+                        channel.force(true);
+                }
+                rename(temp, path);
+        }
+
+        /**
+         * Atomically replaces a file by another complete file of the same
+         * directory, and makes the rename durable.
+         *
+         * @param source The complete file
+         * @param target The file to replace
+         * @throws IOException if the file cannot be renamed
+         */
+        public static void rename(Path source, Path target) throws IOException {
+                try {
+                        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                forceDirectory(target.toAbsolutePath().getParent());
+        }
+
+        /**
+         * Checks a snapshot against its checksum footer.
+         *
+         * @param path The snapshot file
+         * @return true if the footer matches the content, false if the file has
+         *         no footer, as written before footers existed
+         * @throws IOException if the file cannot be read, or its footer does not
+         *                     match its content
+         */
+        public static boolean verify(Path path) throws IOException {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        long size = channel.size();
+                        int tailLength = (int) Math.min(size, MAX_FOOTER);
+                        ByteBuffer tail = ByteBuffer.allocate(tailLength);
+                        while (tail.hasRemaining()) {
+                                if (channel.read(tail, size - tailLength + tail.position()) < 0) {
+                                        throw new IOException("Snapshot shrank while reading " + path);
+                                }
+                        }
+                        String text = new String(tail.array(), StandardCharsets.US_ASCII);
+                        int start = text.lastIndexOf('\n', text.length() - 2) + 1;
+                        String line = text.substring(start).strip();
+                        if (!line.startsWith("{")) {
+                                // A JSON array ends with "]", a footer line starts with "{"
+                                return false;
+                        }
+                        Matcher footer = FOOTER.matcher(line);
+                        long bytes = size - tailLength + start;
+                        if (!footer.matches() || Long.parseLong(footer.group(2)) != bytes) {
+                                throw new IOException("Damaged snapshot footer in " + path);
+                        }
+                        CRC32 crc = new CRC32();
+                        byte[] buffer = new byte[1 << 16];
+                        long remaining = bytes;
+                        try (InputStream in = Channels.newInputStream(channel.position(0))) {
+                                while (remaining > 0) {
+                                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                                        if (read < 0) {
+                                                break;
+                                        }
+                                        crc.update(buffer, 0, read);
+                                        remaining -= read;
+                                }
+                        }
+                        if (crc.getValue() != Long.parseLong(footer.group(1), 16)) {
+                                throw new IOException("Snapshot checksum mismatch in " + path);
+                        }
+                        return true;
+                }
+        }
+
+        /**
+         * Forces a directory so that a rename inside it is durable. Platforms
+         * that cannot open directories, such as Windows, rely on the rename alone.
+         */
+        private static void forceDirectory(Path directory) {
+                try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                        channel.force(true);
+                } catch (IOException e) {
+                        // Not supported on this platform
+                }
+        }
+}
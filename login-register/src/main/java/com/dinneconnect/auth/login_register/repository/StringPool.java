@@ -0,0 +1,152 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplication pool for repeated field values.
+ * Values such as names and surnames repeat across many users, but every
+ * parsed user gets its own copy of them. Passing them through the pool
+ * replaces equal strings with one shared instance, so the duplicates become
+ * garbage right after the load instead of being retained for the lifetime
+ * of the repository.
+ *
+ * Unlike {@link String#intern()}, the pool is local to its repository. It is
+ * unbounded while the repository loads. Once the repository is open it calls
+ * {@link #bound(int)}, so that the users registered afterwards share the
+ * values already pooled while names of deleted or renamed users are not
+ * retained forever: past the bound, new values are returned unchanged
+ * instead of being added.
+ *
+ * @version 1.0
+ * @since 2025-02-21
+ */
+public class StringPool {
+
+        /**
+         * Estimated size of a String object without its byte array, with
+         * compressed object pointers
+         */
+        private static final int STRING_HEADER = 24;
+
+        /**
+         * Estimated size of an empty byte array
+         */
+        private static final int ARRAY_HEADER = 16;
+
+        private final Map<String, String> pool;
+
+        private final LongAdder requests;
+
+        private final LongAdder deduplicated;
+
+        private final LongAdder savedBytes;
+
+        /**
+         * Number of distinct values above which new values are not added
+         */
+        private volatile int capacity;
+
+        /**
+         * Creates an empty pool.
+         */
+        public StringPool() {
+                this.pool = new ConcurrentHashMap<>();
+                this.requests = new LongAdder();
+                this.deduplicated = new LongAdder();
+                this.savedBytes = new LongAdder();
+                this.capacity = Integer.MAX_VALUE;
+        }
+
+        /**
+         * Returns the pooled instance equal to the value, adding the value to the
+         * pool when it is new and the pool is below its bound. A new value past
+         * the bound is returned as is.
+         *
+         * @param value The value, may be null
+         * @return The shared instance, or null
+         */
+        public String intern(String value) {
+                if (value == null) {
+                        return value;
+                }
+                requests.increment();
+                // Concurrent callers may overshoot the bound by one value each
+                String pooled = pool.size() < capacity ? pool.putIfAbsent(value, value) : pool.get(value);
+                if (pooled == null) {
+                        return value;
+                }
+                if (pooled != value) {
+                        deduplicated.increment();
+                        savedBytes.add(estimateSize(value));
+                }
+                return pooled;
+        }
+
+        /**
+         * Limits the number of distinct pooled values, dropping arbitrary
+         * values above the limit. The values already shared stay shared, and
+         * the usage counters are kept for the report.
+         *
+         * @param capacity The maximum number of distinct values; 0 stops
+         *                 pooling
+         */
+        public void bound(int capacity) {
+                this.capacity = capacity;
+                Iterator<String> values = pool.keySet().iterator();
+                while (pool.size() > capacity && values.hasNext()) {
+                        values.next();
+                        values.remove();
+                }
+        }
+
+        /**
+         * Estimates the heap taken by a string and its backing array, assuming
+         * compact strings.
+         *
+         * @param value The string
+         * @return The estimated size in bytes
+         */
+        static long estimateSize(String value) {
+                int bytes = value.length();
+                for (int i = 0; i < value.length(); i++) {
+                        if (value.charAt(i) > 0xFF) {
+                                bytes = value.length() * 2;
+                                break;
+                        }
+                }
+                return STRING_HEADER + ((ARRAY_HEADER + bytes + 7) & ~7);
+        }
+
+        /**
+         * @return The number of distinct values held by the pool
+         */
+        public int size() {
+                return pool.size();
+        }
+
+        /**
+         * @return The estimated bytes no longer retained thanks to the pool
+         */
+        public long getSavedBytes() {
+                return savedBytes.sum();
+        }
+
+        /**
+         * Summarizes the pool usage.
+         *
+         * @return The number of distinct values, interned values, duplicates
+         *         replaced and estimated bytes saved
+         */
+        public Map<String, Long> report() {
+                Map<String, Long> report = new HashMap<>();
+                report.put("distinct", (long) size());
+                report.put("requests", requests.sum());
+                report.put("deduplicated", deduplicated.sum());
+                report.put("savedBytes", savedBytes.sum());
+                return report;
+        }
+}
@@ -0,0 +1,146 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unique, case-normalized index from the value of one user field to the
+ * slot of its user in the repository data list.
+ * The index stores a 64-bit hash of each key in a {@link LongIndex} instead
+ * of the key itself, and confirms a hit by comparing against the user stored
+ * at the slot, using the key precomputed by {@link UserRecord#key(String)}
+ * so verifying a hit allocates nothing. It therefore holds no per-user objects, and with an off-heap
+ * {@link LongIndex} nothing of it lives on the Java heap. The rare keys whose
+ * hash is already taken by a different key go to a small heap overflow map.
+ *
+ * The index is not synchronized; callers are expected to guard it with the
+ * same lock that protects the data it points into.
+ *
+ * @version 1.0
+ * @since 2025-02-22
+ */
+public final class UniqueIndex {
+
+        private final String field;
+
+        private final LongIndex hashes;
+
+        private final Map<String, Integer> overflow;
+
+        /**
+         * Creates an empty index on the given field.
+         *
+         * @param field   The user field to index
+         * @param offHeap Whether to keep the hash table in direct memory
+         */
+        public UniqueIndex(String field, boolean offHeap) {
+                this.field = field;
+                this.hashes = new LongIndex(0, offHeap);
+                this.overflow = new HashMap<>();
+        }
+
+        /**
+         * Normalizes a field value into its index key.
+         *
+         * @param value The raw field value
+         * @return The lower-cased value, or null if there is nothing to index
+         */
+        public static String key(Object value) {
+                return UserRecord.fold(value);
+        }
+
+        /**
+         * Finds the slot of the user holding the key.
+         *
+         * @param key  The normalized key
+         * @param data The repository data the slots point into
+         * @return The slot, or {@link LongIndex#ABSENT}
+         */
+        public int get(String key, List<UserRecord> data) {
+                int slot = hashes.get(hash(key));
+                if (slot != LongIndex.ABSENT && key.equals(keyAt(data, slot))) {
+                        return slot;
+                }
+                if (overflow.isEmpty()) {
+                        return LongIndex.ABSENT;
+                }
+                Integer overflowSlot = overflow.get(key);
+                return overflowSlot == null ? LongIndex.ABSENT : overflowSlot;
+        }
+
+        /**
+         * Associates the key with a slot, replacing the slot it had before.
+         *
+         * @param key  The normalized key
+         * @param slot The slot of the user holding the key
+         * @param data The repository data the slots point into
+         */
+        public void put(String key, int slot, List<UserRecord> data) {
+                long hash = hash(key);
+                int current = hashes.get(hash);
+                if (current == LongIndex.ABSENT || key.equals(keyAt(data, current))) {
+                        hashes.put(hash, slot);
+                } else {
+                        overflow.put(key, slot);
+                }
+        }
+
+        /**
+         * Removes the key if it still points to the given slot. The user at the
+         * slot must still hold the key.
+         *
+         * @param key  The normalized key
+         * @param slot The slot of the user being unindexed
+         */
+        public void remove(String key, int slot) {
+                long hash = hash(key);
+                if (hashes.get(hash) == slot) {
+                        hashes.remove(hash);
+                } else {
+                        overflow.remove(key, slot);
+                }
+        }
+
+        /**
+         * Points the key at a new slot after its user was moved.
+         *
+         * @param key  The normalized key
+         * @param from The slot the user was moved from
+         * @param to   The slot the user was moved to
+         */
+        public void move(String key, int from, int to) {
+                long hash = hash(key);
+                if (hashes.get(hash) == from) {
+                        hashes.put(hash, to);
+                } else if (Integer.valueOf(from).equals(overflow.get(key))) {
+                        overflow.put(key, to);
+                }
+        }
+
+        /**
+         * Removes every key from the index.
+         */
+        public void clear() {
+                hashes.clear();
+                overflow.clear();
+        }
+
+        private String keyAt(List<UserRecord> data, int slot) {
+                return data.get(slot).key(field);
+        }
+
+        /**
+         * 64-bit FNV-1a hash of the key, with a final avalanche step.
+         */
+        static long hash(String key) {
+                long h = 0xCBF29CE484222325L;
+                for (int i = 0; i < key.length(); i++) {
+                        h = (h ^ key.charAt(i)) * 0x100000001B3L;
+                }
+                h ^= h >>> 33;
+                h *= 0xFF51AFD7ED558CCDL;
+                h ^= h >>> 33;
+                return h;
+        }
+}
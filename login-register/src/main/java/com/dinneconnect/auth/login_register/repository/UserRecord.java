@@ -0,0 +1,506 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact, immutable in-memory representation of a stored user.
+ * Replaces the {@code HashMap} produced by {@code User.toDict()}: the code
+ * is a primitive {@code long}, the three boolean statuses are packed into a
+ * single bitfield and the creation date is kept as epoch seconds. Updates
+ * produce a new record, so a record handed to a reader never changes.
+ *
+ * {@link #toMap()} and {@link #fromMap(Map)} convert from and to the map
+ * shape used by the JSON file and the repository API.
+ *
+ * The searchable text fields also keep a case-folded key, computed once
+ * when the record is built, so case-insensitive lookups compare keys
+ * without lower-casing every user on every query. A value that is already
+ * lower case is its own key and costs no extra string.
+ *
+ * Every record carries a version, 0 for a new user, which
+ * {@link #with(Map)} increments. Writers compare it to detect that a user
+ * changed since they read it.
+ *
+ * @version 1.0
+ * @since 2025-02-20
+ */
+public final class UserRecord {
+
+        /**
+         * Names of every field, in the order of {@code User.toDict()}
+         */
+        public static final List<String> FIELDS = List.of("code", "name", "surname", "username", "email", "password",
+                        "creationDate", "reservation", "verified", "active", "version");
+
+        /**
+         * Bit of {@link #flags} holding the reservation status
+         */
+        public static final int RESERVATION = 1;
+
+        /**
+         * Bit of {@link #flags} holding the verification status
+         */
+        public static final int VERIFIED = 1 << 1;
+
+        /**
+         * Bit of {@link #flags} holding the activity status
+         */
+        public static final int ACTIVE = 1 << 2;
+
+        /**
+         * Value of {@link #creationEpoch} when the user has no creation date
+         */
+        public static final long NO_DATE = Long.MIN_VALUE;
+
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+        private final long code;
+
+        private final String name;
+
+        private final String surname;
+
+        private final String username;
+
+        private final String email;
+
+        private final String password;
+
+        private final long creationEpoch;
+
+        private final byte flags;
+
+        private final int version;
+
+        private final String nameKey;
+
+        private final String surnameKey;
+
+        private final String usernameKey;
+
+        private final String emailKey;
+
+        /**
+         * Creates a record from its fields.
+         *
+         * @param code          The unique code of the user
+         * @param name          The name of the user
+         * @param surname       The surname of the user
+         * @param username      The unique username of the user
+         * @param email         The unique email of the user
+         * @param password      The hashed password of the user
+         * @param creationEpoch The creation date in epoch seconds (UTC), or
+         *                      {@link #NO_DATE}
+         * @param flags         The {@link #RESERVATION}, {@link #VERIFIED} and
+         *                      {@link #ACTIVE} bits
+         */
+        public UserRecord(long code, String name, String surname, String username, String email, String password,
+                        long creationEpoch, int flags) {
+                this(code, name, surname, username, email, password, creationEpoch, flags, 0);
+        }
+
+        /**
+         * Creates a record from its fields, at a given version.
+         *
+         * @param code          The unique code of the user
+         * @param name          The name of the user
+         * @param surname       The surname of the user
+         * @param username      The unique username of the user
+         * @param email         The unique email of the user
+         * @param password      The hashed password of the user
+         * @param creationEpoch The creation date in epoch seconds (UTC), or
+         *                      {@link #NO_DATE}
+         * @param flags         The {@link #RESERVATION}, {@link #VERIFIED} and
+         *                      {@link #ACTIVE} bits
+         * @param version       The number of updates the user went through
+         */
+        public UserRecord(long code, String name, String surname, String username, String email, String password,
+                        long creationEpoch, int flags, int version) {
+                this(code, name, surname, username, email, password, creationEpoch, flags, version, fold(name),
+                                fold(surname), fold(username), fold(email));
+        }
+
+        private UserRecord(long code, String name, String surname, String username, String email, String password,
+                        long creationEpoch, int flags, int version, String nameKey, String surnameKey,
+                        String usernameKey, String emailKey) {
+                this.code = code;
+                this.name = name;
+                this.surname = surname;
+                this.username = username;
+                this.email = email;
+                this.password = password;
+                this.creationEpoch = creationEpoch;
+                this.flags = (byte) flags;
+                this.version = version;
+                this.nameKey = nameKey;
+                this.surnameKey = surnameKey;
+                this.usernameKey = usernameKey;
+                this.emailKey = emailKey;
+        }
+
+        /**
+         * Builds a record from the map shape used by the JSON file.
+         *
+         * @param map The user fields
+         * @return The record
+         * @throws IllegalArgumentException if the code is missing or the creation
+         *                                  date cannot be parsed
+         */
+        public static UserRecord fromMap(Map<String, Object> map) {
+                Object code = map.get("code");
+                if (!(code instanceof Number)) {
+                        throw new IllegalArgumentException("User without a numeric code: " + code);
+                }
+                // Users stored before versions existed start at version 0
+                Object version = map.get("version");
+                return new UserRecord(((Number) code).longValue(),
+                                (String) map.get("name"),
+                                (String) map.get("surname"),
+                                (String) map.get("username"),
+                                (String) map.get("email"),
+                                (String) map.get("password"),
+                                parseDate((String) map.get("creationDate")),
+                                flagsOf(map, 0),
+                                version == null ? 0 : ((Number) version).intValue());
+        }
+
+        /**
+         * Returns a copy of this record with the given fields replaced, at the
+         * next version.
+         *
+         * @param updates The fields to replace, by name
+         * @return The updated record
+         * @throws IllegalArgumentException if a field is unknown, tries to change
+         *                                  the code or the version, or has the
+         *                                  wrong type
+         */
+        public UserRecord with(Map<String, Object> updates) {
+                for (String field : updates.keySet()) {
+                        if (!FIELDS.contains(field)) {
+                                throw new IllegalArgumentException("Unknown user field: " + field);
+                        }
+                }
+                if (updates.containsKey("version")) {
+                        throw new IllegalArgumentException("The version of a user is set by the repository");
+                }
+                Object newCode = updates.get("code");
+                if (newCode != null && ((Number) newCode).longValue() != code) {
+                        throw new IllegalArgumentException("The code of a user cannot change");
+                }
+                return new UserRecord(code,
+                                (String) updates.getOrDefault("name", name),
+                                (String) updates.getOrDefault("surname", surname),
+                                (String) updates.getOrDefault("username", username),
+                                (String) updates.getOrDefault("email", email),
+                                (String) updates.getOrDefault("password", password),
+                                updates.containsKey("creationDate")
+                                                ? parseDate((String) updates.get("creationDate"))
+                                                : creationEpoch,
+                                flagsOf(updates, flags),
+                                version + 1);
+        }
+
+        /**
+         * Returns a copy of this record at the given version, as recorded when
+         * an update was first applied.
+         *
+         * @param version The version of the copy
+         * @return This record if it already has that version, otherwise a copy
+         */
+        public UserRecord withVersion(int version) {
+                if (version == this.version) {
+                        return this;
+                }
+                return new UserRecord(code, name, surname, username, email, password, creationEpoch, flags, version,
+                                nameKey, surnameKey, usernameKey, emailKey);
+        }
+
+        /**
+         * Returns a record whose repeating values (name and surname) are the
+         * shared instances of the pool. Unique values such as the username,
+         * email and password are left alone, since pooling them would only
+         * grow the pool. The folded keys of name and surname are pooled too.
+         *
+         * @param pool The pool to deduplicate against
+         * @return This record if nothing changed, otherwise a pooled copy
+         */
+        public UserRecord intern(StringPool pool) {
+                String pooledName = pool.intern(name);
+                String pooledSurname = pool.intern(surname);
+                String pooledNameKey = nameKey == name ? pooledName : pool.intern(nameKey);
+                String pooledSurnameKey = surnameKey == surname ? pooledSurname : pool.intern(surnameKey);
+                if (pooledName == name && pooledSurname == surname && pooledNameKey == nameKey
+                                && pooledSurnameKey == surnameKey) {
+                        return this;
+                }
+                return new UserRecord(code, pooledName, pooledSurname, username, email, password, creationEpoch,
+                                flags, version, pooledNameKey, pooledSurnameKey, usernameKey, emailKey);
+        }
+
+        /**
+         * Case-folds a value into the key used by case-insensitive lookups.
+         * A string that is already lower case is returned as is.
+         *
+         * @param value The value, may be null
+         * @return The lower-cased text of the value, or null
+         */
+        public static String fold(Object value) {
+                return value == null ? null : String.valueOf(value).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Returns the case-folded key of a field. The keys of name, surname,
+         * username and email are precomputed; other fields are folded on the
+         * fly.
+         *
+         * @param field The field name
+         * @return The key, or null if the field is null or unknown
+         */
+        public String key(String field) {
+                return switch (field) {
+                        case "name" -> nameKey;
+                        case "surname" -> surnameKey;
+                        case "username" -> usernameKey;
+                        case "email" -> emailKey;
+                        default -> fold(get(field));
+                };
+        }
+
+        /**
+         * Converts the record to the map shape of {@code User.toDict()}.
+         *
+         * @return A new, mutable map
+         */
+        public Map<String, Object> toMap() {
+                Map<String, Object> map = new HashMap<>();
+                for (String field : FIELDS) {
+                        map.put(field, get(field));
+                }
+                return map;
+        }
+
+        /**
+         * Writes the record as a JSON object with the fields of
+         * {@code User.toDict()}, without building an intermediate map.
+         *
+         * @param generator The generator to write to
+         * @throws IOException if the generator fails
+         */
+        public void writeJson(JsonGenerator generator) throws IOException {
+                generator.writeStartObject();
+                generator.writeNumberField("code", code);
+                generator.writeStringField("name", name);
+                generator.writeStringField("surname", surname);
+                generator.writeStringField("username", username);
+                generator.writeStringField("email", email);
+                generator.writeStringField("password", password);
+                generator.writeStringField("creationDate", getCreationDate());
+                generator.writeBooleanField("reservation", isReservation());
+                generator.writeBooleanField("verified", isVerified());
+                generator.writeBooleanField("active", isActive());
+                generator.writeNumberField("version", version);
+                generator.writeEndObject();
+        }
+
+        /**
+         * Writes the records to a file as a JSON array, streaming one record at a
+         * time. The file is replaced through a {@link SnapshotFile} and ends with
+         * its checksum footer.
+         *
+         * @param objectMapper The mapper providing the JSON factory
+         * @param path         The file to write
+         * @param records      The records to write
+         * @throws IOException if the file cannot be written
+         */
+        public static void writeJsonArray(ObjectMapper objectMapper, Path path, List<UserRecord> records)
+                        throws IOException {
+                SnapshotFile.write(path, true, out -> {
+                        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out,
+                                        JsonEncoding.UTF8)) {
+                                generator.writeStartArray();
+                                for (UserRecord record : records) {
+                                        record.writeJson(generator);
+                                }
+                                generator.writeEndArray();
+                        }
+                });
+        }
+
+        /**
+         * Reads a JSON array of users, as written by
+         * {@link #writeJsonArray(ObjectMapper, Path, List)}, with a
+         * {@link JsonUserLoader} using every available processor.
+         *
+         * @param objectMapper The mapper used to parse the file
+         * @param path         The file to read
+         * @return The records in file order
+         * @throws IOException if the file cannot be read or parsed
+         */
+        public static List<UserRecord> readJsonArray(ObjectMapper objectMapper, Path path) throws IOException {
+                return new JsonUserLoader(objectMapper, Runtime.getRuntime().availableProcessors()).load(path, null);
+        }
+
+        /**
+         * Reads a field by its name, as it appears in the map shape.
+         *
+         * @param field The field name
+         * @return The value, or null for unknown fields
+         */
+        public Object get(String field) {
+                return switch (field) {
+                        case "code" -> code;
+                        case "name" -> name;
+                        case "surname" -> surname;
+                        case "username" -> username;
+                        case "email" -> email;
+                        case "password" -> password;
+                        case "creationDate" -> getCreationDate();
+                        case "reservation" -> isReservation();
+                        case "verified" -> isVerified();
+                        case "active" -> isActive();
+                        case "version" -> version;
+                        default -> null;
+                };
+        }
+
+        private static int flagsOf(Map<String, Object> map, int current) {
+                int flags = current;
+                flags = applyFlag(map, "reservation", RESERVATION, flags);
+                flags = applyFlag(map, "verified", VERIFIED, flags);
+                return applyFlag(map, "active", ACTIVE, flags);
+        }
+
+        private static int applyFlag(Map<String, Object> map, String field, int bit, int flags) {
+                if (!map.containsKey(field)) {
+                        return flags;
+                }
+                return Boolean.TRUE.equals(map.get(field)) ? flags | bit : flags & ~bit;
+        }
+
+        /**
+         * Parses a creation date in the format written by {@code User}.
+         *
+         * @param date The formatted date, or null
+         * @return Epoch seconds in UTC, or {@link #NO_DATE}
+         */
+        public static long parseDate(String date) {
+                if (date == null) {
+                        return NO_DATE;
+                }
+                try {
+                        return LocalDateTime.parse(date).toEpochSecond(ZoneOffset.UTC);
+                } catch (RuntimeException e) {
+                        throw new IllegalArgumentException("Invalid creation date: " + date, e);
+                }
+        }
+
+        /**
+         * Formats epoch seconds back into the format written by {@code User}.
+         *
+         * @param epoch Epoch seconds in UTC, or {@link #NO_DATE}
+         * @return The formatted date, or null
+         */
+        public static String formatDate(long epoch) {
+                return epoch == NO_DATE ? null
+                                : LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC).format(DATE_FORMAT);
+        }
+
+        public long getCode() {
+                return code;
+        }
+
+        public String getName() {
+                return name;
+        }
+
+        public String getSurname() {
+                return surname;
+        }
+
+        public String getUsername() {
+                return username;
+        }
+
+        public String getEmail() {
+                return email;
+        }
+
+        public String getPassword() {
+                return password;
+        }
+
+        /**
+         * @return The creation date formatted as {@code yyyy-MM-dd'T'HH:mm:ss}, or
+         *         null
+         */
+        public String getCreationDate() {
+                return formatDate(creationEpoch);
+        }
+
+        public long getCreationEpoch() {
+                return creationEpoch;
+        }
+
+        /**
+         * @return The packed {@link #RESERVATION}, {@link #VERIFIED} and
+         *         {@link #ACTIVE} bits
+         */
+        public int getFlags() {
+                return flags;
+        }
+
+        public boolean isReservation() {
+                return (flags & RESERVATION) != 0;
+        }
+
+        public boolean isVerified() {
+                return (flags & VERIFIED) != 0;
+        }
+
+        public boolean isActive() {
+                return (flags & ACTIVE) != 0;
+        }
+
+        /**
+         * @return The number of updates the user went through, 0 for a new user
+         */
+        public int getVersion() {
+                return version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+                if (this == other) {
+                        return true;
+                }
+                if (!(other instanceof UserRecord record)) {
+                        return false;
+                }
+                return code == record.code && creationEpoch == record.creationEpoch && flags == record.flags
+                                && version == record.version && Objects.equals(name, record.name) && Objects.equals(surname, record.surname)
+                                && Objects.equals(username, record.username) && Objects.equals(email, record.email)
+                                && Objects.equals(password, record.password);
+        }
+
+        @Override
+        public int hashCode() {
+                return Long.hashCode(code);
+        }
+
+        @Override
+        public String toString() {
+                return "UserRecord{code=" + code + ", username=" + username + "}";
+        }
+}
@@ -0,0 +1,143 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-size binary slot layout for one user, shared by the stores that keep
+ * users outside the Java heap ({@link MappedUserFile} and
+ * {@link OffHeapUserList}).
+ *
+ * Slot layout ({@link #SLOT_SIZE} bytes):
+ * - code (8 bytes) at offset 0
+ * - flags (4 bytes, the bits of {@link UserRecord#getFlags()}) at offset 8
+ * - version (4 bytes, {@link UserRecord#getVersion()}) at offset 12, zero in
+ * files written before users had versions
+ * - creationDate, name, surname, username, email and password as
+ * length-prefixed UTF-8 fields with a fixed capacity each; a length of
+ * 0xFFFF stands for null
+ *
+ * @version 1.0
+ * @since 2025-02-22
+ */
+public final class UserSlots {
+
+        /**
+         * Size of one user slot in bytes
+         */
+        public static final int SLOT_SIZE = 512;
+
+        private static final int CODE_OFFSET = 0;
+
+        private static final int FLAGS_OFFSET = 8;
+
+        private static final int VERSION_OFFSET = 12;
+
+        private static final int NULL_LENGTH = 0xFFFF;
+
+        /**
+         * String fields in slot order with their offset and capacity in bytes,
+         * length prefix included
+         */
+        private static final String[] FIELDS = { "creationDate", "name", "surname", "username", "email", "password" };
+
+        private static final int[] FIELD_OFFSETS = { 16, 48, 112, 176, 240, 368 };
+
+        private static final int[] FIELD_SIZES = { 32, 64, 64, 64, 128, 144 };
+
+        private UserSlots() {
+        }
+
+        /**
+         * Checks whether every field of the user fits in its fixed-size slot
+         * field.
+         *
+         * @param user The user to check
+         * @return true if the user can be stored
+         */
+        public static boolean fits(UserRecord user) {
+                String[] values = strings(user);
+                for (int i = 0; i < FIELDS.length; i++) {
+                        if (values[i] != null && values[i].getBytes(StandardCharsets.UTF_8).length
+                                        > FIELD_SIZES[i] - 2) {
+                                return false;
+                        }
+                }
+                return true;
+        }
+
+        /**
+         * String fields of the user in slot order.
+         */
+        private static String[] strings(UserRecord user) {
+                return new String[] { user.getCreationDate(), user.getName(), user.getSurname(), user.getUsername(),
+                                user.getEmail(), user.getPassword() };
+        }
+
+        /**
+         * Decodes the user stored at the given offset of a buffer.
+         *
+         * @param buffer The buffer holding the slot
+         * @param base   The offset of the slot
+         * @return The user
+         */
+        public static UserRecord read(ByteBuffer buffer, int base) {
+                String[] values = new String[FIELDS.length];
+                for (int i = 0; i < FIELDS.length; i++) {
+                        int offset = base + FIELD_OFFSETS[i];
+                        int length = buffer.getShort(offset) & 0xFFFF;
+                        if (length != NULL_LENGTH) {
+                                byte[] bytes = new byte[length];
+                                buffer.get(offset + 2, bytes);
+                                values[i] = new String(bytes, StandardCharsets.UTF_8);
+                        }
+                }
+                return new UserRecord(buffer.getLong(base + CODE_OFFSET), values[1], values[2], values[3], values[4],
+                                values[5], UserRecord.parseDate(values[0]), buffer.getInt(base + FLAGS_OFFSET),
+                                buffer.getInt(base + VERSION_OFFSET));
+        }
+
+        /**
+         * Reads only the code of the user stored at the given offset.
+         *
+         * @param buffer The buffer holding the slot
+         * @param base   The offset of the slot
+         * @return The user code
+         */
+        public static long readCode(ByteBuffer buffer, int base) {
+                return buffer.getLong(base + CODE_OFFSET);
+        }
+
+        /**
+         * Encodes a user at the given offset of a buffer.
+         *
+         * @param buffer The buffer holding the slot
+         * @param base   The offset of the slot
+         * @param user   The user, which must satisfy {@link #fits(UserRecord)}
+         * @throws IllegalArgumentException if a field is longer than its capacity
+         */
+        public static void write(ByteBuffer buffer, int base, UserRecord user) {
+                String[] values = strings(user);
+                byte[][] encoded = new byte[FIELDS.length][];
+                for (int i = 0; i < FIELDS.length; i++) {
+                        if (values[i] != null) {
+                                encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                                if (encoded[i].length > FIELD_SIZES[i] - 2) {
+                                        throw new IllegalArgumentException("Field " + FIELDS[i] + " is too long");
+                                }
+                        }
+                }
+                buffer.putLong(base + CODE_OFFSET, user.getCode());
+                buffer.putInt(base + FLAGS_OFFSET, user.getFlags());
+                buffer.putInt(base + VERSION_OFFSET, user.getVersion());
+                for (int i = 0; i < FIELDS.length; i++) {
+                        int offset = base + FIELD_OFFSETS[i];
+                        if (encoded[i] == null) {
+                                buffer.putShort(offset, (short) NULL_LENGTH);
+                        } else {
+                                buffer.putShort(offset, (short) encoded[i].length);
+                                buffer.put(offset + 2, encoded[i]);
+                        }
+                }
+        }
+}
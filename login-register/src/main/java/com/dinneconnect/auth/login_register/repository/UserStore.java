@@ -0,0 +1,166 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import com.dinneconnect.auth.login_register.models.User;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine holding the users, as used by the user service.
+ * {@link BaseRepository} keeps the users in memory backed by the JSON file;
+ * {@link H2UserStore} keeps them in an embedded SQL database. The engine is
+ * chosen with the {@code app.repository.engine} property, "json" or "h2".
+ *
+ * Every engine matches username and email ignoring case, keeps both unique,
+ * and reports a rejected write as {@code success=false} rather than with an
+ * exception. A write that could not be made durable is reported with
+ * {@code durable=false} as well. Every user carries a version that each
+ * update increments, for optimistic concurrency control.
+ *
+ * @version 1.0
+ * @since 2025-03-02
+ */
+public interface UserStore {
+
+        /**
+         * Adds a new user, unless its code, username or email is already taken.
+         *
+         * @param entity The user to add
+         * @return Map containing operation success status; a rejection is
+         *         flagged {@code duplicate=true} when a key is taken,
+         *         {@code invalid=true} when the user cannot be stored as given,
+         *         and {@code readOnly=true} when the engine accepts no writes
+         */
+        Map<String, Boolean> postEntity(User entity);
+
+        /**
+         * Adds several new users with a single persist for the whole batch. Each
+         * user is rejected, as in {@link #postEntity(User)}, if its code,
+         * username or email is taken, also by an earlier user of the batch.
+         *
+         * @param users The users to add
+         * @return The result of each user, in the order of the batch, with the
+         *         reason of a rejection as in {@link #postEntity(User)}
+         */
+        List<Map<String, Boolean>> postRecords(List<UserRecord> users);
+
+        /**
+         * Retrieves a user by its unique code.
+         *
+         * @param code The code of the user
+         * @return The user, or null if not found
+         */
+        UserRecord getRecordByCode(long code);
+
+        /**
+         * Retrieves the first user whose field matches a value, ignoring case.
+         *
+         * @param field The field to search by
+         * @param value The value to match
+         * @return The user, or null if not found
+         */
+        UserRecord getRecordByField(String field, String value);
+
+        /**
+         * Retrieves every user.
+         *
+         * @return Unmodifiable list of all users
+         */
+        List<UserRecord> getRecords();
+
+        /**
+         * Retrieves the users following a code, in ascending order of code.
+         *
+         * @param after The last code of the previous page, or null to start
+         *              from the first user
+         * @param limit Maximum number of users to return
+         * @return The users of the page
+         */
+        List<UserRecord> getRecordsAfter(Long after, int limit);
+
+        /**
+         * Iterates over every user without materializing the whole table.
+         *
+         * @return A view that scans the users each time it is iterated
+         */
+        Iterable<UserRecord> scanRecords();
+
+        /**
+         * Finds users whose field starts with a prefix, ignoring case.
+         *
+         * @param field  "username", "name" or "surname"
+         * @param prefix The beginning of the value
+         * @param limit  Maximum number of users to return
+         * @return The matching users in ascending order of the folded field,
+         *         then of code
+         * @throws IllegalArgumentException if the field cannot be searched by
+         *                                  prefix
+         * @throws IllegalStateException    if the engine is configured without
+         *                                  prefix indexes
+         */
+        List<UserRecord> searchByPrefix(String field, String prefix, int limit);
+
+        /**
+         * Counts the users in total and with each status set.
+         *
+         * @return The counts under "users", "reservation", "verified" and
+         *         "active", in that order
+         */
+        Map<String, Long> getFlagCounts();
+
+        /**
+         * Counts the users matching every given status.
+         *
+         * @param expected Status names mapped to the value to match
+         * @return The number of matching users
+         * @throws IllegalArgumentException if a name is not a status
+         */
+        long countByFlags(Map<String, Boolean> expected);
+
+        /**
+         * Updates fields of a user, unless the user is missing or the update
+         * takes another user's username or email.
+         *
+         * @param code    The code of the user
+         * @param updates The fields to overwrite
+         * @return Map indicating operation success status
+         */
+        Map<String, Boolean> updateEntity(long code, Map<String, Object> updates);
+
+        /**
+         * Updates fields of a user, as {@link #updateEntity(long, Map)} does, only
+         * if the user is still at the version the caller read. Every successful
+         * update increments the version, so of several writers that read the
+         * same version only the first one succeeds; the others get a conflict
+         * and can read the user again.
+         *
+         * @param code            The code of the user
+         * @param expectedVersion The version of the user the caller read
+         * @param updates         The fields to overwrite
+         * @return Map indicating operation success status, with
+         *         {@code conflict=true} if the user is at another version
+         */
+        Map<String, Boolean> updateEntityIfVersion(long code, int expectedVersion, Map<String, Object> updates);
+
+        /**
+         * Deletes a user by its unique code.
+         *
+         * @param code The code of the user
+         * @return Map indicating operation success status
+         */
+        Map<String, Object> deleteEntityByCode(long code);
+
+        /**
+         * Reports the state of write-behind persistence, where mutations are
+         * acknowledged before they reach the disk.
+         *
+         * @return "enabled", "pendingWrites", "failedFlushes", "lastError" and
+         *         "unpersisted", which is true while mutations of a failed batch
+         *         are held only in memory
+         */
+        Map<String, Object> getWriteBehindStatus();
+
+        /**
+         * Persists whatever is pending and releases the files of the engine.
+         */
+        void close();
+}
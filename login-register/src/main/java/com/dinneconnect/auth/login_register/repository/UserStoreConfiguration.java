@@ -0,0 +1,56 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the "json" storage engine from the {@code app.repository.*}
+ * properties: a {@link BaseRepository}, or a {@link ShardedRepository} when
+ * more than one shard is configured. The "h2" engine is the
+ * {@link H2UserStore} bean.
+ *
+ * @version 1.0
+ * @since 2025-03-03
+ */
+@Configuration
+public class UserStoreConfiguration {
+
+        /**
+         * Reads the settings of the "json" engine.
+         *
+         * @see RepositoryOptions
+         * @return The settings
+         */
+        @Bean
+        @ConditionalOnProperty(name = "app.repository.engine", havingValue = "json", matchIfMissing = true)
+        public RepositoryOptions repositoryOptions(
+                        @Value("${app.repository.path:Backend/login-register/src/main/java/com/dinneconnect/auth/login_register/persistence/user.json}") String path,
+                        @Value("${app.repository.persistence:snapshot}") String persistence,
+                        @Value("${app.repository.log.compact-after:10000}") long compactAfter,
+                        @Value("${app.repository.group-commit.window-ms:-1}") long groupWindow,
+                        @Value("${app.repository.group-commit.max-batch:256}") int groupBatch,
+                        @Value("${app.repository.storage:heap}") String storage,
+                        @Value("${app.repository.lock-stripes:64}") int lockStripes,
+                        @Value("${app.repository.shards:1}") int shards,
+                        @Value("${app.repository.write-behind.max-staleness-ms:-1}") long staleness,
+                        @Value("${app.repository.write-behind.queue-capacity:10000}") int queueCapacity) {
+                return new RepositoryOptions(path, persistence, compactAfter, groupWindow, groupBatch, storage,
+                                lockStripes, shards, staleness, queueCapacity);
+        }
+
+        /**
+         * Opens the "json" engine. It is closed on shutdown, so with
+         * write-behind every pending mutation is persisted before the
+         * application exits.
+         *
+         * @param options The settings of the engine
+         * @return The repository, sharded if more than one shard is configured
+         */
+        @Bean(destroyMethod = "close")
+        @ConditionalOnProperty(name = "app.repository.engine", havingValue = "json", matchIfMissing = true)
+        public UserStore jsonUserStore(RepositoryOptions options) {
+                return options.shards() > 1 ? new ShardedRepository(options) : new BaseRepository(options);
+        }
+}
@@ -0,0 +1,174 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Copy-on-write list of users that publishes every change as a new immutable
+ * {@link Snapshot}.
+ * Users are kept in chunks of {@link #CHUNK_SIZE} references. A change
+ * copies the chunk it touches and the array of chunk pointers, then
+ * publishes the result through a volatile field. The chunk is a fixed 4 to
+ * 8 KB, but the pointer array holds one entry per chunk, so its copy grows
+ * linearly with the table: about 8 KB at a million users, 80 KB at ten
+ * million. A write still copies {@link #CHUNK_SIZE} times less than a
+ * copy of the whole table. Readers take the current
+ * snapshot without any lock or copy and keep a consistent view of the table
+ * for as long as they hold it, while writers continue.
+ *
+ * Writes are serialized on the list itself, so concurrent updates of
+ * different slots never lose each other's changes. Reads through
+ * {@link #get(int)} and {@link #size()} see the latest published version.
+ *
+ * @version 1.0
+ * @since 2025-02-23
+ */
+public class VersionedUserList extends AbstractList<UserRecord> implements RandomAccess {
+
+        /**
+         * Number of users per chunk
+         */
+        public static final int CHUNK_SIZE = 1024;
+
+        private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+
+        private volatile Snapshot current;
+
+        /**
+         * Creates a list holding the given users as version 0.
+         *
+         * @param users The initial users, in slot order
+         */
+        public VersionedUserList(List<UserRecord> users) {
+                int size = users.size();
+                UserRecord[][] chunks = new UserRecord[(size + CHUNK_SIZE - 1) >> CHUNK_SHIFT][];
+                for (int chunk = 0; chunk < chunks.length; chunk++) {
+                        chunks[chunk] = new UserRecord[CHUNK_SIZE];
+                        int from = chunk << CHUNK_SHIFT;
+                        int to = Math.min(size, from + CHUNK_SIZE);
+                        for (int i = from; i < to; i++) {
+                                chunks[chunk][i - from] = users.get(i);
+                        }
+                }
+                this.current = new Snapshot(chunks, size, 0);
+        }
+
+        /**
+         * @return The latest published version of the list, which never changes
+         */
+        public Snapshot snapshot() {
+                return current;
+        }
+
+        @Override
+        public UserRecord get(int index) {
+                return current.get(index);
+        }
+
+        @Override
+        public int size() {
+                return current.size();
+        }
+
+        /**
+         * Replaces a user and publishes a new version. Copies one chunk and the
+         * chunk pointers, O(n / {@link #CHUNK_SIZE}).
+         *
+         * @param index The slot to replace
+         * @param user  The new user
+         * @return The user previously in the slot
+         */
+        @Override
+        public synchronized UserRecord set(int index, UserRecord user) {
+                Snapshot base = current;
+                UserRecord previous = base.get(index);
+                UserRecord[][] chunks = base.chunks.clone();
+                int chunk = index >> CHUNK_SHIFT;
+                chunks[chunk] = chunks[chunk].clone();
+                chunks[chunk][index & (CHUNK_SIZE - 1)] = user;
+                current = new Snapshot(chunks, base.size, base.version + 1);
+                return previous;
+        }
+
+        @Override
+        public synchronized boolean add(UserRecord user) {
+                Snapshot base = current;
+                int chunk = base.size >> CHUNK_SHIFT;
+                UserRecord[][] chunks = Arrays.copyOf(base.chunks, Math.max(base.chunks.length, chunk + 1));
+                chunks[chunk] = chunks[chunk] == null ? new UserRecord[CHUNK_SIZE] : chunks[chunk].clone();
+                chunks[chunk][base.size & (CHUNK_SIZE - 1)] = user;
+                current = new Snapshot(chunks, base.size + 1, base.version + 1);
+                modCount++;
+                return true;
+        }
+
+        /**
+         * Removes the user at the given position, shifting the following users
+         * down. Removing the last user copies a single chunk.
+         */
+        @Override
+        public synchronized UserRecord remove(int index) {
+                Snapshot base = current;
+                UserRecord removed = base.get(index);
+                int size = base.size - 1;
+                UserRecord[][] chunks = Arrays.copyOf(base.chunks, (size + CHUNK_SIZE - 1) >> CHUNK_SHIFT);
+                for (int chunk = index >> CHUNK_SHIFT; chunk < chunks.length; chunk++) {
+                        chunks[chunk] = chunks[chunk].clone();
+                }
+                for (int i = index; i < size; i++) {
+                        chunks[i >> CHUNK_SHIFT][i & (CHUNK_SIZE - 1)] = base.get(i + 1);
+                }
+                if ((size & (CHUNK_SIZE - 1)) != 0) {
+                        chunks[size >> CHUNK_SHIFT][size & (CHUNK_SIZE - 1)] = null;
+                }
+                current = new Snapshot(chunks, size, base.version + 1);
+                modCount++;
+                return removed;
+        }
+
+        @Override
+        public synchronized void clear() {
+                current = new Snapshot(new UserRecord[0][], 0, current.version + 1);
+                modCount++;
+        }
+
+        /**
+         * Immutable version of a {@link VersionedUserList}.
+         */
+        public static final class Snapshot extends AbstractList<UserRecord> implements RandomAccess {
+
+                private final UserRecord[][] chunks;
+
+                private final int size;
+
+                private final long version;
+
+                private Snapshot(UserRecord[][] chunks, int size, long version) {
+                        this.chunks = chunks;
+                        this.size = size;
+                        this.version = version;
+                }
+
+                /**
+                 * @return The number of changes published before this snapshot
+                 */
+                public long getVersion() {
+                        return version;
+                }
+
+                @Override
+                public UserRecord get(int index) {
+                        if (index < 0 || index >= size) {
+                                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+                        }
+                        return chunks[index >> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+                }
+
+                @Override
+                public int size() {
+                        return size;
+                }
+        }
+}
@@ -0,0 +1,280 @@
+package com.dinneconnect.auth.login_register.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence in front of the repository files.
+ * Mutations are applied to memory by the request thread, which then only
+ * queues their records here and returns; a single background thread
+ * persists the queued mutations together once the oldest of them has waited
+ * for the staleness window. Many mutations therefore cost one snapshot or
+ * one log write, and disk latency no longer shows up in request latency.
+ *
+ * The queue is bounded by applying backpressure: once more than
+ * {@code capacity} mutations are waiting, the threads that queued them wait
+ * in {@link #awaitCapacity()} until the writer has caught up, and the
+ * writer stops waiting for the window. Records are queued under the
+ * repository lock, so they reach the flusher in the order they were applied.
+ *
+ * @version 1.0
+ * @since 2025-02-28
+ */
+public class WriteBehindWriter implements Closeable {
+
+        /**
+         * Persists a batch of mutations.
+         */
+        @FunctionalInterface
+        public interface Flusher {
+
+                /**
+                 * @param records The records of the batch, in the order they were
+                 *                applied
+                 * @throws IOException if the batch could not be persisted
+                 */
+                void flush(List<Map<String, Object>> records) throws IOException;
+        }
+
+        /**
+         * Queue entry asking the writer to flush right away, compared by identity
+         */
+        private static final List<Map<String, Object>> FLUSH_NOW = new ArrayList<>();
+
+        private final Flusher flusher;
+
+        /**
+         * Maximum time the oldest queued mutation waits for the batch to close
+         */
+        private final long stalenessNanos;
+
+        /**
+         * Number of queued mutations above which writers wait
+         */
+        private final int capacity;
+
+        /**
+         * Records of each queued mutation, plus {@link #FLUSH_NOW} markers
+         */
+        private final BlockingQueue<List<Map<String, Object>>> queue;
+
+        /**
+         * Background thread running {@link #run()}
+         */
+        private final Thread writer;
+
+        /**
+         * Mutations queued and not yet persisted, guarded by this writer
+         */
+        private int pending;
+
+        /**
+         * Batches that could not be persisted, guarded by this writer
+         */
+        private long failedFlushes;
+
+        /**
+         * Error of the last batch that could not be persisted, or null, guarded
+         * by this writer
+         */
+        private String lastFailure;
+
+        private volatile boolean running;
+
+        /**
+         * Starts the writer thread.
+         *
+         * @param flusher         Persists the batches
+         * @param stalenessMillis Maximum time a mutation waits in memory before
+         *                        its batch is written, not counting the time of
+         *                        the write in progress; 0 writes whatever is
+         *                        queued right away
+         * @param capacity        Number of queued mutations above which writers
+         *                        are held back
+         */
+        public WriteBehindWriter(Flusher flusher, long stalenessMillis, int capacity) {
+                if (capacity < 1) {
+                        throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+                }
+                this.flusher = flusher;
+                this.stalenessNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, stalenessMillis));
+                this.capacity = capacity;
+                this.queue = new LinkedBlockingQueue<>();
+                this.running = true;
+                this.writer = new Thread(this::run, "user-write-behind");
+                this.writer.setDaemon(true);
+                this.writer.start();
+        }
+
+        /**
+         * Queues the records of one mutation without waiting. Must be called in
+         * the order the mutations were applied.
+         *
+         * @param records The mutation records
+         * @throws IOException if the writer is closed
+         */
+        public synchronized void submit(List<Map<String, Object>> records) throws IOException {
+                if (!running) {
+                        throw new IOException("Write-behind writer is closed");
+                }
+                pending++;
+                queue.add(records);
+                if (pending > capacity) {
+                        queue.add(FLUSH_NOW);
+                }
+        }
+
+        /**
+         * Waits while more mutations are queued than the capacity allows. Called
+         * by writers after releasing the repository lock.
+         */
+        public synchronized void awaitCapacity() {
+                while (pending > capacity && running) {
+                        try {
+                                wait();
+                        } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                        }
+                }
+        }
+
+        /**
+         * Persists every mutation queued so far without waiting for the window,
+         * and waits until it is done.
+         */
+        public synchronized void drain() {
+                if (pending == 0) {
+                        return;
+                }
+                queue.add(FLUSH_NOW);
+                while (pending > 0) {
+                        try {
+                                wait();
+                        } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                        }
+                }
+        }
+
+        /**
+         * @return The number of mutations queued and not yet persisted
+         */
+        public synchronized int pending() {
+                return pending;
+        }
+
+        /**
+         * @return The number of batches that could not be persisted
+         */
+        public synchronized long failedFlushes() {
+                return failedFlushes;
+        }
+
+        /**
+         * @return The error of the last batch that could not be persisted, or
+         *         null if every batch was
+         */
+        public synchronized String lastFailure() {
+                return lastFailure;
+        }
+
+        /**
+         * Writer loop: blocks for the first mutation of a batch, collects more
+         * until the window closes, a flush is requested or the capacity is
+         * reached, then persists the batch.
+         */
+        private void run() {
+                List<List<Map<String, Object>>> batch = new ArrayList<>();
+                while (running || !queue.isEmpty()) {
+                        try {
+                                List<Map<String, Object>> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                                if (first == null) {
+                                        continue;
+                                }
+                                boolean now = first == FLUSH_NOW || !running;
+                                if (first != FLUSH_NOW) {
+                                        batch.add(first);
+                                }
+                                long deadline = System.nanoTime() + stalenessNanos;
+                                while (!now && batch.size() < capacity) {
+                                        long remaining = deadline - System.nanoTime();
+                                        List<Map<String, Object>> next = remaining > 0
+                                                        ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                                                        : queue.poll();
+                                        if (next == null) {
+                                                break;
+                                        }
+                                        if (next == FLUSH_NOW) {
+                                                now = true;
+                                        } else {
+                                                batch.add(next);
+                                        }
+                                }
+                                queue.drainTo(batch);
+                                batch.removeIf(records -> records == FLUSH_NOW);
+                                flush(batch);
+                        } catch (InterruptedException e) {
+                                running = false;
+                        }
+                }
+                flush(batch);
+        }
+
+        /**
+         * Persists one batch and releases the writers waiting for capacity. A
+         * batch that fails is counted and its error kept for
+         * {@link #lastFailure()}; its mutations stay applied in memory and it is
+         * up to the flusher to persist them later.
+         */
+        private void flush(List<List<Map<String, Object>>> batch) {
+                if (batch.isEmpty()) {
+                        return;
+                }
+                List<Map<String, Object>> records = new ArrayList<>();
+                for (List<Map<String, Object>> mutation : batch) {
+                        records.addAll(mutation);
+                }
+                String failure = null;
+                try {
+                        flusher.flush(records);
+                } catch (IOException | RuntimeException e) {
+                        failure = e.toString();
+                        System.err.println("Error in write-behind flush: " + e.getMessage());
+                }
+                synchronized (this) {
+                        if (failure != null) {
+                                failedFlushes++;
+                                lastFailure = failure;
+                        }
+                        pending -= batch.size();
+                        notifyAll();
+                }
+                batch.clear();
+        }
+
+        /**
+         * Persists everything still queued and stops the writer thread. Later
+         * submissions fail, so callers fall back to writing synchronously.
+         */
+        @Override
+        public void close() {
+                synchronized (this) {
+                        running = false;
+                        notifyAll();
+                }
+                queue.add(FLUSH_NOW);
+                try {
+                        writer.join();
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+        }
+}
@@ -0,0 +1,307 @@
+package com.dinneconnect.auth.login_register.services;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.ReplicationLog;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service publishing the mutations of the users as an ordered change feed,
+ * so other services can keep a local copy of the users without polling.
+ *
+ * <p>
+ * Every create, update and delete is read from the {@link ReplicationLog} of
+ * the repository, which a replication primary shares, and sent to each
+ * consumer as one JSON object per line:
+ * </p>
+ * <ul>
+ * <li>{@code {"op":"feed","epoch":E,"sequence":S}} opens the stream; events
+ * follow sequence number S</li>
+ * <li>{@code {"op":"create","sequence":N,"time":T,"code":C,"user":{...}}}</li>
+ * <li>{@code {"op":"update","sequence":N,"time":T,"code":C,"version":V,"fields":{...}}}
+ * holding only the changed fields and the version of the user they
+ * produced</li>
+ * <li>{@code {"op":"delete","sequence":N,"time":T,"code":C}}</li>
+ * <li>{@code {"op":"heartbeat","sequence":N}} when nothing happened for a
+ * while</li>
+ * <li>{@code {"op":"reset","epoch":E,"sequence":S}} when the requested
+ * events are no longer available: the consumer reloads every user, then
+ * applies the events following S</li>
+ * </ul>
+ *
+ * <p>
+ * A consumer resumes by passing the last sequence number it applied and the
+ * epoch it was read under. Sequence numbers start over when the application
+ * restarts, which changes the epoch. Passwords are never published. Events
+ * may repeat around a reset, so consumers apply them idempotently.
+ * </p>
+ *
+ * <p>
+ * The feed needs the "json" storage engine, unsharded, and is not available
+ * on a replication follower.
+ * </p>
+ *
+ * @author Sebastian Avendaño Rodriguez
+ * @since 2025/03/03
+ * @version 1.0
+ */
+@Service
+@DependsOn("replicationService")
+public class ChangeFeedService {
+
+    /**
+     * Receives the events of one consumer.
+     */
+    @FunctionalInterface
+    public interface EventSink {
+
+        /**
+         * @param event the event to send
+         * @throws IOException if the consumer went away
+         */
+        void send(Map<String, Object> event) throws IOException;
+    }
+
+    /**
+     * Media type of the feed: one JSON object per line.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Time without events after which a heartbeat is sent.
+     */
+    private static final long HEARTBEAT_MILLIS = 15_000;
+
+    private final UserStore userRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+
+    private final int backlog;
+
+    private final int maxConsumers;
+
+    private final AtomicInteger consumers = new AtomicInteger();
+
+    /**
+     * One thread per consumer, never more than maxConsumers. Platform threads,
+     * since a consumer waits on the monitor of the replication log, which
+     * would pin a virtual thread to its carrier.
+     */
+    private final ExecutorService senders;
+
+    private ReplicationLog log;
+
+    /**
+     * Constructs a new ChangeFeedService.
+     *
+     * @param userRepository the storage engine whose mutations are published
+     * @param objectMapper   the mapper used to write the events
+     * @param enabled        whether to record mutations for the feed
+     * @param backlog        number of recent mutations kept for consumers
+     *                       that resume
+     * @param maxConsumers   maximum number of consumers streaming at once,
+     *                       each holding a thread until it disconnects; a
+     *                       consumer gone silently is noticed on its next
+     *                       heartbeat
+     */
+    @Autowired
+    public ChangeFeedService(UserStore userRepository, ObjectMapper objectMapper,
+            @Value("${app.changes.enabled:true}") boolean enabled,
+            @Value("${app.changes.backlog:10000}") int backlog,
+            @Value("${app.changes.max-consumers:32}") int maxConsumers) {
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.backlog = backlog;
+        this.maxConsumers = maxConsumers;
+        this.senders = new ThreadPoolExecutor(0, Math.max(1, maxConsumers), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), Thread.ofPlatform().daemon().name("change-feed-", 0).factory());
+    }
+
+    /**
+     * Starts recording the mutations of the repository, after replication
+     * took its role.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!(userRepository instanceof BaseRepository repository)) {
+            System.out.println("Change feed disabled: it needs the unsharded json storage engine");
+            return;
+        }
+        try {
+            log = repository.enableChangeLog(backlog);
+        } catch (IllegalStateException e) {
+            System.out.println("Change feed disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a stream of changes for one consumer, sent from a thread of its own
+     * until the consumer disconnects or the application stops.
+     *
+     * @param after the last sequence number the consumer applied, or null to
+     *              start with the next change
+     * @param epoch the epoch the sequence number was read under, or null
+     * @return the emitter writing the events as NDJSON
+     * @throws IllegalStateException if the feed is disabled or already serves
+     *                               as many consumers as allowed
+     */
+    public ResponseBodyEmitter subscribe(Long after, Long epoch) {
+        if (log == null) {
+            throw new IllegalStateException("The change feed is not available");
+        }
+        if (consumers.incrementAndGet() > maxConsumers) {
+            consumers.decrementAndGet();
+            throw new IllegalStateException("Too many change feed consumers");
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        MediaType ndjson = MediaType.parseMediaType(NDJSON);
+        try {
+            senders.execute(() -> {
+                try {
+                    stream(after, epoch, event -> emitter.send(objectMapper.writeValueAsString(event) + "\n", ndjson));
+                    emitter.complete();
+                } catch (IOException | IllegalStateException e) {
+                    // The consumer went away, which is noticed at the latest on the
+                    // next heartbeat
+                    emitter.completeWithError(e);
+                } finally {
+                    consumers.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            consumers.decrementAndGet();
+            // A sender that just finished may not be back in the pool yet
+            throw new IllegalStateException(senders.isShutdown() ? "The change feed is stopping"
+                    : "Too many change feed consumers");
+        }
+        return emitter;
+    }
+
+    /**
+     * Sends the changes following a sequence number to a sink, waiting for new
+     * ones, until the sink fails or the thread is interrupted.
+     *
+     * @param after the last sequence number the consumer applied, or null to
+     *              start with the next change
+     * @param epoch the epoch the sequence number was read under, or null
+     * @param sink  receives the events
+     * @throws IOException           if the sink fails
+     * @throws IllegalStateException if the feed is disabled
+     */
+    public void stream(Long after, Long epoch, EventSink sink) throws IOException {
+        if (log == null) {
+            throw new IllegalStateException("The change feed is not available");
+        }
+        long cursor = after == null ? log.lastSequence() : after;
+        if (epoch != null && epoch != log.epoch()) {
+            cursor = reset(sink);
+        } else {
+            sink.send(position("feed", cursor));
+        }
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<ReplicationLog.Entry> entries = log.after(cursor, HEARTBEAT_MILLIS);
+                if (entries == null) {
+                    cursor = reset(sink);
+                } else if (entries.isEmpty()) {
+                    Map<String, Object> heartbeat = new LinkedHashMap<>();
+                    heartbeat.put("op", "heartbeat");
+                    heartbeat.put("sequence", cursor);
+                    sink.send(heartbeat);
+                } else {
+                    for (ReplicationLog.Entry entry : entries) {
+                        sink.send(toEvent(entry));
+                    }
+                    cursor = entries.get(entries.size() - 1).sequence();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tells the consumer to reload every user, then continues from the latest
+     * change.
+     *
+     * @return the sequence number to continue from
+     */
+    private long reset(EventSink sink) throws IOException {
+        long cursor = log.lastSequence();
+        sink.send(position("reset", cursor));
+        return cursor;
+    }
+
+    private Map<String, Object> position(String op, long sequence) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("op", op);
+        event.put("epoch", log.epoch());
+        event.put("sequence", sequence);
+        return event;
+    }
+
+    /**
+     * Converts a mutation record into its public event, without the password.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toEvent(ReplicationLog.Entry entry) {
+        Map<String, Object> record = entry.record();
+        Map<String, Object> event = new LinkedHashMap<>();
+        String op = String.valueOf(record.get("op"));
+        event.put("op", op.equals("insert") ? "create" : op);
+        event.put("sequence", entry.sequence());
+        event.put("time", entry.time());
+        switch (op) {
+            case "insert" -> {
+                Map<String, Object> user = new LinkedHashMap<>((Map<String, Object>) record.get("entity"));
+                user.remove("password");
+                event.put("code", user.get("code"));
+                event.put("user", user);
+            }
+            case "update" -> {
+                Map<String, Object> fields = new LinkedHashMap<>((Map<String, Object>) record.get("fields"));
+                fields.remove("password");
+                event.put("code", record.get("code"));
+                event.put("version", record.get("version"));
+                event.put("fields", fields);
+            }
+            default -> event.put("code", record.get("code"));
+        }
+        return event;
+    }
+
+    /**
+     * Ends every stream.
+     */
+    @PreDestroy
+    public void stop() {
+        senders.shutdownNow();
+    }
+}
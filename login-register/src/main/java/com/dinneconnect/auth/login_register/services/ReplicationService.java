@@ -0,0 +1,164 @@
+package com.dinneconnect.auth.login_register.services;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.ReplicationAuth;
+import com.dinneconnect.auth.login_register.repository.ReplicationClient;
+import com.dinneconnect.auth.login_register.repository.ReplicationLog;
+import com.dinneconnect.auth.login_register.repository.ReplicationServer;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service running the replication role of this instance.
+ * A primary owns the writes and ships its mutations to followers from a
+ * {@link ReplicationServer}; a follower rejects writes and keeps its
+ * in-memory copy of the users up to date through a
+ * {@link ReplicationClient}, so reads scale with the number of instances.
+ * Without a role the repository works on its own, as before.
+ * The primary and its followers must share a secret: they authenticate each
+ * other with it and encrypt the password hashes they exchange, since the
+ * replication port is plain TCP.
+ *
+ * @author Sebastian Avendaño Rodriguez
+ * @since 2025/03/01
+ * @version 1.0
+ */
+@Service
+public class ReplicationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationService.class);
+
+    private final UserStore userRepository;
+
+    private final String role;
+
+    private final InetSocketAddress address;
+
+    private final int backlog;
+
+    private final String secret;
+
+    private ReplicationLog log;
+
+    private ReplicationServer server;
+
+    private ReplicationClient client;
+
+    /**
+     * Constructs a new ReplicationService.
+     *
+     * @param userRepository the storage engine to replicate, which must be the
+     *                       "json" engine unless the role is "none"
+     * @param role           "none", "primary" or "follower"
+     * @param address        host:port the primary listens on and followers
+     *                       connect to
+     * @param backlog        number of recent mutations a primary keeps for
+     *                       followers that reconnect
+     * @param secret         secret shared by the primary and its followers,
+     *                       required unless the role is "none"
+     */
+    @Autowired
+    public ReplicationService(UserStore userRepository,
+            @Value("${app.repository.replication.role:none}") String role,
+            @Value("${app.repository.replication.address:127.0.0.1:7070}") String address,
+            @Value("${app.repository.replication.backlog:100000}") int backlog,
+            @Value("${app.repository.replication.secret:}") String secret) {
+        if (!List.of("none", "primary", "follower").contains(role)) {
+            throw new IllegalArgumentException("Unknown replication role: " + role);
+        }
+        if (!role.equals("none") && secret.length() < ReplicationAuth.MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("app.repository.replication.secret must have at least "
+                    + ReplicationAuth.MIN_SECRET_LENGTH + " characters to replicate");
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Replication address must be host:port: " + address);
+        }
+        this.userRepository = userRepository;
+        this.role = role;
+        this.address = new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+        this.backlog = backlog;
+        this.secret = secret;
+    }
+
+    /**
+     * Starts the server of a primary or the client of a follower.
+     *
+     * @throws IOException           if a primary cannot listen on its address
+     * @throws IllegalStateException if replication is enabled on another
+     *                               engine than "json"
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (role.equals("none")) {
+            return;
+        }
+        if (!(userRepository instanceof BaseRepository repository)) {
+            throw new IllegalStateException("Replication needs the unsharded json storage engine");
+        }
+        switch (role) {
+            case "primary" -> {
+                log = repository.enableChangeLog(backlog);
+                server = new ReplicationServer(repository, log, address, secret);
+                LOGGER.info("Replication primary listening on {}", server.getAddress());
+            }
+            case "follower" -> {
+                repository.enableFollowerMode();
+                client = new ReplicationClient(repository, address, secret);
+                LOGGER.info("Replication follower of {}", address);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Reports the replication state: the sequence number and number of
+     * followers of a primary, or the connection and lag of a follower.
+     *
+     * @return a map with the role and its metrics
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", role);
+        if (server != null) {
+            status.put("sequence", log.lastSequence());
+            status.put("followers", server.followerCount());
+        } else if (client != null) {
+            status.putAll(client.status());
+        }
+        return status;
+    }
+
+    /**
+     * Disconnects from the followers or the primary.
+     */
+    @PreDestroy
+    public void stop() {
+        try {
+            if (server != null) {
+                server.close();
+            }
+            if (client != null) {
+                client.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error stopping replication: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.dinneconnect.auth.login_register.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Bulk import of users from NDJSON or CSV files, for customer lists far too
+ * large to register one request at a time.
+ *
+ * <p>
+ * The file is streamed line by line, so it is never held in memory. Lines
+ * are grouped into batches. Each batch is parsed and validated in parallel:
+ * username, email and password are required, the email must match the
+ * pattern of the registration endpoint, and users whose username or email
+ * is already stored are skipped as duplicates. A single writer thread then
+ * adds the valid users with {@link UserStore#postRecords(List)}, one persist
+ * per batch, while the next batch is read and validated.
+ * </p>
+ *
+ * <p>
+ * An NDJSON line is one object with the fields name, surname, username,
+ * email and password. A CSV file starts with a header naming the same
+ * columns in any order; fields may be quoted, but not span lines.
+ * </p>
+ *
+ * @author Sebastian Avendaño Rodriguez
+ * @since 2025/03/03
+ * @version 1.0
+ */
+public class UserImporter {
+
+    /**
+     * Outcome of an import.
+     *
+     * @param lines         the user lines read, without the CSV header and
+     *                      blank lines
+     * @param imported      the users added
+     * @param invalid       the lines rejected by validation
+     * @param duplicates    the users whose username or email was taken
+     * @param elapsedMillis the duration of the import
+     */
+    public record Report(long lines, long imported, long invalid, long duplicates, long elapsedMillis) {
+
+        /**
+         * @return the users added per second
+         */
+        public double usersPerSecond() {
+            return elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d lines: %d imported, %d invalid, %d duplicates in %.1f s (%.0f users/s)",
+                    lines, imported, invalid, duplicates, elapsedMillis / 1000.0, usersPerSecond());
+        }
+    }
+
+    /**
+     * A parsed line: the user to add, or why the line was rejected.
+     */
+    private record Row(long line, UserRecord user, String error, boolean duplicate) {
+    }
+
+    /**
+     * Same pattern as the registration endpoint.
+     */
+    private static final Pattern EMAIL = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+$");
+
+    private static final List<String> REQUIRED = List.of("username", "email", "password");
+
+    /**
+     * Number of rejected lines logged individually.
+     */
+    private static final int MAX_LOGGED_ERRORS = 20;
+
+    /**
+     * Minimum interval between two progress lines.
+     */
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final UserStore userRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    /**
+     * Constructs a new UserImporter.
+     *
+     * @param userRepository the storage engine to add the users to
+     * @param objectMapper   the mapper used to parse NDJSON lines
+     * @param batchSize      the number of lines validated and persisted
+     *                       together
+     */
+    public UserImporter(UserStore userRepository, ObjectMapper objectMapper, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a file, read as CSV if its name ends with ".csv" and as NDJSON
+     * otherwise.
+     *
+     * @param path the file to import
+     * @return the counts of the import
+     * @throws IOException if the file cannot be read
+     */
+    public Report importFile(Path path) throws IOException {
+        boolean csv = path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            return importLines(reader, csv);
+        }
+    }
+
+    /**
+     * Imports the users read from a stream of lines.
+     *
+     * @param reader the lines to import
+     * @param csv    whether the lines are CSV with a header, rather than NDJSON
+     * @return the counts of the import
+     * @throws IOException              if the lines cannot be read
+     * @throws IllegalArgumentException if the CSV header lacks a required
+     *                                  column
+     */
+    public Report importLines(BufferedReader reader, boolean csv) throws IOException {
+        long start = System.nanoTime();
+        List<String> header = null;
+        long lineNumber = 0;
+        if (csv) {
+            String first = reader.readLine();
+            lineNumber++;
+            header = first == null ? REQUIRED
+                    : parseCsvLine(first).stream().map(column -> column.trim().toLowerCase(Locale.ROOT)).toList();
+            for (String column : REQUIRED) {
+                if (!header.contains(column)) {
+                    throw new IllegalArgumentException("CSV header without a " + column + " column");
+                }
+            }
+        }
+        AtomicLong imported = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        long lines = 0;
+        long invalid = 0;
+        long lastProgress = start;
+        ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "user-import-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<?> pending = CompletableFuture.completedFuture(null);
+        try {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (true) {
+                batch.clear();
+                String line;
+                while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+                    batch.add(line);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                long firstLine = lineNumber + 1;
+                lineNumber += batch.size();
+                List<String> columns = header;
+                List<Row> rows = IntStream.range(0, batch.size())
+                        .parallel()
+                        .mapToObj(i -> parse(firstLine + i, batch.get(i), columns))
+                        .toList();
+                List<UserRecord> users = new ArrayList<>(rows.size());
+                for (Row row : rows) {
+                    if (row == null) {
+                        continue;
+                    }
+                    lines++;
+                    if (row.user() != null) {
+                        users.add(row.user());
+                    } else if (row.duplicate()) {
+                        duplicates.incrementAndGet();
+                    } else if (++invalid <= MAX_LOGGED_ERRORS) {
+                        System.err.println("Skipping line " + row.line() + ": " + row.error());
+                    }
+                }
+                await(pending);
+                pending = writer.submit(() -> write(users, imported, duplicates));
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    System.out.println(new Report(lines, imported.get(), invalid, duplicates.get(),
+                            (now - start) / 1_000_000));
+                }
+            }
+            await(pending);
+        } finally {
+            writer.shutdownNow();
+        }
+        return new Report(lines, imported.get(), invalid, duplicates.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Adds one batch of valid users. A user rejected only because its random
+     * code collided with a stored user gets a new code and one more try.
+     */
+    private void write(List<UserRecord> users, AtomicLong imported, AtomicLong duplicates) {
+        List<Map<String, Boolean>> added = userRepository.postRecords(users);
+        List<UserRecord> retries = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            UserRecord user = users.get(i);
+            if (added.get(i).get("success")) {
+                imported.incrementAndGet();
+            } else if (userRepository.getRecordByField("username", user.getUsername()) == null
+                    && userRepository.getRecordByField("email", user.getEmail()) == null) {
+                retries.add(toRecord(user.getName(), user.getSurname(), user.getUsername(), user.getEmail(),
+                        user.getPassword()));
+            } else {
+                duplicates.incrementAndGet();
+            }
+        }
+        if (!retries.isEmpty()) {
+            for (Map<String, Boolean> retried : userRepository.postRecords(retries)) {
+                (retried.get("success") ? imported : duplicates).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Parses and validates one line. Runs in parallel with the other lines of
+     * its batch.
+     *
+     * @return the row, or null for a blank line
+     */
+    private Row parse(long line, String text, List<String> header) {
+        if (text.isBlank()) {
+            return null;
+        }
+        Map<String, String> fields;
+        try {
+            fields = header == null ? parseJsonLine(text) : toFields(header, parseCsvLine(text));
+        } catch (JsonProcessingException e) {
+            return new Row(line, null, "malformed JSON: " + e.getOriginalMessage(), false);
+        } catch (IllegalArgumentException e) {
+            return new Row(line, null, "malformed CSV: " + e.getMessage(), false);
+        }
+        for (String field : REQUIRED) {
+            String value = fields.get(field);
+            if (value == null || value.isBlank()) {
+                return new Row(line, null, "missing " + field, false);
+            }
+        }
+        String username = fields.get("username").trim();
+        String email = fields.get("email").trim();
+        if (!EMAIL.matcher(email).matches()) {
+            return new Row(line, null, "invalid email " + email, false);
+        }
+        if (userRepository.getRecordByField("username", username) != null
+                || userRepository.getRecordByField("email", email) != null) {
+            return new Row(line, null, "duplicate", true);
+        }
+        return new Row(line, toRecord(fields.get("name"), fields.get("surname"), username, email,
+                fields.get("password")), null, false);
+    }
+
+    /**
+     * Builds a new user the way the registration endpoint does, with a random
+     * code and the current date.
+     */
+    private static UserRecord toRecord(String name, String surname, String username, String email,
+            String password) {
+        return UserRecord.fromMap(new User(new RegisterDTO(name, surname, username, email, password)).toDict());
+    }
+
+    private Map<String, String> parseJsonLine(String text) throws JsonProcessingException {
+        Map<?, ?> object = objectMapper.readValue(text, Map.class);
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<?, ?> entry : object.entrySet()) {
+            if (entry.getValue() != null) {
+                fields.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+        return fields;
+    }
+
+    private static Map<String, String> toFields(List<String> header, List<String> values) {
+        if (values.size() != header.size()) {
+            throw new IllegalArgumentException(values.size() + " fields instead of " + header.size());
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            fields.put(header.get(i), values.get(i));
+        }
+        return fields;
+    }
+
+    /**
+     * Splits one CSV line on commas. A field in double quotes may contain
+     * commas, and a doubled quote inside it stands for one quote.
+     *
+     * @param line the line
+     * @return the fields, unquoted
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Waits for the previous batch to be written, rethrowing its failure.
+     */
+    private static void await(Future<?> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing users", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error writing imported users: " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+}
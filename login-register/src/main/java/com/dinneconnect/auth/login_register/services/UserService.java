@@ -1,5 +1,8 @@
 package com.dinneconnect.auth.login_register.services;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -10,14 +13,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.dinneconnect.auth.login_register.DTO.UpdatePrimaryInfoDTO;
+import com.dinneconnect.auth.login_register.DTO.UserPageDTO;
 import com.dinneconnect.auth.login_register.DTO.UserResponseDTO;
 import com.dinneconnect.auth.login_register.models.User;
-import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
  * Service class for managing user-related operations.
  * This class provides methods to create, retrieve, update, and delete users.
- * It interacts with the UserRepository to perform these operations.
+ * It interacts with the configured {@link UserStore} to perform these operations.
  * 
  * <p>
  * The UserService class is annotated with {@link Service}, indicating that it
@@ -33,43 +43,183 @@ import com.dinneconnect.auth.login_register.repository.BaseRepository;
 @Service
 public class UserService {
 
-    private final BaseRepository userRepository;
+    /**
+     * Number of users written between two flushes while streaming
+     */
+    private static final int EXPORT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Number of times an update without a client version is read and applied
+     * again after losing to a concurrent update
+     */
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
+
+    /**
+     * Maximum number of users created by one call to createUsers
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private final UserStore userRepository;
+
+    private final ObjectMapper objectMapper;
 
     /**
      * Constructs a new UserService with the specified UserRepository.
      * 
-     * @param userRepository the repository for user data
+     * @param userRepository the storage engine for user data, chosen by the
+     *                       app.repository.engine property
+     * @param objectMapper   the mapper used to stream users as JSON
      */
     @Autowired
-    public UserService(BaseRepository userRepository) {
+    public UserService(UserStore userRepository, ObjectMapper objectMapper) {
         this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Retrieves a list of all users.
+     * The list is a read-only view over the repository snapshot that builds
+     * each response on access, so no copy of the user table is made.
      * 
      * @return a list of all users
      */
     public List<UserResponseDTO> getAllUsers() {
-        List<Map<String, Object>> users = userRepository.getEntities();
+        List<UserRecord> users = userRepository.getRecords();
 
         if (users.isEmpty()) {
             return Collections.emptyList();
         }
 
-        System.out.println(users);
+        return new AbstractList<>() {
+            @Override
+            public UserResponseDTO get(int index) {
+                return toResponse(users.get(index));
+            }
+
+            @Override
+            public int size() {
+                return users.size();
+            }
+        };
+    }
+
+    /**
+     * Retrieves one page of users in ascending order of code. The cursor is
+     * the code of the last user of the previous page, so pages stay
+     * consistent while users are added or removed, and a page costs the same
+     * however deep into the listing it is.
+     * 
+     * @param cursor the cursor returned with the previous page, or null for
+     *               the first page
+     * @param limit  the maximum number of users in the page
+     * @return the users of the page and the cursor of the next one
+     */
+    public UserPageDTO getUsersPage(Long cursor, int limit) {
+        List<UserRecord> users = userRepository.getRecordsAfter(cursor, limit + 1);
+        boolean more = users.size() > limit;
+        List<UserResponseDTO> page = new ArrayList<>(Math.min(users.size(), limit));
+        for (UserRecord user : users.subList(0, Math.min(users.size(), limit))) {
+            page.add(toResponse(user));
+        }
+        return new UserPageDTO(page, more ? page.get(page.size() - 1).getCode() : null);
+    }
+
+    /**
+     * Writes every user to a stream as newline-delimited JSON, one object per
+     * line. Users are read through {@link UserStore#scanRecords()} and
+     * written as they come, so memory use does not grow with the number of
+     * users. The stream is flushed every {@value #EXPORT_FLUSH_INTERVAL} users
+     * and left open.
+     * 
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeUsersAsNdjson(OutputStream out) throws IOException {
+        // One sequence writer resolves the serializer once for every user, and
+        // flushing after each of them would send one network write per user
+        ObjectWriter writer = objectMapper.writerFor(UserResponseDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        try (JsonGenerator generator = writer.createGenerator(out);
+                SequenceWriter sequence = writer.writeValues(generator)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            long written = 0;
+            for (UserRecord user : userRepository.scanRecords()) {
+                sequence.write(toResponse(user));
+                if (++written % EXPORT_FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+            if (written > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    /**
+     * Counts the users in total and with each status set, and optionally the
+     * users matching a combination of statuses. With the "json" engine the
+     * counts come from the status bitmaps of the repository, so no user is
+     * read.
+     * 
+     * @param filter status names ("reservation", "verified", "active") mapped
+     *               to the value to match; when not empty its count is added
+     *               as "matching"
+     * @return the counts by name
+     * @throws IllegalArgumentException if the filter names an unknown status
+     */
+    public Map<String, Long> getUserStats(Map<String, Boolean> filter) {
+        Map<String, Long> stats = userRepository.getFlagCounts();
+        if (!filter.isEmpty()) {
+            stats.put("matching", userRepository.countByFlags(filter));
+        }
+        return stats;
+    }
+
+    /**
+     * Reports whether mutations acknowledged by write-behind persistence are
+     * waiting for, or failed to reach, the disk.
+     * 
+     * @return the write-behind status of the storage engine
+     */
+    public Map<String, Object> getWriteBehindStatus() {
+        return userRepository.getWriteBehindStatus();
+    }
 
-        List<UserResponseDTO> result = new ArrayList<>();
-        for (Map<String, Object> map : users) {
+    /**
+     * Builds the public view of a stored user.
+     * 
+     * @param user the stored user
+     * @return the user without its password and statuses
+     */
+    private static UserResponseDTO toResponse(UserRecord user) {
+        UserResponseDTO response = new UserResponseDTO(
+                user.getCode(),
+                user.getName(),
+                user.getSurname(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getCreationDate());
+        response.setVersion(user.getVersion());
+        return response;
+    }
 
-            UserResponseDTO user = new UserResponseDTO(
-                    (Long) map.get("code"),
-                    (String) map.get("name"),
-                    (String) map.get("surname"),
-                    (String) map.get("username"),
-                    (String) map.get("email"),
-                    (String) map.get("creationDate"));
-            result.add(user);
+    /**
+     * Searches users whose username, name or surname starts with a prefix,
+     * ignoring case, for autocomplete.
+     * 
+     * @param field  the field to search: "username", "name" or "surname"
+     * @param prefix the beginning of the value
+     * @param limit  the maximum number of users to return
+     * @return the first matching users in alphabetical order of the field
+     * @throws IllegalArgumentException if the field cannot be searched by prefix
+     * @throws IllegalStateException if the storage keeps no prefix index
+     */
+    public List<UserResponseDTO> searchUsers(String field, String prefix, int limit) {
+        List<UserRecord> users = userRepository.searchByPrefix(field, prefix, limit);
+        List<UserResponseDTO> result = new ArrayList<>(users.size());
+        for (UserRecord user : users) {
+            result.add(toResponse(user));
         }
         return result;
     }
@@ -82,16 +232,9 @@ public class UserService {
      * @throws RuntimeException if the user is not found
      */
     public UserResponseDTO getUserById(Long id) {
-        Map<String, Object> user = userRepository.getEntityByCode(id);
+        UserRecord user = userRepository.getRecordByCode(id);
         if (user != null) {
-
-            return new UserResponseDTO(
-                    (Long) user.get("code"),
-                    (String) user.get("name"),
-                    (String) user.get("surname"),
-                    (String) user.get("username"),
-                    (String) user.get("email"),
-                    (String) user.get("creationDate"));
+            return toResponse(user);
         }
         return null;
     }
@@ -103,16 +246,9 @@ public class UserService {
      * @return the user with the specified email
      */
     public UserResponseDTO getUserByEmail(String email) {
-        Map<String, Object> user = userRepository.getEntityByField("email", email);
+        UserRecord user = userRepository.getRecordByField("email", email);
         if (user != null) {
-
-            return new UserResponseDTO(
-                    (Long) user.get("code"),
-                    (String) user.get("name"),
-                    (String) user.get("surname"),
-                    (String) user.get("username"),
-                    (String) user.get("email"),
-                    (String) user.get("creationDate"));
+            return toResponse(user);
         }
         return null;
     }
@@ -125,74 +261,61 @@ public class UserService {
      */
     public UserResponseDTO getUserByUsername(String username, String password) {
 
-        Map<String, Object> user = userRepository.getEntityByField("username", username);
+        UserRecord user = userRepository.getRecordByField("username", username);
 
-        if ((user != null && ((String) user.get("password")).equals(password))) {
-
-            return new UserResponseDTO(
-                    (Long) user.get("code"),
-                    (String) user.get("name"),
-                    (String) user.get("surname"),
-                    (String) user.get("username"),
-                    (String) user.get("email"),
-                    (String) user.get("creationDate"));
+        if (user != null && password.equals(user.getPassword())) {
+            return toResponse(user);
         }
         return null;
     }
 
     /**
-     * Updates the primary information of a user.
+     * Updates the primary information of a user. Blank fields keep their
+     * stored value. The update is only applied if the user is still at the
+     * version given in the DTO; without one, it is applied to the version read
+     * here, and read and applied again if a concurrent update got in first,
+     * so the kept fields never overwrite newer values.
      * 
-     * @param id   the Long of the user to update
-     * @param user the DTO containing the new primary information
-     * @return a ResponseEntity indicating the result of the update operation
+     * @param id        the Long of the user to update
+     * @param updateDTO the DTO containing the new primary information
+     * @return the result of the update, with "conflict" set when the user
+     *         changed since the given version and "durable" false when it
+     *         could not be written
      * @throws RuntimeException if the user is not found
      */
     public Map<String, Boolean> updatePrimaryInfo(Long id, UpdatePrimaryInfoDTO updateDTO) {
-
-        Map<String, Object> user = userRepository.getEntityByCode(id);
-
-        if (user.isEmpty()) {
-            throw new RuntimeException("User not found");
-        }
-
-        Map<String, Boolean> response;
-        Map<String, Object> updates = new HashMap<>();
-
-        if (updateDTO.getName().equals("") || updateDTO.getName() == null) {
-            updates.put("name", user.get("name"));
-        } else {
-            updates.put("name", updateDTO.getName());
-        }
-        if (updateDTO.getSurname().equals("") || updateDTO.getSurname() == null) {
-            updates.put("surname", user.get("surname"));
-        } else {
-            updates.put("surname", updateDTO.getSurname());
-        }
-        if (updateDTO.getEmail().equals("") || updateDTO.getEmail() == null) {
-            updates.put("email", user.get("email"));
-        } else {
-            updates.put("email", updateDTO.getEmail());
+        Map<String, Boolean> result = Map.of("success", false);
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            UserRecord user = userRepository.getRecordByCode(id);
+
+            if (user == null) {
+                throw new RuntimeException("User not found");
+            }
+
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("name", isBlank(updateDTO.getName()) ? user.getName() : updateDTO.getName());
+            updates.put("surname", isBlank(updateDTO.getSurname()) ? user.getSurname() : updateDTO.getSurname());
+            // Only a changed email is sent, since moving a unique key takes the
+            // exclusive lock of the repository
+            if (!isBlank(updateDTO.getEmail()) && !updateDTO.getEmail().equals(user.getEmail())) {
+                updates.put("email", updateDTO.getEmail());
+            }
+
+            int version = updateDTO.getVersion() != null ? updateDTO.getVersion() : user.getVersion();
+            result = userRepository.updateEntityIfVersion(id, version, updates);
+            if (updateDTO.getVersion() != null || !isConflict(result)) {
+                break;
+            }
         }
 
-        if (updates.isEmpty()) {
-            response = new HashMap<>();
-            response.put("success", false);
-            return response;
+        Map<String, Boolean> response = new HashMap<>();
+        response.put("success", result.get("success"));
+        if (isConflict(result)) {
+            response.put("conflict", true);
         }
-
-        Map<String, Boolean> result = userRepository.updateEntity(id, updates);
-        System.out.println("=======================================");
-        System.out.println(result);
-
-        if (!result.get("success")) {
-            response = new HashMap<>();
-            response.put("success", false);
-            return response;
+        if (isNotDurable(result)) {
+            response.put("durable", false);
         }
-
-        response = new HashMap<>();
-        response.put("success", true);
         return response;
     }
 
@@ -201,24 +324,56 @@ public class UserService {
      * 
      * @param id       the UUID of the user whose password is to be updated
      * @param password the new password
-     * @return a ResponseEntity indicating the result of the update operation
+     * @param version  the version of the user the client read, or null to
+     *                 update the user whatever its version
+     * @return the result of the update, with "conflict" set when the user
+     *         changed since the given version and "durable" false when it
+     *         could not be written
      * @throws RuntimeException if the user is not found
      */
-
-    public Map<String, Boolean> updatePassword(Long id, String password) {
+    public Map<String, Boolean> updatePassword(Long id, String password, Integer version) {
         Map<String, Boolean> response = new HashMap<>();
         Map<String, Object> updates = new HashMap<>();
         updates.put("password", password);
-        System.out.println(updates);
-        Map<String, Boolean> update = userRepository.updateEntity(id, updates);
+        Map<String, Boolean> update = version == null
+                ? userRepository.updateEntity(id, updates)
+                : userRepository.updateEntityIfVersion(id, version, updates);
 
+        if (isConflict(update)) {
+            response.put("success", false);
+            response.put("conflict", true);
+            return response;
+        }
+        if (isNotDurable(update)) {
+            response.put("success", false);
+            response.put("durable", false);
+            return response;
+        }
         if (!update.get("success")) {
             throw new RuntimeException("User not found");
         }
-        response.put("success", false);
+        response.put("success", true);
         return response;
     }
 
+    private static boolean isBlank(String value) {
+        return value == null || value.equals("");
+    }
+
+    private static boolean isConflict(Map<String, Boolean> result) {
+        return Boolean.TRUE.equals(result.get("conflict"));
+    }
+
+    /**
+     * Tells whether a write was accepted but could not be made durable.
+     * 
+     * @param result the result returned by the repository
+     * @return true if the result has "durable" set to false
+     */
+    public static boolean isNotDurable(Map<String, ?> result) {
+        return Boolean.FALSE.equals(result.get("durable"));
+    }
+
     /**
      * Creates a new user.
      * 
@@ -229,6 +384,23 @@ public class UserService {
         return userRepository.postEntity(user);
     }
 
+    /**
+     * Creates several users with a single persist for the whole batch.
+     *
+     * @param users the users to create, at most {@value #MAX_BATCH_SIZE}
+     * @return the result of each user, in the order given, as returned by
+     *         createUser; a user is rejected as a duplicate if its username or
+     *         email is taken, also by an earlier user of the batch
+     * @throws IllegalArgumentException if the batch is empty or larger than
+     *                                  {@value #MAX_BATCH_SIZE}
+     */
+    public List<Map<String, Boolean>> createUsers(List<User> users) {
+        if (users.isEmpty() || users.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must hold between 1 and " + MAX_BATCH_SIZE + " users");
+        }
+        return userRepository.postRecords(users.stream().map(user -> UserRecord.fromMap(user.toDict())).toList());
+    }
+
     /**
      * Deletes a user by their ID.
      * 
@@ -238,7 +410,7 @@ public class UserService {
      *                                  exist
      */
     public Map<String, Object> deleteUserById(Long id) {
-        if (userRepository.getEntityByCode(id) != null) {
+        if (userRepository.getRecordByCode(id) != null) {
             Map<String, Object> user = userRepository.deleteEntityByCode(id);
             return user;
         } else {
@@ -26,13 +26,15 @@ public class UserUtilities {
      * @return the corresponding UserRequestDTO
      */
     public UserResponseDTO UserToUserDTO(UserResponseDTO user) {
-        return new UserResponseDTO(
+        UserResponseDTO copy = new UserResponseDTO(
                 user.getCode(),
                 user.getName(),
                 user.getSurname(),
                 user.getUsername(),
                 user.getEmail(),
                 user.getCreationDate());
+        copy.setVersion(user.getVersion());
+        return copy;
     }
 
     /**
@@ -46,13 +48,7 @@ public class UserUtilities {
 
         for (UserResponseDTO item : list_users) {
             System.out.println(item);
-            users.add(UserToUserDTO(new UserResponseDTO(
-                    item.getCode(),
-                    item.getName(),
-                    item.getSurname(),
-                    item.getUsername(),
-                    item.getEmail(),
-                    item.getCreationDate())));
+            users.add(UserToUserDTO(item));
         }
         return users;
     }
@@ -0,0 +1,119 @@
+/**
+ * JMH benchmark comparing the lookup of a user by code through the previous
+ * stream scan of BaseRepository against the primitive LongIndex.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main CodeLookupBenchmark -prof gc
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.dinneconnect.auth.login_register.repository.LongIndex;
+
+/**
+ * Lookup by code at 10k, 1M and 10M users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" })
+public class CodeLookupBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({ "10000", "1000000", "10000000" })
+    private int users;
+
+    private List<Map<String, Object>> data;
+
+    private LongIndex codeIndex;
+
+    private long[] probes;
+
+    private int next;
+
+    /**
+     * Fills the table with users carrying random codes, the same way
+     * {@code User(RegisterDTO)} generates them.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        data = new ArrayList<>(users);
+        codeIndex = new LongIndex(users);
+        for (int slot = 0; slot < users; slot++) {
+            long code = random.nextLong(0, 1000000000000L);
+            Map<String, Object> user = new HashMap<>();
+            user.put("code", code);
+            data.add(user);
+            codeIndex.put(code, slot);
+        }
+        probes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = ((Number) data.get(random.nextInt(users)).get("code")).longValue();
+        }
+    }
+
+    private long nextProbe() {
+        return probes[next++ & (PROBES - 1)];
+    }
+
+    /**
+     * The lookup BaseRepository.getEntityByCode used before the primary index.
+     */
+    @Benchmark
+    public Map<String, Object> streamScan() {
+        long code = nextProbe();
+        return data.stream()
+                .filter(entity -> ((Number) entity.get("code")).longValue() == code)
+                .findFirst()
+                .orElse(Map.of("error", "Entity not found"));
+    }
+
+    /**
+     * The lookup through the open-addressing primary index.
+     */
+    @Benchmark
+    public Map<String, Object> longIndex() {
+        int slot = codeIndex.get(nextProbe());
+        return slot == LongIndex.ABSENT ? Map.of("error", "Entity not found") : data.get(slot);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CodeLookupBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * JMH benchmark measuring the throughput of BaseRepository under concurrent
+ * readers and profile updates, with every update taking the exclusive lock
+ * (stripes = 0, the former single-monitor behaviour) against updates that
+ * only lock the stripe of their user code, and the cost of reading the whole
+ * table while updates continue. The "primary" group sends profile updates
+ * through UserService as /api/update-user/primary/ does, with the email the
+ * user already has, which must not take the exclusive lock.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main ConcurrencyBenchmark
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.DTO.UpdatePrimaryInfoDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.services.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Mixed lookups, full-table reads and profile updates against a repository
+ * of 10k users.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+    private static final int USERS = 10000;
+
+    @Param({ "0", "64" })
+    private int stripes;
+
+    @Param({ "mapped", "group" })
+    private String mode;
+
+    private Path directory;
+
+    private BaseRepository repository;
+
+    private UserService service;
+
+    private long[] codes;
+
+    /**
+     * Creates a repository in a fresh directory and fills it with users.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("concurrency-benchmark");
+        String path = directory.resolve("user.json").toString();
+        BaseRepository loader = new BaseRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(Long.MAX_VALUE));
+        for (int i = 0; i < USERS; i++) {
+            loader.postEntity(new User(new RegisterDTO("name" + i, "surname" + i, "user" + i,
+                    "user" + i + "@example.com", "password")));
+        }
+        loader.save();
+        loader.close();
+        Files.delete(directory.resolve("user.json.log"));
+
+        repository = mode.equals("mapped")
+                ? new BaseRepository(RepositoryOptions.of(path).withPersistence("mapped").withLockStripes(stripes))
+                : new BaseRepository(RepositoryOptions.of(path).withPersistence("log").withCompactAfter(Long.MAX_VALUE)
+                        .withGroupCommit(0, 256).withLockStripes(stripes));
+        codes = repository.getRecords().stream().mapToLong(UserRecord::getCode).toArray();
+        service = new UserService(repository, new ObjectMapper());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * One profile update, as done by /api/update-user/primary/.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public Map<String, Boolean> update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long code = codes[random.nextInt(codes.length)];
+        return repository.updateEntity(code, Map.of("name", "name" + random.nextInt(1000)));
+    }
+
+    /**
+     * One login lookup by username.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public UserRecord read() {
+        return repository.getRecordByField("username", "user" + ThreadLocalRandom.current().nextInt(USERS));
+    }
+
+    /**
+     * One update of name, surname and unchanged email through UserService, as
+     * done by /api/update-user/primary/ when a user saves the profile form.
+     */
+    @Benchmark
+    @Group("primary")
+    @GroupThreads(8)
+    public Map<String, Boolean> primaryUpdate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(codes.length);
+        UserRecord current = repository.getRecordByCode(codes[user]);
+        return service.updatePrimaryInfo(codes[user], new UpdatePrimaryInfoDTO("name" + random.nextInt(1000),
+                current.getSurname(), current.getEmail()));
+    }
+
+    /**
+     * Login lookup running next to {@link #primaryUpdate()}.
+     */
+    @Benchmark
+    @Group("primary")
+    @GroupThreads(8)
+    public UserRecord primaryRead() {
+        return read();
+    }
+
+    /**
+     * Profile update running next to {@link #all()}.
+     */
+    @Benchmark
+    @Group("scan")
+    @GroupThreads(8)
+    public Map<String, Boolean> scanUpdate() {
+        return update();
+    }
+
+    /**
+     * Reads the whole user table, as done by /api/user/all/testing/, and walks
+     * it once.
+     */
+    @Benchmark
+    @Group("scan")
+    @GroupThreads(8)
+    public long all() {
+        long codes = 0;
+        for (UserRecord user : repository.getRecords()) {
+            codes += user.getCode();
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Compares a full export of the user table: the former approach, which built
+ * the list of response DTOs and a copy of it before serializing the JSON
+ * array, against the NDJSON stream of UserService, with heap and off-heap
+ * storage. All write to a stream that discards the bytes. Reports wall time
+ * and the peak heap used during each export, above the loaded repository.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx4g -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.ExportBenchmark 1000000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.DTO.UserResponseDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.services.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Export time and peak heap of the list and NDJSON user listings.
+ */
+public class ExportBenchmark {
+
+    private interface Export {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path directory = Files.createTempDirectory("export-benchmark");
+        Path json = directory.resolve("user.json");
+        List<UserRecord> records = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            records.add(UserRecord.fromMap(new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000),
+                    "user" + i, "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(objectMapper, json, records);
+        records = null;
+        BaseRepository repository = new BaseRepository(json.toString());
+        UserService userService = new UserService(repository, objectMapper);
+
+        Export list = out -> {
+            List<UserResponseDTO> all = new ArrayList<>(userService.getAllUsers());
+            List<UserResponseDTO> copy = new ArrayList<>();
+            for (UserResponseDTO user : all) {
+                copy.add(new UserResponseDTO(user.getCode(), user.getName(), user.getSurname(), user.getUsername(),
+                        user.getEmail(), user.getCreationDate()));
+            }
+            objectMapper.writeValue(out, copy);
+        };
+        Export ndjson = userService::writeUsersAsNdjson;
+        Path offHeapJson = Files.copy(json, directory.resolve("offheap.json"));
+        BaseRepository offHeapRepository = new BaseRepository(RepositoryOptions.of(offHeapJson.toString())
+                .withStorage("offheap"));
+        Export offHeapNdjson = new UserService(offHeapRepository, objectMapper)::writeUsersAsNdjson;
+        for (int round = 0; round < 2; round++) {
+            measure("list", list);
+            measure("ndjson", ndjson);
+            measure("offheap", offHeapNdjson);
+        }
+        repository.close();
+        offHeapRepository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static void measure(String name, Export export) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        long before = heap.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long[] written = new long[1];
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+        long start = System.nanoTime();
+        export.write(out);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - before;
+        System.out.printf("%-9s %,6d ms  %,5d MB written  peak heap %,6d MB%n", name, millis, written[0] >> 20,
+                peak >> 20);
+    }
+}
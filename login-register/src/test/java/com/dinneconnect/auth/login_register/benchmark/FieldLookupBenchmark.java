@@ -0,0 +1,116 @@
+/**
+ * JMH benchmark measuring the time and the allocation of case-insensitive
+ * lookups in BaseRepository: an indexed lookup by username and a scan by
+ * name, both queried with mixed-case values over users with mixed-case
+ * fields. Run with the gc profiler and compare gc.alloc.rate.norm, the bytes
+ * allocated per lookup.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main FieldLookupBenchmark -prof gc
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Case-insensitive lookups against a repository of 10k users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class FieldLookupBenchmark {
+
+    private static final int USERS = 10000;
+
+    private static final int PROBES = 1024;
+
+    private Path directory;
+
+    private BaseRepository repository;
+
+    private String[] usernames;
+
+    private String[] names;
+
+    private int next;
+
+    /**
+     * Creates a repository with mixed-case names and usernames, and the
+     * queries to run against it.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("field-lookup-benchmark");
+        repository = new BaseRepository(RepositoryOptions.of(directory.resolve("user.json").toString())
+                .withPersistence("log").withCompactAfter(Long.MAX_VALUE));
+        for (int i = 0; i < USERS; i++) {
+            repository.postEntity(new User(new RegisterDTO("Name" + (i % 500), "Surname" + i, "User.Name" + i,
+                    "User.Name" + i + "@Example.com", "password")));
+        }
+        usernames = new String[PROBES];
+        names = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            usernames[i] = "USER.name" + (i * 7 % USERS);
+            names[i] = "NAME" + (i % 500);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Login lookup through the unique username index.
+     */
+    @Benchmark
+    public UserRecord byUsername() {
+        return repository.getRecordByField("username", usernames[next++ & (PROBES - 1)]);
+    }
+
+    /**
+     * First user with a given name, found by scanning.
+     */
+    @Benchmark
+    public UserRecord byName() {
+        return repository.getRecordByField("name", names[next++ & (PROBES - 1)]);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * JMH benchmark comparing status queries at one million users with random
+ * reservation, verified and active statuses: counts and filters evaluated on
+ * the bitmap indexes of BaseRepository against a scan of every user, the
+ * way getEntitiesByField evaluated them before.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main FlagBenchmark
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Status counts and filters at 1M users, bitmaps against scans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" })
+public class FlagBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    private static final Map<String, Boolean> ACTIVE_NOT_VERIFIED = Map.of("active", true, "verified", false);
+
+    private Path directory;
+
+    private BaseRepository repository;
+
+    /**
+     * Loads a repository where each status is set for half of the users.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<UserRecord> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(new UserRecord(i, "Name" + (i % 500), "Surname" + (i % 1000), "user" + i,
+                    "user" + i + "@example.com", "password", 1_700_000_000L, random.nextInt(8)));
+        }
+        directory = Files.createTempDirectory("flag-benchmark");
+        Path json = directory.resolve("user.json");
+        UserRecord.writeJsonArray(new ObjectMapper(), json, users);
+        repository = new BaseRepository(json.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Counts active users that are not verified on the bitmaps.
+     */
+    @Benchmark
+    public long countBitmap() {
+        return repository.countByFlags(ACTIVE_NOT_VERIFIED);
+    }
+
+    /**
+     * Counts active users that are not verified by scanning every user.
+     */
+    @Benchmark
+    public long countScan() {
+        return repository.getRecords().stream()
+                .filter(user -> user.isActive() && !user.isVerified())
+                .count();
+    }
+
+    /**
+     * All statistics of the stats endpoint.
+     */
+    @Benchmark
+    public Map<String, Long> flagCounts() {
+        return repository.getFlagCounts();
+    }
+
+    /**
+     * Lists active users through the bitmap-backed field lookup.
+     */
+    @Benchmark
+    public int filterBitmap() {
+        return repository.getRecordsByField("active", "true").size();
+    }
+
+    /**
+     * Lists active users with the string comparison the field lookup used
+     * before.
+     */
+    @Benchmark
+    public int filterScan() {
+        return (int) repository.getRecords().stream()
+                .filter(user -> "true".equals(UserRecord.fold(user.get("active"))))
+                .count();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Measures the throughput of the bulk user import: an NDJSON file is
+ * imported into an empty store of each engine with batches of 10,000 users,
+ * next to batches of one user, which persist after every user as the
+ * registration endpoint does.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.ImportBenchmark 100000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.H2UserStore;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.dinneconnect.auth.login_register.services.UserImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Users imported per second by engine, persistence mode and batch size.
+ */
+public class ImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path directory = Files.createTempDirectory("import-benchmark");
+        Path file = directory.resolve("users.ndjson");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < users; i++) {
+                writer.write("{\"name\":\"name" + (i % 500) + "\",\"surname\":\"surname" + (i % 1000)
+                        + "\",\"username\":\"user" + i + "\",\"email\":\"user" + i
+                        + "@example.com\",\"password\":\"password" + i + "\"}\n");
+            }
+        }
+        // The first round only warms up the JIT; H2 in particular runs far slower cold
+        for (String round : new String[] { "warmup", "measured" }) {
+            Path target = Files.createDirectory(directory.resolve(round));
+            boolean print = round.equals("measured");
+            run("json log", new BaseRepository(RepositoryOptions.of(target.resolve("log.json").toString())
+                    .withPersistence("log").withCompactAfter(10_000_000)), file,
+                    10_000, print);
+            run("json snapshot", new BaseRepository(target.resolve("snapshot.json").toString()), file, 10_000,
+                    print);
+            run("h2", new H2UserStore(target.resolve("h2").toString(), 4, target.resolve("none.json").toString()),
+                    file, 10_000, print);
+            // One user per batch: snapshot mode would rewrite the file per user
+            run("json log", new BaseRepository(RepositoryOptions.of(target.resolve("single-log.json").toString())
+                    .withPersistence("log").withCompactAfter(10_000_000)),
+                    file, 1, print);
+            run("h2", new H2UserStore(target.resolve("single-h2").toString(), 4,
+                    target.resolve("none.json").toString()), file, 1, print);
+        }
+    }
+
+    private static void run(String engine, UserStore store, Path file, int batchSize, boolean print)
+            throws Exception {
+        UserImporter.Report report = new UserImporter(store, new ObjectMapper(), batchSize).importFile(file);
+        store.close();
+        if (print) {
+            System.out.printf("%-14s batch %6d: %s%n", engine, batchSize, report);
+        }
+    }
+}
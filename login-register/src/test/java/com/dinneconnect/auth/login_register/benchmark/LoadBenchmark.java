@@ -0,0 +1,98 @@
+/**
+ * Compares the startup load of a large user.json: the former approach, which
+ * read the file into a String and then parsed it into a list of maps, against
+ * the streaming JsonUserLoader. Reports wall time and the peak heap used
+ * during each load. One million users make a file of roughly 200 MB.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx4g -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.LoadBenchmark 1000000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.JsonUserLoader;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Load time and peak heap of each user.json loader.
+ */
+public class LoadBenchmark {
+
+    private interface Loader {
+        List<UserRecord> load(Path path) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path directory = Files.createTempDirectory("load-benchmark");
+        Path json = directory.resolve("user.json");
+        List<UserRecord> records = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            records.add(UserRecord.fromMap(new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000),
+                    "user" + i, "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(objectMapper, json, records);
+        records = null;
+        System.out.printf("users: %,d  file: %,d MB  processors: %d%n", users, Files.size(json) >> 20,
+                Runtime.getRuntime().availableProcessors());
+
+        Loader readString = path -> {
+            String content = Files.readString(path);
+            if (content.trim().isEmpty()) {
+                return new ArrayList<>();
+            }
+            List<Map<String, Object>> maps = objectMapper.readValue(path.toFile(),
+                    objectMapper.getTypeFactory().constructCollectionType(List.class, Map.class));
+            List<UserRecord> loaded = new ArrayList<>(maps.size());
+            for (Map<String, Object> map : maps) {
+                loaded.add(UserRecord.fromMap(map));
+            }
+            return loaded;
+        };
+        Loader streaming = path -> new JsonUserLoader(objectMapper, Runtime.getRuntime().availableProcessors())
+                .load(path, null);
+
+        for (int round = 0; round < 2; round++) {
+            measure("readString + tree", readString, json, users);
+            measure("streaming", streaming, json, users);
+        }
+        Files.delete(json);
+        Files.delete(directory);
+    }
+
+    private static void measure(String name, Loader loader, Path json, int users) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        long before = heap.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+        List<UserRecord> loaded = loader.load(json);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() - before;
+        if (loaded.size() != users) {
+            throw new IllegalStateException("Loaded " + loaded.size() + " users");
+        }
+        System.out.printf("%-18s %,6d ms  peak heap %,6d MB%n", name, millis, peak >> 20);
+    }
+}
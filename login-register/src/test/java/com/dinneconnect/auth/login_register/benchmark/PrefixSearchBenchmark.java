@@ -0,0 +1,131 @@
+/**
+ * JMH benchmark measuring autocomplete queries through the prefix index of
+ * BaseRepository at one million users with random usernames, for short and
+ * longer prefixes, returning the top 10 matches. The scan variant filters
+ * the full table the way a search without the index would.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main PrefixSearchBenchmark
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Top-10 username prefix search at 1M users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" })
+public class PrefixSearchBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    private static final int PROBES = 1024;
+
+    @Param({ "2", "4" })
+    private int prefixLength;
+
+    private Path directory;
+
+    private BaseRepository repository;
+
+    private String[] prefixes;
+
+    private int next;
+
+    /**
+     * Loads a repository of users with random lower-case usernames and picks
+     * prefixes of existing usernames to query.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<UserRecord> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            StringBuilder username = new StringBuilder();
+            for (int c = 0; c < 8; c++) {
+                username.append((char) ('a' + random.nextInt(26)));
+            }
+            username.append(i);
+            users.add(new UserRecord(i, "Name" + (i % 500), "Surname" + (i % 1000), username.toString(),
+                    username + "@example.com", "password", 1_700_000_000L, 0));
+        }
+        prefixes = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            prefixes[i] = users.get(random.nextInt(USERS)).getUsername().substring(0, prefixLength).toUpperCase();
+        }
+        directory = Files.createTempDirectory("prefix-search-benchmark");
+        Path json = directory.resolve("user.json");
+        UserRecord.writeJsonArray(new ObjectMapper(), json, users);
+        repository = new BaseRepository(json.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Top 10 usernames starting with a prefix.
+     */
+    @Benchmark
+    public List<UserRecord> searchUsername() {
+        return repository.searchByPrefix("username", prefixes[next++ & (PROBES - 1)], 10);
+    }
+
+    /**
+     * Top 10 usernames starting with a prefix, found by scanning every user.
+     */
+    @Benchmark
+    public List<UserRecord> scanUsername() {
+        String prefix = UserRecord.fold(prefixes[next++ & (PROBES - 1)]);
+        return repository.getRecords().stream()
+                .filter(user -> user.key("username").startsWith(prefix))
+                .sorted(Comparator.comparing((UserRecord user) -> user.key("username"))
+                        .thenComparingLong(UserRecord::getCode))
+                .limit(10)
+                .toList();
+    }
+}
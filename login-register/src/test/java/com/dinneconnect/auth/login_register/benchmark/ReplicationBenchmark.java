@@ -0,0 +1,115 @@
+/**
+ * Measures replication from a primary repository to a follower over a local
+ * socket: the time to sync a follower from a snapshot, next to the time the
+ * primary takes to load the same users from its file, the lag of the
+ * follower behind a steady stream of profile updates, and the rate at which
+ * it catches up with a burst of them.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.ReplicationBenchmark 100000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.ReplicationClient;
+import com.dinneconnect.auth.login_register.repository.ReplicationLog;
+import com.dinneconnect.auth.login_register.repository.ReplicationServer;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Snapshot sync time, steady-state lag and catch-up rate of a follower.
+ */
+public class ReplicationBenchmark {
+
+    private static final String SECRET = "replication-benchmark-secret";
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path directory = Files.createTempDirectory("replication-benchmark");
+        Path json = directory.resolve("user.json");
+        List<UserRecord> records = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            records.add(UserRecord.fromMap(new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000),
+                    "user" + i, "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(new ObjectMapper(), json, records);
+        long[] codes = records.stream().mapToLong(UserRecord::getCode).toArray();
+        records = null;
+        long loadStart = System.nanoTime();
+        // Write-behind keeps disk writes out of the measured replication path
+        BaseRepository primary = new BaseRepository(RepositoryOptions.of(json.toString()).withPersistence("log")
+                .withCompactAfter(1_000_000).withWriteBehind(100, 100_000));
+        System.out.printf("primary load: %d ms%n", (System.nanoTime() - loadStart) / 1_000_000);
+        ReplicationLog log = new ReplicationLog(1_000_000);
+        primary.enablePrimaryMode(log);
+        ReplicationServer server = new ReplicationServer(primary, log, new InetSocketAddress("127.0.0.1", 0),
+                SECRET);
+        BaseRepository follower = new BaseRepository(directory.resolve("follower.json").toString());
+        follower.enableFollowerMode();
+
+        long start = System.nanoTime();
+        ReplicationClient client = new ReplicationClient(follower, server.getAddress(), SECRET);
+        await(client, log);
+        System.out.printf("snapshot sync of %d users: %d ms%n", users, (System.nanoTime() - start) / 1_000_000);
+
+        // Steady stream: one update at a time, waiting for the follower
+        int samples = 2000;
+        long[] lags = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            start = System.nanoTime();
+            primary.updateEntity(codes[i % codes.length], Map.of("name", "steady" + i));
+            await(client, log);
+            lags[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(lags);
+        System.out.printf("steady lag (update to applied): p50=%d us p99=%d us%n", lags[samples / 2] / 1000,
+                lags[samples * 99 / 100] / 1000);
+
+        // Burst: the primary applies updates as fast as it can
+        int burst = 100_000;
+        start = System.nanoTime();
+        for (int i = 0; i < burst; i++) {
+            primary.updateEntity(codes[i % codes.length], Map.of("name", "burst" + i));
+        }
+        long applied = System.nanoTime() - start;
+        long maxLag = (Long) client.status().get("lagRecords");
+        await(client, log);
+        long caughtUp = System.nanoTime() - start;
+        System.out.printf("burst of %d updates: primary %d ms, follower caught up after %d ms (%.0f records/s),"
+                + " lag right after the burst %d records%n", burst, applied / 1_000_000, caughtUp / 1_000_000,
+                burst * 1e9 / caughtUp, maxLag);
+
+        client.close();
+        server.close();
+        primary.close();
+        follower.close();
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    private static void await(ReplicationClient client, ReplicationLog log) {
+        while (client.getAppliedSequence() != log.lastSequence()) {
+            // Park rather than spin, so the follower threads get the CPU
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * JMH benchmark comparing the load of the user dataset from the JSON array
+ * used by BaseRepository against the BinarySnapshot format.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main SnapshotBenchmark -prof gc
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BinarySnapshot;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Startup load of a user dataset in both snapshot formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class SnapshotBenchmark {
+
+    @Param({ "100000" })
+    private int users;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Path directory;
+
+    private Path json;
+
+    private Path binary;
+
+    /**
+     * Writes the same users as a JSON array and as a binary snapshot.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        json = directory.resolve("user.json");
+        binary = directory.resolve("user.bin");
+        List<UserRecord> data = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            data.add(UserRecord.fromMap(new User(new RegisterDTO("name" + i, "surname" + i, "user" + i,
+                    "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(objectMapper, json, data);
+        BinarySnapshot.write(binary, data);
+        System.out.println("\njson bytes: " + Files.size(json) + ", binary bytes: " + Files.size(binary));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(json);
+        Files.delete(binary);
+        Files.delete(directory);
+    }
+
+    /**
+     * The load done by BaseRepository.loadData for a JSON file.
+     */
+    @Benchmark
+    public List<UserRecord> json() throws IOException {
+        return UserRecord.readJsonArray(objectMapper, json);
+    }
+
+    /**
+     * The load of the same users from a binary snapshot.
+     */
+    @Benchmark
+    public List<UserRecord> binary() throws IOException {
+        return BinarySnapshot.read(binary);
+    }
+}
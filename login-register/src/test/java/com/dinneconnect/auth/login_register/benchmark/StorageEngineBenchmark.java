@@ -0,0 +1,167 @@
+/**
+ * JMH benchmark running the operations of UserService against every storage
+ * engine: the in-memory JSON repository ("json") and the embedded H2
+ * database ("h2"). Both start from the same 100k users, written as a JSON
+ * file that each engine loads or imports, and see the same probes.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main StorageEngineBenchmark
+ *
+ * Dependencies:
+ * - JMH
+ * - H2
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.H2UserStore;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Lookups, pages, prefix search, counts and updates on 100k users per engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class StorageEngineBenchmark {
+
+    private static final int USERS = 100_000;
+
+    private static final int PROBES = 1024;
+
+    @Param({ "json", "h2" })
+    public String engine;
+
+    private Path directory;
+
+    private UserStore store;
+
+    private long[] codes;
+
+    private String[] usernames;
+
+    private int next;
+
+    /**
+     * Writes the users to a JSON file and opens the engine on it.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage-engine-benchmark");
+        Path json = directory.resolve("user.json");
+        List<UserRecord> records = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            records.add(UserRecord.fromMap(new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000),
+                    "user" + i, "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(new ObjectMapper(), json, records);
+        // Write-behind keeps the JSON engine from rewriting the file on every
+        // update; H2 commits without forcing the disk either
+        store = engine.equals("json")
+                ? new BaseRepository(RepositoryOptions.of(json.toString()).withPersistence("log")
+                        .withCompactAfter(Long.MAX_VALUE).withWriteBehind(100, 10000))
+                : new H2UserStore(directory.resolve("users").toString(), 8, json.toString());
+        codes = new long[PROBES];
+        usernames = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            UserRecord user = records.get((int) ((i * 7919L) % USERS));
+            codes[i] = user.getCode();
+            usernames[i] = user.getUsername().toUpperCase();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Profile lookup by primary key.
+     */
+    @Benchmark
+    public UserRecord byCode() {
+        return store.getRecordByCode(codes[next++ & (PROBES - 1)]);
+    }
+
+    /**
+     * Login lookup by username, ignoring case.
+     */
+    @Benchmark
+    public UserRecord byUsername() {
+        return store.getRecordByField("username", usernames[next++ & (PROBES - 1)]);
+    }
+
+    /**
+     * One keyset page of 100 users.
+     */
+    @Benchmark
+    public List<UserRecord> page() {
+        return store.getRecordsAfter(codes[next++ & (PROBES - 1)], 100);
+    }
+
+    /**
+     * Autocomplete on a surname prefix shared by a ninth of the users.
+     */
+    @Benchmark
+    public List<UserRecord> prefix() {
+        return store.searchByPrefix("surname", "surname" + (next++ & 7), 10);
+    }
+
+    /**
+     * Count of the active users.
+     */
+    @Benchmark
+    public long countActive() {
+        return store.countByFlags(Map.of("active", true));
+    }
+
+    /**
+     * Profile update of a non-unique field.
+     */
+    @Benchmark
+    public Map<String, Boolean> update() {
+        int probe = next++ & (PROBES - 1);
+        return store.updateEntity(codes[probe], Map.of("name", "renamed" + (probe & 15)));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Compares a BaseRepository loaded with heap storage against one loaded with
+ * off-heap storage: retained heap, direct memory, the duration of a full GC
+ * with the table live, and the cost of an indexed lookup.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx3g -XX:MaxDirectMemorySize=3g -cp
+ * target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.StorageFootprint 1000000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Heap and GC cost of each repository storage.
+ */
+public class StorageFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path directory = Files.createTempDirectory("storage-footprint");
+        Path json = directory.resolve("user.json");
+        List<UserRecord> records = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            records.add(UserRecord.fromMap(new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000),
+                    "user" + i, "user" + i + "@example.com", "password" + i)).toDict()));
+        }
+        UserRecord.writeJsonArray(new ObjectMapper(), json, records);
+        records = null;
+
+        for (String storage : List.of("heap", "offheap")) {
+            long heapBefore = usedHeapAfterGc();
+            long directBefore = directMemory();
+            BaseRepository repository = new BaseRepository(RepositoryOptions.of(json.toString()).withStorage(storage));
+            long heap = usedHeapAfterGc() - heapBefore;
+            long direct = directMemory() - directBefore;
+            long start = System.nanoTime();
+            System.gc();
+            long gcMillis = (System.nanoTime() - start) / 1_000_000;
+            long lookups = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < 1_000_000; i++) {
+                lookups += repository.getRecordByField("username", "user" + (int) ((long) i * 7919 % users)).getCode() & 1;
+            }
+            long lookupNanos = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-8s heap %,6d MB  direct %,6d MB  full GC %,5d ms  username lookup %,d ns (%d)%n",
+                    storage, heap >> 20, direct >> 20, gcMillis, lookupNanos, lookups);
+            repository.close();
+            repository = null;
+        }
+        Files.delete(json);
+        Files.delete(directory);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Measures the retained heap per user when the repository keeps users as the
+ * HashMap produced by User.toDict(), as a compact UserRecord, and as a
+ * UserRecord whose repeated values went through a StringPool. Names and
+ * surnames repeat every 500 and 1000 users.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx2g -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * com.dinneconnect.auth.login_register.benchmark.UserFootprint 1000000
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.StringPool;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Heap footprint of each in-memory user representation.
+ */
+public class UserFootprint {
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long map = measure(users, UserFootprint::map);
+        long record = measure(users, i -> UserRecord.fromMap(map(i)));
+        StringPool pool = new StringPool();
+        long pooled = measure(users, i -> UserRecord.fromMap(map(i)).intern(pool));
+        System.out.printf("users: %d%n", users);
+        System.out.printf("HashMap:    %,d bytes/user%n", map / users);
+        System.out.printf("UserRecord: %,d bytes/user%n", record / users);
+        System.out.printf("Pooled:     %,d bytes/user (pool estimate: %,d bytes saved)%n", pooled / users,
+                pool.getSavedBytes());
+    }
+
+    private static Map<String, Object> map(int i) {
+        return new User(new RegisterDTO("name" + (i % 500), "surname" + (i % 1000), "user" + i,
+                "user" + i + "@example.com", "password" + i)).toDict();
+    }
+
+    /**
+     * Builds the users and returns the heap they retain after a full GC.
+     */
+    private static long measure(int users, IntFunction<Object> factory) {
+        long before = usedAfterGc();
+        List<Object> retained = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            retained.add(factory.apply(i));
+        }
+        long used = usedAfterGc() - before;
+        if (retained.size() != users) {
+            throw new IllegalStateException();
+        }
+        return used;
+    }
+
+    private static long usedAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * JMH benchmark comparing the write path of BaseRepository in its
+ * persistence modes: full snapshot per request, one fsynced log record per
+ * request, group-committed log records, and write-behind snapshots or log
+ * records persisted in the background, with the users kept in one file or
+ * split over several shards.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt)
+ * org.openjdk.jmh.Main WriteBenchmark
+ *
+ * Dependencies:
+ * - JMH
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.ShardedRepository;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+
+/**
+ * Concurrent profile updates against a repository of 10k users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+public class WriteBenchmark {
+
+    private static final int USERS = 10000;
+
+    @Param({ "snapshot", "log", "group", "behind-snapshot", "behind-log" })
+    private String mode;
+
+    @Param({ "1", "4" })
+    private int shards;
+
+    private Path directory;
+
+    private UserStore repository;
+
+    private long[] codes;
+
+    /**
+     * Creates a repository in a fresh directory and fills it with users.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("write-benchmark");
+        String path = directory.resolve("user.json").toString();
+        BaseRepository loader = new BaseRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(Long.MAX_VALUE));
+        List<Long> loaded = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User(new RegisterDTO("name" + i, "surname" + i, "user" + i,
+                    "user" + i + "@example.com", "password"));
+            loader.postEntity(user);
+        }
+        loader.save();
+        loader.close();
+        Files.delete(directory.resolve("user.json.log"));
+        for (Map<String, Object> user : new BaseRepository(path).getEntities()) {
+            loaded.add(((Number) user.get("code")).longValue());
+        }
+        codes = loaded.stream().mapToLong(Long::longValue).toArray();
+
+        RepositoryOptions options = switch (mode) {
+            case "snapshot" -> RepositoryOptions.of(path);
+            case "log" -> RepositoryOptions.of(path).withPersistence("log").withCompactAfter(Long.MAX_VALUE);
+            case "behind-snapshot" -> RepositoryOptions.of(path).withWriteBehind(100, 10000);
+            case "behind-log" -> RepositoryOptions.of(path).withPersistence("log").withCompactAfter(Long.MAX_VALUE)
+                    .withWriteBehind(100, 10000);
+            default -> RepositoryOptions.of(path).withPersistence("log").withCompactAfter(Long.MAX_VALUE)
+                    .withGroupCommit(0, 256);
+        };
+        repository = shards > 1 ? new ShardedRepository(options.withShards(shards)) : new BaseRepository(options);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * One profile update, as done by /api/update-user/primary/.
+     */
+    @Benchmark
+    public Map<String, Boolean> update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long code = codes[random.nextInt(codes.length)];
+        return repository.updateEntity(code, Map.of("name", "name" + random.nextInt(1000)));
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * This class performs integration tests for the LoginController class through
+ * MockMvc, against the json storage engine in a temporary directory.
+ * The tests verify the keyset-paginated and the NDJSON user listings, the
+ * validation of the status filters of the user stats, resuming the change
+ * feed, and the version check of primary information updates.
+ *
+ * Dependencies:
+ * - Spring Boot Test
+ * - JUnit 5
+ * - MockMvc
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.controllerTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.services.UserService;
+import com.dinneconnect.auth.login_register.utilities.JWTUtilities;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Integration tests for the LoginController class.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class LoginControllerMvcTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Keeps the users of these tests in a directory of their own.
+     */
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("login-controller");
+        registry.add("app.repository.path", () -> directory.resolve("user.json").toString());
+    }
+
+    /**
+     * Tests that following the cursor of each page returns every user once, in
+     * ascending order of code, in pages of at most the limit, and that a
+     * limit below 1 is refused.
+     */
+    @Test
+    void testPagesFollowCursor() throws Exception {
+        List<Long> registered = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            registered.add(register("page" + i));
+        }
+
+        List<Long> codes = new ArrayList<>();
+        String cursor = null;
+        do {
+            JsonNode page = getJson("/api/user/all/testing/?limit=2" + (cursor == null ? "" : "&cursor=" + cursor));
+            assertTrue(page.get("users").size() <= 2);
+            page.get("users").forEach(user -> codes.add(user.get("code").asLong()));
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        } while (cursor != null);
+
+        assertTrue(codes.containsAll(registered));
+        assertEquals(codes.stream().sorted().distinct().toList(), codes);
+        mockMvc.perform(get("/api/user/all/testing/").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Tests that the NDJSON listing streams one user per line, the same users
+     * as the JSON listing, without passwords.
+     */
+    @Test
+    void testStreamsUsersAsNdjson() throws Exception {
+        register("ndjson");
+
+        MvcResult result = mockMvc.perform(get("/api/user/all/testing/").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        String[] lines = result.getResponse().getContentAsString().strip().split("\n");
+        assertEquals(getJson("/api/user/all/testing/").size(), lines.length);
+        boolean found = false;
+        for (String line : lines) {
+            JsonNode user = objectMapper.readTree(line);
+            assertFalse(user.has("password"));
+            found |= user.get("username").asText().equals("ndjson");
+        }
+        assertTrue(found);
+    }
+
+    /**
+     * Tests that the stats count every status, that a filter adds the count
+     * of matching users, and that filters on unknown statuses or with values
+     * other than true or false are refused.
+     */
+    @Test
+    void testStatsValidateFilters() throws Exception {
+        register("stats");
+
+        JsonNode stats = getJson("/api/user/stats/");
+        assertTrue(stats.get("users").asLong() >= 1);
+        assertTrue(stats.has("active") && stats.has("verified") && stats.has("reservation"));
+        assertFalse(stats.has("matching"));
+        JsonNode inactive = getJson("/api/user/stats/?active=FALSE");
+        assertEquals(inactive.get("users").asLong() - inactive.get("active").asLong(),
+                inactive.get("matching").asLong());
+
+        mockMvc.perform(get("/api/user/stats/").param("active", "yes"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/user/stats/").param("banned", "true"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Tests that the change feed needs a valid token, that a consumer resuming
+     * with the last sequence number and epoch it read receives the changes
+     * that followed, and that one resuming under another epoch is reset.
+     */
+    @Test
+    void testChangeFeedResumes() throws Exception {
+        mockMvc.perform(asyncDispatch(openFeed("token", "")))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("The token it's no valid"));
+        mockMvc.perform(asyncDispatch(openFeed("Bearer not-a-token", "")))
+                .andExpect(status().isBadRequest());
+
+        String token = "Bearer " + JWTUtilities.generateToken(Map.of("userID", "1", "username", "feed"));
+        JsonNode position = awaitEvents(openFeed(token, ""), 1).get(0);
+        assertEquals("feed", position.get("op").asText());
+        long epoch = position.get("epoch").asLong();
+        long code = register("feed");
+
+        List<JsonNode> resumed = awaitEvents(openFeed(token,
+                "?after=" + position.get("sequence").asLong() + "&epoch=" + epoch), 2);
+        assertEquals("create", resumed.get(1).get("op").asText());
+        assertEquals(code, resumed.get(1).get("code").asLong());
+        assertFalse(resumed.get(1).get("user").has("password"));
+
+        JsonNode reset = awaitEvents(openFeed(token, "?after=0&epoch=" + (epoch + 1)), 1).get(0);
+        assertEquals("reset", reset.get("op").asText());
+        assertEquals(epoch, reset.get("epoch").asLong());
+    }
+
+    /**
+     * Tests that an update sent with the version the client read is applied,
+     * and that one sent again with that version, now outdated, is rejected
+     * with 409 Conflict and leaves the user unchanged.
+     */
+    @Test
+    void testUpdateWithOutdatedVersionConflicts() throws Exception {
+        long code = register("versioned");
+        String token = "Bearer " + JWTUtilities.generateToken(Map.of("userID", String.valueOf(code),
+                "username", "versioned"));
+        int version = getUser(token).get("version").asInt();
+
+        updatePrimary(token, "Renamed", version)
+                .andExpect(status().isOk())
+                .andExpect(content().string("User information updated"));
+        updatePrimary(token, "Overwritten", version)
+                .andExpect(status().isConflict())
+                .andExpect(content().string("The user was modified by another request; read it again and retry"));
+
+        JsonNode user = getUser(token);
+        assertEquals("Renamed", user.get("name").asText());
+        assertTrue(user.get("version").asInt() > version);
+    }
+
+    private ResultActions updatePrimary(String token, String name, int version) throws Exception {
+        Map<String, Object> update = Map.of("name", name, "surname", "Doe",
+                "email", "versioned@example.com", "version", version);
+        return mockMvc.perform(post("/api/update-user/primary/")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(update)));
+    }
+
+    private JsonNode getUser(String token) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(get("/api/get-user").header("Authorization", token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    private MvcResult openFeed(String token, String query) throws Exception {
+        return mockMvc.perform(get("/api/changes/" + query).header("Authorization", token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    /**
+     * Reads the first events of a change feed, which never completes, waiting
+     * up to five seconds for them to be sent.
+     */
+    private List<JsonNode> awaitEvents(MvcResult result, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            String[] lines = result.getResponse().getContentAsString().split("\n");
+            List<JsonNode> events = new ArrayList<>();
+            for (String line : lines) {
+                if (!line.isBlank()) {
+                    events.add(objectMapper.readTree(line));
+                }
+            }
+            if (events.size() >= count) {
+                return events;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "change feed sent " + events.size() + " events");
+            Thread.sleep(20);
+        }
+    }
+
+    private long register(String username) {
+        userService.createUser(new User(new RegisterDTO("Name", "Doe", username, username + "@example.com", "pw")));
+        return userService.getUserByEmail(username + "@example.com").getCode();
+    }
+
+    private JsonNode getJson(String uri) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(get(uri))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * This class performs integration tests for the RegisterController class
+ * through MockMvc, against the json storage engine in a temporary directory.
+ * The tests verify the status codes of the batch registration: 201 when a
+ * user was registered, and otherwise the status of the most serious
+ * rejection, with one result per registration.
+ *
+ * Dependencies:
+ * - Spring Boot Test
+ * - JUnit 5
+ * - MockMvc
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.controllerTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Integration tests for the RegisterController class.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RegisterControllerMvcTest {
+
+    private static Path directory;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserStore userStore;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Keeps the users of each application context in a directory of its own.
+     */
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) throws IOException {
+        directory = Files.createTempDirectory("register-controller");
+        registry.add("app.repository.path", () -> directory.resolve("user.json").toString());
+    }
+
+    /**
+     * Tests that a batch with a new user answers 201, with a result per
+     * registration in the order sent.
+     */
+    @Test
+    void testPartialBatchIsCreated() throws Exception {
+        postUsers(List.of(user("taken")), status().isCreated());
+
+        JsonNode response = postUsers(List.of(user("fresh"), user("taken"),
+                new RegisterDTO("Name", "Doe", "bad", "not-an-email", "pw")), status().isCreated());
+
+        assertEquals(1, response.get("registered").asInt());
+        assertEquals("user registered", response.get("results").get(0).get("success").asText());
+        assertEquals("user or email already exists", response.get("results").get(1).get("error").asText());
+        assertEquals("something went wrong", response.get("results").get(2).get("error").asText());
+    }
+
+    /**
+     * Tests that a batch registering nobody answers 409 when a username or
+     * email is taken, and 400 when every registration is invalid or the
+     * batch is empty or too large.
+     */
+    @Test
+    void testRejectedBatchStatus() throws Exception {
+        postUsers(List.of(user("first")), status().isCreated());
+
+        postUsers(List.of(user("first"), new RegisterDTO("Name", "Doe", "bad", "bad", "pw")), status().isConflict());
+        postUsers(List.of(new RegisterDTO("Name", "Doe", "bad", "bad", "pw")), status().isBadRequest());
+        postUsers(List.of(), status().isBadRequest());
+        List<RegisterDTO> oversized = new ArrayList<>();
+        for (int i = 0; i <= 1000; i++) {
+            oversized.add(user("over" + i));
+        }
+        postUsers(oversized, status().isBadRequest());
+    }
+
+    /**
+     * Tests that a batch answers 503 on a replication follower, which accepts
+     * no writes.
+     */
+    @Test
+    @DirtiesContext
+    void testReadOnlyBatchIsUnavailable() throws Exception {
+        ((BaseRepository) userStore).enableFollowerMode();
+
+        JsonNode response = postUsers(List.of(user("follower")), status().isServiceUnavailable());
+        assertEquals("this server does not accept registrations",
+                response.get("results").get(0).get("error").asText());
+    }
+
+    /**
+     * Tests that a batch that cannot be written answers 500.
+     */
+    @Test
+    @DirtiesContext
+    void testUnsavedBatchFails() throws Exception {
+        // A directory with content in place of the snapshot makes every write fail
+        Files.delete(directory.resolve("user.json"));
+        Files.createDirectories(directory.resolve("user.json").resolve("blocker"));
+
+        JsonNode response = postUsers(List.of(user("unsaved")), status().isInternalServerError());
+        assertEquals("the user could not be saved", response.get("results").get(0).get("error").asText());
+    }
+
+    private JsonNode postUsers(List<RegisterDTO> users, ResultMatcher expected) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/api/post-users/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(users)))
+                .andExpect(expected)
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    private static RegisterDTO user(String username) {
+        return new RegisterDTO("Name", "Doe", username, username + "@example.com", "pw");
+    }
+}
@@ -0,0 +1,1031 @@
+/**
+ * This class performs unit tests for the BaseRepository class.
+ * The tests verify the behaviour of the in-memory indexes kept by the
+ * repository and that they stay consistent across inserts, updates and
+ * deletes.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.ReplicationClient;
+import com.dinneconnect.auth.login_register.repository.ReplicationLog;
+import com.dinneconnect.auth.login_register.repository.ReplicationServer;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.ShardedRepository;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.repository.UserStore;
+
+/**
+ * Unit tests for the BaseRepository class.
+ */
+public class BaseRepositoryTest {
+
+    private static final String SECRET = "replication-test-secret";
+
+    @TempDir
+    Path tempDir;
+
+    private BaseRepository repository;
+
+    private User user;
+
+    /**
+     * Sets up the test environment before each test.
+     * Creates a repository on an empty file and stores a sample user.
+     */
+    @BeforeEach
+    void setUp() {
+        repository = new BaseRepository(tempDir.resolve("user.json").toString());
+        user = new User(new RegisterDTO("John", "Doe", "John.Doe", "John.Doe@Example.com", "password123"));
+        repository.postEntity(user);
+    }
+
+    /**
+     * Tests looking up a user by username and email ignoring case.
+     */
+    @Test
+    void testIndexedLookupIgnoresCase() {
+        assertNotNull(repository.getEntityByField("username", "john.doe"));
+        assertNotNull(repository.getEntityByField("email", "JOHN.DOE@EXAMPLE.COM"));
+        assertNull(repository.getEntityByField("username", "jane"));
+    }
+
+    /**
+     * Tests that a second user with an already taken username or email is
+     * rejected.
+     */
+    @Test
+    void testDuplicateInsertIsRejected() {
+        User sameEmail = new User(new RegisterDTO("Jane", "Doe", "jane", "john.doe@example.com", "password123"));
+        User sameUsername = new User(new RegisterDTO("Jane", "Doe", "JOHN.DOE", "jane@example.com", "password123"));
+
+        assertEquals(Map.of("success", false, "duplicate", true), repository.postEntity(sameEmail));
+        assertEquals(Map.of("success", false, "duplicate", true), repository.postEntity(sameUsername));
+        assertEquals(1, repository.getEntities().size());
+    }
+
+    /**
+     * Tests that updating the email moves the index entry to the new value.
+     */
+    @Test
+    void testUpdateMovesIndexEntry() {
+        long code = ((Number) repository.getEntityByField("username", "john.doe").get("code")).longValue();
+
+        assertTrue(repository.updateEntity(code, Map.of("email", "new@example.com")).get("success"));
+        assertNull(repository.getEntityByField("email", "john.doe@example.com"));
+        assertNotNull(repository.getEntityByField("email", "NEW@example.com"));
+    }
+
+    /**
+     * Tests that an update resending the username and email a user already
+     * has, in another case, is applied, while one taking another user's email
+     * is still rejected.
+     */
+    @Test
+    void testUpdateKeepingUniqueKeys() {
+        repository.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123")));
+        long code = repository.getRecordByField("username", "john.doe").getCode();
+
+        assertTrue(repository.updateEntity(code,
+                Map.of("name", "Johnny", "username", "JOHN.DOE", "email", "john.doe@example.com")).get("success"));
+        assertEquals("JOHN.DOE", repository.getRecordByCode(code).getUsername());
+        assertEquals(code, repository.getRecordByField("email", "JOHN.DOE@example.com").getCode());
+        assertFalse(repository.updateEntity(code, Map.of("name", "Jim", "email", "JANE@example.com")).get("success"));
+        assertEquals("Johnny", repository.getRecordByCode(code).getName());
+    }
+
+    /**
+     * Tests that deleted users can no longer be found and their values can be
+     * reused.
+     */
+    @Test
+    void testDeleteReleasesIndexEntry() {
+        long code = ((Number) repository.getEntityByField("username", "john.doe").get("code")).longValue();
+
+        assertEquals(true, repository.deleteEntityByCode(code).get("success"));
+        assertNull(repository.getEntityByField("username", "john.doe"));
+        assertTrue(repository.postEntity(user).get("success"));
+    }
+
+    /**
+     * Tests that the indexes are rebuilt from the file on startup.
+     */
+    @Test
+    void testIndexesAreRebuiltOnLoad() {
+        BaseRepository reloaded = new BaseRepository(tempDir.resolve("user.json").toString());
+
+        assertNotNull(reloaded.getEntityByField("email", "john.doe@example.com"));
+        assertEquals(1, reloaded.getEntitiesByField("username", "JOHN.DOE").size());
+    }
+
+    /**
+     * Tests that in log mode mutations are appended to the log instead of
+     * rewriting the snapshot, and are replayed on startup.
+     */
+    @Test
+    void testLogModeReplaysMutations() throws IOException {
+        Path path = tempDir.resolve("logged.json");
+        BaseRepository logged = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000));
+        User jane = new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123"));
+        logged.postEntity(user);
+        logged.postEntity(jane);
+        long code = ((Number) logged.getEntityByField("username", "jane").get("code")).longValue();
+        logged.updateEntity(code, Map.of("name", "Janet"));
+        logged.deleteEntityByField("username", "john.doe");
+
+        assertEquals("[]", Files.readString(path));
+
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000));
+        assertEquals(1, reloaded.getEntities().size());
+        assertEquals("Janet", reloaded.getEntityByCode(code).get("name"));
+        assertNull(reloaded.getEntityByField("username", "john.doe"));
+    }
+
+    /**
+     * Tests that the log is folded into the snapshot once it reaches the
+     * configured size.
+     */
+    @Test
+    void testLogModeCompacts() throws IOException {
+        Path path = tempDir.resolve("compacted.json");
+        BaseRepository logged = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(2));
+        logged.postEntity(user);
+        logged.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123")));
+
+        assertEquals(0, Files.size(tempDir.resolve("compacted.json.log")));
+        assertEquals(2, new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(2)).getEntities().size());
+    }
+
+    /**
+     * Tests that a torn record at the end of the log is discarded on replay.
+     */
+    @Test
+    void testLogModeIgnoresTornTail() throws IOException {
+        Path path = tempDir.resolve("torn.json");
+        new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000)).postEntity(user);
+        Files.writeString(tempDir.resolve("torn.json.log"), "{\"op\":\"ins", StandardOpenOption.APPEND);
+
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000));
+        assertEquals(1, reloaded.getEntities().size());
+        assertTrue(reloaded.postEntity(new User(
+                new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123"))).get("success"));
+        assertEquals(2, new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000)).getEntities().size());
+    }
+
+    /**
+     * Tests that mutations whose write fails are reported as failed and not
+     * durable rather than as a success.
+     */
+    @Test
+    void testFailedWriteIsNotReportedAsSuccess() throws IOException {
+        long code = ((Number) repository.getEntityByField("username", "john.doe").get("code")).longValue();
+        // A non-empty directory in place of the file makes every snapshot fail
+        Path path = tempDir.resolve("user.json");
+        Files.delete(path);
+        Files.createDirectories(path.resolve("blocker"));
+
+        Map<String, Boolean> updated = repository.updateEntity(code, Map.of("name", "Johnny"));
+        assertFalse(updated.get("success"));
+        assertEquals(false, updated.get("durable"));
+        Map<String, Boolean> added = repository.postEntity(new User(
+                new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123")));
+        assertFalse(added.get("success"));
+        assertEquals(false, added.get("durable"));
+        User other = new User(new RegisterDTO("Jim", "Doe", "jim", "jim@example.com", "password123"));
+        assertEquals(List.of(Map.of("success", false, "durable", false)),
+                repository.postRecords(List.of(UserRecord.fromMap(other.toDict()))));
+        assertEquals(false, repository.deleteEntityByCode(code).get("durable"));
+    }
+
+    /**
+     * Tests that concurrent inserts through group commit are all durable once
+     * their calls return.
+     */
+    @Test
+    void testGroupCommitPersistsConcurrentInserts() throws Exception {
+        Path path = tempDir.resolve("grouped.json");
+        BaseRepository grouped = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(100000).withGroupCommit(5, 64));
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String name = "user" + thread + "_" + i;
+                    grouped.postEntity(new User(
+                            new RegisterDTO(name, name, name, name + "@example.com", "password123")));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400, new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(100000)).getEntities().size());
+        grouped.close();
+    }
+
+    /**
+     * Tests that with write-behind a mutation returns before it reaches the
+     * file, and that closing the repository flushes it, in snapshot and log
+     * mode.
+     */
+    @Test
+    void testWriteBehindFlushesOnClose() throws IOException {
+        for (String persistence : List.of("snapshot", "log")) {
+            Path path = tempDir.resolve("behind-" + persistence + ".json");
+            BaseRepository behind = new BaseRepository(RepositoryOptions.of(path.toString())
+                    .withPersistence(persistence).withCompactAfter(100000).withWriteBehind(60000, 100));
+            behind.postEntity(user);
+            long code = behind.getRecordByField("username", "john.doe").getCode();
+            behind.updateEntity(code, Map.of("name", "Johnny"));
+
+            assertEquals("[]", Files.readString(path));
+            if (persistence.equals("log")) {
+                assertEquals(0, Files.size(tempDir.resolve("behind-log.json.log")));
+            }
+            behind.close();
+            BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path.toString())
+                    .withPersistence(persistence).withCompactAfter(100000));
+            assertEquals("Johnny", reloaded.getRecordByCode(code).getName());
+            reloaded.close();
+        }
+    }
+
+    /**
+     * Tests that a write-behind flush that cannot reach the file is reported
+     * by the status, and that closing the repository fails instead of losing
+     * the mutation silently.
+     */
+    @Test
+    void testWriteBehindReportsFailedFlush() throws Exception {
+        Path path = tempDir.resolve("failing.json");
+        BaseRepository behind = new BaseRepository(RepositoryOptions.of(path.toString())
+                .withWriteBehind(0, 100));
+        assertEquals(Boolean.TRUE, behind.getWriteBehindStatus().get("enabled"));
+        Files.delete(path);
+        Files.createDirectories(path.resolve("blocker"));
+
+        behind.postEntity(user);
+        for (int i = 0; i < 100 && (long) behind.getWriteBehindStatus().get("failedFlushes") == 0; i++) {
+            Thread.sleep(50);
+        }
+        Map<String, Object> status = behind.getWriteBehindStatus();
+        assertEquals(1L, status.get("failedFlushes"));
+        assertNotNull(status.get("lastError"));
+        assertEquals(Boolean.TRUE, status.get("unpersisted"));
+        assertThrows(UncheckedIOException.class, behind::close);
+    }
+
+    /**
+     * Tests that concurrent writers held back by a small write-behind queue
+     * all get persisted, and that the queue never grows far past its
+     * capacity.
+     */
+    @Test
+    void testWriteBehindAppliesBackpressure() throws Exception {
+        Path path = tempDir.resolve("pressure.json");
+        BaseRepository behind = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(100000).withWriteBehind(5, 4));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String name = "pressure" + thread + "_" + i;
+                    assertTrue(behind.postEntity(new User(
+                            new RegisterDTO(name, name, name, name + "@example.com", "pw"))).get("success"));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        behind.close();
+
+        assertEquals(200, new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(100000)).getRecords().size());
+    }
+
+    /**
+     * Tests that the mapped store is created from the JSON file, updated in
+     * place and read back on startup without touching the JSON file again.
+     */
+    @Test
+    void testMappedModeRoundTrip() throws IOException {
+        Path path = tempDir.resolve("user.json");
+        BaseRepository mapped = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("mapped"));
+        User jane = new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123"));
+        mapped.postEntity(jane);
+        long code = ((Number) mapped.getEntityByField("username", "jane").get("code")).longValue();
+        mapped.updateEntity(code, Map.of("surname", "Smith"));
+        mapped.deleteEntityByField("username", "john.doe");
+        mapped.close();
+        String json = Files.readString(path);
+
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("mapped"));
+        assertEquals(1, reloaded.getEntities().size());
+        assertEquals("Smith", reloaded.getEntityByCode(code).get("surname"));
+        assertEquals(false, reloaded.getEntityByCode(code).get("active"));
+        assertNull(reloaded.getEntityByField("username", "john.doe"));
+        assertEquals(json, Files.readString(path));
+        reloaded.close();
+    }
+
+    /**
+     * Tests that values longer than their mapped slot are rejected.
+     */
+    @Test
+    void testMappedModeRejectsOversizedFields() {
+        BaseRepository mapped = new BaseRepository(RepositoryOptions.of(tempDir.resolve("user.json").toString())
+                .withPersistence("mapped"));
+        User longName = new User(new RegisterDTO("x".repeat(100), "Doe", "jane", "jane@example.com", "password"));
+
+        assertEquals(Map.of("success", false, "invalid", true), mapped.postEntity(longName));
+        mapped.close();
+    }
+
+    /**
+     * Tests that repeated names of users loaded from the file, and their
+     * case-folded keys, share one instance and that the saved bytes are
+     * reported.
+     */
+    @Test
+    void testLoadDeduplicatesRepeatedValues() {
+        repository.postEntity(new User(new RegisterDTO("John", "Doe", "jdoe", "jdoe@example.com", "password123")));
+
+        BaseRepository reloaded = new BaseRepository(tempDir.resolve("user.json").toString());
+        UserRecord first = reloaded.getRecordByField("username", "john.doe");
+        UserRecord second = reloaded.getRecordByField("username", "jdoe");
+
+        assertSame(first.getName(), second.getName());
+        assertSame(first.getSurname(), second.getSurname());
+        assertSame(first.key("name"), second.key("name"));
+        // Name and surname, plus their case-folded keys
+        assertEquals(4L, reloaded.getStringPoolReport().get("deduplicated"));
+        assertTrue(reloaded.getStringPoolReport().get("savedBytes") > 0);
+    }
+
+    /**
+     * Tests that users registered once the repository is open share the names
+     * already pooled, while renamed users do not go through the pool.
+     */
+    @Test
+    void testInsertsShareLoadedValues() {
+        repository.postEntity(new User(new RegisterDTO("John", "Doe", "jdoe", "jdoe@example.com", "password123")));
+
+        BaseRepository reloaded = new BaseRepository(tempDir.resolve("user.json").toString());
+        long loaded = reloaded.getStringPoolReport().get("deduplicated");
+        reloaded.postEntity(new User(new RegisterDTO("John", "Doe", "john2", "john2@example.com", "password123")));
+        long code = reloaded.getRecordByField("username", "jdoe").getCode();
+        reloaded.updateEntity(code, Map.of("name", "Johnny"));
+
+        assertSame(reloaded.getRecordByField("username", "john2").getName(),
+                reloaded.getRecordByField("username", "john.doe").getName());
+        assertEquals(loaded + 4, reloaded.getStringPoolReport().get("deduplicated"));
+        // John, Doe and their keys; the new name of the renamed user is not pooled
+        assertEquals(4L, reloaded.getStringPoolReport().get("distinct"));
+    }
+
+    /**
+     * Tests that with off-heap storage users survive inserts, updates, deletes
+     * that move the last slot, and a reload through the mutation log, and that
+     * prefix search, which would need an index on the heap, is refused.
+     */
+    @Test
+    void testOffHeapStorage() {
+        Path path = tempDir.resolve("offheap.json");
+        BaseRepository offHeap = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000).withStorage("offheap"));
+        offHeap.postEntity(user);
+        offHeap.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "password123")));
+        offHeap.postEntity(new User(new RegisterDTO("Ann", "Lee", "ann", "ann@example.com", "password123")));
+        long code = offHeap.getRecordByField("username", "jane").getCode();
+
+        assertTrue(offHeap.updateEntity(code, Map.of("email", "janet@example.com")).get("success"));
+        assertEquals(true, offHeap.deleteEntityByField("username", "JOHN.DOE").get("success"));
+        assertNull(offHeap.getRecordByField("email", "jane@example.com"));
+        assertEquals(code, offHeap.getRecordByField("email", "JANET@example.com").getCode());
+        assertNotNull(offHeap.getRecordByField("username", "ann"));
+        assertFalse(offHeap.postEntity(new User(
+                new RegisterDTO("x".repeat(100), "Doe", "long", "long@example.com", "pw"))).get("success"));
+
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path.toString()).withPersistence("log")
+                .withCompactAfter(1000).withStorage("offheap"));
+        assertEquals(2, reloaded.getRecords().size());
+        assertEquals("janet@example.com", reloaded.getRecordByCode(code).getEmail());
+        assertNull(reloaded.getRecordByField("username", "john.doe"));
+        assertThrows(IllegalStateException.class, () -> reloaded.searchByPrefix("username", "ann", 10));
+        offHeap.close();
+        reloaded.close();
+    }
+
+    /**
+     * Tests that concurrent registrations, updates and reads from several
+     * threads lose no user and never fail with a concurrent modification.
+     */
+    @Test
+    void testConcurrentWritesAndReads() throws Exception {
+        String path = tempDir.resolve("concurrent.json").toString();
+        BaseRepository concurrent = new BaseRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(50));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    String name = "user" + thread + "_" + i;
+                    User registered = new User(new RegisterDTO("Name", "Doe", name, name + "@example.com", "pw"));
+                    assertTrue(concurrent.postEntity(registered).get("success"));
+                    long code = concurrent.getRecordByField("username", name).getCode();
+                    assertTrue(concurrent.updateEntity(code, Map.of("name", "Renamed" + i)).get("success"));
+                    concurrent.getEntities().size();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(800, concurrent.getRecords().size());
+        assertEquals("Renamed99", concurrent.getRecordByField("username", "user7_99").getName());
+        concurrent.close();
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(50));
+        assertEquals(800, reloaded.getRecords().size());
+        assertEquals("Renamed99", reloaded.getRecordByField("username", "user3_99").getName());
+        reloaded.close();
+    }
+
+    /**
+     * Tests that every update increments the version, that an update at an
+     * outdated version is rejected as a conflict, and that versions survive a
+     * restart from the log and from the mapped file.
+     */
+    @Test
+    void testCompareAndSetUpdate() {
+        for (String mode : List.of("log", "mapped")) {
+            String path = tempDir.resolve(mode + ".json").toString();
+            BaseRepository versioned = new BaseRepository(RepositoryOptions.of(path).withPersistence(mode)
+                    .withCompactAfter(1000));
+            versioned.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "pw")));
+            long code = versioned.getRecordByField("username", "jane").getCode();
+            assertEquals(0, versioned.getRecordByCode(code).getVersion());
+
+            assertTrue(versioned.updateEntityIfVersion(code, 0, Map.of("name", "Janet")).get("success"));
+            Map<String, Boolean> stale = versioned.updateEntityIfVersion(code, 0, Map.of("name", "Lost"));
+            assertFalse(stale.get("success"));
+            assertTrue(stale.get("conflict"));
+            assertTrue(versioned.updateEntity(code, Map.of("surname", "Roe")).get("success"));
+            assertFalse(versioned.updateEntity(code, Map.of("version", 7)).get("success"));
+            assertNull(versioned.updateEntityIfVersion(-1, 0, Map.of("name", "Nobody")).get("conflict"));
+            assertEquals("Janet", versioned.getRecordByCode(code).getName());
+            assertEquals(2, versioned.getEntityByCode(code).get("version"));
+            versioned.close();
+
+            BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path).withPersistence(mode)
+                    .withCompactAfter(1000));
+            assertEquals(2, reloaded.getRecordByCode(code).getVersion());
+            assertTrue(reloaded.updateEntityIfVersion(code, 2, Map.of("active", true)).get("success"));
+            reloaded.save();
+            reloaded.close();
+        }
+    }
+
+    /**
+     * Tests that concurrent read-modify-write cycles retried on conflict lose
+     * no update, whether they hit the same user or different ones.
+     */
+    @Test
+    void testConcurrentCompareAndSetLosesNoUpdate() throws Exception {
+        BaseRepository concurrent = new BaseRepository(RepositoryOptions.of(tempDir.resolve("cas.json").toString())
+                .withPersistence("log").withCompactAfter(100_000));
+        List<Long> codes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            concurrent.postEntity(new User(new RegisterDTO("0", "Doe", "cas" + i, "cas" + i + "@example.com", "pw")));
+            codes.add(concurrent.getRecordByField("username", "cas" + i).getCode());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long code = codes.get(t % 2);
+            tasks.add(executor.submit(() -> {
+                int conflicts = 0;
+                for (int i = 0; i < 200; i++) {
+                    while (true) {
+                        UserRecord read = concurrent.getRecordByCode(code);
+                        int counter = Integer.parseInt(read.getName()) + 1;
+                        Map<String, Boolean> result = concurrent.updateEntityIfVersion(code, read.getVersion(),
+                                Map.of("name", String.valueOf(counter)));
+                        if (result.get("success")) {
+                            break;
+                        }
+                        assertTrue(result.get("conflict"));
+                        conflicts++;
+                    }
+                }
+                return conflicts;
+            }));
+        }
+        for (Future<Integer> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (long code : codes) {
+            assertEquals("800", concurrent.getRecordByCode(code).getName());
+            assertEquals(800, concurrent.getRecordByCode(code).getVersion());
+        }
+        concurrent.close();
+    }
+
+    /**
+     * Tests that a sharded repository spreads users over its shard files,
+     * keeps username and email unique across shards and reloads every shard.
+     */
+    @Test
+    void testShardedRepository() {
+        String path = tempDir.resolve("sharded.json").toString();
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(1000).withShards(4));
+        for (int i = 0; i < 40; i++) {
+            assertTrue(sharded.postEntity(new User(new RegisterDTO("Name", "Doe", "user" + i,
+                    "user" + i + "@example.com", "pw"))).get("success"));
+        }
+        for (int shard = 0; shard < 4; shard++) {
+            assertTrue(Files.exists(tempDir.resolve("sharded-" + shard + ".json")));
+        }
+        assertFalse(sharded.postEntity(new User(new RegisterDTO("Jane", "Doe", "USER7", "jane@example.com",
+                "pw"))).get("success"));
+        long code = sharded.getRecordByField("username", "user7").getCode();
+        long other = sharded.getRecordByField("username", "user8").getCode();
+
+        assertEquals(40, sharded.getRecords().size());
+        assertEquals("user7", sharded.getRecordByCode(code).getUsername());
+        assertFalse(sharded.updateEntity(other, Map.of("email", "USER7@example.com")).get("success"));
+        assertTrue(sharded.updateEntity(code, Map.of("name", "Renamed")).get("success"));
+        assertEquals(40, sharded.getRecordsByField("surname", "doe").size());
+        assertEquals(true, sharded.deleteEntityByField("username", "user9").get("success"));
+        sharded.close();
+
+        ShardedRepository reloaded = new ShardedRepository(RepositoryOptions.of(path).withPersistence("log")
+                .withCompactAfter(1000).withShards(4));
+        assertEquals(39, reloaded.getRecords().size());
+        assertEquals("Renamed", reloaded.getRecordByCode(code).getName());
+        assertNull(reloaded.getRecordByField("username", "user9"));
+        reloaded.close();
+    }
+
+    /**
+     * Tests that a batch is added with one log append, rejecting users that
+     * clash with stored users or with earlier users of the batch, in a
+     * single and in a sharded repository.
+     */
+    @Test
+    void testPostRecordsBatch() {
+        for (int shards : new int[] { 1, 4 }) {
+            String path = tempDir.resolve("batch-" + shards + ".json").toString();
+            UserStore batched = open(RepositoryOptions.of(path).withPersistence("log").withCompactAfter(1000)
+                    .withShards(shards));
+            batched.postEntity(user);
+            List<UserRecord> users = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                users.add(UserRecord.fromMap(new User(new RegisterDTO("Name", "Doe", "batch" + i,
+                        "batch" + i + "@example.com", "pw")).toDict()));
+            }
+            users.add(UserRecord.fromMap(new User(new RegisterDTO("Jane", "Doe", "JOHN.DOE", "jane@example.com",
+                    "pw")).toDict()));
+            users.add(UserRecord.fromMap(new User(new RegisterDTO("Jane", "Doe", "jane", "BATCH3@example.com",
+                    "pw")).toDict()));
+
+            List<Map<String, Boolean>> added = batched.postRecords(users);
+
+            assertEquals(22, added.size());
+            assertTrue(added.subList(0, 20).stream().allMatch(result -> result.get("success")));
+            assertEquals(List.of(true, true), added.subList(20, 22).stream()
+                    .map(result -> result.get("duplicate")).toList());
+            assertEquals(21, batched.getRecords().size());
+            batched.close();
+
+            UserStore reloaded = open(RepositoryOptions.of(path).withPersistence("log").withCompactAfter(1000)
+                    .withShards(shards));
+            assertEquals(21, reloaded.getRecords().size());
+            assertNotNull(reloaded.getRecordByField("username", "batch19"));
+            reloaded.close();
+        }
+    }
+
+    /**
+     * Tests that within a batch only the first of several users sharing a
+     * username or an email, in any case, is added, also across shards.
+     */
+    @Test
+    void testPostRecordsRejectsDuplicatesWithinBatch() {
+        for (int shards : new int[] { 1, 4 }) {
+            String path = tempDir.resolve("duplicates-" + shards + ".json").toString();
+            UserStore batched = open(RepositoryOptions.of(path).withShards(shards));
+            List<UserRecord> users = List.of(
+                    record("Ann", "ann@example.com"),
+                    record("ANN", "other@example.com"),
+                    record("bob", "ANN@Example.com"),
+                    record("bob", "bob@example.com"),
+                    record("Bob", "BOB@example.com"));
+
+            assertEquals(List.of(true, false, false, true, false), batched.postRecords(users).stream()
+                    .map(result -> result.get("success")).toList());
+            assertEquals(2, batched.getRecords().size());
+            assertEquals("ann@example.com", batched.getRecordByField("username", "ann").getEmail());
+            assertEquals("bob@example.com", batched.getRecordByField("username", "BOB").getEmail());
+            batched.close();
+        }
+    }
+
+    /**
+     * Tests that a batch conflicting with stored users by username or email
+     * adds none of the clashing users and leaves the stored ones unchanged.
+     */
+    @Test
+    void testPostRecordsRejectsConflictsWithStoredUsers() {
+        long code = repository.getRecordByField("username", "john.doe").getCode();
+
+        List<Map<String, Boolean>> added = repository.postRecords(List.of(
+                record("john.doe", "new@example.com"),
+                record("newcomer", "JOHN.DOE@example.com"),
+                UserRecord.fromMap(user.toDict())));
+
+        assertEquals(Collections.nCopies(3, Map.of("success", false, "duplicate", true)), added);
+        assertEquals(1, repository.getRecords().size());
+        assertEquals(code, repository.getRecordByField("email", "john.doe@example.com").getCode());
+        assertNull(repository.getRecordByField("username", "newcomer"));
+    }
+
+    /**
+     * Tests that in a partially valid batch the valid users are added and
+     * persisted while the ones that cannot be stored are reported, in order.
+     */
+    @Test
+    void testPostRecordsPartiallyValidBatch() {
+        String path = tempDir.resolve("partial.json").toString();
+        BaseRepository mapped = new BaseRepository(RepositoryOptions.of(path).withPersistence("mapped"));
+        UserRecord oversized = UserRecord.fromMap(new User(
+                new RegisterDTO("x".repeat(100), "Doe", "long", "long@example.com", "pw")).toDict());
+
+        List<Map<String, Boolean>> added = mapped.postRecords(List.of(record("first", "first@example.com"),
+                oversized, record("second", "second@example.com")));
+
+        assertEquals(List.of(Map.of("success", true), Map.of("success", false, "invalid", true),
+                Map.of("success", true)), added);
+        mapped.close();
+        BaseRepository reloaded = new BaseRepository(RepositoryOptions.of(path).withPersistence("mapped"));
+        assertEquals(2, reloaded.getRecords().size());
+        assertNull(reloaded.getRecordByField("username", "long"));
+        reloaded.close();
+    }
+
+    private static UserStore open(RepositoryOptions options) {
+        return options.shards() > 1 ? new ShardedRepository(options) : new BaseRepository(options);
+    }
+
+    private static UserRecord record(String username, String email) {
+        return UserRecord.fromMap(new User(new RegisterDTO("Name", "Doe", username, email, "pw")).toDict());
+    }
+
+    /**
+     * Tests that an existing unsharded file is split into shards the first
+     * time sharding is enabled.
+     */
+    @Test
+    void testShardingSplitsExistingFile() {
+        String path = tempDir.resolve("user.json").toString();
+        repository.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "pw")));
+
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withShards(2));
+
+        assertEquals(2, sharded.getRecords().size());
+        assertNotNull(sharded.getRecordByField("email", "john.doe@example.com"));
+        assertTrue(Files.exists(tempDir.resolve("user-0.json")));
+        assertTrue(Files.exists(tempDir.resolve("user-1.json")));
+        assertTrue(Files.exists(tempDir.resolve("user.shards")));
+        sharded.close();
+    }
+
+    /**
+     * Tests that a split interrupted before its marker was written is made
+     * again from the unsharded file, losing no user.
+     */
+    @Test
+    void testInterruptedShardSplitIsRedone() throws IOException {
+        String path = tempDir.resolve("user.json").toString();
+        repository.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "pw")));
+        // A crash after the first shard file was written
+        Files.writeString(tempDir.resolve("user-0.json"), "[]");
+        Files.writeString(tempDir.resolve("user-1.json.split"), "[");
+
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withShards(2));
+
+        assertEquals(2, sharded.getRecords().size());
+        assertNotNull(sharded.getRecordByField("username", "jane"));
+        sharded.close();
+    }
+
+    /**
+     * Tests that shard files are not opened with another number of shards,
+     * nor served when they hold users of another shard.
+     */
+    @Test
+    void testShardLayoutIsVerified() throws IOException {
+        String path = tempDir.resolve("user.json").toString();
+        new ShardedRepository(RepositoryOptions.of(path).withShards(2)).close();
+
+        assertThrows(IllegalStateException.class,
+                () -> new ShardedRepository(RepositoryOptions.of(path).withShards(3)));
+        assertThrows(IllegalStateException.class, () -> new BaseRepository(path));
+
+        Path first = tempDir.resolve("user-0.json");
+        Path second = tempDir.resolve("user-1.json");
+        Path swap = tempDir.resolve("swap.json");
+        Files.move(first, swap);
+        Files.move(second, first);
+        Files.move(swap, second);
+        assertThrows(IllegalStateException.class,
+                () -> new ShardedRepository(RepositoryOptions.of(path).withShards(2)));
+    }
+
+    /**
+     * Tests that prefix search ignores case and follows inserts, updates and
+     * deletes, also across shards.
+     */
+    @Test
+    void testSearchByPrefix() {
+        String path = tempDir.resolve("search.json").toString();
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withShards(3));
+        for (String name : List.of("Johanna", "John", "Jonas", "Jane", "Bob")) {
+            sharded.postEntity(new User(new RegisterDTO(name, "Doe", name + ".user", name + "@example.com", "pw")));
+        }
+        for (UserStore searched : List.<UserStore>of(repository, sharded)) {
+            searched.postEntity(new User(new RegisterDTO("Joe", "Smith", "joe.s", "joe@example.com", "pw")));
+        }
+
+        assertEquals(List.of("Joe", "Johanna", "John"), sharded.searchByPrefix("name", "JO", 3).stream()
+                .map(UserRecord::getName).toList());
+        long code = sharded.getRecordByField("username", "john.user").getCode();
+        sharded.updateEntity(code, Map.of("name", "Bill"));
+        sharded.deleteEntityByField("username", "jonas.user");
+        assertEquals(List.of("Joe", "Johanna"), sharded.searchByPrefix("name", "jo", 10).stream()
+                .map(UserRecord::getName).toList());
+        assertEquals(2, repository.searchByPrefix("username", "JO", 10).size());
+        assertEquals(5, sharded.searchByPrefix("surname", "", 10).size());
+        assertThrows(IllegalArgumentException.class, () -> repository.searchByPrefix("email", "jo", 10));
+        sharded.close();
+    }
+
+    /**
+     * Tests that keyset pages walk every user once in ascending code order,
+     * also across shards and when users are deleted between pages, and that
+     * a scan visits every user.
+     */
+    @Test
+    void testRecordsAfter() {
+        String path = tempDir.resolve("pages.json").toString();
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withShards(3));
+        for (int i = 0; i < 7; i++) {
+            sharded.postEntity(new User(new RegisterDTO("User", "Page", "page" + i, "page" + i + "@example.com", "pw")));
+        }
+        List<Long> codes = sharded.getRecords().stream().map(UserRecord::getCode).sorted().toList();
+
+        List<UserRecord> first = sharded.getRecordsAfter(null, 3);
+        assertEquals(codes.subList(0, 3), first.stream().map(UserRecord::getCode).toList());
+        sharded.deleteEntityByCode(codes.get(3));
+        List<UserRecord> second = sharded.getRecordsAfter(first.get(2).getCode(), 3);
+        assertEquals(codes.subList(4, 7), second.stream().map(UserRecord::getCode).toList());
+        assertTrue(sharded.getRecordsAfter(codes.get(6), 3).isEmpty());
+        List<Long> scanned = new ArrayList<>();
+        sharded.scanRecords().forEach(user -> scanned.add(user.getCode()));
+        assertEquals(6, scanned.size());
+        assertEquals(1, repository.getRecordsAfter(null, 10).size());
+        sharded.close();
+    }
+
+    /**
+     * Tests that with off-heap storage, which keeps no ordered index of codes,
+     * keyset pages still walk every user once in ascending code order.
+     */
+    @Test
+    void testOffHeapRecordsAfter() {
+        String path = tempDir.resolve("offheap-pages.json").toString();
+        BaseRepository offHeap = new BaseRepository(RepositoryOptions.of(path).withStorage("offheap"));
+        for (int i = 0; i < 25; i++) {
+            offHeap.postEntity(new User(new RegisterDTO("User", "Page", "page" + i, "page" + i + "@example.com", "pw")));
+        }
+        List<Long> codes = offHeap.getRecords().stream().map(UserRecord::getCode).sorted().toList();
+
+        List<Long> paged = new ArrayList<>();
+        Long after = null;
+        for (List<UserRecord> page = offHeap.getRecordsAfter(null, 4); !page.isEmpty();
+                page = offHeap.getRecordsAfter(after, 4)) {
+            page.forEach(user -> paged.add(user.getCode()));
+            after = page.get(page.size() - 1).getCode();
+        }
+        assertEquals(codes, paged);
+        List<Long> scanned = new ArrayList<>();
+        offHeap.scanRecords().forEach(user -> scanned.add(user.getCode()));
+        assertEquals(codes, scanned);
+        offHeap.close();
+    }
+
+    /**
+     * Tests that status counts and filters follow updates and deletes, also
+     * across shards, and that lookups by a status use the same bitmaps.
+     */
+    @Test
+    void testFlagIndexes() {
+        String path = tempDir.resolve("flags.json").toString();
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(path).withShards(2));
+        List<Long> codes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            sharded.postEntity(new User(new RegisterDTO("User", "Flag", "flag" + i, "flag" + i + "@example.com", "pw")));
+            codes.add(sharded.getRecordByField("username", "flag" + i).getCode());
+        }
+        for (int i = 0; i < 4; i++) {
+            sharded.updateEntity(codes.get(i), Map.of("active", true, "verified", i % 2 == 0));
+        }
+
+        assertEquals(6, sharded.countByFlags(Map.of()));
+        assertEquals(2, sharded.countByFlags(Map.of("active", true, "verified", false)));
+        assertEquals(Map.of("users", 6L, "reservation", 0L, "verified", 2L, "active", 4L), sharded.getFlagCounts());
+        sharded.deleteEntityByCode(codes.get(1));
+        sharded.updateEntity(codes.get(5), Map.of("reservation", true));
+        assertEquals(List.of(codes.get(3)), sharded.getRecordsByFlags(Map.of("active", true, "verified", false))
+                .stream().map(UserRecord::getCode).toList());
+        assertEquals(1, sharded.getRecordsByField("reservation", "TRUE").size());
+        assertEquals(0, repository.getRecordsByField("active", "true").size());
+        assertEquals(1, repository.getRecordsByField("active", "false").size());
+        assertTrue(repository.getRecordsByField("active", "maybe").isEmpty());
+        sharded.close();
+    }
+
+    /**
+     * Tests that a follower loads a snapshot of its primary, applies the
+     * following mutations, rejects writes of its own and catches up with the
+     * mutations it missed after reconnecting.
+     */
+    @Test
+    void testReplicationFromPrimary() throws Exception {
+        ReplicationLog log = new ReplicationLog(100);
+        repository.enablePrimaryMode(log);
+        ReplicationServer server = new ReplicationServer(repository, log, new InetSocketAddress("127.0.0.1", 0),
+                SECRET);
+        BaseRepository follower = new BaseRepository(tempDir.resolve("follower.json").toString());
+        follower.enableFollowerMode();
+        ReplicationClient client = new ReplicationClient(follower, server.getAddress(), SECRET);
+
+        awaitReplicated(client, log);
+        assertNotNull(follower.getRecordByField("username", "john.doe"));
+        User jane = new User(new RegisterDTO("Jane", "Roe", "jane", "jane@example.com", "pw"));
+        repository.postEntity(jane);
+        long code = repository.getRecordByField("username", "john.doe").getCode();
+        repository.updateEntity(code, Map.of("name", "Johnny"));
+        awaitReplicated(client, log);
+        assertEquals("Johnny", follower.getRecordByCode(code).getName());
+        assertEquals(repository.getRecordByCode(code).getPassword(), follower.getRecordByCode(code).getPassword());
+        assertEquals(2, follower.getRecords().size());
+        assertEquals(1, follower.searchByPrefix("username", "ja", 10).size());
+        assertEquals(Map.of("success", false, "readOnly", true), follower.postEntity(jane));
+        assertFalse(follower.updateEntity(code, Map.of("name", "Other")).get("success"));
+        assertFalse((Boolean) follower.deleteEntityByCode(code).get("success"));
+
+        InetSocketAddress address = server.getAddress();
+        server.close();
+        repository.deleteEntityByCode(code);
+        server = new ReplicationServer(repository, log, address, SECRET);
+        awaitReplicated(client, log);
+        assertNull(follower.getRecordByCode(code));
+        assertEquals(1, follower.getRecords().size());
+        assertEquals(0L, client.status().get("lagRecords"));
+        client.close();
+        server.close();
+    }
+
+    /**
+     * Tests that a follower resynchronizes from a snapshot when its primary
+     * comes back with a new log, even though the new log already reached a
+     * later sequence number than the follower applied from the old one.
+     */
+    @Test
+    void testReplicationResyncsAfterPrimaryRestart() throws Exception {
+        ReplicationLog log = new ReplicationLog(100);
+        repository.enablePrimaryMode(log);
+        ReplicationServer server = new ReplicationServer(repository, log, new InetSocketAddress("127.0.0.1", 0),
+                SECRET);
+        BaseRepository follower = new BaseRepository(tempDir.resolve("follower.json").toString());
+        follower.enableFollowerMode();
+        ReplicationClient client = new ReplicationClient(follower, server.getAddress(), SECRET);
+        repository.postEntity(new User(new RegisterDTO("Name", "Doe", "ann", "ann@example.com", "pw")));
+        awaitReplicated(client, log);
+        long epoch = (Long) client.status().get("epoch");
+        assertEquals(log.epoch(), epoch);
+
+        InetSocketAddress address = server.getAddress();
+        server.close();
+        Thread.sleep(5);
+        log = new ReplicationLog(100);
+        repository.enablePrimaryMode(log);
+        repository.postEntity(new User(new RegisterDTO("Name", "Doe", "bob", "bob@example.com", "pw")));
+        repository.postEntity(new User(new RegisterDTO("Name", "Doe", "carl", "carl@example.com", "pw")));
+        repository.postEntity(new User(new RegisterDTO("Name", "Doe", "dave", "dave@example.com", "pw")));
+        server = new ReplicationServer(repository, log, address, SECRET);
+        awaitReplicated(client, log);
+
+        assertEquals(log.epoch(), client.status().get("epoch"));
+        assertEquals(5, follower.getRecords().size());
+        assertNotNull(follower.getRecordByField("username", "bob"));
+        client.close();
+        server.close();
+    }
+
+    /**
+     * Tests that a follower with another secret gets no users and is not
+     * reported as connected.
+     */
+    @Test
+    void testReplicationRequiresSharedSecret() throws Exception {
+        ReplicationLog log = new ReplicationLog(100);
+        repository.enablePrimaryMode(log);
+        ReplicationServer server = new ReplicationServer(repository, log, new InetSocketAddress("127.0.0.1", 0),
+                SECRET);
+        BaseRepository follower = new BaseRepository(tempDir.resolve("follower.json").toString());
+        follower.enableFollowerMode();
+        ReplicationClient client = new ReplicationClient(follower, server.getAddress(), "another-test-secret");
+
+        Thread.sleep(500);
+        assertEquals(-1L, client.getAppliedSequence());
+        assertEquals(false, client.status().get("connected"));
+        assertTrue(follower.getRecords().isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReplicationClient(follower, server.getAddress(), "short"));
+        client.close();
+        server.close();
+    }
+
+    /**
+     * Waits until a follower has applied every record of its primary's log.
+     */
+    private void awaitReplicated(ReplicationClient client, ReplicationLog log) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (client.getAppliedSequence() != log.lastSequence()
+                || !Long.valueOf(log.epoch()).equals(client.status().get("epoch"))) {
+            assertTrue(System.nanoTime() < deadline, "Follower did not catch up");
+            Thread.sleep(10);
+        }
+    }
+}
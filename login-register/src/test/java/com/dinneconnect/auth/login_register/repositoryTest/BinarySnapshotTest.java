@@ -0,0 +1,123 @@
+/**
+ * This class performs unit tests for the BinarySnapshot class.
+ * The tests verify that users survive a round trip through the binary format
+ * and the JSON converter, and that corrupted blocks are detected.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.BinarySnapshot;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Unit tests for the BinarySnapshot class.
+ */
+public class BinarySnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<UserRecord> users;
+
+    /**
+     * Builds enough users to span several blocks, including non-ASCII text and
+     * null fields.
+     */
+    @BeforeEach
+    void setUp() {
+        users = new ArrayList<>();
+        for (int i = 0; i < BinarySnapshot.BLOCK_USERS * 2 + 10; i++) {
+            Map<String, Object> user = new User(new RegisterDTO("Sebastián" + i, "Avendaño", "user" + i,
+                    "user" + i + "@example.com", "password" + i)).toDict();
+            user.put("verified", i % 2 == 0);
+            user.put("version", i % 300);
+            if (i == 0) {
+                user.put("surname", null);
+                user.put("creationDate", null);
+            }
+            users.add(UserRecord.fromMap(user));
+        }
+    }
+
+    /**
+     * Tests that every field survives a write and a read.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        Path file = tempDir.resolve("user.bin");
+        BinarySnapshot.write(file, users);
+
+        assertEquals(users, BinarySnapshot.read(file));
+    }
+
+    /**
+     * Tests converting a JSON file to binary and back.
+     */
+    @Test
+    void testJsonConversion() throws IOException {
+        Path json = tempDir.resolve("user.json");
+        Path binary = tempDir.resolve("user.bin");
+        Path back = tempDir.resolve("back.json");
+        BaseRepository repository = new BaseRepository(json.toString());
+        repository.postEntity(new User(new RegisterDTO("John", "Doe", "john", "john@example.com", "pw")));
+
+        BinarySnapshot.fromJson(json, binary);
+        BinarySnapshot.toJson(binary, back);
+
+        assertEquals(repository.getEntities(), new BaseRepository(back.toString()).getEntities());
+    }
+
+    /**
+     * Tests that a flipped byte inside a block fails the checksum.
+     */
+    @Test
+    void testCorruptionIsDetected() throws IOException {
+        Path file = tempDir.resolve("user.bin");
+        BinarySnapshot.write(file, users);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> BinarySnapshot.read(file));
+    }
+
+    /**
+     * Tests that a repository on a ".bin" path converts the JSON file next to
+     * it and then keeps writing binary snapshots.
+     */
+    @Test
+    void testRepositoryUsesBinarySnapshot() throws IOException {
+        BaseRepository json = new BaseRepository(tempDir.resolve("user.json").toString());
+        json.postEntity(new User(new RegisterDTO("John", "Doe", "john", "john@example.com", "pw")));
+
+        BaseRepository binary = new BaseRepository(tempDir.resolve("user.bin").toString());
+        binary.postEntity(new User(new RegisterDTO("Jane", "Doe", "jane", "jane@example.com", "pw")));
+
+        Map<String, Object> jane = new HashMap<>(binary.getEntityByField("username", "jane"));
+        assertEquals(2, BinarySnapshot.read(tempDir.resolve("user.bin")).size());
+        assertEquals(jane, new BaseRepository(tempDir.resolve("user.bin").toString())
+                .getEntityByField("username", "JANE"));
+    }
+}
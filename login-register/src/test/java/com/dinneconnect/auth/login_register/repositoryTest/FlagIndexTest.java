@@ -0,0 +1,73 @@
+/**
+ * This class performs unit tests for the FlagIndex class.
+ * The tests verify that status filters, counts and swap-removes agree with
+ * the statuses set on each slot, across word boundaries.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.FlagIndex;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Unit tests for the FlagIndex class.
+ */
+public class FlagIndexTest {
+
+    /**
+     * Tests counts and slot lists of combined filters over 150 slots, where
+     * every third slot is active and every fifth is verified.
+     */
+    @Test
+    void testFilters() {
+        FlagIndex index = new FlagIndex();
+        for (int slot = 0; slot < 150; slot++) {
+            int flags = (slot % 3 == 0 ? UserRecord.ACTIVE : 0) | (slot % 5 == 0 ? UserRecord.VERIFIED : 0);
+            index.set(slot, flags);
+        }
+
+        assertEquals(150, index.count(FlagIndex.mask(Map.of())));
+        assertEquals(50, index.count(FlagIndex.mask(Map.of("active", true))));
+        assertEquals(10, index.count(FlagIndex.mask(Map.of("active", true, "verified", true))));
+        assertEquals(40, index.count(FlagIndex.mask(Map.of("active", true, "verified", false))));
+        assertEquals(80, index.count(FlagIndex.mask(Map.of("active", false, "verified", false))));
+        assertEquals(0, index.count(FlagIndex.mask(Map.of("reservation", true))));
+        assertArrayEquals(new int[] { 0, 15, 30, 45, 60, 75, 90, 105, 120, 135 },
+                index.slots(FlagIndex.mask(Map.of("active", true, "verified", true))));
+        assertThrows(IllegalArgumentException.class, () -> FlagIndex.mask(Map.of("name", true)));
+    }
+
+    /**
+     * Tests that a swap-remove moves the statuses of the last slot and drops
+     * it from every count.
+     */
+    @Test
+    void testRemoveSwap() {
+        FlagIndex index = new FlagIndex();
+        index.set(0, UserRecord.ACTIVE);
+        index.set(1, 0);
+        index.set(2, UserRecord.VERIFIED | UserRecord.RESERVATION);
+
+        index.removeSwap(0, 2);
+        assertEquals(2, index.size());
+        assertEquals(UserRecord.VERIFIED | UserRecord.RESERVATION, index.flagsAt(0));
+        assertEquals(0, index.count(FlagIndex.mask(Map.of("active", true))));
+
+        index.removeSwap(1, 1);
+        assertEquals(1, index.count(FlagIndex.mask(Map.of())));
+        index.set(1, UserRecord.ACTIVE);
+        assertArrayEquals(new int[] { 1 }, index.slots(FlagIndex.mask(Map.of("active", true, "verified", false))));
+    }
+}
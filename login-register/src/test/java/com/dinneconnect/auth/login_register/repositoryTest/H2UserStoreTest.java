@@ -0,0 +1,227 @@
+/**
+ * This class performs unit tests for the H2UserStore class.
+ * The tests verify that the embedded SQL engine behaves like the JSON
+ * repository: case-insensitive unique usernames and emails, updates,
+ * deletes, keyset pages, prefix search and status counts, and that the JSON
+ * file is imported into an empty database.
+ *
+ * Dependencies:
+ * - JUnit 5
+ * - H2
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.H2UserStore;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.repository.ShardedRepository;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Unit tests for the H2UserStore class.
+ */
+public class H2UserStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private H2UserStore store;
+
+    private long code;
+
+    /**
+     * Sets up the test environment before each test.
+     * Opens a store on a new database and stores a sample user.
+     */
+    @BeforeEach
+    void setUp() {
+        store = new H2UserStore(tempDir.resolve("users").toString(), 4, tempDir.resolve("user.json").toString());
+        assertTrue(store.postEntity(new User(
+                new RegisterDTO("John", "Doe", "John.Doe", "John.Doe@Example.com", "password123"))).get("success"));
+        code = store.getRecordByField("username", "john.doe").getCode();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    /**
+     * Tests lookups ignoring case and that taken usernames and emails are
+     * rejected, on insert and on update.
+     */
+    @Test
+    void testUniqueFieldsIgnoreCase() {
+        assertNotNull(store.getRecordByField("email", "JOHN.DOE@EXAMPLE.COM"));
+        assertEquals("John", store.getRecordByCode(code).getName());
+        assertEquals(Map.of("success", false, "duplicate", true), store.postEntity(new User(
+                new RegisterDTO("Other", "User", "JOHN.DOE", "other@example.com", "pw"))));
+        assertTrue(store.postEntity(new User(
+                new RegisterDTO("Jane", "Roe", "jane", "jane@example.com", "pw"))).get("success"));
+        long jane = store.getRecordByField("username", "jane").getCode();
+
+        assertFalse(store.updateEntity(jane, Map.of("email", "john.doe@example.com")).get("success"));
+        assertFalse(store.updateEntity(jane, Map.of("unknown", "x")).get("success"));
+        assertTrue(store.updateEntity(jane, Map.of("name", "Janet", "active", true)).get("success"));
+        assertEquals("Janet", store.getRecordByCode(jane).getName());
+        assertEquals("jane@example.com", store.getRecordByCode(jane).getEmail());
+        assertFalse(store.updateEntity(-1, Map.of("name", "Nobody")).get("success"));
+    }
+
+    /**
+     * Tests that updates increment the version, that an update at an outdated
+     * version is rejected as a conflict, and that the version is stored.
+     */
+    @Test
+    void testCompareAndSetUpdate() {
+        assertEquals(0, store.getRecordByCode(code).getVersion());
+        assertTrue(store.updateEntityIfVersion(code, 0, Map.of("name", "Johnny")).get("success"));
+        Map<String, Boolean> stale = store.updateEntityIfVersion(code, 0, Map.of("name", "Lost"));
+        assertFalse(stale.get("success"));
+        assertTrue(stale.get("conflict"));
+        assertTrue(store.updateEntity(code, Map.of("active", true)).get("success"));
+        assertFalse(store.updateEntity(code, Map.of("version", 9)).get("success"));
+
+        store.close();
+        store = new H2UserStore(tempDir.resolve("users").toString(), 4, tempDir.resolve("user.json").toString());
+        assertEquals("Johnny", store.getRecordByCode(code).getName());
+        assertEquals(2, store.getRecordByCode(code).getVersion());
+        assertTrue(store.updateEntityIfVersion(code, 2, Map.of("verified", true)).get("success"));
+    }
+
+    /**
+     * Tests deletes, keyset pages, prefix search and status counts.
+     */
+    @Test
+    void testQueries() {
+        for (int i = 0; i < 5; i++) {
+            store.postEntity(new User(new RegisterDTO("User", "Smith" + i, "smith" + i, "smith" + i + "@x.com", "pw")));
+        }
+        List<Long> codes = new ArrayList<>();
+        store.scanRecords().forEach(user -> codes.add(user.getCode()));
+        assertEquals(codes.stream().sorted().toList(), codes);
+        assertEquals(6, codes.size());
+        assertEquals(codes.subList(2, 4), store.getRecordsAfter(codes.get(1), 2).stream()
+                .map(UserRecord::getCode).toList());
+
+        assertEquals(List.of("smith0", "smith1", "smith2"), store.searchByPrefix("surname", "SMI", 3).stream()
+                .map(UserRecord::getUsername).toList());
+        assertThrows(IllegalArgumentException.class, () -> store.searchByPrefix("email", "a", 1));
+        store.updateEntity(codes.get(0), Map.of("verified", true, "active", true));
+        store.updateEntity(codes.get(1), Map.of("active", true));
+        assertEquals(Map.of("users", 6L, "reservation", 0L, "verified", 1L, "active", 2L), store.getFlagCounts());
+        assertEquals(1, store.countByFlags(Map.of("active", true, "verified", false)));
+        assertNotNull(store.getRecordByField("verified", "TRUE"));
+        assertThrows(IllegalArgumentException.class, () -> store.countByFlags(Map.of("admin", true)));
+
+        assertTrue((Boolean) store.deleteEntityByCode(code).get("success"));
+        assertFalse((Boolean) store.deleteEntityByCode(code).get("success"));
+        assertNull(store.getRecordByField("username", "john.doe"));
+        assertEquals(5, store.getRecords().size());
+    }
+
+    /**
+     * Tests that a batch insert keeps going past rejected users, whether
+     * they clash with stored users or with earlier users of the batch.
+     */
+    @Test
+    void testPostRecordsBatch() {
+        List<UserRecord> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            users.add(UserRecord.fromMap(new User(new RegisterDTO("Name", "Doe", "batch" + i,
+                    "batch" + i + "@example.com", "pw")).toDict()));
+        }
+        users.add(3, UserRecord.fromMap(new User(new RegisterDTO("Jane", "Doe", "JOHN.DOE", "jane@example.com",
+                "pw")).toDict()));
+        users.add(UserRecord.fromMap(new User(new RegisterDTO("Jane", "Doe", "jane", "BATCH3@example.com",
+                "pw")).toDict()));
+
+        List<Map<String, Boolean>> added = store.postRecords(users);
+
+        assertEquals(12, added.size());
+        assertEquals(Map.of("success", false, "duplicate", true), added.get(3));
+        assertEquals(Map.of("success", false, "duplicate", true), added.get(11));
+        assertEquals(10, added.stream().filter(result -> result.get("success")).count());
+        assertEquals(11, store.getRecords().size());
+        assertNotNull(store.getRecordByField("username", "batch9"));
+        assertNull(store.getRecordByField("username", "jane"));
+    }
+
+    /**
+     * Tests that users survive reopening the database, and that an empty
+     * database imports the JSON file of the json engine.
+     */
+    @Test
+    void testPersistsAndImportsJson() {
+        store.close();
+        store = new H2UserStore(tempDir.resolve("users").toString(), 4, tempDir.resolve("user.json").toString());
+        assertEquals("John", store.getRecordByCode(code).getName());
+
+        BaseRepository json = new BaseRepository(tempDir.resolve("import.json").toString());
+        json.postEntity(new User(new RegisterDTO("Ann", "Lee", "ann", "ann@example.com", "pw")));
+        json.postEntity(new User(new RegisterDTO("Bob", "Lee", "bob", "bob@example.com", "pw")));
+        json.close();
+        H2UserStore imported = new H2UserStore(tempDir.resolve("imported").toString(), 2,
+                tempDir.resolve("import.json").toString());
+        assertEquals(2, imported.getRecords().size());
+        assertNotNull(imported.getRecordByField("email", "BOB@example.com"));
+        imported.close();
+    }
+
+    /**
+     * Tests that the import loads the json engine the way it loads itself:
+     * replaying its mutation log, reading every shard of a split file, and
+     * refusing a damaged snapshot.
+     */
+    @Test
+    void testImportsLoggedShardedAndDamagedJson() throws IOException {
+        BaseRepository logged = new BaseRepository(RepositoryOptions.of(tempDir.resolve("logged.json").toString())
+                .withPersistence("log").withCompactAfter(100000));
+        logged.postEntity(new User(new RegisterDTO("Ann", "Lee", "ann", "ann@example.com", "pw")));
+        long code = logged.getRecordByField("username", "ann").getCode();
+        logged.updateEntity(code, Map.of("name", "Anna"));
+        logged.close();
+        H2UserStore fromLog = new H2UserStore(tempDir.resolve("from-log").toString(), 2,
+                tempDir.resolve("logged.json").toString());
+        assertEquals("Anna", fromLog.getRecordByCode(code).getName());
+        fromLog.close();
+
+        ShardedRepository sharded = new ShardedRepository(RepositoryOptions.of(tempDir.resolve("sharded.json")
+                .toString()).withShards(4));
+        for (int i = 0; i < 8; i++) {
+            sharded.postEntity(new User(new RegisterDTO("S", "S", "shard" + i, "shard" + i + "@example.com", "pw")));
+        }
+        sharded.close();
+        H2UserStore fromShards = new H2UserStore(tempDir.resolve("from-shards").toString(), 2,
+                tempDir.resolve("sharded.json").toString());
+        assertEquals(8, fromShards.getRecords().size());
+        fromShards.close();
+
+        Files.writeString(tempDir.resolve("damaged.json"), "[{\"code\":");
+        assertThrows(IllegalStateException.class, () -> new H2UserStore(tempDir.resolve("from-damaged").toString(),
+                2, tempDir.resolve("damaged.json").toString()));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * This class performs unit tests for the JsonUserLoader class.
+ * The tests verify that users spread over several batches come back in file
+ * order, that progress is reported, and that empty and malformed files are
+ * handled.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.repository.JsonUserLoader;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for the JsonUserLoader class.
+ */
+public class JsonUserLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Tests that users of many batches are read back in file order, with
+     * progress reported up to the end of the file.
+     */
+    @Test
+    void testLoadsBatchesInOrder() throws IOException {
+        List<UserRecord> users = new ArrayList<>();
+        for (int i = 0; i < JsonUserLoader.BATCH_SIZE * 3 + 17; i++) {
+            users.add(new UserRecord(i, "name" + i, null, "user" + i, "user" + i + "@example.com", "pw",
+                    1_700_000_000L + i, UserRecord.ACTIVE));
+        }
+        Path path = tempDir.resolve("user.json");
+        UserRecord.writeJsonArray(objectMapper, path, users);
+        List<Long> reported = new ArrayList<>();
+
+        List<UserRecord> loaded = new JsonUserLoader(objectMapper, 3)
+                .load(path, (count, bytesRead, totalBytes) -> reported.add(bytesRead));
+
+        assertEquals(users, loaded);
+        assertTrue(reported.size() >= 10);
+        assertEquals(Files.size(path), reported.get(reported.size() - 1));
+    }
+
+    /**
+     * Tests that blank files and JSON null hold no users, and that malformed
+     * content is rejected.
+     */
+    @Test
+    void testEmptyAndMalformedFiles() throws IOException {
+        JsonUserLoader loader = new JsonUserLoader(objectMapper, 2);
+        Path path = tempDir.resolve("user.json");
+
+        Files.writeString(path, "  \n");
+        assertEquals(List.of(), loader.load(path, null));
+        Files.writeString(path, "null");
+        assertEquals(List.of(), loader.load(path, null));
+        Files.writeString(path, "[{\"code\": 1}, 2]");
+        assertThrows(IOException.class, () -> loader.load(path, null));
+        Files.writeString(path, "[{\"name\": \"no code\"}]");
+        assertThrows(IllegalArgumentException.class, () -> loader.load(path, null));
+        Files.writeString(path, "[{\"code\": 1, \"name\": 5}]");
+        assertThrows(IllegalArgumentException.class, () -> loader.load(path, null));
+    }
+}
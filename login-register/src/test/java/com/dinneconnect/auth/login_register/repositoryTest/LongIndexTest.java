@@ -0,0 +1,88 @@
+/**
+ * This class performs unit tests for the LongIndex class.
+ * The tests verify lookups, replacements and removals, including removals
+ * inside long probe runs and keys colliding with the empty marker.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.dinneconnect.auth.login_register.repository.LongIndex;
+
+/**
+ * Unit tests for the LongIndex class.
+ */
+public class LongIndexTest {
+
+    /**
+     * Tests basic put, get, replace and remove operations.
+     */
+    @Test
+    void testPutGetRemove() {
+        LongIndex index = new LongIndex(0);
+
+        assertEquals(LongIndex.ABSENT, index.put(42L, 1));
+        assertEquals(1, index.put(42L, 2));
+        assertEquals(2, index.get(42L));
+        assertEquals(2, index.remove(42L));
+        assertEquals(LongIndex.ABSENT, index.get(42L));
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Tests that Long.MIN_VALUE, used internally as the empty marker, can still
+     * be stored.
+     */
+    @Test
+    void testMinValueKey() {
+        LongIndex index = new LongIndex(4);
+
+        index.put(Long.MIN_VALUE, 7);
+        assertEquals(7, index.get(Long.MIN_VALUE));
+        assertEquals(1, index.size());
+        assertEquals(7, index.remove(Long.MIN_VALUE));
+        assertEquals(LongIndex.ABSENT, index.get(Long.MIN_VALUE));
+    }
+
+    /**
+     * Tests a long random sequence of operations against a HashMap, so removals
+     * in the middle of probe runs and resizes are exercised, both on the heap
+     * and in direct memory.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void testMatchesHashMap(boolean offHeap) {
+        LongIndex index = new LongIndex(0, offHeap);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(2025);
+
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                Integer previous = expected.put(key, i);
+                assertEquals(previous == null ? LongIndex.ABSENT : previous, index.put(key, i));
+            } else if (op == 1) {
+                Integer previous = expected.remove(key);
+                assertEquals(previous == null ? LongIndex.ABSENT : previous, index.remove(key));
+            } else {
+                Integer current = expected.get(key);
+                assertEquals(current == null ? LongIndex.ABSENT : current, index.get(key));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * This class performs unit tests for the PrefixIndex class.
+ * The tests verify that prefix queries return the matching codes in key
+ * order, respect the limit, and follow additions and removals.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.PrefixIndex;
+
+/**
+ * Unit tests for the PrefixIndex class.
+ */
+public class PrefixIndexTest {
+
+    /**
+     * Tests prefix queries, limits, shared keys and removals.
+     */
+    @Test
+    void testSearch() {
+        PrefixIndex index = new PrefixIndex();
+        index.add("john", 3);
+        index.add("johanna", 1);
+        index.add("john", 2);
+        index.add("jane", 4);
+        index.add("", 5);
+        index.add(null, 6);
+
+        assertArrayEquals(new long[] { 1, 2, 3 }, index.search("jo", 10));
+        assertArrayEquals(new long[] { 1, 2 }, index.search("jo", 2));
+        assertArrayEquals(new long[] { 4, 1, 2, 3 }, index.search("j", 10));
+        assertArrayEquals(new long[] {}, index.search("k", 10));
+        assertEquals(4, index.size());
+
+        index.remove("john", 2);
+        assertArrayEquals(new long[] { 3 }, index.search("john", 10));
+    }
+}
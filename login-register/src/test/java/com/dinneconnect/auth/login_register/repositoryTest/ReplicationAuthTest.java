@@ -0,0 +1,81 @@
+/**
+ * This class performs unit tests for the ReplicationAuth class.
+ * The tests verify that only a side knowing the same secret, and answering
+ * in its own role, passes a challenge, that sealed messages carry no
+ * password in the clear and open back to the original, and that short
+ * secrets are refused.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.ReplicationAuth;
+
+/**
+ * Unit tests for the ReplicationAuth class.
+ */
+public class ReplicationAuthTest {
+
+    private final ReplicationAuth primary = new ReplicationAuth("replication-test-secret");
+
+    private final ReplicationAuth follower = new ReplicationAuth("replication-test-secret");
+
+    /**
+     * Tests that a proof is accepted only from the same secret, for the same
+     * challenge and role.
+     */
+    @Test
+    void testVerifiesProofOfSecret() {
+        String challenge = primary.challenge();
+        String proof = follower.prove("follower", challenge);
+
+        assertTrue(primary.verify("follower", challenge, proof));
+        assertFalse(primary.verify("primary", challenge, proof));
+        assertFalse(primary.verify("follower", primary.challenge(), proof));
+        assertFalse(primary.verify("follower", challenge,
+                new ReplicationAuth("another-test-secret").prove("follower", challenge)));
+        assertFalse(primary.verify("follower", challenge, null));
+        assertNotEquals(challenge, primary.challenge());
+    }
+
+    /**
+     * Tests that passwords, including nested ones, are encrypted in a copy of
+     * the message and decrypted by the other side only.
+     */
+    @Test
+    void testSealsPasswords() {
+        Map<String, Object> record = Map.of("op", "update", "code", 7,
+                "fields", Map.of("name", "John", "password", "hash"));
+
+        Map<String, Object> sealed = primary.sealPasswords(record);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> fields = (Map<String, Object>) sealed.get("fields");
+        assertEquals("John", fields.get("name"));
+        assertNotEquals("hash", fields.get("password"));
+        assertEquals(record, follower.openPasswords(sealed));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReplicationAuth("another-test-secret").openPasswords(sealed));
+    }
+
+    /**
+     * Tests that missing and short secrets are refused.
+     */
+    @Test
+    void testRefusesShortSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new ReplicationAuth(null));
+        assertThrows(IllegalArgumentException.class, () -> new ReplicationAuth("short"));
+    }
+}
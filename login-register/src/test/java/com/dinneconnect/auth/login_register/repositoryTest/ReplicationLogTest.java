@@ -0,0 +1,88 @@
+/**
+ * This class performs unit tests for the ReplicationLog class.
+ * The tests verify that records get consecutive sequence numbers, that a
+ * follower receives exactly the records it is missing, and that a follower
+ * too far behind the backlog is told to reload a snapshot.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.ReplicationLog;
+
+/**
+ * Unit tests for the ReplicationLog class.
+ */
+public class ReplicationLogTest {
+
+    /**
+     * Tests that a follower gets the records after its sequence number, in
+     * order, and nothing once it has caught up.
+     */
+    @Test
+    void testReturnsMissingRecordsInOrder() throws Exception {
+        ReplicationLog log = new ReplicationLog(10);
+        log.append(List.of(Map.of("op", "delete", "code", 1), Map.of("op", "delete", "code", 2)));
+        log.append(List.of(Map.of("op", "delete", "code", 3)));
+
+        assertEquals(3, log.lastSequence());
+        List<ReplicationLog.Entry> entries = log.after(1, 0);
+        assertEquals(List.of(2L, 3L), entries.stream().map(ReplicationLog.Entry::sequence).toList());
+        assertEquals(3, entries.get(1).record().get("code"));
+        assertEquals(3, log.after(0, 0).size());
+        assertTrue(log.after(3, 10).isEmpty());
+    }
+
+    /**
+     * Tests that a waiting follower wakes up as soon as a record is appended.
+     */
+    @Test
+    void testWaitsForNextRecord() throws Exception {
+        ReplicationLog log = new ReplicationLog(10);
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.append(List.of(Map.of("op", "delete", "code", 1)));
+        });
+        writer.start();
+
+        long start = System.nanoTime();
+        List<ReplicationLog.Entry> entries = log.after(0, 10000);
+        assertEquals(1, entries.size());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        writer.join();
+    }
+
+    /**
+     * Tests that a follower needs a snapshot once records it misses left the
+     * backlog, or when it is ahead of a restarted primary.
+     */
+    @Test
+    void testRequiresSnapshotBeyondBacklog() throws Exception {
+        ReplicationLog log = new ReplicationLog(2);
+        assertNull(log.after(-1, 0));
+        assertTrue(log.after(0, 0).isEmpty());
+        for (int code = 1; code <= 5; code++) {
+            log.append(List.of(Map.of("op", "delete", "code", code)));
+        }
+
+        assertNull(log.after(2, 0));
+        assertEquals(2, log.after(3, 0).size());
+        assertNull(log.after(7, 0));
+    }
+}
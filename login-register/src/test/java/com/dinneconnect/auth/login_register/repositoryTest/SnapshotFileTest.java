@@ -0,0 +1,201 @@
+/**
+ * This class performs crash-injection tests for the SnapshotFile class.
+ * The tests kill snapshot writes at random byte offsets and check that the
+ * repository always recovers the last complete snapshot, and that a damaged
+ * snapshot is detected by its checksum footer and never overwritten.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.BinarySnapshot;
+import com.dinneconnect.auth.login_register.repository.SnapshotFile;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Crash-injection tests for the SnapshotFile class.
+ */
+public class SnapshotFileTest {
+
+    /**
+     * Thrown by a write to stop it at a chosen byte, like a killed process
+     * that runs no cleanup.
+     */
+    @SuppressWarnings("serial")
+    private static class Crash extends Error {
+    }
+
+    private static final int CRASHES = 200;
+
+    @TempDir
+    Path tempDir;
+
+    private final Random random = new Random(42);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<UserRecord> committed;
+
+    private List<UserRecord> next;
+
+    /**
+     * Sets up the test environment before each test.
+     * Builds the users of a committed snapshot and of the snapshot that
+     * replaces it.
+     */
+    @BeforeEach
+    void setUp() {
+        committed = users("old", 300);
+        next = users("new", 400);
+    }
+
+    /**
+     * Tests that a JSON snapshot write killed at any byte leaves the last
+     * complete snapshot, which the repository loads on restart.
+     */
+    @Test
+    void testCrashedJsonWriteKeepsLastSnapshot() throws IOException {
+        Path path = tempDir.resolve("user.json");
+        UserRecord.writeJsonArray(objectMapper, path, committed);
+        byte[] before = Files.readAllBytes(path);
+        Path scratch = tempDir.resolve("next.json");
+        UserRecord.writeJsonArray(objectMapper, scratch, next);
+        byte[] content = Files.readAllBytes(scratch);
+
+        for (int offset : offsets(content.length)) {
+            assertThrows(Crash.class, () -> SnapshotFile.write(path, false, out -> {
+                out.write(content, 0, offset);
+                throw new Crash();
+            }));
+            assertArrayEquals(before, Files.readAllBytes(path));
+            assertTrue(SnapshotFile.verify(path));
+            BaseRepository recovered = new BaseRepository(path.toString());
+            assertEquals(codes(committed), codes(recovered.getRecords()));
+            recovered.close();
+        }
+
+        UserRecord.writeJsonArray(objectMapper, path, next);
+        assertEquals(codes(next), codes(new BaseRepository(path.toString()).getRecords()));
+    }
+
+    /**
+     * Tests that a binary snapshot write killed at any byte leaves the last
+     * complete snapshot.
+     */
+    @Test
+    void testCrashedBinaryWriteKeepsLastSnapshot() throws IOException {
+        Path path = tempDir.resolve("user.bin");
+        BinarySnapshot.write(path, committed);
+        byte[] before = Files.readAllBytes(path);
+        Path scratch = tempDir.resolve("next.bin");
+        BinarySnapshot.write(scratch, next);
+        byte[] content = Files.readAllBytes(scratch);
+
+        for (int offset : offsets(content.length)) {
+            assertThrows(Crash.class, () -> SnapshotFile.write(path, false, out -> {
+                out.write(content, 0, offset);
+                throw new Crash();
+            }));
+            assertArrayEquals(before, Files.readAllBytes(path));
+            assertEquals(codes(committed), codes(BinarySnapshot.read(path)));
+        }
+    }
+
+    /**
+     * Tests that a snapshot cut at any byte or with a flipped byte, as by a
+     * failing disk or an older in-place write, is rejected, and that the
+     * repository refuses to start rather than replace it with an empty file.
+     */
+    @Test
+    void testDamagedSnapshotIsDetectedAndKept() throws IOException {
+        Path path = tempDir.resolve("user.json");
+        UserRecord.writeJsonArray(objectMapper, path, committed);
+        byte[] complete = Files.readAllBytes(path);
+        int footer = new String(complete, StandardCharsets.US_ASCII).lastIndexOf('\n', complete.length - 2) + 1;
+
+        for (int offset : offsets(complete.length)) {
+            byte[] damaged = Arrays.copyOf(complete, offset);
+            Files.write(path, damaged);
+            // An empty file holds no users; cut right after the array, only the
+            // footer is lost and every user loads; without its final newline the
+            // footer still verifies
+            if (offset > 0 && offset < footer - 1 || offset > footer && offset < complete.length - 1) {
+                assertThrows(IllegalStateException.class, () -> new BaseRepository(path.toString()));
+                assertArrayEquals(damaged, Files.readAllBytes(path));
+            }
+        }
+
+        byte[] flipped = complete.clone();
+        int index = complete.length / 2;
+        while (!Character.isLetterOrDigit(flipped[index])) {
+            index++;
+        }
+        flipped[index] = (byte) (flipped[index] == 'a' ? 'b' : 'a');
+        Files.write(path, flipped);
+        assertThrows(IOException.class, () -> SnapshotFile.verify(path));
+        assertThrows(IllegalStateException.class, () -> new BaseRepository(path.toString()));
+        assertArrayEquals(flipped, Files.readAllBytes(path));
+    }
+
+    /**
+     * Tests that files written before footers existed still load.
+     */
+    @Test
+    void testSnapshotWithoutFooterLoads() throws IOException {
+        Path path = tempDir.resolve("user.json");
+        Files.writeString(path, objectMapper.writeValueAsString(committed.stream().map(UserRecord::toMap).toList()));
+
+        assertFalse(SnapshotFile.verify(path));
+        assertEquals(codes(committed), codes(new BaseRepository(path.toString()).getRecords()));
+    }
+
+    /**
+     * Picks the byte offsets to crash at: both ends and random ones between.
+     */
+    private List<Integer> offsets(int length) {
+        List<Integer> offsets = new ArrayList<>(List.of(0, 1, length - 1, length));
+        for (int i = 0; i < CRASHES; i++) {
+            offsets.add(random.nextInt(length + 1));
+        }
+        return offsets;
+    }
+
+    private static List<UserRecord> users(String prefix, int count) {
+        List<UserRecord> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(UserRecord.fromMap(new User(new RegisterDTO("Name" + i, "Surname", prefix + i,
+                    prefix + i + "@example.com", "password" + i)).toDict()));
+        }
+        return users;
+    }
+
+    private static List<Long> codes(List<UserRecord> users) {
+        return users.stream().map(UserRecord::getCode).toList();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This class performs unit tests for the StringPool class.
+ * The tests verify that equal values are shared, and that a bounded pool
+ * keeps sharing the values it holds without adding new ones past its bound.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.StringPool;
+
+/**
+ * Unit tests for the StringPool class.
+ */
+public class StringPoolTest {
+
+    /**
+     * Tests that equal values share the first instance and are counted.
+     */
+    @Test
+    void testSharesEqualValues() {
+        StringPool pool = new StringPool();
+        String first = new String("John");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(new String("John")));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+        assertEquals(1L, pool.report().get("deduplicated"));
+    }
+
+    /**
+     * Tests that bounding drops values above the bound, that held values stay
+     * shared and that new values past the bound are returned unchanged.
+     */
+    @Test
+    void testBoundStopsGrowth() {
+        StringPool pool = new StringPool();
+        for (int i = 0; i < 10; i++) {
+            pool.intern("name" + i);
+        }
+
+        pool.bound(3);
+        assertEquals(3, pool.size());
+        String other = new String("other");
+        assertSame(other, pool.intern(other));
+        assertEquals(3, pool.size());
+
+        int shared = 0;
+        for (int i = 0; i < 10; i++) {
+            String value = "name" + i;
+            if (pool.intern(new String(value)) == pool.intern(new String(value))) {
+                shared++;
+            }
+        }
+        assertEquals(3, shared);
+
+        pool.bound(0);
+        assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This class performs unit tests for the UserRecord class.
+ * The tests verify the conversion from and to the map shape of User.toDict()
+ * and the validation done when a record is updated.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+
+/**
+ * Unit tests for the UserRecord class.
+ */
+public class UserRecordTest {
+
+    private Map<String, Object> dict;
+
+    @BeforeEach
+    void setUp() {
+        dict = new User(new RegisterDTO("John", "Doe", "john.doe", "john.doe@example.com", "password123"))
+                .toDict();
+    }
+
+    /**
+     * Tests that a record converts back to exactly the map it was built from.
+     */
+    @Test
+    void testMapRoundTrip() {
+        UserRecord record = UserRecord.fromMap(dict);
+
+        assertEquals(dict, record.toMap());
+        assertFalse(record.isActive());
+        assertFalse(record.isVerified());
+    }
+
+    /**
+     * Tests that an update returns a new record and leaves the original intact.
+     */
+    @Test
+    void testWithReturnsUpdatedCopy() {
+        UserRecord record = UserRecord.fromMap(dict);
+
+        UserRecord updated = record.with(Map.of("email", "new@example.com", "verified", true));
+
+        assertEquals("new@example.com", updated.getEmail());
+        assertTrue(updated.isVerified());
+        assertFalse(updated.isActive());
+        assertEquals("john.doe@example.com", record.getEmail());
+        assertFalse(record.isVerified());
+    }
+
+    /**
+     * Tests that updates naming unknown fields or a different code are
+     * rejected.
+     */
+    @Test
+    void testWithRejectsInvalidUpdates() {
+        UserRecord record = UserRecord.fromMap(dict);
+
+        assertThrows(IllegalArgumentException.class, () -> record.with(Map.of("nickname", "jd")));
+        assertThrows(IllegalArgumentException.class, () -> record.with(Map.of("code", record.getCode() + 1)));
+    }
+
+    /**
+     * Tests the precomputed case-folded keys, which reuse values that are
+     * already lower case.
+     */
+    @Test
+    void testFoldedKeys() {
+        UserRecord record = new UserRecord(1, "John", "doe", "John.Doe", null, "pw", UserRecord.NO_DATE, 0);
+
+        assertEquals("john", record.key("name"));
+        assertSame(record.getSurname(), record.key("surname"));
+        assertEquals("john.doe", record.key("username"));
+        assertNull(record.key("email"));
+        assertEquals("1", record.key("code"));
+        assertEquals("john.doe", record.with(Map.of("name", "Jane")).key("username"));
+        assertEquals("jane", record.with(Map.of("name", "Jane")).key("name"));
+    }
+}
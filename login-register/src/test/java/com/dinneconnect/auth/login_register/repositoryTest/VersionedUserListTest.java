@@ -0,0 +1,92 @@
+/**
+ * This class performs unit tests for the VersionedUserList class.
+ * The tests verify that published snapshots never change while the list is
+ * modified, and that the list behaves like an ArrayList across chunk
+ * boundaries.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.UserRecord;
+import com.dinneconnect.auth.login_register.repository.VersionedUserList;
+
+/**
+ * Unit tests for the VersionedUserList class.
+ */
+public class VersionedUserListTest {
+
+    private static UserRecord user(long code) {
+        return new UserRecord(code, "name" + code, null, "user" + code, null, null, UserRecord.NO_DATE, 0);
+    }
+
+    /**
+     * Tests that a snapshot keeps its contents and version while the list
+     * changes.
+     */
+    @Test
+    void testSnapshotIsImmutable() {
+        VersionedUserList list = new VersionedUserList(List.of(user(1), user(2)));
+        VersionedUserList.Snapshot before = list.snapshot();
+
+        list.set(0, user(10));
+        list.add(user(3));
+        list.remove(1);
+
+        assertEquals(List.of(user(1), user(2)), before);
+        assertEquals(0, before.getVersion());
+        assertEquals(List.of(user(10), user(3)), list.snapshot());
+        assertEquals(3, list.snapshot().getVersion());
+        assertThrows(UnsupportedOperationException.class, () -> before.set(0, user(4)));
+    }
+
+    /**
+     * Tests random mutations against an ArrayList, checking every snapshot
+     * taken along the way.
+     */
+    @Test
+    void testMatchesArrayList() {
+        Random random = new Random(7);
+        List<UserRecord> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            expected.add(user(i));
+        }
+        VersionedUserList list = new VersionedUserList(expected);
+        List<VersionedUserList.Snapshot> snapshots = new ArrayList<>();
+        List<List<UserRecord>> copies = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(3);
+            if (op == 0 || expected.isEmpty()) {
+                expected.add(user(10000 + i));
+                list.add(user(10000 + i));
+            } else if (op == 1) {
+                int index = random.nextInt(expected.size());
+                expected.set(index, user(20000 + i));
+                list.set(index, user(20000 + i));
+            } else {
+                int index = random.nextInt(10) == 0 ? random.nextInt(expected.size()) : expected.size() - 1;
+                assertEquals(expected.remove(index), list.remove(index));
+            }
+            if (i % 250 == 0) {
+                snapshots.add(list.snapshot());
+                copies.add(new ArrayList<>(expected));
+            }
+        }
+        assertEquals(expected, list);
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(copies.get(i), snapshots.get(i));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This class performs unit tests for the WriteBehindWriter class.
+ * The tests verify that queued mutations are flushed together within the
+ * staleness window, in order, that writers are held back once the queue is
+ * over capacity, that closing the writer flushes what is left, and that
+ * failed flushes are counted.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.repositoryTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.dinneconnect.auth.login_register.repository.WriteBehindWriter;
+
+/**
+ * Unit tests for the WriteBehindWriter class.
+ */
+public class WriteBehindWriterTest {
+
+    /**
+     * Tests that mutations queued within one window are flushed as a single
+     * batch, in order, once the window has passed.
+     */
+    @Test
+    void testBatchesWithinWindow() throws Exception {
+        List<List<Map<String, Object>>> batches = new CopyOnWriteArrayList<>();
+        WriteBehindWriter writer = new WriteBehindWriter(batches::add, 200, 100);
+        for (int i = 0; i < 3; i++) {
+            writer.submit(List.of(Map.of("op", "update", "code", i)));
+        }
+
+        assertTrue(batches.isEmpty());
+        writer.drain();
+        assertEquals(1, batches.size());
+        assertEquals(List.of(0, 1, 2), batches.get(0).stream().map(record -> record.get("code")).toList());
+        assertEquals(0, writer.pending());
+        writer.close();
+    }
+
+    /**
+     * Tests that a writer over capacity waits until the flusher catches up,
+     * and that closing flushes the remaining mutations.
+     */
+    @Test
+    void testBackpressureAndClose() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Map<String, Object>> flushed = new CopyOnWriteArrayList<>();
+        WriteBehindWriter writer = new WriteBehindWriter(records -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushed.addAll(records);
+        }, 0, 2);
+        for (int i = 0; i < 3; i++) {
+            writer.submit(List.of(Map.of("code", i)));
+        }
+
+        CompletableFuture<Void> held = CompletableFuture.runAsync(writer::awaitCapacity);
+        Thread.sleep(200);
+        assertFalse(held.isDone());
+        release.countDown();
+        held.get(5, TimeUnit.SECONDS);
+
+        writer.submit(List.of(Map.of("code", 3)));
+        writer.close();
+        assertEquals(4, flushed.size());
+    }
+
+    /**
+     * Tests that a failed flush is counted and its error kept, and that the
+     * writer goes on flushing later mutations.
+     */
+    @Test
+    void testRecordsFailedFlush() throws Exception {
+        List<Map<String, Object>> flushed = new CopyOnWriteArrayList<>();
+        WriteBehindWriter writer = new WriteBehindWriter(records -> {
+            if (records.get(0).get("code").equals(0)) {
+                throw new IOException("disk full");
+            }
+            flushed.addAll(records);
+        }, 0, 100);
+        assertNull(writer.lastFailure());
+
+        writer.submit(List.of(Map.of("code", 0)));
+        writer.drain();
+        writer.submit(List.of(Map.of("code", 1)));
+        writer.close();
+
+        assertEquals(1, writer.failedFlushes());
+        assertTrue(writer.lastFailure().contains("disk full"));
+        assertEquals(1, flushed.size());
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * This class performs unit tests for the ChangeFeedService class.
+ * The tests verify that creates, updates and deletes are streamed in order
+ * with increasing sequence numbers and without passwords, that a consumer
+ * resumes after the last sequence number it applied, and that it is told to
+ * reload every user when the changes it missed are no longer available.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.userServiceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.services.ChangeFeedService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for the ChangeFeedService class.
+ */
+public class ChangeFeedServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BaseRepository repository;
+
+    private ChangeFeedService changeFeedService;
+
+    private Thread consumer;
+
+    private final BlockingQueue<Map<String, Object>> events = new LinkedBlockingQueue<>();
+
+    /**
+     * Sets up the test environment before each test.
+     * Creates a repository in log mode with a change feed keeping the last
+     * 5 changes.
+     */
+    @BeforeEach
+    void setUp() {
+        repository = new BaseRepository(RepositoryOptions.of(tempDir.resolve("user.json").toString())
+                .withPersistence("log").withCompactAfter(1000));
+        changeFeedService = new ChangeFeedService(repository, new ObjectMapper(), true, 5, 4);
+        changeFeedService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (consumer != null) {
+            consumer.interrupt();
+            consumer.join(5000);
+        }
+        changeFeedService.stop();
+        repository.close();
+    }
+
+    /**
+     * Tests that a create, an update and a delete reach a connected consumer
+     * in order, without the password.
+     */
+    @Test
+    void testStreamsMutationsInOrder() throws InterruptedException {
+        connect(null, null);
+        Map<String, Object> feed = next();
+        assertEquals("feed", feed.get("op"));
+        assertEquals(0L, feed.get("sequence"));
+
+        long code = register("john");
+        repository.updateEntity(code, Map.of("name", "Johnny", "password", "secret"));
+        repository.deleteEntityByCode(code);
+
+        Map<String, Object> create = next();
+        assertEquals("create", create.get("op"));
+        assertEquals(1L, create.get("sequence"));
+        assertEquals(code, ((Number) create.get("code")).longValue());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> user = (Map<String, Object>) create.get("user");
+        assertEquals("john", user.get("username"));
+        assertFalse(user.containsKey("password"));
+
+        Map<String, Object> update = next();
+        assertEquals("update", update.get("op"));
+        assertEquals(2L, update.get("sequence"));
+        assertEquals(Map.of("name", "Johnny"), update.get("fields"));
+
+        Map<String, Object> delete = next();
+        assertEquals("delete", delete.get("op"));
+        assertEquals(3L, delete.get("sequence"));
+        assertEquals(code, ((Number) delete.get("code")).longValue());
+    }
+
+    /**
+     * Tests that a consumer passing the last sequence number it applied gets
+     * every later change, including the ones made while it was away.
+     */
+    @Test
+    void testResumesAfterSequence() throws InterruptedException {
+        connect(null, null);
+        long epoch = (Long) next().get("epoch");
+        register("a");
+        register("b");
+        assertEquals(1L, next().get("sequence"));
+        assertEquals(2L, next().get("sequence"));
+        disconnect();
+
+        register("c");
+        connect(2L, epoch);
+        Map<String, Object> feed = next();
+        assertEquals("feed", feed.get("op"));
+        assertEquals(2L, feed.get("sequence"));
+        assertEquals(3L, next().get("sequence"));
+        register("d");
+        assertEquals(4L, next().get("sequence"));
+    }
+
+    /**
+     * Tests that a consumer is told to reload when the changes it missed left
+     * the backlog, or when it read them under another epoch.
+     */
+    @Test
+    void testResetsWhenChangesAreGone() throws InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            register("user" + i);
+        }
+        connect(1L, null);
+        long epoch = (Long) next().get("epoch");
+        Map<String, Object> reset = next();
+        assertEquals("reset", reset.get("op"));
+        assertEquals(8L, reset.get("sequence"));
+        register("after");
+        assertEquals(9L, next().get("sequence"));
+        disconnect();
+
+        connect(9L, epoch - 1);
+        reset = next();
+        assertEquals("reset", reset.get("op"));
+        assertEquals(epoch, reset.get("epoch"));
+        assertEquals(9L, reset.get("sequence"));
+    }
+
+    /**
+     * Tests that the feed is unavailable on a follower.
+     */
+    @Test
+    void testUnavailableOnFollower() {
+        BaseRepository follower = new BaseRepository(tempDir.resolve("follower.json").toString());
+        follower.enableFollowerMode();
+        ChangeFeedService feed = new ChangeFeedService(follower, new ObjectMapper(), true, 5, 4);
+        feed.start();
+        assertThrows(IllegalStateException.class, () -> feed.subscribe(null, null));
+        follower.close();
+    }
+
+    /**
+     * Tests that consumers above the configured maximum are refused.
+     */
+    @Test
+    void testRefusesConsumersAboveMaximum() {
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(changeFeedService.subscribe(null, null));
+        }
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> changeFeedService.subscribe(null, null));
+        assertEquals("Too many change feed consumers", refused.getMessage());
+    }
+
+    private long register(String username) {
+        User user = new User(new RegisterDTO("Name", "Surname", username, username + "@example.com", "pw"));
+        repository.postEntity(user);
+        return ((Number) repository.getEntityByField("username", username).get("code")).longValue();
+    }
+
+    /**
+     * Streams the feed into the event queue from a consumer thread.
+     */
+    private void connect(Long after, Long epoch) {
+        consumer = new Thread(() -> {
+            try {
+                changeFeedService.stream(after, epoch, events::add);
+            } catch (Exception e) {
+                events.add(Map.of("op", "error"));
+            }
+        });
+        consumer.start();
+    }
+
+    private void disconnect() throws InterruptedException {
+        consumer.interrupt();
+        consumer.join(5000);
+        events.clear();
+    }
+
+    private Map<String, Object> next() throws InterruptedException {
+        Map<String, Object> event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        return event;
+    }
+}
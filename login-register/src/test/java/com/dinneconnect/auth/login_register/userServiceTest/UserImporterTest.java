@@ -0,0 +1,120 @@
+/**
+ * This class performs unit tests for the UserImporter class.
+ * The tests verify that NDJSON and CSV files are imported in batches, and
+ * that malformed lines, invalid emails and duplicates, within the file or
+ * of stored users, are counted and skipped.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.userServiceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.services.UserImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for the UserImporter class.
+ */
+public class UserImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BaseRepository repository;
+
+    /**
+     * Sets up the test environment before each test.
+     * Creates a repository in log mode holding one user.
+     */
+    @BeforeEach
+    void setUp() {
+        repository = new BaseRepository(RepositoryOptions.of(tempDir.resolve("user.json").toString())
+                .withPersistence("log").withCompactAfter(1000));
+        repository.postEntity(new User(new RegisterDTO("John", "Doe", "john", "john@example.com", "pw")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    /**
+     * Tests an NDJSON import spanning several batches, with invalid lines and
+     * duplicates of a stored user and of an earlier line.
+     */
+    @Test
+    void testImportsNdjson() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            lines.add("{\"name\":\"User\",\"surname\":\"Doe\",\"username\":\"user" + i
+                    + "\",\"email\":\"user" + i + "@example.com\",\"password\":\"pw\"}");
+        }
+        lines.add("");
+        lines.add("{\"username\":\"JOHN\",\"email\":\"other@example.com\",\"password\":\"pw\"}");
+        lines.add("{\"username\":\"user3\",\"email\":\"again@example.com\",\"password\":\"pw\"}");
+        lines.add("{\"username\":\"bad\",\"email\":\"not an email\",\"password\":\"pw\"}");
+        lines.add("{\"username\":\"nopassword\",\"email\":\"nopassword@example.com\"}");
+        lines.add("{\"username\":");
+        Path file = tempDir.resolve("users.ndjson");
+        Files.write(file, lines);
+
+        UserImporter.Report report = new UserImporter(repository, new ObjectMapper(), 10).importFile(file);
+
+        assertEquals(30, report.lines());
+        assertEquals(25, report.imported());
+        assertEquals(3, report.invalid());
+        assertEquals(2, report.duplicates());
+        assertEquals(26, repository.getRecords().size());
+        assertNotNull(repository.getRecordByField("email", "USER24@example.com"));
+        assertNull(repository.getRecordByField("username", "bad"));
+    }
+
+    /**
+     * Tests a CSV import with columns in any order and quoted fields.
+     */
+    @Test
+    void testImportsCsv() throws IOException {
+        String csv = String.join("\n",
+                "Email,Username,Password,Name,Surname",
+                "ann@example.com,ann,pw,\"Ann, Jr.\",Lee",
+                "\"bob@example.com\",bob,\"p\"\"w\",Bob,Lee",
+                "ann@example.com,ann2,pw,Ann,Lee",
+                "carl@example.com,carl,pw,\"Carl,Lee");
+
+        UserImporter.Report report = new UserImporter(repository, new ObjectMapper(), 2)
+                .importLines(new BufferedReader(new StringReader(csv)), true);
+
+        assertEquals(4, report.lines());
+        assertEquals(2, report.imported());
+        assertEquals(1, report.invalid());
+        assertEquals(1, report.duplicates());
+        assertEquals("Ann, Jr.", repository.getRecordByField("username", "ann").getName());
+        assertEquals("p\"w", repository.getRecordByField("username", "bob").getPassword());
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(repository, new ObjectMapper(), 2)
+                .importLines(new BufferedReader(new StringReader("name,email\nx,y")), true));
+    }
+}
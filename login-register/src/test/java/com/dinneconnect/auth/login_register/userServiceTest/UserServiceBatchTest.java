@@ -0,0 +1,125 @@
+/**
+ * This class performs unit tests for the batch registration of the
+ * UserService class.
+ * The tests verify that a batch is created in order with one result per
+ * user, that users clashing with stored users or with earlier users of the
+ * batch are rejected, and that empty and oversized batches are refused.
+ *
+ * Dependencies:
+ * - JUnit 5
+ *
+ * Created by: sebas
+ */
+package com.dinneconnect.auth.login_register.userServiceTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dinneconnect.auth.login_register.DTO.RegisterDTO;
+import com.dinneconnect.auth.login_register.models.User;
+import com.dinneconnect.auth.login_register.repository.BaseRepository;
+import com.dinneconnect.auth.login_register.repository.RepositoryOptions;
+import com.dinneconnect.auth.login_register.services.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for UserService.createUsers.
+ */
+public class UserServiceBatchTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BaseRepository repository;
+
+    private UserService userService;
+
+    /**
+     * Sets up the test environment before each test.
+     * Creates a repository in log mode holding one user.
+     */
+    @BeforeEach
+    void setUp() {
+        repository = new BaseRepository(RepositoryOptions.of(tempDir.resolve("user.json").toString())
+                .withPersistence("log").withCompactAfter(1000));
+        userService = new UserService(repository, new ObjectMapper());
+        userService.createUser(user("john", "john@example.com"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    /**
+     * Tests a batch mixing new users, users clashing with the stored user and
+     * users clashing with an earlier user of the batch, by username or email.
+     */
+    @Test
+    void testCreatesValidUsersOfPartialBatch() {
+        List<Map<String, Boolean>> created = userService.createUsers(List.of(
+                user("ann", "ann@example.com"),
+                user("JOHN", "other@example.com"),
+                user("bob", "John@Example.com"),
+                user("Ann", "ann2@example.com"),
+                user("carl", "ANN@example.com"),
+                user("dave", "dave@example.com")));
+
+        assertEquals(List.of(true, false, false, false, false, true),
+                created.stream().map(result -> result.get("success")).toList());
+        assertEquals(Map.of("success", false, "duplicate", true), created.get(1));
+        assertEquals(3, userService.getAllUsers().size());
+        assertNotNull(userService.getUserByEmail("dave@example.com"));
+        assertNull(userService.getUserByEmail("other@example.com"));
+    }
+
+    /**
+     * Tests that the created users survive a restart.
+     */
+    @Test
+    void testCreatedUsersArePersisted() {
+        userService.createUsers(List.of(user("ann", "ann@example.com"), user("bob", "bob@example.com")));
+        repository.close();
+
+        repository = new BaseRepository(RepositoryOptions.of(tempDir.resolve("user.json").toString())
+                .withPersistence("log").withCompactAfter(1000));
+        assertEquals(3, repository.getRecords().size());
+        assertNotNull(repository.getRecordByField("username", "bob"));
+    }
+
+    /**
+     * Tests that empty batches and batches above the maximum size are refused
+     * without creating any user, while a batch of exactly the maximum size is
+     * created.
+     */
+    @Test
+    void testRefusesEmptyAndOversizedBatches() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i <= UserService.MAX_BATCH_SIZE; i++) {
+            users.add(user("user" + i, "user" + i + "@example.com"));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> userService.createUsers(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> userService.createUsers(users));
+        assertEquals(1, repository.getRecords().size());
+
+        List<Map<String, Boolean>> created = userService.createUsers(users.subList(0, UserService.MAX_BATCH_SIZE));
+        assertEquals(UserService.MAX_BATCH_SIZE, created.stream().filter(result -> result.get("success")).count());
+    }
+
+    private static User user(String username, String email) {
+        return new User(new RegisterDTO("Name", "Doe", username, email, "pw"));
+    }
+}